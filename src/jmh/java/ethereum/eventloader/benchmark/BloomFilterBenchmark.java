@@ -0,0 +1,196 @@
+package ethereum.eventloader.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.LogFetcher;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.entity.LogFilter;
+import ethereum.eventloader.config.Web3jConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.DisposableBean;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+/**
+ * Logs of single contract on synthetic sparse chain, with and without logsBloom pre-screening of block headers.
+ * <p>
+ * Every block has {@link #TRANSACTIONS} transactions logging Transfer of other contracts, the tracked contract
+ * logs in {@link #matchPercent} percent of blocks. Headers are prebuilt, as loader has them cached for publishing,
+ * so screening cost is bloom check of every header. eth_getLogs is split by 10 blocks, as capped by public providers.
+ * Fake node serves prebuilt JSON, node-side cost of range scan isn't modeled, only requests, transfer and parsing.
+ * Without screening range takes 50 eth_getLogs or 500 eth_getBlockReceipts requests, with screening both sources
+ * query only blocks of the contract, 5 or 50 requests. Score is milliseconds per range of {@link #BLOCKS} blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BloomFilterBenchmark {
+
+    private static final int BLOCKS = 500;
+    private static final int TRANSACTIONS = 30;
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String TOKEN = "0x6b175474e89094c44da98b954eedeac495271d0f";
+
+    @Param({"logs", "receipts"})
+    private String source;
+
+    @Param({"off", "bloom"})
+    private String screen;
+
+    @Param({"1", "10"})
+    private int matchPercent;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private String[] tokenLogs;
+
+    private String[] blockReceipts;
+
+    private String[] blooms;
+
+    private LogFilter filter;
+
+    private LogFetcher fetcher;
+
+    private Web3j web3j;
+
+    @Setup
+    public void setUp() throws IOException {
+        tokenLogs = new String[BLOCKS];
+        blockReceipts = new String[BLOCKS];
+        blooms = new String[BLOCKS];
+        for (int block = 0; block < BLOCKS; block++) {
+            buildBlock(block, block * matchPercent / 100 != (block + 1) * matchPercent / 100);
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(10L);
+        fetcher = "receipts".equals(source) ? new BlockReceiptsFetcher(config) : new LogRangeFetcher(config);
+        filter = new LogFilter(Collections.singletonList(TRANSFER), Collections.singletonList(TOKEN));
+        web3j = new ExtendedWeb3j(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((DisposableBean) fetcher).destroy();
+        web3j.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public List fetch() throws IOException {
+        LongPredicate candidate = block -> true;
+        if ("bloom".equals(screen)) {
+            BitSet candidates = new BitSet(BLOCKS);
+            for (int block = 0; block < BLOCKS; block++) {
+                if (filter.mayMatch(blooms[block])) {
+                    candidates.set(block);
+                }
+            }
+            candidate = block -> candidates.get((int) block);
+        }
+        return fetcher.fetch(web3j, 0, BLOCKS - 1, candidate);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        String method = request.get("method").asText();
+        JsonNode params = request.get("params");
+        StringBuilder result = new StringBuilder();
+        if ("eth_getLogs".equals(method)) {
+            int from = Integer.decode(params.get(0).get("fromBlock").asText());
+            int to = Integer.decode(params.get(0).get("toBlock").asText());
+            result.append('[');
+            for (int block = from; block <= to; block++) {
+                if (tokenLogs[block] != null) {
+                    result.append(result.length() > 1 ? "," : "").append(tokenLogs[block]);
+                }
+            }
+            result.append(']');
+        } else {
+            result.append(blockReceipts[Integer.decode(params.get(0).asText())]);
+        }
+        byte[] body = ("{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":" + result + "}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void buildBlock(int block, boolean match) {
+        String blockHash = String.format("0x%064x", block + 1);
+        byte[] bloom = new byte[256];
+        List<String> receipts = new ArrayList<>();
+        for (int tx = 0; tx < TRANSACTIONS; tx++) {
+            String txHash = String.format("0x%056x%08x", block, tx);
+            String address = match && tx == 0 ? TOKEN : String.format("0x%040x", block * TRANSACTIONS + tx + 1);
+            String log = String.format("{\"address\":\"%s\",\"topics\":[\"%s\",\"0x%064x\",\"0x%064x\"],"
+                            + "\"data\":\"0x%064x\",\"blockNumber\":\"0x%x\",\"transactionHash\":\"%s\","
+                            + "\"transactionIndex\":\"0x%x\",\"blockHash\":\"%s\",\"logIndex\":\"0x%x\",\"removed\":false}",
+                    address, TRANSFER, tx, tx + 1, 1_000_000L * tx, block, txHash, tx, blockHash, tx);
+            if (TOKEN.equals(address)) {
+                tokenLogs[block] = log;
+            }
+            setBloom(bloom, address);
+            setBloom(bloom, TRANSFER);
+            receipts.add(String.format("{\"transactionHash\":\"%s\",\"transactionIndex\":\"0x%x\",\"blockHash\":\"%s\","
+                            + "\"blockNumber\":\"0x%x\",\"cumulativeGasUsed\":\"0x%x\",\"gasUsed\":\"0x5208\","
+                            + "\"contractAddress\":null,\"logs\":[%s],\"logsBloom\":\"0x%0512x\",\"status\":\"0x1\","
+                            + "\"from\":\"0x%040x\",\"to\":\"%s\",\"type\":\"0x2\"}",
+                    txHash, tx, blockHash, block, 21000L * (tx + 1), log, 0, tx, address));
+        }
+        blockReceipts[block] = "[" + String.join(",", receipts) + "]";
+        blooms[block] = Numeric.toHexString(bloom);
+    }
+
+    private static void setBloom(byte[] bloom, String value) {
+        for (int bit : LogFilter.bloomBits(value)) {
+            bloom[bloom.length - 1 - bit / 8] |= 1 << (bit % 8);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ethereum.eventloader.benchmark;
+
+import ethereum.eventloader.component.checkpoint.AsyncCheckpointStore;
+import ethereum.eventloader.component.checkpoint.CheckpointStore;
+import ethereum.eventloader.component.checkpoint.FileCheckpointStore;
+import ethereum.eventloader.component.checkpoint.KafkaCheckpointStore;
+import ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of saving checkpoint after every batch: Zookeeper znode, local fsync'd file and compacted Kafka topic,
+ * written synchronously or in background by {@link AsyncCheckpointStore}.
+ * <p>
+ * Score is time the loader waits per save. In async mode it is only hand-off to the writer, saves made while
+ * a write is in progress are coalesced, so the store receives at most one write per its own latency.
+ * Zookeeper and Kafka run in-process, so network round trips are loopback ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CheckpointStoreBenchmark {
+
+    private static final String CHECKPOINT_TOPIC = "bench.checkpoint";
+
+    @Param({"zookeeper", "file", "kafka"})
+    private String store;
+
+    @Param({"sync", "async"})
+    private String mode;
+
+    private Path directory;
+
+    private ServerCnxnFactory zookeeper;
+
+    private CuratorFramework curatorFramework;
+
+    private EmbeddedKafkaBroker kafka;
+
+    private CheckpointStore checkpoints;
+
+    private long block;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("checkpoint-bench");
+        CheckpointStore backend;
+        if ("zookeeper".equals(store)) {
+            zookeeper = ServerCnxnFactory.createFactory(0, 100);
+            zookeeper.startup(new ZooKeeperServer(directory.toFile(), directory.toFile(), 2000));
+            curatorFramework = CuratorFrameworkFactory.newClient("127.0.0.1:" + zookeeper.getLocalPort(), new RetryOneTime(100));
+            curatorFramework.start();
+            curatorFramework.blockUntilConnected();
+            backend = new ZookeeperCheckpointStore(curatorFramework);
+        } else if ("file".equals(store)) {
+            backend = new FileCheckpointStore(directory.resolve("checkpoint"));
+        } else {
+            kafka = new EmbeddedKafkaBroker(1, true);
+            kafka.afterPropertiesSet();
+            try (AdminClient admin = AdminClient.create(Collections.singletonMap("bootstrap.servers", kafka.getBrokersAsString()))) {
+                NewTopic topic = new NewTopic(CHECKPOINT_TOPIC, 1, (short) 1)
+                        .configs(Collections.singletonMap(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
+                admin.createTopics(Collections.singletonList(topic)).all().get();
+            }
+            backend = new KafkaCheckpointStore(KafkaTestUtils.producerProps(kafka),
+                    KafkaTestUtils.consumerProps("bench", "false", kafka), CHECKPOINT_TOPIC, "event-loader", 30000L);
+        }
+        checkpoints = "async".equals(mode) ? new AsyncCheckpointStore(backend) : backend;
+        block = checkpoints.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        checkpoints.close();
+        if (curatorFramework != null) {
+            curatorFramework.close();
+            zookeeper.shutdown();
+        }
+        if (kafka != null) {
+            kafka.destroy();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.map(Path::toFile).sorted((a, b) -> b.compareTo(a)).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        checkpoints.save(++block);
+    }
+}
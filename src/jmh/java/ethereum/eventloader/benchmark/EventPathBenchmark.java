@@ -0,0 +1,145 @@
+package ethereum.eventloader.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event path of a batch, stage by stage, on node responses bundled in {@code fixtures}:
+ * {@code eth_getLogs} of 5 dense blocks with 440 token and pair events and {@code eth_getBlockByNumber}
+ * of a block with 100 transactions.
+ * <p>
+ * Score is microseconds per whole fixture: parse response, build messages, index logs in {@link Events},
+ * read them back and serialize to JSON as published. Routing is measured by {@link RoutingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventPathBenchmark {
+
+    private static final String TOPIC = "bench";
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+    private final JsonSerializer<Object> serializer = new JsonSerializer<>();
+
+    private byte[] logsResponse;
+
+    private byte[] blockResponse;
+
+    @SuppressWarnings("rawtypes")
+    private List<LogResult> logs;
+
+    private long firstBlock;
+
+    private long lastBlock;
+
+    private Events events;
+
+    private List<EventMessage> messages;
+
+    private BlockMessage block;
+
+    @Setup
+    public void setup() throws IOException {
+        logsResponse = fixture("eth_getLogs.json");
+        blockResponse = fixture("eth_getBlockByNumber.json");
+        logs = objectMapper.readValue(logsResponse, EthLog.class).getLogs();
+        firstBlock = ((EthLog.LogObject) logs.get(0)).getBlockNumber().longValue();
+        lastBlock = ((EthLog.LogObject) logs.get(logs.size() - 1)).getBlockNumber().longValue();
+        events = new Events(firstBlock - 1, lastBlock);
+        events.addLogs(logs);
+        messages = toMessages();
+        EthBlock.Block full = objectMapper.readValue(blockResponse, EthBlock.class).getBlock();
+        block = new BlockMessage(full.getNumber(), full.getHash(), full);
+    }
+
+    @Benchmark
+    public EthLog parseLogs() throws IOException {
+        return objectMapper.readValue(logsResponse, EthLog.class);
+    }
+
+    @Benchmark
+    public EthBlock parseBlock() throws IOException {
+        return objectMapper.readValue(blockResponse, EthBlock.class);
+    }
+
+    @Benchmark
+    public List<EventMessage> eventMessages() {
+        return toMessages();
+    }
+
+    @Benchmark
+    public Events addLogs() {
+        Events batch = new Events(firstBlock - 1, lastBlock);
+        batch.addLogs(logs);
+        return batch;
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public List<LogResult> getLogs() {
+        return events.getLogs(firstBlock - 1);
+    }
+
+    @Benchmark
+    public void serializeEvents(Blackhole blackhole) {
+        for (EventMessage message : messages) {
+            blackhole.consume(serializer.serialize(TOPIC, message));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeBlock() {
+        return serializer.serialize(TOPIC, block);
+    }
+
+    private List<EventMessage> toMessages() {
+        List<EventMessage> result = new ArrayList<>(logs.size());
+        for (LogResult<?> log : logs) {
+            result.add(new EventMessage((EthLog.LogObject) log));
+        }
+        return result;
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = EventPathBenchmark.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("fixture " + name + " is missing");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
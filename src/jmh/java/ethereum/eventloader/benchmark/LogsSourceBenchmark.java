@@ -0,0 +1,173 @@
+package ethereum.eventloader.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.LogFetcher;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.config.Web3jConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.DisposableBean;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * eth_getLogs range scan against per-block eth_getBlockReceipts, both through HTTP against local fake node.
+ * <p>
+ * Every block of the range has {@link #TRANSACTIONS} transactions. Dense blocks have 2 logs in every transaction,
+ * sparse blocks have a log in every 50th transaction only, so receipts carry mostly data not needed by the loader.
+ * Fake node serves prebuilt JSON, node-side cost of range scan isn't modeled, only transfer and parsing are measured.
+ * Score is milliseconds per range of {@link #BLOCKS} blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogsSourceBenchmark {
+
+    private static final int BLOCKS = 100;
+    private static final int TRANSACTIONS = 150;
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String BLOOM = "0x" + repeat("00", 256);
+
+    @Param({"logs", "receipts"})
+    private String source;
+
+    @Param({"sparse", "dense"})
+    private String density;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private String[] blockLogs;
+
+    private String[] blockReceipts;
+
+    private LogFetcher fetcher;
+
+    private Web3j web3j;
+
+    @Setup
+    public void setUp() throws IOException {
+        blockLogs = new String[BLOCKS];
+        blockReceipts = new String[BLOCKS];
+        for (int block = 0; block < BLOCKS; block++) {
+            buildBlock(block, "dense".equals(density) ? 1 : 50);
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize((long) BLOCKS);
+        fetcher = "receipts".equals(source) ? new BlockReceiptsFetcher(config) : new LogRangeFetcher(config);
+        web3j = new ExtendedWeb3j(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((DisposableBean) fetcher).destroy();
+        web3j.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public List fetch() throws IOException {
+        return fetcher.fetch(web3j, 0, BLOCKS - 1);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        String method = request.get("method").asText();
+        JsonNode params = request.get("params");
+        StringBuilder result = new StringBuilder();
+        if ("eth_getLogs".equals(method)) {
+            int from = Integer.decode(params.get(0).get("fromBlock").asText());
+            int to = Integer.decode(params.get(0).get("toBlock").asText());
+            result.append('[');
+            for (int block = from; block <= to; block++) {
+                if (!blockLogs[block].isEmpty()) {
+                    result.append(result.length() > 1 ? "," : "").append(blockLogs[block]);
+                }
+            }
+            result.append(']');
+        } else {
+            result.append(blockReceipts[Integer.decode(params.get(0).asText())]);
+        }
+        byte[] body = ("{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":" + result + "}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void buildBlock(int block, int logEvery) {
+        String blockHash = String.format("0x%064x", block + 1);
+        List<String> logs = new ArrayList<>();
+        List<String> receipts = new ArrayList<>();
+        int logIndex = 0;
+        for (int tx = 0; tx < TRANSACTIONS; tx++) {
+            String txHash = String.format("0x%056x%08x", block, tx);
+            List<String> txLogs = new ArrayList<>();
+            if (tx % logEvery == 0) {
+                for (int i = 0; i < 2; i++) {
+                    txLogs.add(String.format("{\"address\":\"0x%040x\",\"topics\":[\"%s\",\"0x%064x\",\"0x%064x\"],"
+                                    + "\"data\":\"0x%064x\",\"blockNumber\":\"0x%x\",\"transactionHash\":\"%s\","
+                                    + "\"transactionIndex\":\"0x%x\",\"blockHash\":\"%s\",\"logIndex\":\"0x%x\",\"removed\":false}",
+                            tx, TRANSFER, tx, i, 1_000_000L * tx, block, txHash, tx, blockHash, logIndex++));
+                }
+            }
+            logs.addAll(txLogs);
+            receipts.add(String.format("{\"transactionHash\":\"%s\",\"transactionIndex\":\"0x%x\",\"blockHash\":\"%s\","
+                            + "\"blockNumber\":\"0x%x\",\"cumulativeGasUsed\":\"0x%x\",\"gasUsed\":\"0x5208\","
+                            + "\"contractAddress\":null,\"logs\":[%s],\"logsBloom\":\"%s\",\"status\":\"0x1\","
+                            + "\"from\":\"0x%040x\",\"to\":\"0x%040x\",\"type\":\"0x2\"}",
+                    txHash, tx, blockHash, block, 21000L * (tx + 1), String.join(",", txLogs), BLOOM, tx, tx + 1));
+        }
+        blockLogs[block] = String.join(",", logs);
+        blockReceipts[block] = "[" + String.join(",", receipts) + "]";
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            result.append(value);
+        }
+        return result.toString();
+    }
+}
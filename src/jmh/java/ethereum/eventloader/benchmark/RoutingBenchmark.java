@@ -0,0 +1,105 @@
+package ethereum.eventloader.benchmark;
+
+import ethereum.eventloader.config.EventRoutes;
+import ethereum.eventloader.config.KafkaTopics.EventTopicMap;
+import ethereum.eventloader.messages.EventMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing of a single event: linear scan over configured mappings with {@link EventTopicMap#equalsEvent}
+ * against lookup in compiled {@link EventRoutes}.
+ * <p>
+ * Score is nanoseconds per routed event. Events are drawn from configured topic0s plus 25% of unknown ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    @Param({"10", "100", "1000"})
+    private int mappings;
+
+    private Set<EventTopicMap> events;
+
+    private EventRoutes routes;
+
+    private EventMessage[] messages;
+
+    @Setup
+    public void setup() {
+        events = new LinkedHashSet<>();
+        for (int i = 0; i < mappings; i++) {
+            events.add(mapping(topic0(i), "topic-" + i));
+        }
+        events.add(mapping(EventRoutes.WILDCARD, "all"));
+        events.add(mapping(EventRoutes.BLOCK, "blocks"));
+        routes = new EventRoutes(events);
+
+        Random random = new Random(42);
+        messages = new EventMessage[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            int event = random.nextInt(mappings + mappings / 3 + 1);
+            messages[i] = new EventMessage(
+                    Arrays.asList(topic0(event), "0x" + String.format("%064x", i)),
+                    "0x",
+                    "0x" + String.format("%040x", i % 16),
+                    BigInteger.valueOf(i),
+                    "0x" + String.format("%064x", i),
+                    BigInteger.ZERO);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void linearScan(Blackhole blackhole) {
+        for (EventMessage message : messages) {
+            events.stream()
+                    .filter(eventTopicMap -> eventTopicMap.equalsEvent(message))
+                    .forEach(eventTopicMap -> blackhole.consume(eventTopicMap.getTopic()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void compiledRoutes(Blackhole blackhole) {
+        for (EventMessage message : messages) {
+            routes.route(message, blackhole::consume);
+        }
+    }
+
+    private static String topic0(int i) {
+        return "0x" + String.format("%064X", i * 7919L);
+    }
+
+    private static EventTopicMap mapping(String event, String topic) {
+        EventTopicMap map = new EventTopicMap();
+        map.setEvent(event);
+        map.setTopic(topic);
+        map.setName(topic);
+        return map;
+    }
+}
@@ -0,0 +1,135 @@
+package ethereum.eventloader.benchmark;
+
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import ethereum.eventloader.messages.binary.BinaryMessageDeserializer;
+import ethereum.eventloader.messages.binary.BinaryMessageSerializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization throughput of the current JSON path against binary format for event, block and block-full messages.
+ * <p>
+ * Score is messages per second. Serialized size of every message is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String TOPIC = "bench";
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    @Param({"json", "binary"})
+    private String format;
+
+    @Param({"event", "block", "block-full"})
+    private String message;
+
+    private ExtendedSerializer<Object> serializer;
+
+    private Deserializer<?> deserializer;
+
+    private Object value;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        switch (message) {
+            case "event":
+                value = event(random);
+                break;
+            case "block":
+                value = new BlockMessage(BigInteger.valueOf(9_000_000L), hex(random, 32));
+                break;
+            default:
+                EthBlock.Block block = block(random, 150);
+                value = new BlockMessage(block.getNumber(), block.getHash(), block);
+        }
+        if ("binary".equals(format)) {
+            serializer = new BinaryMessageSerializer();
+            deserializer = new BinaryMessageDeserializer();
+        } else {
+            serializer = new JsonSerializer<>();
+            // JSON of web3j block can't be read back into EthBlock.Block, consumers read it as a tree
+            Class<?> type = "block-full".equals(message) ? Map.class : value.getClass();
+            deserializer = new JsonDeserializer<>(type);
+        }
+        serialized = serializer.serialize(TOPIC, new RecordHeaders(), value);
+        System.out.println("[BENCHMARK] " + format + " " + message + " message size: " + serialized.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(TOPIC, new RecordHeaders(), value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserializer.deserialize(TOPIC, serialized);
+    }
+
+    private static EventMessage event(Random random) {
+        return new EventMessage(
+                Arrays.asList(TRANSFER, "0x000000000000000000000000" + hex(random, 20).substring(2),
+                        "0x000000000000000000000000" + hex(random, 20).substring(2)),
+                hex(random, 32), hex(random, 20), BigInteger.valueOf(9_000_000L), hex(random, 32), BigInteger.valueOf(117));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static EthBlock.Block block(Random random, int transactions) {
+        List<EthBlock.TransactionResult> results = new ArrayList<>(transactions);
+        String hash = hex(random, 32);
+        for (int i = 0; i < transactions; i++) {
+            results.add(new EthBlock.TransactionObject(
+                    hex(random, 32), "0x" + Integer.toHexString(random.nextInt(5000)), hash, "0x895440",
+                    "0x" + Integer.toHexString(i), hex(random, 20), hex(random, 20), "0x" + Long.toHexString(random.nextLong() >>> 4),
+                    "0x5208", "0x3b9aca00", hex(random, i % 4 == 0 ? 68 : 0), null, null, null,
+                    hex(random, 32), hex(random, 32), 37));
+        }
+        return new EthBlock.Block(
+                "0x895440", hash, hex(random, 32), "0x42a14d8e0cb0a1b2", hex(random, 32), hex(random, 256),
+                hex(random, 32), hex(random, 32), hex(random, 32), null, hex(random, 20), hex(random, 32),
+                "0x7d7e2c1f4b2d8", "0x2d8a4f1c3f0a1b2c3d4e5f", "0xd883010817", "0x9c4e", "0x7a1200", "0x5208", "0x5d8a1f2b",
+                results, Collections.emptyList(), null);
+    }
+
+    private static String hex(Random random, int bytes) {
+        byte[] value = new byte[bytes];
+        random.nextBytes(value);
+        StringBuilder hex = new StringBuilder("0x");
+        for (byte b : value) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,126 @@
+package ethereum.eventloader.benchmark;
+
+import ethereum.eventloader.messages.EventMessage;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of exactly-once publishing: batch of events plus checkpoint record committed in a Kafka transaction
+ * against idempotent producer flushing the same batch.
+ * <p>
+ * Score is batches per second, multiply by {@code batchSize} to get events per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransactionalPublishBenchmark {
+
+    private static final String EVENTS_TOPIC = "bench.events";
+    private static final String STATE_TOPIC = "bench.state";
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    @Param({"idempotent", "transactional"})
+    private String mode;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private EmbeddedKafkaBroker kafka;
+
+    private DefaultKafkaProducerFactory<String, Object> producerFactory;
+
+    private KafkaTemplate<String, Object> template;
+
+    private TransactionTemplate transactionTemplate;
+
+    private List<EventMessage> batch;
+
+    private long block;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kafka = new EmbeddedKafkaBroker(1, true, 1, EVENTS_TOPIC, STATE_TOPIC)
+                .brokerProperty("transaction.state.log.replication.factor", "1")
+                .brokerProperty("transaction.state.log.min.isr", "1");
+        kafka.afterPropertiesSet();
+
+        Map<String, Object> props = KafkaTestUtils.producerProps(kafka);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024);
+        producerFactory = new DefaultKafkaProducerFactory<>(props);
+        if ("transactional".equals(mode)) {
+            producerFactory.setTransactionIdPrefix("bench-");
+            transactionTemplate = new TransactionTemplate(new KafkaTransactionManager<>(producerFactory));
+        }
+        template = new KafkaTemplate<>(producerFactory);
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new EventMessage(
+                    Arrays.asList(TRANSFER, "0x000000000000000000000000" + String.format("%040x", i), "0x000000000000000000000000" + String.format("%040x", i + 1)),
+                    "0x" + String.format("%064x", i),
+                    "0x" + String.format("%040x", i % 16),
+                    BigInteger.valueOf(i / 100),
+                    "0x" + String.format("%064x", i * 1000L),
+                    BigInteger.valueOf(i % 100)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        producerFactory.destroy();
+        kafka.destroy();
+    }
+
+    @Benchmark
+    public void publishBatch() {
+        long checkpoint = ++block;
+        if (transactionTemplate != null) {
+            transactionTemplate.execute(status -> send(checkpoint));
+        } else {
+            send(checkpoint);
+            template.flush();
+        }
+    }
+
+    private Object send(long checkpoint) {
+        for (EventMessage event : batch) {
+            template.send(EVENTS_TOPIC, event.getTopics().get(0), event);
+        }
+        return template.send(STATE_TOPIC, "event-loader", checkpoint);
+    }
+}
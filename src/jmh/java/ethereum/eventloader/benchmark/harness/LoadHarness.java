@@ -0,0 +1,360 @@
+package ethereum.eventloader.benchmark.harness;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ethereum.eventloader.Application;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of the whole loader: {@link Application} runs against {@link SyntheticNode},
+ * embedded Kafka and in-process Zookeeper, a consumer reads published events and blocks back.
+ * <p>
+ * Args are scenario names, comma separated or {@code all}, see {@link Scenario#PRESETS}, followed by
+ * loader properties as {@code NAME=value}, e.g. {@code catch-up,tip PIPELINE_ENABLED=true}.
+ * Every scenario gets fresh node, broker and Zookeeper. Reported per scenario:
+ * <ul>
+ * <li>sustained blocks and events per second, seconds of ramp-up and tail are left out</li>
+ * <li>percentiles of time from block appearing on the node to its events consumed, only for blocks mined during the run</li>
+ * <li>heap used by the whole JVM: after GC before the loader starts, peak, average and after GC at the end</li>
+ * </ul>
+ * Node, broker and Zookeeper share the JVM and CPUs with the loader, so absolute numbers are lower than of
+ * a loader running alone, comparisons of versions and settings on the same machine are what it is for.
+ * Results are printed and written as JSON to file of {@code harness.out} system property.
+ */
+public class LoadHarness {
+
+    private static final String TOPIC_ALL = "harness.all";
+    private static final String TOPIC_TRANSFER = "harness.transfer";
+    private static final String TOPIC_BLOCK = "harness.blocks";
+    private static final String BLOCK_NUMBER = "\"blockNumber\":";
+    private static final long HEAP_SAMPLE_MS = 100;
+    private static final long PROGRESS_MS = 10_000;
+    private static final double MB = 1024 * 1024;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Expected args: <scenario,...|all> [NAME=value ...], scenarios: " + Scenario.PRESETS.keySet());
+            System.exit(0);
+        }
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : "all".equals(args[0]) ? Scenario.PRESETS.keySet().toArray(new String[0]) : args[0].split(",")) {
+            Scenario scenario = Scenario.PRESETS.get(name.trim());
+            if (scenario == null) {
+                throw new IllegalArgumentException("unknown scenario: " + name + ", expected one of " + Scenario.PRESETS.keySet());
+            }
+            scenarios.add(scenario);
+        }
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String property : Arrays.copyOfRange(args, 1, args.length)) {
+            int split = property.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("expected NAME=value, got: " + property);
+            }
+            overrides.put(property.substring(0, split), property.substring(split + 1));
+        }
+
+        LoadHarness harness = new LoadHarness();
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            results.add(harness.run(scenario, overrides));
+        }
+        print(results);
+        String out = System.getProperty("harness.out");
+        if (out != null) {
+            Path path = Paths.get(out);
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(path.toFile(), results);
+            System.out.println("Results are written to " + path.toAbsolutePath());
+        }
+        // kafka and zookeeper clients of closed contexts may leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    private Map<String, Object> run(Scenario scenario, Map<String, String> overrides) throws Exception {
+        System.out.printf("[HARNESS] %s: %s%n", scenario.getName(), scenario.getDescription());
+        Path directory = Files.createTempDirectory("load-harness");
+        ServerCnxnFactory zookeeper = ServerCnxnFactory.createFactory(0, 100);
+        zookeeper.startup(new ZooKeeperServer(directory.toFile(), directory.toFile(), 2000));
+        EmbeddedKafkaBroker kafka = new EmbeddedKafkaBroker(1, false, 1, TOPIC_ALL, TOPIC_TRANSFER, TOPIC_BLOCK);
+        kafka.afterPropertiesSet();
+        SyntheticNode node = new SyntheticNode(scenario);
+        node.start();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        ConfigurableApplicationContext context = null;
+        Measurement measurement = new Measurement(node);
+        Thread consumer = new Thread(() -> measurement.consume(kafka.getBrokersAsString()), "harness-consumer");
+        try {
+            consumer.start();
+            Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("NODE_URL", node.getUrl());
+            properties.put("KAFKA_BOOTSTRAP_URL", kafka.getBrokersAsString());
+            properties.put("ZOOKEEPER_URL", "127.0.0.1:" + zookeeper.getLocalPort());
+            properties.put("ZOOKEEPER_NAMESPACE", "harness");
+            properties.put("GROUP_ID", "harness-loader");
+            properties.put("CLIENT_ID", "harness-loader");
+            properties.put("TOPIC_ALL", TOPIC_ALL);
+            properties.put("TOPIC_TRANSFER", TOPIC_TRANSFER);
+            properties.put("TOPIC_BLOCK", TOPIC_BLOCK);
+            properties.put("START_BLOCK", "0");
+            properties.put("BLOCK_LAG", "0");
+            properties.put("CHECKPOINT_FILE", directory.resolve("checkpoint").toString());
+            properties.put("SPOOL_DIRECTORY", directory.resolve("spool").toString());
+            properties.put("server.port", "0");
+            properties.put("logging.level.root", "WARN");
+            // consumer metrics are read from JMX, consumer of the harness would clash with the loader ones
+            properties.put("management.metrics.enable.kafka", "false");
+            properties.putAll(scenario.getProperties());
+            properties.putAll(overrides);
+
+            System.gc();
+            long baseline = memory.getHeapMemoryUsage().getUsed();
+            long gcTime = gcTime();
+            sampler.scheduleAtFixedRate(measurement::sampleHeap, 0, HEAP_SAMPLE_MS, TimeUnit.MILLISECONDS);
+            long started = System.nanoTime();
+            context = SpringApplication.run(Application.class, properties.entrySet().stream()
+                    .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                    .toArray(String[]::new));
+
+            long deadline = started + TimeUnit.SECONDS.toNanos(scenario.getDurationSeconds());
+            long progress = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROGRESS_MS);
+            boolean growing = scenario.getBlockIntervalMs() > 0;
+            while (System.nanoTime() < deadline && (growing || !measurement.consumedAll(scenario))) {
+                Thread.sleep(HEAP_SAMPLE_MS);
+                if (System.nanoTime() > progress) {
+                    System.out.printf("[HARNESS] %s: %d blocks, %d events, node head %d%n",
+                            scenario.getName(), measurement.blocks.get(), measurement.events.get(), node.getHead());
+                    progress += TimeUnit.MILLISECONDS.toNanos(PROGRESS_MS);
+                }
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            sampler.shutdownNow();
+            measurement.stop(consumer);
+            gcTime = gcTime() - gcTime;
+            System.gc();
+            long retained = memory.getHeapMemoryUsage().getUsed();
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("scenario", scenario.getName());
+            result.put("description", scenario.getDescription());
+            result.put("complete", growing || measurement.consumedAll(scenario));
+            result.put("seconds", round(seconds));
+            result.put("blocks", measurement.blocks.get());
+            result.put("events", measurement.events.get());
+            result.put("blocksPerSecond", round(measurement.blockRate.sustained()));
+            result.put("eventsPerSecond", round(measurement.eventRate.sustained()));
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("samples", measurement.latency.getTotalCount());
+            for (double percentile : new double[]{50, 90, 99, 99.9}) {
+                latency.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", ""),
+                        round(measurement.latency.getValueAtPercentile(percentile) / 1000.0));
+            }
+            latency.put("max", round(measurement.latency.getMaxValue() / 1000.0));
+            result.put("latencyMs", latency);
+            Map<String, Object> heap = new LinkedHashMap<>();
+            heap.put("baseline", round(baseline / MB));
+            heap.put("peak", round(measurement.heapPeak / MB));
+            heap.put("average", round(measurement.heapSamples == 0 ? 0 : measurement.heapTotal / measurement.heapSamples / MB));
+            heap.put("afterGc", round(retained / MB));
+            result.put("heapMb", heap);
+            result.put("gcMs", gcTime);
+            Map<String, Object> requests = new LinkedHashMap<>();
+            requests.put("http", node.getRequests());
+            requests.put("calls", node.getCalls());
+            requests.put("injectedErrors", node.getInjectedErrors());
+            result.put("nodeRequests", requests);
+            Map<String, String> loaderProperties = new LinkedHashMap<>(scenario.getProperties());
+            loaderProperties.putAll(overrides);
+            result.put("properties", loaderProperties);
+            return result;
+        } finally {
+            sampler.shutdownNow();
+            if (context != null) {
+                context.close();
+            }
+            measurement.stop(consumer);
+            node.close();
+            kafka.destroy();
+            zookeeper.shutdown();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.map(Path::toFile).sorted((a, b) -> b.compareTo(a)).forEach(File::delete);
+            }
+        }
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static void print(List<Map<String, Object>> results) {
+        String format = "%-15s %8s %9s %9s %11s %9s %9s %9s %10s %10s %8s %8s%n";
+        System.out.printf(format, "scenario", "complete", "blocks", "blocks/s", "events/s",
+                "p50 ms", "p99 ms", "max ms", "heap peak", "heap gc'd", "gc ms", "rpc err");
+        for (Map<String, Object> result : results) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> latency = (Map<String, Object>) result.get("latencyMs");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> heap = (Map<String, Object>) result.get("heapMb");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> requests = (Map<String, Object>) result.get("nodeRequests");
+            boolean measured = (Long) latency.get("samples") > 0;
+            System.out.printf(format, result.get("scenario"), result.get("complete"), result.get("blocks"),
+                    result.get("blocksPerSecond"), result.get("eventsPerSecond"),
+                    measured ? latency.get("p50") : "-", measured ? latency.get("p99") : "-", measured ? latency.get("max") : "-",
+                    heap.get("peak") + " MB", heap.get("afterGc") + " MB", result.get("gcMs"), requests.get("injectedErrors"));
+        }
+    }
+
+    /**
+     * State of consumer thread, read by the harness once consumer is stopped, counters and heap samples also during the run
+     */
+    private class Measurement {
+
+        private final SyntheticNode node;
+
+        private final AtomicLong blocks = new AtomicLong();
+
+        private final AtomicLong events = new AtomicLong();
+
+        private final Rate blockRate = new Rate();
+
+        private final Rate eventRate = new Rate();
+
+        private final Histogram latency = new Histogram(3);
+
+        private volatile boolean running = true;
+
+        private volatile long heapPeak;
+
+        private volatile long heapTotal;
+
+        private volatile long heapSamples;
+
+        private Measurement(SyntheticNode node) {
+            this.node = node;
+        }
+
+        private void consume(String brokers) {
+            Map<String, Object> props = new HashMap<>();
+            props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, "harness-consumer");
+            props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+            props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+            try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer())) {
+                consumer.subscribe(Arrays.asList(TOPIC_ALL, TOPIC_BLOCK));
+                while (running) {
+                    for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                        long now = System.nanoTime();
+                        if (TOPIC_BLOCK.equals(record.topic())) {
+                            blocks.incrementAndGet();
+                            blockRate.record(now);
+                            continue;
+                        }
+                        events.incrementAndGet();
+                        eventRate.record(now);
+                        int start = record.value().indexOf(BLOCK_NUMBER);
+                        if (start >= 0) {
+                            start += BLOCK_NUMBER.length();
+                            int end = start;
+                            while (end < record.value().length() && Character.isDigit(record.value().charAt(end))) {
+                                end++;
+                            }
+                            long minedAt = node.minedAt(Long.parseLong(record.value().substring(start, end)));
+                            if (minedAt >= 0) {
+                                latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - minedAt));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean consumedAll(Scenario scenario) {
+            return blocks.get() >= scenario.getHistory() && events.get() >= scenario.getHistory() * scenario.getLogsPerBlock();
+        }
+
+        private void sampleHeap() {
+            long used = memory.getHeapMemoryUsage().getUsed();
+            heapPeak = Math.max(heapPeak, used);
+            heapTotal += used;
+            heapSamples++;
+        }
+
+        private void stop(Thread consumer) throws InterruptedException {
+            running = false;
+            consumer.join();
+        }
+    }
+
+    /**
+     * Records per second since the first record
+     */
+    private static class Rate {
+
+        private final List<long[]> seconds = new ArrayList<>();
+
+        private long first = -1;
+
+        private void record(long now) {
+            if (first < 0) {
+                first = now;
+            }
+            int second = (int) TimeUnit.NANOSECONDS.toSeconds(now - first);
+            while (seconds.size() <= second) {
+                seconds.add(new long[1]);
+            }
+            seconds.get(second)[0]++;
+        }
+
+        /**
+         * @return Average of whole seconds but the first and the last one, overall average if there are not enough
+         */
+        private double sustained() {
+            long total = 0;
+            for (long[] second : seconds) {
+                total += second[0];
+            }
+            if (seconds.size() < 4) {
+                return total / (double) Math.max(1, seconds.size());
+            }
+            return (total - seconds.get(0)[0] - seconds.get(seconds.size() - 1)[0]) / (double) (seconds.size() - 2);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ethereum.eventloader.benchmark.harness;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load scenario: shape of synthetic chain, behaviour of fake node and loader properties to run with.
+ * <p>
+ * Chain starts with {@link #history} blocks and grows by a block every {@link #blockIntervalMs}, chain that
+ * doesn't grow makes catch-up scenario which ends once all its blocks are consumed.
+ */
+public class Scenario {
+
+    public static final Map<String, Scenario> PRESETS = new LinkedHashMap<>();
+
+    static {
+        add(new Scenario("catch-up", "2000 existing blocks, 50 logs per block, loaded as fast as possible")
+                .history(2000).logsPerBlock(50));
+        add(new Scenario("tip", "chain grows by a block per second, 50 logs per block, publish latency of new blocks")
+                .history(20).blockIntervalMs(1000).logsPerBlock(50).durationSeconds(60));
+        add(new Scenario("large-payloads", "500 existing blocks, 20 logs per block with 4 KB of data")
+                .history(500).logsPerBlock(20).payloadBytes(4096));
+        add(new Scenario("flaky-node", "1000 existing blocks, 20 ms per request, 1% of calls and 1% of requests fail")
+                .history(1000).logsPerBlock(50).latencyMs(20).errorRate(0.01).httpErrorRate(0.01));
+    }
+
+    private final String name;
+
+    private final String description;
+
+    private long history = 1000;
+
+    private long blockIntervalMs;
+
+    private int logsPerBlock = 50;
+
+    private int transactionsPerBlock = 100;
+
+    private int payloadBytes = 64;
+
+    private long latencyMs;
+
+    private double errorRate;
+
+    private double httpErrorRate;
+
+    private long seed = 1;
+
+    private long durationSeconds = 300;
+
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    public Scenario(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    private static void add(Scenario scenario) {
+        PRESETS.put(scenario.getName(), scenario);
+    }
+
+    /**
+     * Blocks the chain has when scenario starts, loaded from block 1
+     */
+    public Scenario history(long blocks) {
+        this.history = blocks;
+        return this;
+    }
+
+    /**
+     * Time between new blocks, 0 to keep the chain as it is
+     */
+    public Scenario blockIntervalMs(long interval) {
+        this.blockIntervalMs = interval;
+        return this;
+    }
+
+    public Scenario logsPerBlock(int logs) {
+        this.logsPerBlock = logs;
+        return this;
+    }
+
+    public Scenario transactionsPerBlock(int transactions) {
+        this.transactionsPerBlock = transactions;
+        return this;
+    }
+
+    /**
+     * Size of data field of every log
+     */
+    public Scenario payloadBytes(int bytes) {
+        this.payloadBytes = bytes;
+        return this;
+    }
+
+    /**
+     * Delay of every HTTP request to the node
+     */
+    public Scenario latencyMs(long latency) {
+        this.latencyMs = latency;
+        return this;
+    }
+
+    /**
+     * Share of calls, batch elements included, answered with JSON-RPC error
+     */
+    public Scenario errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Share of HTTP requests answered with 503
+     */
+    public Scenario httpErrorRate(double rate) {
+        this.httpErrorRate = rate;
+        return this;
+    }
+
+    public Scenario seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Max run time, growing chain runs for whole duration
+     */
+    public Scenario durationSeconds(long duration) {
+        this.durationSeconds = duration;
+        return this;
+    }
+
+    /**
+     * Loader property, same names as environment variables of application.yml
+     */
+    public Scenario property(String name, String value) {
+        properties.put(name, value);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getHistory() {
+        return history;
+    }
+
+    public long getBlockIntervalMs() {
+        return blockIntervalMs;
+    }
+
+    public int getLogsPerBlock() {
+        return logsPerBlock;
+    }
+
+    public int getTransactionsPerBlock() {
+        return transactionsPerBlock;
+    }
+
+    public int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getHttpErrorRate() {
+        return httpErrorRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+}
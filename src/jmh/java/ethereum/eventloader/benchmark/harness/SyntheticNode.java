@@ -0,0 +1,435 @@
+package ethereum.eventloader.benchmark.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fake Ethereum node serving deterministic synthetic chain through JSON-RPC over HTTP.
+ * <p>
+ * Content of a block is derived from scenario seed and block number only, so every run loads the same events
+ * and nothing is kept in memory but times new blocks were mined at. Serves eth_blockNumber, eth_syncing,
+ * eth_getLogs, eth_getBlockByNumber, eth_getBlockReceipts and block filters, single and in batches.
+ * Every HTTP request is delayed by scenario latency, may fail with 503 and every call may fail with JSON-RPC error.
+ * Blooms have all bits set, so bloom pre-screening of the loader never skips a block.
+ */
+public class SyntheticNode implements Closeable {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String APPROVAL = "0x8c5be1e5ebec7d5bd14f71427d1e84f3dd0314c0f7b2291e5b200ac8c7c3b925";
+    private static final String BLOOM = "0x" + repeat("ff", 256);
+    private static final int CONTRACTS = 20;
+    private static final long GENESIS_TIMESTAMP = 1_500_000_000L;
+
+    private final Scenario scenario;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final ScheduledExecutorService miner = Executors.newSingleThreadScheduledExecutor();
+
+    private volatile long head;
+
+    /**
+     * Nano time blocks mined during the run appeared at, blocks of history aren't here
+     */
+    private final Map<Long, Long> mined = new ConcurrentHashMap<>();
+
+    /**
+     * Block filter id to the last block reported by it
+     */
+    private final Map<String, Long> filters = new ConcurrentHashMap<>();
+
+    private final AtomicLong filterIds = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    public SyntheticNode(Scenario scenario) throws IOException {
+        this.scenario = scenario;
+        this.head = scenario.getHistory();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        if (scenario.getBlockIntervalMs() > 0) {
+            miner.scheduleAtFixedRate(this::mine, scenario.getBlockIntervalMs(), scenario.getBlockIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getHead() {
+        return head;
+    }
+
+    /**
+     * @return Nano time block appeared at, -1 for blocks of history
+     */
+    public long minedAt(long block) {
+        Long time = mined.get(block);
+        return time == null ? -1L : time;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() {
+        miner.shutdownNow();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void mine() {
+        long block = head + 1;
+        mined.put(block, System.nanoTime());
+        head = block;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            if (scenario.getLatencyMs() > 0) {
+                Thread.sleep(scenario.getLatencyMs());
+            }
+            if (ThreadLocalRandom.current().nextDouble() < scenario.getHttpErrorRate()) {
+                injectedErrors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            StringBuilder response = new StringBuilder();
+            if (request.isArray()) {
+                response.append('[');
+                for (int i = 0; i < request.size(); i++) {
+                    response.append(i > 0 ? "," : "");
+                    call(request.get(i), response);
+                }
+                response.append(']');
+            } else {
+                call(request, response);
+            }
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void call(JsonNode request, StringBuilder response) {
+        calls.incrementAndGet();
+        response.append("{\"jsonrpc\":\"2.0\",\"id\":").append(request.get("id"));
+        int mark = response.length();
+        try {
+            if (ThreadLocalRandom.current().nextDouble() < scenario.getErrorRate()) {
+                injectedErrors.incrementAndGet();
+                throw new RpcError(-32000, "injected error");
+            }
+            String method = request.get("method").asText();
+            JsonNode params = request.get("params");
+            response.append(",\"result\":");
+            switch (method) {
+                case "eth_blockNumber":
+                    response.append(quantity(head));
+                    break;
+                case "eth_syncing":
+                    response.append("false");
+                    break;
+                case "eth_getLogs":
+                    logs(params.get(0), response);
+                    break;
+                case "eth_getBlockByNumber":
+                    block(blockNumber(params.get(0)), params.get(1).asBoolean(), response);
+                    break;
+                case "eth_getBlockReceipts":
+                    receipts(blockNumber(params.get(0)), response);
+                    break;
+                case "eth_newBlockFilter":
+                    String id = "0x" + Long.toHexString(filterIds.incrementAndGet());
+                    filters.put(id, head);
+                    response.append('"').append(id).append('"');
+                    break;
+                case "eth_getFilterChanges":
+                    filterChanges(params.get(0).asText(), response);
+                    break;
+                case "eth_uninstallFilter":
+                    response.append(filters.remove(params.get(0).asText()) != null);
+                    break;
+                default:
+                    throw new RpcError(-32601, "method " + method + " not found");
+            }
+        } catch (RpcError error) {
+            response.setLength(mark);
+            response.append(",\"error\":{\"code\":").append(error.code)
+                    .append(",\"message\":\"").append(error.getMessage()).append("\"}");
+        }
+        response.append('}');
+    }
+
+    private void logs(JsonNode filter, StringBuilder response) {
+        long from;
+        long to;
+        if (filter.has("blockHash")) {
+            from = to = Long.parseLong(filter.get("blockHash").asText().substring(2), 16) - 1;
+        } else {
+            from = filter.has("fromBlock") ? blockNumber(filter.get("fromBlock")) : head;
+            to = filter.has("toBlock") ? blockNumber(filter.get("toBlock")) : head;
+        }
+        List<String> addresses = values(filter.get("address"));
+        JsonNode topics = filter.get("topics");
+        List<String> events = topics != null && topics.size() > 0 ? values(topics.get(0)) : null;
+        response.append('[');
+        int start = response.length();
+        for (long block = from; block <= Math.min(to, head); block++) {
+            for (SyntheticLog log : blockLogs(block)) {
+                if ((addresses == null || addresses.contains(log.address)) && (events == null || events.contains(log.event))) {
+                    response.append(response.length() > start ? "," : "").append(log.json);
+                }
+            }
+        }
+        response.append(']');
+    }
+
+    private void block(long number, boolean full, StringBuilder response) {
+        if (number > head) {
+            response.append("null");
+            return;
+        }
+        Random random = random(number, 1);
+        response.append("{\"number\":").append(quantity(number))
+                .append(",\"hash\":\"").append(blockHash(number))
+                .append("\",\"parentHash\":\"").append(number > 0 ? blockHash(number - 1) : blockHash(-1))
+                .append("\",\"nonce\":\"0x").append(String.format("%016x", random.nextLong()))
+                .append("\",\"mixHash\":\"").append(hash(random))
+                .append("\",\"sha3Uncles\":\"").append(hash(random))
+                .append("\",\"logsBloom\":\"").append(BLOOM)
+                .append("\",\"transactionsRoot\":\"").append(hash(random))
+                .append("\",\"stateRoot\":\"").append(hash(random))
+                .append("\",\"receiptsRoot\":\"").append(hash(random))
+                .append("\",\"miner\":\"").append(String.format("0x%040x", random.nextInt(CONTRACTS) + 1000))
+                .append("\",\"difficulty\":\"0x8e2a1d64a9c6a\",\"totalDifficulty\":").append(quantity(number * 0x8e2a1d64a9c6aL))
+                .append(",\"extraData\":\"0x\",\"size\":\"0x7918\",\"gasLimit\":\"0x98abfa\",\"gasUsed\":\"0x989680\",\"timestamp\":")
+                .append(quantity(GENESIS_TIMESTAMP + number * 12))
+                .append(",\"uncles\":[],\"transactions\":[");
+        int transactions = scenario.getTransactionsPerBlock();
+        for (int tx = 0; tx < transactions; tx++) {
+            response.append(tx > 0 ? "," : "");
+            if (!full) {
+                response.append('"').append(transactionHash(number, tx)).append('"');
+                continue;
+            }
+            response.append("{\"hash\":\"").append(transactionHash(number, tx))
+                    .append("\",\"nonce\":").append(quantity(tx))
+                    .append(",\"blockHash\":\"").append(blockHash(number))
+                    .append("\",\"blockNumber\":").append(quantity(number))
+                    .append(",\"transactionIndex\":").append(quantity(tx))
+                    .append(",\"from\":\"").append(String.format("0x%040x", random.nextLong() & Long.MAX_VALUE))
+                    .append("\",\"to\":\"").append(String.format("0x%040x", random.nextInt(CONTRACTS) + 1))
+                    .append("\",\"value\":\"0x0\",\"gasPrice\":\"0x1715239965\",\"gas\":\"0x2f382\",\"input\":\"0xa9059cbb")
+                    .append(String.format("%064x%064x", random.nextLong() & Long.MAX_VALUE, random.nextLong() & Long.MAX_VALUE))
+                    .append("\",\"v\":\"0x25\",\"r\":\"").append(hash(random))
+                    .append("\",\"s\":\"").append(hash(random)).append("\"}");
+        }
+        response.append("]}");
+    }
+
+    private void receipts(long number, StringBuilder response) {
+        if (number > head) {
+            response.append("null");
+            return;
+        }
+        List<SyntheticLog> logs = blockLogs(number);
+        int next = 0;
+        response.append('[');
+        for (int tx = 0; tx < scenario.getTransactionsPerBlock(); tx++) {
+            response.append(tx > 0 ? "," : "")
+                    .append("{\"transactionHash\":\"").append(transactionHash(number, tx))
+                    .append("\",\"transactionIndex\":").append(quantity(tx))
+                    .append(",\"blockHash\":\"").append(blockHash(number))
+                    .append("\",\"blockNumber\":").append(quantity(number))
+                    .append(",\"cumulativeGasUsed\":").append(quantity(21000L * (tx + 1)))
+                    .append(",\"gasUsed\":\"0x5208\",\"contractAddress\":null,\"logsBloom\":\"").append(BLOOM)
+                    .append("\",\"status\":\"0x1\",\"from\":\"").append(String.format("0x%040x", tx))
+                    .append("\",\"to\":\"").append(String.format("0x%040x", tx + 1))
+                    .append("\",\"logs\":[");
+            int first = next;
+            while (next < logs.size() && logs.get(next).transaction == tx) {
+                response.append(next > first ? "," : "").append(logs.get(next++).json);
+            }
+            response.append("]}");
+        }
+        response.append(']');
+    }
+
+    private void filterChanges(String id, StringBuilder response) {
+        Long last = filters.get(id);
+        if (last == null) {
+            throw new RpcError(-32000, "filter not found");
+        }
+        long current = head;
+        filters.put(id, current);
+        response.append('[');
+        for (long block = last + 1; block <= current; block++) {
+            response.append(block > last + 1 ? "," : "").append('"').append(blockHash(block)).append('"');
+        }
+        response.append(']');
+    }
+
+    /**
+     * Logs of the block, generated from seed and block number, ordered by transaction
+     */
+    private List<SyntheticLog> blockLogs(long block) {
+        Random random = random(block, 2);
+        int count = scenario.getLogsPerBlock();
+        int transactions = scenario.getTransactionsPerBlock();
+        byte[] payload = new byte[scenario.getPayloadBytes()];
+        List<SyntheticLog> logs = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int tx = (int) ((long) index * transactions / count);
+            String address = String.format("0x%040x", random.nextInt(CONTRACTS) + 1);
+            String event = random.nextInt(4) == 0 ? APPROVAL : TRANSFER;
+            random.nextBytes(payload);
+            StringBuilder json = new StringBuilder(256 + payload.length * 2)
+                    .append("{\"address\":\"").append(address)
+                    .append("\",\"topics\":[\"").append(event)
+                    .append("\",\"").append(String.format("0x%064x", random.nextLong() & Long.MAX_VALUE))
+                    .append("\",\"").append(String.format("0x%064x", random.nextLong() & Long.MAX_VALUE))
+                    .append("\"],\"data\":\"0x");
+            for (byte value : payload) {
+                json.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+            }
+            json.append("\",\"blockNumber\":").append(quantity(block))
+                    .append(",\"transactionHash\":\"").append(transactionHash(block, tx))
+                    .append("\",\"transactionIndex\":").append(quantity(tx))
+                    .append(",\"blockHash\":\"").append(blockHash(block))
+                    .append("\",\"logIndex\":").append(quantity(index))
+                    .append(",\"removed\":false}");
+            logs.add(new SyntheticLog(tx, address, event, json.toString()));
+        }
+        return logs;
+    }
+
+    private Random random(long block, int stream) {
+        return new Random(scenario.getSeed() * 1_000_003L + block * 4 + stream);
+    }
+
+    private long blockNumber(JsonNode tag) {
+        String value = tag.asText();
+        if ("latest".equals(value) || "pending".equals(value)) {
+            return head;
+        }
+        return "earliest".equals(value) ? 0L : Long.decode(value);
+    }
+
+    private static List<String> values(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        if (node.isArray()) {
+            node.forEach(value -> values.add(value.asText().toLowerCase()));
+        } else {
+            values.add(node.asText().toLowerCase());
+        }
+        return values;
+    }
+
+    private static String blockHash(long block) {
+        return String.format("0x%064x", block + 1);
+    }
+
+    private static String transactionHash(long block, int tx) {
+        return String.format("0x%056x%08x", block, tx);
+    }
+
+    private static String hash(Random random) {
+        return String.format("0x%016x%016x%016x%016x", random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+    }
+
+    private static String quantity(long value) {
+        return "\"0x" + Long.toHexString(value) + "\"";
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            result.append(value);
+        }
+        return result.toString();
+    }
+
+    private static class SyntheticLog {
+
+        private final int transaction;
+
+        private final String address;
+
+        private final String event;
+
+        private final String json;
+
+        private SyntheticLog(int transaction, String address, String event, String json) {
+            this.transaction = transaction;
+            this.address = address;
+            this.event = event;
+            this.json = json;
+        }
+    }
+
+    private static class RpcError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        private RpcError(int code, String message) {
+            super(message, null, false, false);
+            this.code = code;
+        }
+    }
+}
@@ -1,24 +1,33 @@
 package ethereum.eventloader;
 
 import ethereum.eventloader.component.BlockchainAdapter;
+import ethereum.eventloader.component.HeadTracker;
+import ethereum.eventloader.component.LoadPipeline;
 import ethereum.eventloader.component.entity.Events;
 import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.ReorgTracker;
+import ethereum.eventloader.component.SpooledPublisher;
+import ethereum.eventloader.component.TransactionalPublisher;
+import ethereum.eventloader.component.checkpoint.CheckpointStore;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.config.PipelineConfig;
 import ethereum.eventloader.metrics.EventMetrics;
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
-import org.apache.curator.framework.recipes.locks.Locker;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,18 +38,34 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class EventLoader {
 
-    private static final String ZNODE_PROCESSED_BLOCK = "/processed_block";
-
     private final EventMetrics metrics;
 
     private final BlockchainAdapter blockchain;
 
     private final MessageBrokerAdapter messageBroker;
 
-    private final CuratorFramework curatorFramework;
+    private final CheckpointStore checkpoints;
+
+    private final PipelineConfig pipelineConfig;
+
+    private final LoadPipeline pipeline;
+
+    private final LeasingConfig leasingConfig;
+
+    private final RangeLoader rangeLoader;
+
+    private final Optional<TransactionalPublisher> transactions;
+
+    private final Optional<SpooledPublisher> spool;
+
+    private final Optional<LeaderCheckpoint> leader;
+
+    private final HeadTracker heads;
+
+    private final ReorgTracker reorgs;
 
     /**
-     * Milliseconds to sleep between event-load attempts
+     * Milliseconds to sleep between event-load attempts, max time to wait for a new head in subscription mode
      */
     @Value("${eventloader.sleep_interval_ms:3000}")
     private long sleepIntervalMs;
@@ -48,19 +73,34 @@ public class EventLoader {
     @Value("#{web3jConfig.startBlock}")
     private BigInteger startBlock;
 
+    @Value("#{web3jConfig.streamLogs}")
+    private boolean streamLogs;
+
     @Timed(longTask = true, value = "loading_time")
     @Scheduled(fixedDelay = 100L)
     public void update() {
         boolean atLatestBlock = false;
+        boolean tipFollowing = false;
         try {
-            atLatestBlock = this.metrics.recordExecutionTime(this::eventLoadAttempt);
+            RangeLoader.Result result = leasingConfig.isEnabled()
+                    ? rangeLoader.loadAttempt()
+                    : RangeLoader.Result.TIP_FOLLOWING;
+            if (result == RangeLoader.Result.TIP_FOLLOWING) {
+                tipFollowing = true;
+                atLatestBlock = this.metrics.recordExecutionTime(this::eventLoadAttempt);
+            } else {
+                atLatestBlock = result == RangeLoader.Result.NO_RANGE_AVAILABLE;
+            }
         } catch (Exception ex) {
             log.error("[SERVICE] event load failed, will retry", ex);
             sleep(sleepIntervalMs);
         }
 
         try {
-            if (atLatestBlock) {
+            if (atLatestBlock && tipFollowing) {
+                // in subscription mode wakes up as soon as node announces new head
+                heads.awaitNewHead(sleepIntervalMs);
+            } else if (atLatestBlock) {
                 Thread.sleep(sleepIntervalMs);
             }
         } catch (InterruptedException ignored) { }
@@ -84,72 +124,212 @@ public class EventLoader {
      * 5) If needed, publish events to message broker
      * 6) Save updated "last processed block" to Zookeeper
      * 7) Release Zookeeper lock (Auto unlock)
+     * <p>
+     * Last processed block is kept in {@link CheckpointStore}, Zookeeper by default.
+     * Local file and Kafka stores have single writer, steps 1 and 7 are skipped for them.
+     * In pipeline mode steps 4-6 are overlapped by {@link LoadPipeline} until latest block is reached.
+     * In transactional mode last processed block is read from and saved to Kafka
+     * by {@link TransactionalPublisher} together with the published batch.
+     * With reorg tracking every batch is checked by {@link ReorgTracker} before publishing, on reorganization
+     * last processed block is moved back to the fork point.
+     * In streaming mode, without reorg tracking and transactions, events are published while they are read from the node.
+     * With spool batches are written to local disk by {@link SpooledPublisher}, loading goes on after the last spooled
+     * block while last processed block follows the batches drained to message broker.
+     * With leader election steps 1 and 7 are skipped, only the leader loads and last processed block
+     * is read once per leadership by {@link LeaderCheckpoint}.
      *
      * @return true if at latest block
      */
-    @SuppressWarnings("rawtypes")
     boolean eventLoadAttempt() {
-        boolean atLatestBlock = true;
-        InterProcessMutex mutex = new InterProcessMutex(curatorFramework, ZNODE_PROCESSED_BLOCK);
-        try (Locker ignored = new Locker(mutex, 120, TimeUnit.SECONDS)) {
-            DistributedAtomicLong lastBlock = new DistributedAtomicLong(
-                    curatorFramework,
-                    ZNODE_PROCESSED_BLOCK,
-                    new ExponentialBackoffRetry(1000, 5)
-            );
-            long latestBlock = blockchain.latestBlockNumber();
-            long lastProcessed = lastBlock.get().preValue();
-            if (startBlock.longValue() > lastProcessed) {
-                log.info("[SERVICE] last processed is least of start block, updated: {} ==> {}", lastProcessed, startBlock.toString());
-                lastProcessed = startBlock.longValue();
-            }
-            Events events;
-            if (latestBlock > lastProcessed) {
-                events = blockchain.eventsLog(lastProcessed, latestBlock);
-            } else if (lastProcessed > latestBlock) {
-                long lag = lastProcessed - latestBlock;
-                if (lag > 50) {
-                    log.warn("[SERVICE] lag detected. Node is on block {} while latest processed is {}. Lag: {}", latestBlock, lastProcessed, lag);
-                } else {
-                    log.info("[SERVICE] node is on block {} while latest processed is {}. Lag: {}", latestBlock, lastProcessed, lag);
-                }
-                waitForNodeToCatchup(lag);
+        if (leader.isPresent()) {
+            LeaderCheckpoint checkpoint = leader.get();
+            if (!checkpoint.hasLeadership()) {
+                log.debug("[SERVICE] not a leader, waiting");
                 return true;
-            } else {
-                log.info("[SERVICE] at latest block: {}", latestBlock);
+            }
+            try {
+                long start = System.nanoTime();
+                long processed = checkpoint.get();
+                this.metrics.recordStage(EventMetrics.STAGE_CHECKPOINT_READ, System.nanoTime() - start);
+                return loadAttempt(processed, timed(checkpoint::commit));
+            } catch (Exception ex) {
+                log.error("[SERVICE] loader error", ex);
                 return true;
             }
+        }
+        long start = System.nanoTime();
+        // store with single writer has no lock, null resource is skipped
+        try (AutoCloseable ignored = checkpoints.lock(120, TimeUnit.SECONDS)) {
+            this.metrics.recordStage(EventMetrics.STAGE_LOCK, System.nanoTime() - start);
+            start = System.nanoTime();
+            long processed = checkpoints.load();
+            this.metrics.recordStage(EventMetrics.STAGE_CHECKPOINT_READ, System.nanoTime() - start);
+            return loadAttempt(processed, timed(checkpoints::save));
+        } catch (Exception ex) {
+            log.error("[SERVICE] loader error", ex);
+            return true;
+        }
+    }
 
-            long blocks = events.getEndBlock() - lastProcessed;
-            List<LogResult> logs = events.getLogs(lastProcessed);
-            blockchain.loadBlocks(lastProcessed, events.getEndBlock())
-                    .forEach(messageBroker::publishBlock);
-            if (logs.isEmpty()) {
-                log.info("[SERVICE] all events published");
+    /**
+     * @return Checkpoint recording time of every commit
+     */
+    private LoadPipeline.Checkpoint timed(LoadPipeline.Checkpoint checkpoint) {
+        return block -> {
+            long start = System.nanoTime();
+            checkpoint.commit(block);
+            this.metrics.recordStage(EventMetrics.STAGE_CHECKPOINT_WRITE, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * Steps 2-6 of {@link #eventLoadAttempt()}
+     *
+     * @param processed Last processed block read from checkpoint store
+     * @param checkpoint Saves last processed block
+     * @return true if at latest block
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean loadAttempt(long processed, LoadPipeline.Checkpoint checkpoint) throws Exception {
+        boolean atLatestBlock = true;
+        long start = System.nanoTime();
+        long latestBlock = blockchain.latestBlockNumber();
+        this.metrics.recordStage(EventMetrics.STAGE_HEAD, System.nanoTime() - start);
+        long lastProcessed = processed;
+        if (transactions.isPresent()) {
+            start = System.nanoTime();
+            lastProcessed = transactions.get().lastCommitted();
+            this.metrics.recordStage(EventMetrics.STAGE_CHECKPOINT_READ, System.nanoTime() - start);
+        }
+        if (startBlock.longValue() > lastProcessed) {
+            log.info("[SERVICE] last processed is least of start block, updated: {} ==> {}", lastProcessed, startBlock.toString());
+            lastProcessed = startBlock.longValue();
+        }
+        if (spool.isPresent()) {
+            long drained = spool.get().lastDrained();
+            if (drained > lastProcessed) {
+                checkpoint.commit(drained);
+            }
+            lastProcessed = spool.get().lastSpooled(Math.max(lastProcessed, drained));
+        }
+        Events events;
+        if (latestBlock > lastProcessed && pipelineConfig.isEnabled()) {
+            this.metrics.setLatestBlockNumber(latestBlock);
+            long committed = pipeline.run(lastProcessed, latestBlock, checkpoint);
+            // node could have moved ahead while pipeline was draining the range
+            return committed >= blockchain.latestBlockNumber();
+        } else if (latestBlock > lastProcessed && streamLogs && !reorgs.isEnabled() && !transactions.isPresent()
+                && !spool.isPresent()) {
+            return streamAttempt(checkpoint, lastProcessed, latestBlock);
+        } else if (latestBlock > lastProcessed) {
+            start = System.nanoTime();
+            events = blockchain.eventsLog(lastProcessed, latestBlock);
+            this.metrics.recordStage(EventMetrics.STAGE_LOGS, System.nanoTime() - start);
+        } else if (lastProcessed > latestBlock) {
+            long lag = lastProcessed - latestBlock;
+            if (lag > 50) {
+                log.warn("[SERVICE] lag detected. Node is on block {} while latest processed is {}. Lag: {}", latestBlock, lastProcessed, lag);
             } else {
-                messageBroker.publish(logs);
+                log.info("[SERVICE] node is on block {} while latest processed is {}. Lag: {}", latestBlock, lastProcessed, lag);
             }
+            waitForNodeToCatchup(lag);
+            return true;
+        } else {
+            log.info("[SERVICE] at latest block: {}", latestBlock);
+            return true;
+        }
 
-            if (events.getEndBlock() > lastProcessed) {
-                lastBlock.forceSet(events.getEndBlock());
+        long blocks = events.getEndBlock() - lastProcessed;
+        List<LogResult> logs = events.getLogs(lastProcessed);
+        List<EthBlock.Block> blockList;
+        start = System.nanoTime();
+        if (reorgs.isEnabled()) {
+            // hashes of blocks holding published events are needed to detect reorganization
+            blockList = blockchain.loadBlocks(lastProcessed + 1, events.getEndBlock() + 1);
+            this.metrics.recordStage(EventMetrics.STAGE_BLOCKS, System.nanoTime() - start);
+            OptionalLong fork = reorgs.check(lastProcessed, blockList, logs);
+            if (fork.isPresent()) {
+                checkpoint.commit(fork.getAsLong());
+                this.metrics.setCurrentBlockNumber(fork.getAsLong());
+                return false;
             }
-
-            if (latestBlock > events.getEndBlock()) {
-                //we process limited number of blocks at once
-                log.info("[SERVICE] blocks to process: {}", latestBlock - events.getEndBlock());
-                atLatestBlock = false;
+        } else {
+            blockList = blockchain.loadBlocks(lastProcessed, events.getEndBlock());
+            this.metrics.recordStage(EventMetrics.STAGE_BLOCKS, System.nanoTime() - start);
+        }
+        if (transactions.isPresent()) {
+            transactions.get().publish(blockList, logs, events.getEndBlock());
+        } else if (spool.isPresent()) {
+            spool.get().publish(blockList, logs, events.getEndBlock());
+        } else {
+            start = System.nanoTime();
+            CompletableFuture<Void> ack = messageBroker.publishBatch(blockList, logs);
+            this.metrics.recordStage(EventMetrics.STAGE_SEND, System.nanoTime() - start);
+            start = System.nanoTime();
+            // checkpoint must not move past messages not acknowledged by broker
+            ack.join();
+            this.metrics.recordStage(EventMetrics.STAGE_ACK, System.nanoTime() - start);
+            if (events.getEndBlock() > lastProcessed) {
+                checkpoint.commit(events.getEndBlock());
             }
+        }
+        if (reorgs.isEnabled()) {
+            reorgs.published(blockList, logs);
+            reorgs.confirm(events.getEndBlock());
+        }
+        if (logs.isEmpty()) {
+            log.info("[SERVICE] all events published");
+        }
 
-            this.metrics.setCurrentBlockNumber(events.getEndBlock());
-            this.metrics.addProcessedEventsCount((long)logs.size());
-            this.metrics.addProcessedBlocksCount(blocks > 0 ? blocks : 0);
-            this.metrics.setLatestBlockNumber(latestBlock);
-        } catch (Exception ex) {
-            log.error("[SERVICE] loader error", ex);
+        if (latestBlock > events.getEndBlock()) {
+            //we process limited number of blocks at once
+            log.info("[SERVICE] blocks to process: {}", latestBlock - events.getEndBlock());
+            atLatestBlock = false;
         }
+
+        this.metrics.setCurrentBlockNumber(events.getEndBlock());
+        this.metrics.addProcessedEventsCount((long)logs.size());
+        this.metrics.addProcessedBlocksCount(blocks > 0 ? blocks : 0);
+        this.metrics.setLatestBlockNumber(latestBlock);
         return atLatestBlock;
     }
 
+    /**
+     * Publish events of the batch while they are read from the node, so that they are never all held in memory.
+     * Blocks are published after events, last processed block is saved when everything is acknowledged.
+     *
+     * @return true if at latest block
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean streamAttempt(LoadPipeline.Checkpoint checkpoint, long lastProcessed, long latestBlock) throws Exception {
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        long[] published = {0};
+        long start = System.nanoTime();
+        // events are sent while logs are streamed, so logs stage includes their sending
+        long endBlock = blockchain.streamEvents(lastProcessed, latestBlock, logs -> {
+            published[0] += logs.size();
+            acks.add(messageBroker.publish(logs));
+        });
+        this.metrics.recordStage(EventMetrics.STAGE_LOGS, System.nanoTime() - start);
+        start = System.nanoTime();
+        List<EthBlock.Block> blockList = blockchain.loadBlocks(lastProcessed, endBlock);
+        this.metrics.recordStage(EventMetrics.STAGE_BLOCKS, System.nanoTime() - start);
+        start = System.nanoTime();
+        acks.add(messageBroker.publishBatch(blockList, Collections.emptyList()));
+        this.metrics.recordStage(EventMetrics.STAGE_SEND, System.nanoTime() - start);
+        start = System.nanoTime();
+        // checkpoint must not move past messages not acknowledged by broker
+        CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).join();
+        this.metrics.recordStage(EventMetrics.STAGE_ACK, System.nanoTime() - start);
+        checkpoint.commit(endBlock);
+
+        this.metrics.setCurrentBlockNumber(endBlock);
+        this.metrics.addProcessedEventsCount(published[0]);
+        this.metrics.addProcessedBlocksCount(endBlock - lastProcessed);
+        this.metrics.setLatestBlockNumber(latestBlock);
+        return latestBlock <= endBlock;
+    }
+
     private static void waitForNodeToCatchup(long gap) {
         if (gap > 1000) {
             log.info("[SERVICE] sleeping for 60 sec...");
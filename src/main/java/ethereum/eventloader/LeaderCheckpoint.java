@@ -0,0 +1,158 @@
+package ethereum.eventloader;
+
+import ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore;
+import ethereum.eventloader.config.LeasingConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore.ZNODE_PROCESSED_BLOCK;
+
+/**
+ * Processed block held by elected leader, read from Zookeeper once per leadership.
+ * <p>
+ * Leader is elected by {@link LeaderLatch}, which keeps leadership across load iterations and
+ * drops it when connection to Zookeeper is suspended or session expires. On takeover new leader reads
+ * the checkpoint and writes it back at the version it has read: the write fails for a leader taking over
+ * concurrently and moves version away from any write of previous leader. Version is the fencing token,
+ * every commit is conditional on it, failed commit means another leader took over and leadership is given up.
+ * <p>
+ * Checkpoint is stored in {@link ZookeeperCheckpointStore#ZNODE_PROCESSED_BLOCK} in the same format as {@code DistributedAtomicLong}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(value = "event-loader.leader.enabled", havingValue = "true")
+public class LeaderCheckpoint implements LeaderLatchListener, DisposableBean {
+
+    static final String ZNODE_LEADER = "/leader";
+
+    private final CuratorFramework curatorFramework;
+
+    private final String id = UUID.randomUUID().toString();
+
+    private LeaderLatch latch;
+
+    /**
+     * Version of checkpoint znode written by this leader, -1 until taken over
+     */
+    private int version = -1;
+
+    private long checkpoint;
+
+    private long epoch;
+
+    @Autowired
+    public LeaderCheckpoint(CuratorFramework curatorFramework, LeasingConfig leasingConfig) throws Exception {
+        if (leasingConfig.isEnabled()) {
+            throw new IllegalStateException("leader election doesn't support range leasing");
+        }
+        this.curatorFramework = curatorFramework;
+        join();
+    }
+
+    /**
+     * @return true if this loader is the leader
+     */
+    public boolean hasLeadership() {
+        return latch.hasLeadership();
+    }
+
+    /**
+     * @return Processed block, read from Zookeeper on first call after leadership is gained
+     * @throws IllegalStateException if this loader is not the leader
+     */
+    public synchronized long get() throws Exception {
+        if (!hasLeadership()) {
+            throw new IllegalStateException("not a leader");
+        }
+        if (version < 0) {
+            takeOver();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Save processed block, conditional on the version written by this leader
+     *
+     * @param block Processed block
+     * @throws IllegalStateException if leadership was lost or taken over
+     */
+    public synchronized void commit(long block) throws Exception {
+        if (!hasLeadership() || version < 0) {
+            throw new IllegalStateException("not a leader, processed block " + block + " is not saved");
+        }
+        try {
+            Stat stat = curatorFramework.setData().withVersion(version).forPath(ZNODE_PROCESSED_BLOCK, bytes(block));
+            version = stat.getVersion();
+            checkpoint = block;
+        } catch (KeeperException.BadVersionException ex) {
+            log.error("[LEADER] processed block changed by another loader, giving up leadership of epoch {}", epoch);
+            version = -1;
+            rejoin();
+            throw new IllegalStateException("leadership taken over, processed block " + block + " is not saved", ex);
+        }
+    }
+
+    @Override
+    public void isLeader() {
+        log.info("[LEADER] gained leadership");
+    }
+
+    @Override
+    public synchronized void notLeader() {
+        log.warn("[LEADER] lost leadership of epoch {}", epoch);
+        version = -1;
+    }
+
+    private void takeOver() throws Exception {
+        Stat stat = new Stat();
+        long block;
+        try {
+            block = value(curatorFramework.getData().storingStatIn(stat).forPath(ZNODE_PROCESSED_BLOCK));
+        } catch (KeeperException.NoNodeException ex) {
+            curatorFramework.create().creatingParentsIfNeeded().forPath(ZNODE_PROCESSED_BLOCK, bytes(0L));
+            block = 0L;
+        }
+        // fence previous leader off
+        Stat fenced = curatorFramework.setData().withVersion(stat.getVersion()).forPath(ZNODE_PROCESSED_BLOCK, bytes(block));
+        version = fenced.getVersion();
+        checkpoint = block;
+        epoch = version;
+        log.info("[LEADER] took over processed block {} in epoch {}", block, epoch);
+    }
+
+    private void join() throws Exception {
+        latch = new LeaderLatch(curatorFramework, ZNODE_LEADER, id);
+        latch.addListener(this);
+        latch.start();
+    }
+
+    private void rejoin() throws Exception {
+        latch.close(LeaderLatch.CloseMode.SILENT);
+        join();
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        latch.close();
+    }
+
+    private static byte[] bytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static long value(byte[] data) {
+        return data == null || data.length < Long.BYTES ? 0L : ByteBuffer.wrap(data).getLong();
+    }
+}
@@ -45,7 +45,7 @@ public class ManualBlockLoader {
 		log.info("Fetched {} events", logs.size());
 		
 		log.info("Publishing events...");
-		messageBroker.publish(logs);
+		messageBroker.publish(logs).join();
 		log.info("DONE");
 		
 		ctx.close();
@@ -0,0 +1,164 @@
+package ethereum.eventloader;
+
+import ethereum.eventloader.component.BlockchainAdapter;
+import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.RangeLeases;
+import ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.Locker;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads events of fixed-size block ranges leased through Zookeeper, so all replicas work during catch-up.
+ * <p>
+ * Range {@code N} covers blocks {@code (N * rangeSize, (N + 1) * rangeSize]}. Processed block
+ * is moved past a range only when every range below it is completed, so it stays a contiguous
+ * low-watermark. Ranges are published out of order relative to each other.
+ * Close to the latest block loader falls back to single-writer {@link EventLoader#eventLoadAttempt()}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RangeLoader {
+
+    private final EventMetrics metrics;
+
+    private final BlockchainAdapter blockchain;
+
+    private final MessageBrokerAdapter messageBroker;
+
+    @Lazy
+    private final CuratorFramework curatorFramework;
+
+    private final RangeLeases leases;
+
+    private final LeasingConfig config;
+
+    @Value("#{web3jConfig.startBlock}")
+    private BigInteger startBlock;
+
+    public enum Result {
+        /** Lag is small, single writer should follow the chain */
+        TIP_FOLLOWING,
+        /** Leased range was loaded */
+        LOADED,
+        /** All ranges in window are leased by other replicas */
+        NO_RANGE_AVAILABLE
+    }
+
+    /**
+     * 1) Move processed block past completed ranges
+     * 2) Lease first free range in window after processed block
+     * 3) Load and publish range, mark it completed
+     *
+     * @return Result of the attempt
+     */
+    public Result loadAttempt() throws Exception {
+        DistributedAtomicLong lastBlock = new DistributedAtomicLong(
+                curatorFramework,
+                ZookeeperCheckpointStore.ZNODE_PROCESSED_BLOCK,
+                new ExponentialBackoffRetry(1000, 5)
+        );
+        long start = System.nanoTime();
+        long latestBlock = blockchain.latestBlockNumber();
+        this.metrics.recordStage(EventMetrics.STAGE_HEAD, System.nanoTime() - start);
+        long lastProcessed = advance(lastBlock);
+        this.metrics.setLatestBlockNumber(latestBlock);
+        if (latestBlock - lastProcessed <= config.getCatchUpThreshold() && !leases.hasPending()) {
+            return Result.TIP_FOLLOWING;
+        }
+
+        long size = config.getRangeSize();
+        long lastRange = Math.min(latestBlock / size, lastProcessed / size + config.getMaxRanges());
+        for (long range = lastProcessed / size; range < lastRange; range++) {
+            if (leases.isDone(range) || !leases.acquire(range)) {
+                continue;
+            }
+            try {
+                // processed block could have moved while we were looking for a free range
+                long from = Math.max(lastProcessed(lastBlock), range * size);
+                long to = (range + 1) * size;
+                if (from < to && loadRange(range, from, to)) {
+                    leases.complete(range);
+                }
+            } finally {
+                leases.release(range);
+            }
+            advance(lastBlock);
+            return Result.LOADED;
+        }
+        log.info("[LEASE] no free ranges after block {}", lastProcessed);
+        return Result.NO_RANGE_AVAILABLE;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private boolean loadRange(long range, long from, long to) throws Exception {
+        log.info("[LEASE] loading range {}: ({}..{}]", range, from, to);
+        long cursor = from;
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        while (cursor < to) {
+            long start = System.nanoTime();
+            Events events = blockchain.eventsLog(cursor, to);
+            this.metrics.recordStage(EventMetrics.STAGE_LOGS, System.nanoTime() - start);
+            List<LogResult> logs = events.getLogs(cursor);
+            start = System.nanoTime();
+            List<EthBlock.Block> blocks = blockchain.loadBlocks(cursor, events.getEndBlock());
+            this.metrics.recordStage(EventMetrics.STAGE_BLOCKS, System.nanoTime() - start);
+            start = System.nanoTime();
+            acks.add(messageBroker.publishBatch(blocks, logs));
+            this.metrics.recordStage(EventMetrics.STAGE_SEND, System.nanoTime() - start);
+            this.metrics.addProcessedEventsCount((long) logs.size());
+            this.metrics.addProcessedBlocksCount(events.getEndBlock() - cursor);
+            cursor = events.getEndBlock();
+            if (!leases.renew(range)) {
+                return false;
+            }
+        }
+        long start = System.nanoTime();
+        // range must not be marked completed before broker acknowledged all of its messages
+        CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).join();
+        this.metrics.recordStage(EventMetrics.STAGE_ACK, System.nanoTime() - start);
+        return true;
+    }
+
+    private long advance(DistributedAtomicLong lastBlock) throws Exception {
+        InterProcessMutex mutex = new InterProcessMutex(curatorFramework, ZookeeperCheckpointStore.ZNODE_PROCESSED_BLOCK);
+        long start = System.nanoTime();
+        try (Locker ignored = new Locker(mutex, 120, TimeUnit.SECONDS)) {
+            this.metrics.recordStage(EventMetrics.STAGE_LOCK, System.nanoTime() - start);
+            long size = config.getRangeSize();
+            long lastProcessed = lastProcessed(lastBlock);
+            while (leases.isDone(lastProcessed / size)) {
+                long range = lastProcessed / size;
+                lastProcessed = (range + 1) * size;
+                lastBlock.forceSet(lastProcessed);
+                leases.clearDone(range);
+                log.info("[LEASE] range {} completed, processed block: {}", range, lastProcessed);
+            }
+            this.metrics.setCurrentBlockNumber(lastProcessed);
+            return lastProcessed;
+        }
+    }
+
+    private long lastProcessed(DistributedAtomicLong lastBlock) throws Exception {
+        return Math.max(lastBlock.get().preValue(), startBlock.longValue());
+    }
+}
@@ -0,0 +1,38 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.component.entity.Events;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthSyncing;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link BlockchainAdapter}, calls return as soon as requests are queued,
+ * so head queries, logs and blocks of different ranges may be loaded at the same time.
+ * <p>
+ * Futures fail with {@link ethereum.eventloader.BlockchainException}, also when the node doesn't answer in time.
+ */
+public interface AsyncBlockchainAdapter {
+
+	/**
+	 * @see BlockchainAdapter#latestBlockNumber()
+	 */
+	CompletableFuture<Long> latestBlockNumberAsync();
+
+	/**
+	 * @see BlockchainAdapter#eventsLog(long, long)
+	 */
+	CompletableFuture<Events> eventsLogAsync(long startBlock, long endBlock);
+
+	/**
+	 * @see BlockchainAdapter#loadBlocks(long, long)
+	 */
+	CompletableFuture<List<EthBlock.Block>> loadBlocksAsync(long startBlock, long endBlock);
+
+	/**
+	 * @see BlockchainAdapter#syncing()
+	 */
+	CompletableFuture<EthSyncing> syncingAsync();
+
+}
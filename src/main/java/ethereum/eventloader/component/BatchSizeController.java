@@ -0,0 +1,110 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.util.List;
+
+/**
+ * Chooses amount of blocks for the next batch.
+ * <p>
+ * With {@link Web3jConfig#isAdaptiveBatchSize()} disabled always returns fixed {@link Web3jConfig#getBatchSize()}.
+ * Otherwise after every batch estimates per-block latency, log count and payload size of the last range
+ * and resizes next range to fit target latency and log/payload limits. Size may at most double per batch
+ * and is halved on every failed batch.
+ */
+@Slf4j
+@Component
+public class BatchSizeController {
+
+    /**
+     * Rough JSON size of a log without data and topics: hashes, address, numbers and field names
+     */
+    private static final long LOG_OVERHEAD_BYTES = 400L;
+    private static final long TOPIC_BYTES = 70L;
+
+    private final Web3jConfig config;
+
+    private final EventMetrics metrics;
+
+    private volatile long batchSize;
+
+    @Autowired
+    public BatchSizeController(Web3jConfig config, EventMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        this.batchSize = config.getBatchSize();
+        this.metrics.setBatchSize(batchSize);
+    }
+
+    /**
+     * @return Amount of blocks to load in the next batch
+     */
+    public long next() {
+        return batchSize;
+    }
+
+    /**
+     * Resize next batch according to cost of the loaded one
+     *
+     * @param blocks Amount of blocks in the batch
+     * @param logs Amount of logs found in the batch
+     * @param bytes Payload size of the batch
+     * @param elapsedMs Time spent to load the batch
+     */
+    public synchronized void onBatch(long blocks, long logs, long bytes, long elapsedMs) {
+        if (!config.isAdaptiveBatchSize() || blocks <= 0) {
+            return;
+        }
+        double perBlockMs = Math.max(elapsedMs, 1L) / (double) blocks;
+        double target = config.getTargetBatchMs() / perBlockMs;
+        if (logs > 0) {
+            target = Math.min(target, config.getMaxBatchLogs() * blocks / (double) logs);
+        }
+        if (bytes > 0) {
+            target = Math.min(target, config.getMaxBatchBytes() * blocks / (double) bytes);
+        }
+        resize(Math.min((long) target, batchSize * 2));
+    }
+
+    /**
+     * Back off after failed batch
+     */
+    public synchronized void onFailure() {
+        if (config.isAdaptiveBatchSize()) {
+            resize(batchSize / 2);
+        }
+    }
+
+    private void resize(long size) {
+        long bounded = Math.max(config.getMinBatchSize(), Math.min(config.getMaxBatchSize(), size));
+        if (bounded != batchSize) {
+            log.debug("[BLOCKCHAIN] batch size changed: {} ==> {}", batchSize, bounded);
+            batchSize = bounded;
+            this.metrics.setBatchSize(bounded);
+        }
+    }
+
+    /**
+     * Estimate JSON-RPC payload size of logs
+     *
+     * @param logs Loaded logs
+     * @return Approximate size in bytes
+     */
+    @SuppressWarnings("rawtypes")
+    public static long estimateBytes(List<LogResult> logs) {
+        long bytes = 0;
+        for (LogResult logResult : logs) {
+            EthLog.LogObject log = (EthLog.LogObject) logResult;
+            bytes += LOG_OVERHEAD_BYTES;
+            bytes += log.getData() != null ? log.getData().length() : 0;
+            bytes += log.getTopics() != null ? log.getTopics().size() * TOPIC_BYTES : 0;
+        }
+        return bytes;
+    }
+}
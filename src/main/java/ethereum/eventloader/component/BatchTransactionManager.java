@@ -1,12 +1,32 @@
 package ethereum.eventloader.component;
 
+import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.Request;
 import org.web3j.protocol.core.methods.response.EthBlock;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface BatchTransactionManager {
 
-    List<EthBlock.Block> sendBatch(List<Request<?, EthBlock>> requests);
+    /**
+     * Send block requests as JSON-RPC batches
+     *
+     * @param web3j Client to send batches with, the one currently used by caller
+     * @param requests Block requests
+     * @return Blocks in order of requests
+     * @throws ethereum.eventloader.BlockchainException if some blocks weren't loaded after all retries
+     */
+    List<EthBlock.Block> sendBatch(Web3j web3j, List<Request<?, EthBlock>> requests);
+
+    /**
+     * Send block requests like {@link #sendBatch(Web3j, List)} without blocking the caller
+     *
+     * @param web3j Client to send batches with, the one currently used by caller
+     * @param requests Block requests
+     * @return Blocks in order of requests, failed with {@link ethereum.eventloader.BlockchainException}
+     * if some blocks weren't loaded after all retries
+     */
+    CompletableFuture<List<EthBlock.Block>> sendBatchAsync(Web3j web3j, List<Request<?, EthBlock>> requests);
 
 }
@@ -1,42 +1,162 @@
 package ethereum.eventloader.component;
 
-import lombok.RequiredArgsConstructor;
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
 import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.response.EthBlock;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-
-import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.toList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sends block requests in JSON-RPC batches of at most {@link Web3jConfig#getBatchChunkSize()} requests,
+ * on a pool of {@link Web3jConfig#getBatchConcurrency()} threads, caller waits for them only with {@link #sendBatch(Web3j, List)}.
+ * <p>
+ * Entries of a chunk failed as a whole, answered with error or with empty block are sent again,
+ * up to {@link Web3jConfig#getBatchRetries()} times. Responses are matched to requests by id,
+ * so nodes answering batch out of order are supported.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
-public class BatchTransactionManagerImpl implements BatchTransactionManager {
+public class BatchTransactionManagerImpl implements BatchTransactionManager, DisposableBean {
+
+    private final int chunkSize;
+
+    private final int retries;
+
+    private final long retryDelayMs;
 
-    private final Web3j web3j;
+    private final BlockchainMetrics metrics;
+
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public BatchTransactionManagerImpl(Web3jConfig config, BlockchainMetrics metrics) {
+        this.chunkSize = Math.max(config.getBatchChunkSize(), 1);
+        this.retries = config.getBatchRetries();
+        this.retryDelayMs = config.getBatchRetryDelayMs();
+        this.metrics = metrics;
+        this.executor = Executors.newScheduledThreadPool(config.getBatchConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "batch-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     @Override
-    public List<EthBlock.Block> sendBatch(List<Request<?, EthBlock>> requests) {
-        BatchRequest batchRequest = this.web3j.newBatch();
-        requests.forEach(batchRequest::add);
+    public List<EthBlock.Block> sendBatch(Web3j web3j, List<Request<?, EthBlock>> requests) {
         try {
-            return batchRequest.sendAsync()
-                    .get()
-                    .getResponses()
-                    .stream()
-                    .map(response -> (EthBlock) response)
-                    .map(EthBlock::getBlock)
-                    .collect(toList());
-        } catch (ExecutionException | InterruptedException ex) {
-            log.error("[TRANSACTIONS] exception while sending batch request", ex);
-            return emptyList();
+            return sendBatchAsync(web3j, requests).join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof BlockchainException
+                    ? (BlockchainException) ex.getCause() : new BlockchainException(ex.getCause());
         }
     }
 
+    @Override
+    public CompletableFuture<List<EthBlock.Block>> sendBatchAsync(Web3j web3j, List<Request<?, EthBlock>> requests) {
+        metrics.recordBatchSize(requests.size());
+        EthBlock.Block[] blocks = new EthBlock.Block[requests.size()];
+        List<Integer> pending = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            pending.add(i);
+        }
+        return attempt(web3j, requests, blocks, pending, 0);
+    }
+
+    /**
+     * Send pending requests in chunks, requests failed are sent again by the next attempt after a delay
+     */
+    private CompletableFuture<List<EthBlock.Block>> attempt(Web3j web3j, List<Request<?, EthBlock>> requests,
+                                                           EthBlock.Block[] blocks, List<Integer> pending, int attempt) {
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList(blocks));
+        }
+        if (attempt > retries) {
+            CompletableFuture<List<EthBlock.Block>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new BlockchainException(pending.size() + " of " + requests.size()
+                    + " blocks not loaded after " + retries + " retries", null));
+            return failed;
+        }
+        CompletableFuture<Void> delay = new CompletableFuture<>();
+        if (attempt > 0) {
+            log.warn("[TRANSACTIONS] retrying {} of {} block requests, attempt {}", pending.size(), requests.size(), attempt);
+            executor.schedule(() -> delay.complete(null), retryDelayMs * attempt, TimeUnit.MILLISECONDS);
+        } else {
+            delay.complete(null);
+        }
+        return delay.thenCompose(ignored -> {
+            List<CompletableFuture<List<Integer>>> chunks = new ArrayList<>();
+            for (int from = 0; from < pending.size(); from += chunkSize) {
+                List<Integer> chunk = pending.subList(from, Math.min(from + chunkSize, pending.size()));
+                chunks.add(CompletableFuture.supplyAsync(() -> sendChunk(web3j, requests, chunk, blocks), executor));
+            }
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                List<Integer> failed = new ArrayList<>();
+                chunks.forEach(chunk -> failed.addAll(chunk.join()));
+                return failed;
+            });
+        }).thenCompose(failed -> attempt(web3j, requests, blocks, failed, attempt + 1));
+    }
+
+    /**
+     * @return Indexes of requests not answered with a block
+     */
+    private List<Integer> sendChunk(Web3j web3j, List<Request<?, EthBlock>> requests, List<Integer> chunk, EthBlock.Block[] blocks) {
+        BatchRequest batch = web3j.newBatch();
+        chunk.forEach(i -> batch.add(requests.get(i)));
+        long start = System.nanoTime();
+        BatchResponse response;
+        try {
+            response = batch.send();
+        } catch (IOException | RuntimeException ex) {
+            log.error("[TRANSACTIONS] exception while sending batch of {} requests", chunk.size(), ex);
+            metrics.addBatchItemFailures(chunk.size());
+            return chunk;
+        } finally {
+            metrics.recordBatchChunk(System.nanoTime() - start);
+        }
+        Map<Long, Response<?>> responses = new HashMap<>();
+        for (Response<?> item : response.getResponses()) {
+            responses.put(item.getId(), item);
+        }
+        List<Integer> failed = new ArrayList<>();
+        for (int i : chunk) {
+            Response<?> item = responses.get(requests.get(i).getId());
+            if (item instanceof EthBlock && !item.hasError() && ((EthBlock) item).getBlock() != null) {
+                blocks[i] = ((EthBlock) item).getBlock();
+            } else {
+                if (item != null && item.hasError()) {
+                    log.warn("[TRANSACTIONS] block request failed: {}", item.getError().getMessage());
+                }
+                failed.add(i);
+            }
+        }
+        metrics.addBatchItemFailures(failed.size());
+        return failed;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
 }
@@ -0,0 +1,135 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of loaded blocks shared by events and blocks loading.
+ * <p>
+ * Blocks are keyed by number, lookup with expected hash drops cached block of another fork.
+ * Size of every block is estimated on insertion, least recently used blocks are evicted
+ * while total size exceeds {@link BlockCacheConfig#getMaxBytes()}.
+ */
+@Slf4j
+@Component
+public class BlockCache {
+
+    private static final long BLOCK_BYTES = 1024L;
+    private static final long TRANSACTION_HASH_BYTES = 70L;
+    private static final long TRANSACTION_BYTES = 600L;
+
+    private final long maxBytes;
+
+    private final BlockchainMetrics metrics;
+
+    private final LinkedHashMap<Long, Entry> blocks = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long bytes;
+
+    @Autowired
+    public BlockCache(BlockCacheConfig config, BlockchainMetrics metrics) {
+        if (config.isEnrichEvents() && config.getMaxBytes() <= 0) {
+            throw new IllegalStateException("events enrichment requires block cache");
+        }
+        this.maxBytes = config.getMaxBytes();
+        this.metrics = metrics;
+        metrics.monitorBlockCache(this::getBytes, this::size);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param number Block number
+     * @param hash Expected block hash, {@code null} accepts block of any hash
+     * @return Cached block or {@code null} if block is not cached or cached block has another hash
+     */
+    public synchronized EthBlock.Block get(long number, String hash) {
+        Entry entry = blocks.get(number);
+        if (entry != null && hash != null && !hash.equalsIgnoreCase(entry.block.getHash())) {
+            log.info("[CACHE] block {} changed {} ==> {}", number, entry.block.getHash(), hash);
+            remove(number);
+            entry = null;
+        }
+        if (entry == null) {
+            metrics.addBlockCacheMiss();
+            return null;
+        }
+        metrics.addBlockCacheHit();
+        return entry.block;
+    }
+
+    /**
+     * Cache loaded block, evicting least recently used blocks if needed
+     *
+     * @param block Block loaded from node
+     */
+    public synchronized void put(EthBlock.Block block) {
+        if (!isEnabled() || block == null || block.getNumberRaw() == null) {
+            return;
+        }
+        long size = estimateBytes(block);
+        Entry previous = blocks.put(block.getNumber().longValue(), new Entry(block, size));
+        bytes += size - (previous != null ? previous.bytes : 0);
+        Iterator<Entry> eldest = blocks.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            metrics.addBlockCacheEviction();
+        }
+    }
+
+    /**
+     * Drop cached blocks starting from {@code fromBlock}, chain above it could be reorganized
+     *
+     * @param fromBlock First dropped block number
+     */
+    public synchronized void invalidate(long fromBlock) {
+        blocks.keySet().removeIf(number -> number >= fromBlock);
+        bytes = blocks.values().stream().mapToLong(entry -> entry.bytes).sum();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    private void remove(long number) {
+        Entry entry = blocks.remove(number);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    private static long estimateBytes(EthBlock.Block block) {
+        if (block.getTransactions() == null || block.getTransactions().isEmpty()) {
+            return BLOCK_BYTES;
+        }
+        boolean full = block.getTransactions().get(0) instanceof EthBlock.TransactionObject;
+        return BLOCK_BYTES + block.getTransactions().size() * (full ? TRANSACTION_BYTES : TRANSACTION_HASH_BYTES);
+    }
+
+    private static final class Entry {
+
+        private final EthBlock.Block block;
+
+        private final long bytes;
+
+        private Entry(EthBlock.Block block, long bytes) {
+            this.block = block;
+            this.bytes = bytes;
+        }
+    }
+}
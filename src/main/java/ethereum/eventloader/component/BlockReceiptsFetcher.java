@@ -0,0 +1,169 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.entity.LogFilter;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongPredicate;
+
+/**
+ * Fetches logs of a block range with one {@code eth_getBlockReceipts} call per block.
+ * <p>
+ * Blocks are queried on a pool of {@link Web3jConfig#getLogsConcurrency()} threads, logs of all receipts
+ * are returned in the same block/logIndex order {@code eth_getLogs} over the range would return them.
+ * Blocks which are not candidates are not queried. Receipts hold every log of the block, so logs are
+ * filtered here by topic0 and address of the routes, as {@link LogRangeFetcher} filters them on the node.
+ * Node must support {@code eth_getBlockReceipts}, client must be {@link ExtendedWeb3j}.
+ */
+@Slf4j
+@Component
+@SuppressWarnings("rawtypes")
+public class BlockReceiptsFetcher implements LogFetcher, DisposableBean {
+
+    private final KafkaTopics topics;
+
+    private final boolean filterLogs;
+
+    private final ExecutorService executor;
+
+    /**
+     * Fetcher of all logs, regardless of routes
+     */
+    public BlockReceiptsFetcher(Web3jConfig config) {
+        this(config, null);
+    }
+
+    @Autowired
+    public BlockReceiptsFetcher(Web3jConfig config, KafkaTopics topics) {
+        this.topics = topics;
+        this.filterLogs = config.isFilterLogs();
+        this.executor = Executors.newFixedThreadPool(config.getLogsConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "receipts-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public List<LogResult> fetch(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate) throws IOException {
+        try {
+            return fetchAsync(web3j, startBlock, endBlock, candidate).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause() instanceof UncheckedIOException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BlockchainException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<LogResult>> fetchAsync(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate) {
+        if (!(web3j instanceof ExtendedWeb3j)) {
+            CompletableFuture<List<LogResult>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new BlockchainException(
+                    "eth_getBlockReceipts is not supported by " + web3j.getClass().getName(), null));
+            return failed;
+        }
+        ExtendedWeb3j client = (ExtendedWeb3j) web3j;
+        LogFilter filter = filter();
+        if (filter == LogFilter.NONE) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        List<CompletableFuture<List<LogResult>>> blocks = new ArrayList<>((int) (endBlock - startBlock + 1));
+        for (long block = startBlock; block <= endBlock; block++) {
+            if (!candidate.test(block)) {
+                continue;
+            }
+            long number = block;
+            blocks.add(CompletableFuture.supplyAsync(() -> getLogs(client, filter, number), executor));
+        }
+        CompletableFuture<List<LogResult>> logs = LogFetcher.concatAll(blocks);
+        logs.whenComplete((loaded, ex) -> {
+            if (ex != null) {
+                blocks.forEach(block -> block.cancel(false));
+            }
+        });
+        return logs;
+    }
+
+    /**
+     * @return Filter of logs needed by the routes
+     */
+    private LogFilter filter() {
+        if (topics == null || !filterLogs) {
+            return LogFilter.ANY;
+        }
+        return LogFilter.of(topics.getRoutes());
+    }
+
+    private List<LogResult> getLogs(ExtendedWeb3j web3j, LogFilter filter, long block) {
+        try {
+            ExtendedWeb3j.EthBlockReceipts response = web3j
+                    .ethGetBlockReceipts(DefaultBlockParameter.valueOf(BigInteger.valueOf(block)))
+                    .send();
+            if (response.hasError()) {
+                throw new BlockchainException("eth_getBlockReceipts " + block + " failed: "
+                        + response.getError().getMessage(), null);
+            }
+            if (response.getReceipts() == null) {
+                throw new BlockchainException("eth_getBlockReceipts " + block + " returned no block", null);
+            }
+            List<LogResult> logs = new ArrayList<>();
+            for (TransactionReceipt receipt : response.getReceipts()) {
+                for (Log event : receipt.getLogs()) {
+                    if (filter.matches(event.getAddress(), event.getTopics())) {
+                        logs.add(toLogObject(event));
+                    }
+                }
+            }
+            return logs;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static EthLog.LogObject toLogObject(Log event) {
+        return new EthLog.LogObject(
+                event.isRemoved(),
+                event.getLogIndexRaw(),
+                event.getTransactionIndexRaw(),
+                event.getTransactionHash(),
+                event.getBlockHash(),
+                event.getBlockNumberRaw(),
+                event.getAddress(),
+                event.getData(),
+                event.getType(),
+                event.getTopics());
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -2,9 +2,11 @@ package ethereum.eventloader.component;
 
 import ethereum.eventloader.component.entity.Events;
 import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
 import org.web3j.protocol.core.methods.response.EthSyncing;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface BlockchainAdapter {
 
@@ -24,6 +26,25 @@ public interface BlockchainAdapter {
 	 */
 	Events eventsLog(long startBlock, long endBlock);
 
+	/**
+	 * Load events like {@link #eventsLog(long, long)}, handing them to {@code sink} in chunks
+	 * while they are read from the node instead of collecting them in {@link Events}
+	 *
+	 * @param startBlock Last processed block number
+	 * @param endBlock Latest block number
+	 * @param sink Consumer of non-empty chunks of logs in blocks after {@code startBlock}
+	 * @return Last block of the loaded range
+	 */
+	@SuppressWarnings("rawtypes")
+	default long streamEvents(long startBlock, long endBlock, Consumer<List<LogResult>> sink) {
+		Events events = eventsLog(startBlock, endBlock);
+		List<LogResult> logs = events.getLogs(startBlock);
+		if (!logs.isEmpty()) {
+			sink.accept(logs);
+		}
+		return events.getEndBlock();
+	}
+
 	/**
 	 * Load blocks in range [startBlock -> endBlock), must be startBlock > endBlock
 	 * @param startBlock Start block number
@@ -32,6 +53,14 @@ public interface BlockchainAdapter {
 	 */
 	List<EthBlock.Block> loadBlocks(long startBlock, long endBlock);
 
+	/**
+	 * Forget blocks loaded before, starting from block {@code fromBlock}, they are loaded from node again
+	 *
+	 * @param fromBlock First block number to forget
+	 */
+	default void invalidateBlocks(long fromBlock) {
+	}
+
 	/**
 	 * Get syncing state of the Ethereum Blockchain Node
 	 *
@@ -0,0 +1,209 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.config.HeadTrackingConfig;
+import ethereum.eventloader.config.Web3jConfig;
+import io.reactivex.disposables.Disposable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wakes up loader waiting at latest block as soon as node announces a new head.
+ * <p>
+ * WebSocket nodes push heads through {@code eth_subscribe("newHeads")}, other nodes are asked
+ * for {@code eth_getFilterChanges} of {@code eth_newBlockFilter} every {@link HeadTrackingConfig#getFilterPollMs()}.
+ * Dropped subscription or lost filter is created again after {@link HeadTrackingConfig#getResubscribeMs()},
+ * meanwhile {@link #awaitNewHead(long)} just times out, so loader falls back to polling.
+ * Subscription and filter live on their own connection built by {@link Web3jBeans}, which is shut down
+ * with them, or on the nodes pool shared with loading, which is left running.
+ */
+@Slf4j
+@Component
+public class HeadTracker implements InitializingBean, DisposableBean {
+
+    private final Web3jBeans beans;
+
+    private final Web3jConfig web3jConfig;
+
+    private final HeadTrackingConfig config;
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Condition arrived = lock.newCondition();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "head-tracker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Amount of received heads and amount of heads seen by waiting loader, guarded by lock
+     */
+    private long heads;
+
+    private long consumed;
+
+    private volatile boolean connected;
+
+    /* Accessed from executor thread only */
+    private Web3j web3j;
+
+    private Disposable subscription;
+
+    private BigInteger filterId;
+
+    @Autowired
+    public HeadTracker(Web3jBeans beans, Web3jConfig web3jConfig, HeadTrackingConfig config) {
+        this.beans = beans;
+        this.web3jConfig = web3jConfig;
+        this.config = config;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (HeadTrackingConfig.MODE_SUBSCRIBE.equals(config.getMode())) {
+            executor.execute(this::subscribe);
+        }
+    }
+
+    /**
+     * Wait until a head arrives after the previous call returned
+     *
+     * @param timeoutMs Max time to wait
+     * @return true if new head arrived, false on timeout
+     */
+    public boolean awaitNewHead(long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (heads == consumed) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = arrived.awaitNanos(remaining);
+            }
+            consumed = heads;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true when subscription or filter is active
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void subscribe() {
+        try {
+            web3j = beans.web3j();
+            if (isWebSocket()) {
+                subscription = web3j.newHeadsNotifications().subscribe(
+                        notification -> onHead(notification.getParams().getResult().getNumber()),
+                        ex -> executor.execute(() -> onDropped(ex)));
+                log.info("[HEADS] subscribed to newHeads");
+            } else {
+                EthFilter filter = web3j.ethNewBlockFilter().send();
+                if (filter.hasError()) {
+                    throw new IOException(filter.getError().getMessage());
+                }
+                filterId = filter.getFilterId();
+                executor.schedule(this::pollFilter, config.getFilterPollMs(), TimeUnit.MILLISECONDS);
+                log.info("[HEADS] block filter {} installed", filterId);
+            }
+            connected = true;
+        } catch (Exception ex) {
+            onDropped(ex);
+        }
+    }
+
+    private void pollFilter() {
+        try {
+            EthLog changes = web3j.ethGetFilterChanges(filterId).send();
+            if (changes.hasError()) {
+                throw new IOException(changes.getError().getMessage());
+            }
+            if (!changes.getLogs().isEmpty()) {
+                onHead(null);
+            }
+            executor.schedule(this::pollFilter, config.getFilterPollMs(), TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            onDropped(ex);
+        }
+    }
+
+    private void onHead(String number) {
+        log.debug("[HEADS] new head {}", number);
+        lock.lock();
+        try {
+            heads++;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onDropped(Throwable ex) {
+        log.warn("[HEADS] subscription dropped, polling until resubscribed in {} ms", config.getResubscribeMs(), ex);
+        connected = false;
+        close();
+        executor.schedule(this::subscribe, config.getResubscribeMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void close() {
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+        if (web3j != null) {
+            if (filterId != null) {
+                try {
+                    web3j.ethUninstallFilter(filterId).send();
+                } catch (Exception ignored) {
+                    // filter expires on node anyway
+                }
+                filterId = null;
+            }
+            if (web3jConfig.getClientAddresses().isEmpty()) {
+                web3j.shutdown();
+            }
+            web3j = null;
+        }
+    }
+
+    private boolean isWebSocket() {
+        if (!web3jConfig.getClientAddresses().isEmpty()) {
+            // subscription goes to the first WebSocket endpoint of the nodes pool
+            return web3jConfig.getClientAddresses().stream().anyMatch(address -> address.startsWith("ws"));
+        }
+        String address = web3jConfig.getClientAddress();
+        return address != null && address.startsWith("ws");
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) { }
+        close();
+    }
+}
@@ -1,21 +1,45 @@
 package ethereum.eventloader.component;
 
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.config.BlockCacheConfig;
 import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.PublishConfig;
+import ethereum.eventloader.config.ReorgConfig;
 import ethereum.eventloader.messages.BlockMessage;
 import ethereum.eventloader.messages.EventMessage;
 import ethereum.eventloader.metrics.EventMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Kafka implementation of Message Broker Publisher
+ * <p>
+ * Every message holds a place in {@link SendWindow} until acknowledged. Failed message is sent
+ * again after {@link PublishConfig#getRetryBackoffMs()} up to {@link PublishConfig#getRetries()} times,
+ * then completion handle of the batch fails.
+ * <p>
+ * Only the failed message is sent again, while messages sent after it are not held back, so a retried message
+ * may land after later messages with the same key. Consumers relying on strict per-key order should set
+ * {@link PublishConfig#getRetries()} to 0 and leave retries to the producer with {@code enable.idempotence},
+ * which keeps order of a partition, or publish in Kafka transactions.
+ * <p>
+ * With {@link BlockCacheConfig#isEnrichEvents()} events get hash and timestamp of their block from {@link BlockCache}.
  *
  * @see MessageBrokerAdapter
  * @author Maxim Fischuk
@@ -23,7 +47,11 @@ import java.util.List;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class KafkaMQ implements MessageBrokerAdapter {
+public class KafkaMQ implements MessageBrokerAdapter, DisposableBean {
+
+    private static final long MESSAGE_OVERHEAD_BYTES = 300L;
+    private static final long TOPIC_BYTES = 70L;
+    private static final long TRANSACTION_BYTES = 600L;
 
     private final KafkaTopics topics;
 
@@ -33,63 +61,234 @@ public class KafkaMQ implements MessageBrokerAdapter {
 
     private final KafkaTemplate<String, BlockMessage> kafkaBlockTemplate;
 
+    private final PublishConfig config;
+
+    private final SendWindow window;
+
+    private final ReorgConfig reorgConfig;
+
+    private final BlockCache blockCache;
+
+    private final BlockCacheConfig blockCacheConfig;
+
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kafka-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Publish logs to specific topics
      *
      * @param logs List of logs loaded from transaction
      */
     @Override
-    public void publish(List<EthLog.LogResult> logs) {
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<Void> publish(List<EthLog.LogResult> logs) {
+        return publish(logs, null, "");
+    }
+
+    /**
+     * Publish block information to specific topic
+     *
+     * @param block Ethereum block response
+     */
+    @Override
+    public CompletableFuture<Void> publishBlock(EthBlock.Block block) {
+        return publishBlock(block, null, "");
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<Void> publishRemoved(List<EthBlock.Block> blocks, List<EthLog.LogResult> logs) {
+        log.warn("[KAFKA] publishing removal of {} blocks and {} events", blocks.size(), logs.size());
+        return publishBatch(blocks, logs, true, "");
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<Void> publishConfirmed(List<EthBlock.Block> blocks, List<EthLog.LogResult> logs) {
+        return publishBatch(blocks, logs, null, reorgConfig.getConfirmedSuffix());
+    }
+
+    /**
+     * Build records of a batch, the same {@link #publishBatch(List, List)} would send
+     *
+     * @param blocks Ethereum block responses
+     * @param logs List of logs loaded from transactions
+     * @return Record of {@link BlockMessage} for every block topic of every block,
+     * followed by record of {@link EventMessage} for every destination of every log
+     */
+    @SuppressWarnings("rawtypes")
+    public List<ProducerRecord<String, Object>> toRecords(List<EthBlock.Block> blocks, List<EthLog.LogResult> logs) {
+        List<ProducerRecord<String, Object>> records = new ArrayList<>(blocks.size() + logs.size());
+        for (EthBlock.Block block : blocks) {
+            if (topics.getBlocks() != null) {
+                records.add(new ProducerRecord<>(topics.getBlocks(), block.getHash(), new BlockMessage(block.getNumber(), block.getHash())));
+            }
+            if (topics.getBlocksFull() != null) {
+                records.add(new ProducerRecord<>(topics.getBlocksFull(), block.getHash(),
+                        new BlockMessage(block.getNumber(), block.getHash(), block)));
+            }
+        }
+        for (EthLog.LogResult logResult : logs) {
+            EventMessage message = toMessage((EthLog.LogObject) logResult, null);
+            if (!message.getTopics().isEmpty()) {
+                topics.getRoutes().route(message, topic -> records.add(new ProducerRecord<>(topic, message.getTopics().get(0), message)));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Publish records built by {@link #toRecords(List, List)} and serialized already, values and headers are sent as they are
+     *
+     * @param template Template sending serialized values
+     * @return Completed when all records are acknowledged
+     */
+    public CompletableFuture<Void> publishRecords(KafkaTemplate<String, byte[]> template, List<ProducerRecord<String, byte[]>> records) {
+        List<CompletableFuture<Void>> acks = new ArrayList<>(records.size());
+        for (ProducerRecord<String, byte[]> record : records) {
+            acks.add(send(template, record.topic(), record.key(), record.value(), record.headers(), record.value().length));
+        }
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private CompletableFuture<Void> publishBatch(List<EthBlock.Block> blocks, List<EthLog.LogResult> logs,
+                                                 Boolean removed, String suffix) {
+        List<CompletableFuture<Void>> acks = new ArrayList<>(blocks.size() + 1);
+        blocks.forEach(block -> acks.add(publishBlock(block, removed, suffix)));
+        if (!logs.isEmpty()) {
+            acks.add(publish(logs, removed, suffix));
+        }
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private CompletableFuture<Void> publish(List<EthLog.LogResult> logs, Boolean removed, String suffix) {
         if (logs.isEmpty()) {
             log.warn("[KAFKA] logs is empty, ignore sending!");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         final long start = System.currentTimeMillis();
         log.info("[KAFKA] sending {} events", logs.size());
-        logs.stream()
-                .map(logResult -> (EthLog.LogObject) logResult)
-                .map(EventMessage::new)
-                .filter(logMessage -> !logMessage.getTopics().isEmpty())
-                .peek(logMessage -> log.debug("[KAFKA] sending event topic {}", logMessage.getTopics().get(0)))
-                .forEach(this::sendEvent);
+        List<CompletableFuture<Void>> acks = new ArrayList<>(logs.size());
+        long conversion = 0;
+        for (EthLog.LogResult logResult : logs) {
+            long converting = System.nanoTime();
+            EventMessage logMessage = toMessage((EthLog.LogObject) logResult, removed);
+            conversion += System.nanoTime() - converting;
+            if (!logMessage.getTopics().isEmpty()) {
+                log.debug("[KAFKA] sending event topic {}", logMessage.getTopics().get(0));
+                conversion += sendEvent(logMessage, suffix, acks);
+            }
+        }
+        this.metrics.recordStage(EventMetrics.STAGE_CONVERSION, conversion);
 
         long tookMs = System.currentTimeMillis() - start;
         log.info("[KAFKA] sent {} messages in {} ms.", logs.size(), tookMs);
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0]));
     }
 
-    /**
-     * Publish block information to specific topic
-     *
-     * @param block Ethereum block response
-     */
-    @Override
-    public void publishBlock(EthBlock.Block block) {
+    private EventMessage toMessage(EthLog.LogObject logObject, Boolean removed) {
+        EventMessage message = new EventMessage(logObject);
+        message.setRemoved(removed);
+        if (blockCacheConfig.isEnrichEvents()) {
+            message.setBlockHash(logObject.getBlockHash());
+            EthBlock.Block block = blockCache.get(logObject.getBlockNumber().longValue(), logObject.getBlockHash());
+            if (block != null) {
+                message.setBlockTimestamp(block.getTimestamp());
+            } else {
+                log.warn("[KAFKA] block {} of event is not cached, publishing without timestamp", logObject.getBlockNumber());
+            }
+        }
+        return message;
+    }
+
+    private CompletableFuture<Void> publishBlock(EthBlock.Block block, Boolean removed, String suffix) {
+        BlockMessage message = new BlockMessage(block.getNumber(), block.getHash(), block);
+        message.setRemoved(removed);
+        return publishBlock(message, suffix);
+    }
+
+    private CompletableFuture<Void> publishBlock(BlockMessage full, String suffix) {
+        List<CompletableFuture<Void>> acks = new ArrayList<>(2);
         if (topics.getBlocks() != null) {
-            log.debug("[KAFKA] sending block {}", block.getNumber().toString());
-            this.kafkaBlockTemplate.send(
-                    topics.getBlocks(),
-                    block.getHash(),
-                    new BlockMessage(block.getNumber(), block.getHash())
-            ).addCallback(this::onBlockSuccess, this::onFailure);
+            log.debug("[KAFKA] sending block {}", full.getNumber().toString());
+            BlockMessage message = new BlockMessage(full.getNumber(), full.getHash());
+            message.setRemoved(full.getRemoved());
+            acks.add(send(kafkaBlockTemplate, topics.getBlocks() + suffix, full.getHash(), message, MESSAGE_OVERHEAD_BYTES));
         }
         if (topics.getBlocksFull() != null) {
-            log.debug("[KAFKA] sending block {}", block.getNumber().toString());
-            this.kafkaBlockTemplate.send(
-                    topics.getBlocksFull(),
-                    block.getHash(),
-                    new BlockMessage(block.getNumber(), block.getHash(), block)
-            ).addCallback(this::onBlockSuccess, this::onFailure);
+            log.debug("[KAFKA] sending block {}", full.getNumber().toString());
+            acks.add(send(kafkaBlockTemplate, topics.getBlocksFull() + suffix, full.getHash(), full, estimateBytes(full.getBlock())));
+        }
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return Nanoseconds spent on sizing and routing the message, time of sending is not included
+     */
+    private long sendEvent(EventMessage eventMessage, String suffix, List<CompletableFuture<Void>> acks) {
+        long start = System.nanoTime();
+        long size = estimateBytes(eventMessage);
+        List<String> destinations = new ArrayList<>(2);
+        topics.getRoutes().route(eventMessage, destinations::add);
+        long conversion = System.nanoTime() - start;
+        for (String topic : destinations) {
+            acks.add(send(kafkaTemplate, suffix.isEmpty() ? topic : topic + suffix, eventMessage.getTopics().get(0), eventMessage, size));
         }
+        return conversion;
     }
 
-    private void sendEvent(EventMessage eventMessage) {
-        topics.getEvents()
-                .stream()
-                .filter(eventTopicMap -> eventTopicMap.equalsEvent(eventMessage))
-                .forEach(eventTopicMap ->
-                        this.kafkaTemplate.send(eventTopicMap.getTopic(), eventMessage.getTopics().get(0), eventMessage)
-                                .addCallback(this::onEventSuccess, this::onFailure)
-                );
+    private <T> CompletableFuture<Void> send(KafkaTemplate<String, T> template, String topic, String key, T message, long size) {
+        return send(template, topic, key, message, null, size);
+    }
+
+    /**
+     * @param headers Headers of the record, serializer adds its own when null
+     */
+    private <T> CompletableFuture<Void> send(KafkaTemplate<String, T> template, String topic, String key, T message,
+                                             Headers headers, long size) {
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        window.acquire(size);
+        send(template, topic, key, message, headers, size, System.nanoTime(), 0, ack);
+        return ack;
+    }
+
+    private <T> void send(KafkaTemplate<String, T> template, String topic, String key, T message, Headers headers,
+                          long size, long start, int attempt, CompletableFuture<Void> ack) {
+        try {
+            ListenableFuture<SendResult<String, T>> sent = headers == null ? template.send(topic, key, message)
+                    : template.send(new ProducerRecord<>(topic, null, key, message, headers));
+            sent.addCallback(
+                    result -> {
+                        window.release(size);
+                        this.metrics.recordAckTime(System.nanoTime() - start);
+                        onSuccess(result);
+                        ack.complete(null);
+                    },
+                    ex -> onFailure(template, topic, key, message, headers, size, start, attempt, ack, ex));
+        } catch (RuntimeException ex) {
+            onFailure(template, topic, key, message, headers, size, start, attempt, ack, ex);
+        }
+    }
+
+    private <T> void onFailure(KafkaTemplate<String, T> template, String topic, String key, T message, Headers headers,
+                               long size, long start, int attempt, CompletableFuture<Void> ack, Throwable throwable) {
+        // transactional sends are retried by producer, failed transaction is aborted as a whole
+        if (attempt < config.getRetries() && !template.isTransactional()) {
+            log.warn("[KAFKA] error sending message to {}, retry {} of {}", topic, attempt + 1, config.getRetries(), throwable);
+            // never send from producer I/O thread the callback is running on
+            retryExecutor.schedule(
+                    () -> send(template, topic, key, message, headers, size, start, attempt + 1, ack),
+                    config.getRetryBackoffMs(), TimeUnit.MILLISECONDS);
+        } else {
+            log.error("[KAFKA] error sending message", throwable);
+            window.release(size);
+            ack.completeExceptionally(new MessageBrokerException("failed to send message to " + topic, throwable));
+        }
     }
 
     @Override
@@ -97,18 +296,24 @@ public class KafkaMQ implements MessageBrokerAdapter {
         log.debug("[KAFKA] method \"reconnect\" doesn't uses.");
     }
 
-    private void onFailure(Throwable throwable) {
-        log.error("[KAFKA] error sending message", throwable);
+    @Override
+    public void destroy() {
+        retryExecutor.shutdownNow();
+    }
+
+    private void onSuccess(SendResult<String, ?> sendResult) {
+        this.metrics.addPublishedMessage(sendResult.getProducerRecord().topic());
+        log.debug("[KAFKA] published {} to {}", sendResult.getProducerRecord().key(), sendResult.getProducerRecord().topic());
     }
 
-    private void onEventSuccess(SendResult<String, EventMessage> eventMessageSendResult) {
-        EventMessage eventMessage = eventMessageSendResult.getProducerRecord().value();
-        this.metrics.addPublishedMessage(eventMessageSendResult.getProducerRecord().topic());
-        log.debug("[KAFKA] published {} event topic to {}", eventMessage.getTopics().get(0), eventMessageSendResult.getProducerRecord().topic());
+    private static long estimateBytes(EventMessage eventMessage) {
+        return MESSAGE_OVERHEAD_BYTES
+                + (eventMessage.getData() != null ? eventMessage.getData().length() : 0)
+                + eventMessage.getTopics().size() * TOPIC_BYTES;
     }
 
-    private void onBlockSuccess(SendResult<String, BlockMessage> blockMessageSendResult) {
-        log.debug("[KAFKA] published block {} to {}", blockMessageSendResult.getProducerRecord().key(), blockMessageSendResult.getRecordMetadata().topic());
-        this.metrics.addPublishedMessage(blockMessageSendResult.getProducerRecord().topic());
+    private static long estimateBytes(EthBlock.Block block) {
+        return MESSAGE_OVERHEAD_BYTES * 4
+                + (block.getTransactions() != null ? block.getTransactions().size() * TRANSACTION_BYTES : 0);
     }
 }
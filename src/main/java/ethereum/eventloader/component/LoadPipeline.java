@@ -0,0 +1,259 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.component.entity.Batch;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Staged loader: fetch -> publish -> commit.
+ * <p>
+ * Fetch stage queries batch N+1 from the node while publish stage sends batch N to the message broker,
+ * blocks of a batch are loaded while logs of the next batch are queried.
+ * Stages are connected with bounded queues of {@link PipelineConfig#getDepth()} batches,
+ * checkpoint is committed by caller thread in the same order batches were fetched,
+ * each one only after the batch is acknowledged by message broker.
+ */
+@Slf4j
+@Component
+public class LoadPipeline implements DisposableBean {
+
+    public static final String STAGE_PUBLISH = "publish";
+    public static final String STAGE_COMMIT = "commit";
+
+    private static final Batch END = new Batch(-1L, new Events(-1L, -1L), emptyList());
+
+    private final AsyncBlockchainAdapter blockchain;
+
+    private final MessageBrokerAdapter messageBroker;
+
+    private final EventMetrics metrics;
+
+    private final int depth;
+
+    private final ExecutorService executor;
+
+    /**
+     * State of the latest run, stages of a previous run never touch state of the next one
+     */
+    private volatile Run current;
+
+    @Autowired
+    public LoadPipeline(AsyncBlockchainAdapter blockchain, MessageBrokerAdapter messageBroker,
+                        EventMetrics metrics, PipelineConfig config) {
+        this.blockchain = blockchain;
+        this.messageBroker = messageBroker;
+        this.metrics = metrics;
+        this.depth = config.getDepth();
+        this.current = new Run(depth);
+        this.executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "load-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.monitorPipelineStage(STAGE_PUBLISH, () -> current.fetched.size());
+        metrics.monitorPipelineStage(STAGE_COMMIT, () -> current.published.size());
+    }
+
+    /**
+     * Load all blocks in range (lastProcessed -> latestBlock]
+     *
+     * @param lastProcessed Last processed block number
+     * @param latestBlock Latest block number on blockchain node
+     * @param checkpoint Receives end block of every published batch, in order
+     * @return Last committed block number
+     * @throws Exception Failure of any stage, raised after all preceding batches were committed
+     */
+    public long run(long lastProcessed, long latestBlock, Checkpoint checkpoint) throws Exception {
+        Run run = new Run(depth);
+        current = run;
+        executor.execute(() -> run.stage(() -> fetchLoop(run, lastProcessed, latestBlock)));
+        executor.execute(() -> run.stage(() -> publishLoop(run)));
+        long committed = lastProcessed;
+        try {
+            Batch batch;
+            while ((batch = run.published.take()) != END) {
+                long start = System.nanoTime();
+                await(batch.getAck());
+                this.metrics.recordStage(EventMetrics.STAGE_ACK, System.nanoTime() - start);
+                checkpoint.commit(batch.getEndBlock());
+                committed = batch.getEndBlock();
+                this.metrics.setCurrentBlockNumber(committed);
+                log.info("[PIPELINE] committed block {}", committed);
+            }
+        } finally {
+            // stages must be gone before the next run takes the threads
+            run.stop();
+        }
+        if (run.failure != null) {
+            throw run.failure;
+        }
+        return committed;
+    }
+
+    /**
+     * Wait interruptibly, so stage cancelled by the caller stops waiting for the node
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    private void fetchLoop(Run run, long lastProcessed, long latestBlock) {
+        long cursor = lastProcessed;
+        try {
+            long start = System.nanoTime();
+            CompletableFuture<Events> next = cursor < latestBlock ? blockchain.eventsLogAsync(cursor, latestBlock) : null;
+            while (run.running && next != null) {
+                Events events = await(next);
+                this.metrics.recordStage(EventMetrics.STAGE_LOGS, System.nanoTime() - start);
+                long from = cursor;
+                long blocksStart = System.nanoTime();
+                CompletableFuture<List<EthBlock.Block>> blocks = blockchain.loadBlocksAsync(cursor, events.getEndBlock());
+                cursor = events.getEndBlock();
+                // logs of the next batch are queried while blocks of this one are loaded
+                start = System.nanoTime();
+                next = cursor < latestBlock ? blockchain.eventsLogAsync(cursor, latestBlock) : null;
+                Batch batch = new Batch(from, events, await(blocks));
+                this.metrics.recordStage(EventMetrics.STAGE_BLOCKS, System.nanoTime() - blocksStart);
+                run.fetched.put(batch);
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("[PIPELINE] fetch stage failed at block {}", cursor, ex);
+            run.fail(ex);
+        } finally {
+            offer(run, run.fetched);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void publishLoop(Run run) {
+        try {
+            Batch batch;
+            while ((batch = run.fetched.take()) != END) {
+                List<LogResult> logs = batch.getEvents().getLogs(batch.getLastProcessed());
+                long start = System.nanoTime();
+                batch.setAck(messageBroker.publishBatch(batch.getBlocks(), logs));
+                this.metrics.recordStage(EventMetrics.STAGE_SEND, System.nanoTime() - start);
+                run.published.put(batch);
+                long blocks = batch.getEndBlock() - batch.getLastProcessed();
+                this.metrics.addProcessedEventsCount((long) logs.size());
+                this.metrics.addProcessedBlocksCount(blocks > 0 ? blocks : 0);
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("[PIPELINE] publish stage failed", ex);
+            run.fail(ex);
+            run.running = false;
+        } finally {
+            offer(run, run.published);
+        }
+    }
+
+    private void offer(Run run, BlockingQueue<Batch> queue) {
+        // downstream stage may be gone, so never block forever on the end marker
+        try {
+            while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                if (!run.running) {
+                    queue.clear();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            if (!run.running) {
+                queue.clear();
+                queue.offer(END);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Receives block number up to which all events were published
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void commit(long block) throws Exception;
+    }
+
+    /**
+     * Queues, failure and stop flag of a single {@link #run(long, long, Checkpoint)}
+     */
+    private static final class Run {
+
+        private final BlockingQueue<Batch> fetched;
+
+        private final BlockingQueue<Batch> published;
+
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        private final CountDownLatch stopped = new CountDownLatch(2);
+
+        private volatile boolean running = true;
+
+        private volatile Exception failure;
+
+        private Run(int depth) {
+            this.fetched = new ArrayBlockingQueue<>(depth);
+            this.published = new ArrayBlockingQueue<>(depth);
+        }
+
+        private void stage(Runnable loop) {
+            threads.add(Thread.currentThread());
+            try {
+                loop.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Interrupt stages waiting for the node or for the queues and wait until both are gone
+         */
+        private void stop() throws InterruptedException {
+            running = false;
+            threads.forEach(Thread::interrupt);
+            stopped.await();
+        }
+
+        /**
+         * Keep the first failure, later ones are usually caused by it
+         */
+        private synchronized void fail(Exception ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+    }
+}
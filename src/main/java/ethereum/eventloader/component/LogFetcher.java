@@ -0,0 +1,95 @@
+package ethereum.eventloader.component;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Strategy of loading logs of a block range from the node
+ *
+ * @see LogRangeFetcher
+ * @see BlockReceiptsFetcher
+ */
+public interface LogFetcher {
+
+    /**
+     * Load logs in blocks range [startBlock -> endBlock]
+     *
+     * @param web3j Client to query logs with
+     * @param startBlock Start block number
+     * @param endBlock End block number (inclusive)
+     * @return Logs ordered by block number and log index
+     * @throws IOException Node is not reachable
+     */
+    @SuppressWarnings("rawtypes")
+    default List<LogResult> fetch(Web3j web3j, long startBlock, long endBlock) throws IOException {
+        return fetch(web3j, startBlock, endBlock, block -> true);
+    }
+
+    /**
+     * Load logs of blocks in range [startBlock -> endBlock] accepted by {@code candidate},
+     * other blocks are known to hold no needed logs and are not queried
+     *
+     * @param web3j Client to query logs with
+     * @param startBlock Start block number
+     * @param endBlock End block number (inclusive)
+     * @param candidate Accepts numbers of blocks which may hold needed logs
+     * @return Logs ordered by block number and log index
+     * @throws IOException Node is not reachable
+     */
+    @SuppressWarnings("rawtypes")
+    List<LogResult> fetch(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate) throws IOException;
+
+    /**
+     * Load logs like {@link #fetch(Web3j, long, long, LongPredicate)} without blocking the caller
+     *
+     * @return Logs ordered by block number and log index, failed as soon as some part of the range failed
+     */
+    @SuppressWarnings("rawtypes")
+    CompletableFuture<List<LogResult>> fetchAsync(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate);
+
+    /**
+     * Load logs in blocks range [startBlock -> endBlock], handing them to {@code sink} in chunks
+     * as they are received. Fetchers not able to stream hand all logs in single chunk.
+     *
+     * @param web3j Client to query logs with
+     * @param startBlock Start block number
+     * @param endBlock End block number (inclusive)
+     * @param sink Consumer of non-empty chunks of logs, ordered by block number and log index, called on the calling thread
+     * @throws IOException Node is not reachable
+     */
+    @SuppressWarnings("rawtypes")
+    default void stream(Web3j web3j, long startBlock, long endBlock, Consumer<List<LogResult>> sink) throws IOException {
+        List<LogResult> logs = fetch(web3j, startBlock, endBlock);
+        if (!logs.isEmpty()) {
+            sink.accept(logs);
+        }
+    }
+
+    /**
+     * @return Logs of all parts in order of parts, failed as soon as any part fails
+     */
+    @SuppressWarnings("rawtypes")
+    static CompletableFuture<List<LogResult>> concatAll(List<CompletableFuture<List<LogResult>>> parts) {
+        CompletableFuture<List<LogResult>> logs = CompletableFuture
+                .allOf(parts.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    List<LogResult> all = new ArrayList<>();
+                    parts.forEach(part -> all.addAll(part.join()));
+                    return all;
+                });
+        parts.forEach(part -> part.whenComplete((loaded, ex) -> {
+            if (ex != null) {
+                logs.completeExceptionally(ex);
+            }
+        }));
+        return logs;
+    }
+
+}
@@ -0,0 +1,418 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.entity.LogFilter;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches logs of a block range with concurrent {@code eth_getLogs} calls.
+ * <p>
+ * Range is split into sub-ranges of {@link Web3jConfig#getLogsSplitSize()} blocks, which are queried
+ * on a pool of {@link Web3jConfig#getLogsConcurrency()} threads. Sub-range rejected by the node
+ * because of result limit or timeout is bisected and queried again, throttled sub-range is queried again after
+ * a backoff of {@link Web3jConfig#getLogsRetryDelayMs()} doubled on every retry. Logs are returned in the same
+ * block/logIndex order a single call over the whole range would return them.
+ * <p>
+ * Unless some route has wildcard event, only logs with topic0 and address needed by the routes of
+ * {@link KafkaTopics} are queried. Topics and addresses sets larger than {@link Web3jConfig#getLogsFilterMaxTopics()}
+ * and {@link Web3jConfig#getLogsFilterMaxAddresses()} are split into several filters queried concurrently.
+ * <p>
+ * In streaming mode sub-ranges are queried one by one on the pool, logs parsed from the response stream
+ * are passed through a queue of {@link Web3jConfig#getStreamBufferRecords()} logs to the caller,
+ * so reading from the node waits while the caller is publishing. Logs of several filters can't be merged into block
+ * order without holding them, so then sub-ranges are fetched whole and handed to the caller one by one instead.
+ */
+@Slf4j
+@Component
+@SuppressWarnings("rawtypes")
+public class LogRangeFetcher implements LogFetcher, DisposableBean {
+
+    /**
+     * -32005 is "limit exceeded" error code, messages differ between node implementations and providers.
+     * Providers answer throttled calls with the same code, so rate limit messages are told apart first.
+     */
+    private static final int LIMIT_EXCEEDED = -32005;
+    private static final Pattern LIMIT_MESSAGE = Pattern.compile(
+            "query returned more than|response size|block range|range is too|too many (results|logs|blocks)"
+                    + "|query timeout|timed out", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RATE_LIMIT_MESSAGE = Pattern.compile(
+            "rate limit|too many requests|request rate|request count|quota|throttl|capacity exceeded|\\b429\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Marks end of logs in streaming queue
+     */
+    private static final LogResult END = new EthLog.Hash("");
+
+    private static final Comparator<LogResult> BLOCK_ORDER = Comparator
+            .comparingLong((LogResult event) -> quantity(((Log) event).getBlockNumberRaw()))
+            .thenComparingLong(event -> quantity(((Log) event).getLogIndexRaw()));
+
+    private final long splitSize;
+
+    private final KafkaTopics topics;
+
+    private final boolean filterLogs;
+
+    private final int maxTopics;
+
+    private final int maxAddresses;
+
+    private final int bufferRecords;
+
+    private final int retries;
+
+    private final long retryDelayMs;
+
+    private final ScheduledExecutorService executor;
+
+    private final AtomicBoolean multiFilterWarned = new AtomicBoolean();
+
+    /**
+     * Fetcher of all logs, regardless of routes
+     */
+    public LogRangeFetcher(Web3jConfig config) {
+        this(config, null);
+    }
+
+    @Autowired
+    public LogRangeFetcher(Web3jConfig config, KafkaTopics topics) {
+        this.splitSize = config.getLogsSplitSize();
+        this.topics = topics;
+        this.filterLogs = config.isFilterLogs();
+        this.maxTopics = config.getLogsFilterMaxTopics();
+        this.maxAddresses = config.getLogsFilterMaxAddresses();
+        this.bufferRecords = config.getStreamBufferRecords();
+        this.retries = config.getLogsRetries();
+        this.retryDelayMs = config.getLogsRetryDelayMs();
+        this.executor = Executors.newScheduledThreadPool(config.getLogsConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "logs-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public List<LogResult> fetch(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate) throws IOException {
+        try {
+            return fetchAsync(web3j, startBlock, endBlock, candidate).join();
+        } catch (CompletionException ex) {
+            throw rethrow(ex);
+        }
+    }
+
+    /**
+     * Only runs of consecutive candidate blocks are queried, each split into sub-ranges
+     */
+    @Override
+    public CompletableFuture<List<LogResult>> fetchAsync(Web3j web3j, long startBlock, long endBlock, LongPredicate candidate) {
+        List<LogFilter> filters = filters();
+        List<CompletableFuture<List<LogResult>>> parts = new ArrayList<>();
+        long to;
+        for (long from = startBlock; from <= endBlock; from = to + 1) {
+            to = from;
+            if (!candidate.test(from)) {
+                continue;
+            }
+            while (to < endBlock && to - from + 1 < splitSize && candidate.test(to + 1)) {
+                to++;
+            }
+            CompletableFuture<List<LogResult>> part = null;
+            for (LogFilter filter : filters) {
+                CompletableFuture<List<LogResult>> filtered = fetchRange(web3j, filter, from, to, 0);
+                part = part == null ? filtered : part.thenCombine(filtered, LogRangeFetcher::merge);
+            }
+            if (part != null) {
+                parts.add(part);
+            }
+        }
+        return LogFetcher.concatAll(parts);
+    }
+
+    private CompletableFuture<List<LogResult>> fetchRange(Web3j web3j, LogFilter filter, long from, long to, int attempt) {
+        return CompletableFuture.supplyAsync(() -> getLogs(web3j, filter, from, to), executor)
+                .handle((logs, ex) -> {
+                    if (ex == null) {
+                        return CompletableFuture.completedFuture(logs);
+                    }
+                    Throwable cause = unwrap(ex);
+                    if (isRateLimited(cause) && attempt < retries) {
+                        long delay = retryDelayMs << attempt;
+                        log.warn("[BLOCKCHAIN] logs query [{}..{}] throttled, retrying in {} ms: {}", from, to, delay, cause.getMessage());
+                        CompletableFuture<Void> backoff = new CompletableFuture<>();
+                        executor.schedule(() -> backoff.complete(null), delay, TimeUnit.MILLISECONDS);
+                        return backoff.thenCompose(ignored -> fetchRange(web3j, filter, from, to, attempt + 1));
+                    }
+                    if (from < to && isSplittable(cause)) {
+                        long middle = from + (to - from) / 2;
+                        log.warn("[BLOCKCHAIN] splitting logs query [{}..{}]: {}", from, to, cause.getMessage());
+                        return fetchRange(web3j, filter, from, middle, 0)
+                                .thenCombine(fetchRange(web3j, filter, middle + 1, to, 0), LogRangeFetcher::concat);
+                    }
+                    CompletableFuture<List<LogResult>> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                })
+                .thenCompose(Function.identity());
+    }
+
+    @Override
+    public void stream(Web3j web3j, long startBlock, long endBlock, Consumer<List<LogResult>> sink) throws IOException {
+        List<LogFilter> filters = filters();
+        if (filters.size() > 1) {
+            if (!multiFilterWarned.getAndSet(true)) {
+                log.warn("[BLOCKCHAIN] routes need {} logs filters, logs are fetched by sub-ranges instead of streamed", filters.size());
+            }
+            for (long from = startBlock; from <= endBlock; from += splitSize) {
+                List<LogResult> logs = fetch(web3j, from, Math.min(from + splitSize - 1, endBlock), block -> true);
+                if (!logs.isEmpty()) {
+                    sink.accept(logs);
+                }
+            }
+            return;
+        }
+        BlockingQueue<LogResult> queue = new ArrayBlockingQueue<>(bufferRecords);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            try {
+                for (long from = startBlock; from <= endBlock; from += splitSize) {
+                    long to = Math.min(from + splitSize - 1, endBlock);
+                    for (LogFilter filter : filters) {
+                        streamRange(web3j, filter, from, to, 0, event -> put(queue, event, cancelled));
+                    }
+                }
+            } finally {
+                put(queue, END, cancelled);
+            }
+        }, executor);
+        try {
+            boolean done = false;
+            while (!done) {
+                List<LogResult> chunk = new ArrayList<>();
+                chunk.add(queue.take());
+                queue.drainTo(chunk);
+                if (chunk.get(chunk.size() - 1) == END) {
+                    chunk.remove(chunk.size() - 1);
+                    done = true;
+                }
+                if (!chunk.isEmpty()) {
+                    sink.accept(chunk);
+                }
+            }
+            producer.join();
+        } catch (CompletionException ex) {
+            throw rethrow(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BlockchainException("interrupted while streaming logs", ex);
+        } finally {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Query logs of the range, sub-range rejected because of result limit is bisected, throttled query is repeated
+     * after a backoff. Node refuses the range before sending any log, so neither repeats logs already passed to {@code sink}
+     */
+    private void streamRange(Web3j web3j, LogFilter filter, long from, long to, int attempt, Consumer<LogResult> sink) {
+        Response.Error error;
+        try {
+            error = queryRange(web3j, filter, from, to, sink);
+        } catch (IOException | RuntimeException ex) {
+            Throwable cause = unwrap(ex);
+            if (!isRateLimited(cause) || attempt >= retries) {
+                throw ex instanceof IOException ? new UncheckedIOException((IOException) ex) : (RuntimeException) ex;
+            }
+            long delay = retryDelayMs << attempt;
+            log.warn("[BLOCKCHAIN] logs query [{}..{}] throttled, retrying in {} ms: {}", from, to, delay, cause.getMessage());
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted");
+            }
+            streamRange(web3j, filter, from, to, attempt + 1, sink);
+            return;
+        }
+        if (error == null) {
+            return;
+        }
+        if (from < to && isLimitExceeded(error)) {
+            long middle = from + (to - from) / 2;
+            log.warn("[BLOCKCHAIN] splitting logs query [{}..{}]: {}", from, to, error.getMessage());
+            streamRange(web3j, filter, from, middle, 0, sink);
+            streamRange(web3j, filter, middle + 1, to, 0, sink);
+            return;
+        }
+        throw new BlockchainException("eth_getLogs [" + from + ".." + to + "] failed: " + error.getMessage(), null);
+    }
+
+    private Response.Error queryRange(Web3j web3j, LogFilter filter, long from, long to, Consumer<LogResult> sink) throws IOException {
+        if (!(web3j instanceof ExtendedWeb3j)) {
+            getLogs(web3j, filter, from, to).forEach(sink);
+            return null;
+        }
+        Response.Error error = ((ExtendedWeb3j) web3j).ethGetLogs(filter.toEthFilter(from, to), sink);
+        if (error != null && isRateLimited(error)) {
+            throw new RateLimitException(error.getMessage());
+        }
+        return error;
+    }
+
+    private static void put(BlockingQueue<LogResult> queue, LogResult event, AtomicBoolean cancelled) {
+        try {
+            while (!queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new CancellationException("logs stream is not read anymore");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        }
+    }
+
+    private static RuntimeException rethrow(CompletionException ex) throws IOException {
+        Throwable cause = unwrap(ex);
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new BlockchainException(cause);
+    }
+
+    /**
+     * @return Filters of logs needed by the routes, empty if no logs are needed
+     */
+    private List<LogFilter> filters() {
+        if (topics == null || !filterLogs) {
+            return Collections.singletonList(LogFilter.ANY);
+        }
+        return LogFilter.of(topics.getRoutes()).split(maxTopics, maxAddresses);
+    }
+
+    private List<LogResult> getLogs(Web3j web3j, LogFilter filter, long from, long to) {
+        try {
+            EthLog ethLog = web3j.ethGetLogs(filter.toEthFilter(from, to)).send();
+            if (ethLog.hasError()) {
+                Response.Error error = ethLog.getError();
+                if (isRateLimited(error)) {
+                    throw new RateLimitException(error.getMessage());
+                }
+                if (isLimitExceeded(error)) {
+                    throw new ResultLimitException(error.getMessage());
+                }
+                throw new BlockchainException("eth_getLogs [" + from + ".." + to + "] failed: " + error.getMessage(), null);
+            }
+            return ethLog.getLogs();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static boolean isLimitExceeded(Response.Error error) {
+        return error.getCode() == LIMIT_EXCEEDED || LIMIT_MESSAGE.matcher(String.valueOf(error.getMessage())).find();
+    }
+
+    private static boolean isRateLimited(Response.Error error) {
+        return RATE_LIMIT_MESSAGE.matcher(String.valueOf(error.getMessage())).find();
+    }
+
+    /**
+     * @return True if the node or provider throttles calls, either as JSON-RPC error or as HTTP 429 response
+     */
+    private static boolean isRateLimited(Throwable cause) {
+        return cause instanceof RateLimitException
+                || cause instanceof IOException && RATE_LIMIT_MESSAGE.matcher(String.valueOf(cause.getMessage())).find();
+    }
+
+    private static boolean isSplittable(Throwable cause) {
+        return cause instanceof ResultLimitException || cause instanceof InterruptedIOException;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static List<LogResult> merge(List<LogResult> head, List<LogResult> tail) {
+        List<LogResult> logs = concat(head, tail);
+        logs.sort(BLOCK_ORDER);
+        return logs;
+    }
+
+    private static long quantity(String hex) {
+        return hex == null ? -1L : Long.parseLong(hex.substring(2), 16);
+    }
+
+    private static List<LogResult> concat(List<LogResult> head, List<LogResult> tail) {
+        List<LogResult> logs = new ArrayList<>(head.size() + tail.size());
+        logs.addAll(head);
+        logs.addAll(tail);
+        return logs;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Node refused to return logs of the range because of its size
+     */
+    private static class ResultLimitException extends BlockchainException {
+        private static final long serialVersionUID = 1L;
+
+        ResultLimitException(String message) {
+            super(message, null);
+        }
+    }
+
+    /**
+     * Node or provider throttled the call, the same range is queried again after a backoff
+     */
+    private static class RateLimitException extends BlockchainException {
+        private static final long serialVersionUID = 1L;
+
+        RateLimitException(String message) {
+            super(message, null);
+        }
+    }
+}
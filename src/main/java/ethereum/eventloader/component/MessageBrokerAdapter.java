@@ -1,6 +1,8 @@
 package ethereum.eventloader.component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
@@ -14,16 +16,55 @@ public interface MessageBrokerAdapter {
 	 * Publish Ethereum transaction's logs
 	 *
 	 * @param logs List of logs loaded from transaction
+	 * @return Completed when all logs are acknowledged by Message Broker
 	 */
 	@SuppressWarnings("rawtypes")
-	void publish(List<LogResult> logs);
+	CompletableFuture<Void> publish(List<LogResult> logs);
 
 	/**
 	 * Publish Ethereum block
 	 *
 	 * @param block Ethereum block response
+	 * @return Completed when block is acknowledged by Message Broker
 	 */
-	void publishBlock(EthBlock.Block block);
+	CompletableFuture<Void> publishBlock(EthBlock.Block block);
+
+	/**
+	 * Publish blocks and logs of a single batch
+	 *
+	 * @param blocks Ethereum block responses
+	 * @param logs List of logs loaded from transactions
+	 * @return Completed when whole batch is acknowledged by Message Broker
+	 */
+	@SuppressWarnings("rawtypes")
+	default CompletableFuture<Void> publishBatch(List<EthBlock.Block> blocks, List<LogResult> logs) {
+		List<CompletableFuture<Void>> acks = new ArrayList<>(blocks.size() + 1);
+		blocks.forEach(block -> acks.add(publishBlock(block)));
+		if (!logs.isEmpty()) {
+			acks.add(publish(logs));
+		}
+		return CompletableFuture.allOf(acks.toArray(new CompletableFuture[0]));
+	}
+
+	/**
+	 * Publish compensating messages, marked removed, of blocks and logs orphaned by chain reorganization
+	 *
+	 * @param blocks Orphaned blocks
+	 * @param logs Logs of orphaned blocks
+	 * @return Completed when all messages are acknowledged by Message Broker
+	 */
+	@SuppressWarnings("rawtypes")
+	CompletableFuture<Void> publishRemoved(List<EthBlock.Block> blocks, List<LogResult> logs);
+
+	/**
+	 * Publish blocks and logs having enough confirmations to confirmed topics
+	 *
+	 * @param blocks Confirmed blocks
+	 * @param logs Logs of confirmed blocks
+	 * @return Completed when all messages are acknowledged by Message Broker
+	 */
+	@SuppressWarnings("rawtypes")
+	CompletableFuture<Void> publishConfirmed(List<EthBlock.Block> blocks, List<LogResult> logs);
 
 	/**
 	 * Try to reconnect to Message Broker
@@ -0,0 +1,168 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.config.LeasingConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Zookeeper registry of leased and completed block ranges.
+ * <p>
+ * Lease is an ephemeral node {@code /ranges/leases/<range>} holding owner id and expiration time,
+ * so it disappears together with the session of crashed replica and can be taken over
+ * from alive, but stuck replica once expired. Completed range is marked with persistent
+ * {@code /ranges/done/<range>} node until processed block moves past it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RangeLeases {
+
+    private static final String ZNODE_LEASES = "/ranges/leases";
+    private static final String ZNODE_DONE = "/ranges/done";
+
+    private final String owner = UUID.randomUUID().toString();
+
+    @Lazy
+    private final CuratorFramework curatorFramework;
+
+    private final LeasingConfig config;
+
+    /**
+     * Try to lease range, taking over expired lease of another replica
+     *
+     * @param range Range index
+     * @return true if range is leased by this replica
+     */
+    public boolean acquire(long range) throws Exception {
+        String path = leasePath(range);
+        try {
+            curatorFramework.create()
+                    .creatingParentContainersIfNeeded()
+                    .withMode(CreateMode.EPHEMERAL)
+                    .forPath(path, leaseData());
+            log.debug("[LEASE] acquired range {}", range);
+            return true;
+        } catch (KeeperException.NodeExistsException ex) {
+            return takeOver(range, path);
+        }
+    }
+
+    /**
+     * Extend expiration time of the range leased by this replica
+     *
+     * @param range Range index
+     * @return false if lease was lost to another replica
+     */
+    public boolean renew(long range) throws Exception {
+        Stat stat = new Stat();
+        try {
+            if (read(leasePath(range), stat).startsWith(owner)) {
+                curatorFramework.setData().withVersion(stat.getVersion()).forPath(leasePath(range), leaseData());
+                return true;
+            }
+        } catch (KeeperException.NoNodeException | KeeperException.BadVersionException ignored) { }
+        log.warn("[LEASE] range {} was taken over by another replica", range);
+        return false;
+    }
+
+    /**
+     * Release range leased by this replica
+     *
+     * @param range Range index
+     */
+    public void release(long range) throws Exception {
+        Stat stat = new Stat();
+        try {
+            String data = read(leasePath(range), stat);
+            if (data.startsWith(owner)) {
+                curatorFramework.delete().withVersion(stat.getVersion()).forPath(leasePath(range));
+            }
+        } catch (KeeperException.NoNodeException | KeeperException.BadVersionException ignored) {
+            log.warn("[LEASE] range {} was taken over by another replica", range);
+        }
+    }
+
+    /**
+     * Mark range as completely published
+     *
+     * @param range Range index
+     */
+    public void complete(long range) throws Exception {
+        try {
+            curatorFramework.create().creatingParentContainersIfNeeded().forPath(donePath(range));
+        } catch (KeeperException.NodeExistsException ignored) {
+            log.warn("[LEASE] range {} is already completed", range);
+        }
+    }
+
+    public boolean isDone(long range) throws Exception {
+        return curatorFramework.checkExists().forPath(donePath(range)) != null;
+    }
+
+    /**
+     * Forget completed range, must be called after processed block is moved past it
+     *
+     * @param range Range index
+     */
+    public void clearDone(long range) throws Exception {
+        try {
+            curatorFramework.delete().forPath(donePath(range));
+        } catch (KeeperException.NoNodeException ignored) { }
+    }
+
+    /**
+     * @return true if any range is leased or completed, but not yet covered by processed block
+     */
+    public boolean hasPending() throws Exception {
+        return !isEmpty(ZNODE_LEASES) || !isEmpty(ZNODE_DONE);
+    }
+
+    private boolean takeOver(long range, String path) throws Exception {
+        Stat stat = new Stat();
+        try {
+            String[] data = read(path, stat).split(":");
+            if (Long.parseLong(data[1]) > System.currentTimeMillis()) {
+                return false;
+            }
+            log.warn("[LEASE] lease of range {} by {} expired, taking over", range, data[0]);
+            curatorFramework.delete().withVersion(stat.getVersion()).forPath(path);
+        } catch (KeeperException.NoNodeException | KeeperException.BadVersionException ignored) {
+            return false;
+        }
+        return acquire(range);
+    }
+
+    private boolean isEmpty(String path) throws Exception {
+        try {
+            return curatorFramework.getChildren().forPath(path).isEmpty();
+        } catch (KeeperException.NoNodeException ignored) {
+            return true;
+        }
+    }
+
+    private String read(String path, Stat stat) throws Exception {
+        return new String(curatorFramework.getData().storingStatIn(stat).forPath(path), StandardCharsets.UTF_8);
+    }
+
+    private byte[] leaseData() {
+        long expiresAt = System.currentTimeMillis() + config.getLeaseTimeoutMs();
+        return (owner + ":" + expiresAt).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String leasePath(long range) {
+        return ZNODE_LEASES + "/" + range;
+    }
+
+    private static String donePath(long range) {
+        return ZNODE_DONE + "/" + range;
+    }
+}
@@ -0,0 +1,272 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.CheckpointConfig;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+/**
+ * Ring buffer of recently published blocks used to detect chain reorganizations at the tip.
+ * <p>
+ * Every batch must continue the published chain: parent hash of its first block must be the hash of last
+ * published block. Otherwise tracker walks back to the fork point, publishes removed messages of orphaned
+ * blocks and their events, and loader continues from the fork point, re-publishing canonical blocks.
+ * <p>
+ * Blocks having {@link ReorgConfig#getConfirmations()} blocks on top of them are published once more to
+ * confirmed topics, progress of confirmed topics is kept in Zookeeper, so they require Zookeeper checkpoint store.
+ * <p>
+ * Ring buffer is kept in memory only, reorganization of blocks published before restart or by another
+ * replica can't be detected, confirmed topics cover this case.
+ */
+@Slf4j
+@Component
+public class ReorgTracker {
+
+    static final String ZNODE_CONFIRMED_BLOCK = "/confirmed_block";
+
+    private final ReorgConfig config;
+
+    private final BlockchainAdapter blockchain;
+
+    private final MessageBrokerAdapter messageBroker;
+
+    private final CuratorFramework curatorFramework;
+
+    private final EventMetrics metrics;
+
+    private final ArrayDeque<TrackedBlock> ring = new ArrayDeque<>();
+
+    @Autowired
+    public ReorgTracker(ReorgConfig config, BlockchainAdapter blockchain, MessageBrokerAdapter messageBroker,
+                        @Lazy CuratorFramework curatorFramework, EventMetrics metrics,
+                        PipelineConfig pipelineConfig, TransactionConfig transactionConfig, CheckpointConfig checkpointConfig) {
+        if (config.isEnabled() && (pipelineConfig.isEnabled() || transactionConfig.isEnabled())) {
+            throw new IllegalStateException("reorg tracking supports neither pipeline nor transactional loading");
+        }
+        if (config.isEnabled() && config.getConfirmations() >= config.getDepth()) {
+            throw new IllegalStateException("reorg depth must be greater than confirmations");
+        }
+        if (config.isEnabled() && config.getConfirmations() > 0
+                && !CheckpointConfig.STORE_ZOOKEEPER.equals(checkpointConfig.getStore())) {
+            throw new IllegalStateException("confirmed topics require zookeeper checkpoint store");
+        }
+        this.config = config;
+        this.blockchain = blockchain;
+        this.messageBroker = messageBroker;
+        this.curatorFramework = curatorFramework;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Check that loaded batch continues published chain, compensate orphaned blocks if it doesn't
+     *
+     * @param lastProcessed Last published block
+     * @param blocks Blocks of the batch, starting after last published block
+     * @param logs Logs of the batch
+     * @return Fork point to continue loading from if chain was reorganized, empty otherwise
+     * @throws BlockchainException if chain changed while the batch was being loaded
+     */
+    @SuppressWarnings("rawtypes")
+    public OptionalLong check(long lastProcessed, List<EthBlock.Block> blocks, List<LogResult> logs) {
+        verify(lastProcessed, blocks, logs);
+        TrackedBlock last = ring.peekLast();
+        if (last == null || last.number != lastProcessed) {
+            if (last != null) {
+                log.info("[REORG] published chain doesn't end at block {}, tracking from scratch", lastProcessed);
+            }
+            ring.clear();
+            return OptionalLong.empty();
+        }
+        if (blocks.isEmpty() || last.hash.equalsIgnoreCase(blocks.get(0).getParentHash())) {
+            return OptionalLong.empty();
+        }
+        long fork = forkPoint();
+        rollback(fork);
+        return OptionalLong.of(fork);
+    }
+
+    /**
+     * Remember published batch
+     *
+     * @param blocks Published blocks
+     * @param logs Published logs
+     */
+    @SuppressWarnings("rawtypes")
+    public void published(List<EthBlock.Block> blocks, List<LogResult> logs) {
+        Map<Long, List<LogResult>> byBlock = new HashMap<>();
+        for (LogResult logResult : logs) {
+            long number = ((EthLog.LogObject) logResult).getBlockNumber().longValue();
+            byBlock.computeIfAbsent(number, key -> new ArrayList<>()).add(logResult);
+        }
+        for (EthBlock.Block block : blocks) {
+            long number = block.getNumber().longValue();
+            ring.addLast(new TrackedBlock(number, block.getHash(), block,
+                    byBlock.getOrDefault(number, Collections.emptyList())));
+            if (ring.size() > config.getDepth()) {
+                ring.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Publish blocks, having enough confirmations on top of published block, to confirmed topics.
+     * Must be called under the processed block lock.
+     *
+     * @param endBlock Last published block
+     */
+    @SuppressWarnings("rawtypes")
+    public void confirm(long endBlock) throws Exception {
+        if (config.getConfirmations() <= 0) {
+            return;
+        }
+        DistributedAtomicLong confirmedBlock = new DistributedAtomicLong(
+                curatorFramework,
+                ZNODE_CONFIRMED_BLOCK,
+                new ExponentialBackoffRetry(1000, 5)
+        );
+        long target = endBlock - config.getConfirmations();
+        long confirmed = confirmedBlock.get().preValue();
+        if (confirmed == 0) {
+            log.info("[REORG] confirmed topics start after block {}", target);
+            confirmedBlock.forceSet(target);
+            return;
+        }
+        while (confirmed < target) {
+            List<EthBlock.Block> blocks = new ArrayList<>();
+            List<LogResult> logs = new ArrayList<>();
+            long to;
+            TrackedBlock first = ring.peekFirst();
+            if (first != null && first.number <= confirmed + 1) {
+                to = confirmed;
+                for (TrackedBlock tracked : ring) {
+                    if (tracked.number > confirmed && tracked.number <= target) {
+                        blocks.add(tracked.block);
+                        logs.addAll(tracked.logs);
+                        to = tracked.number;
+                    }
+                }
+            } else {
+                // blocks published before restart, deep enough to be loaded again safely
+                Events events = blockchain.eventsLog(confirmed, first != null ? Math.min(target, first.number - 1) : target);
+                to = events.getEndBlock();
+                logs.addAll(events.getLogs(confirmed));
+                blocks.addAll(blockchain.loadBlocks(confirmed + 1, to + 1));
+            }
+            if (to <= confirmed) {
+                break;
+            }
+            messageBroker.publishConfirmed(blocks, logs).join();
+            confirmed = to;
+            confirmedBlock.forceSet(confirmed);
+            log.info("[REORG] confirmed up to block {}", confirmed);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void verify(long lastProcessed, List<EthBlock.Block> blocks, List<LogResult> logs) {
+        Map<Long, String> hashes = new HashMap<>(blocks.size() * 2);
+        EthBlock.Block previous = null;
+        long expected = lastProcessed + 1;
+        for (EthBlock.Block block : blocks) {
+            if (block.getNumber().longValue() != expected++
+                    || previous != null && !previous.getHash().equalsIgnoreCase(block.getParentHash())) {
+                blockchain.invalidateBlocks(lastProcessed + 1);
+                throw new BlockchainException("chain changed while loading batch at block " + block.getNumber(), null);
+            }
+            hashes.put(block.getNumber().longValue(), block.getHash());
+            previous = block;
+        }
+        for (LogResult logResult : logs) {
+            EthLog.LogObject logObject = (EthLog.LogObject) logResult;
+            String hash = hashes.get(logObject.getBlockNumber().longValue());
+            if (hash != null && !hash.equalsIgnoreCase(logObject.getBlockHash())) {
+                // cached headers of the batch are of the other fork, retry must load them again
+                blockchain.invalidateBlocks(lastProcessed + 1);
+                throw new BlockchainException("chain changed while loading batch, log of block "
+                        + logObject.getBlockNumber() + " belongs to " + logObject.getBlockHash(), null);
+            }
+        }
+    }
+
+    private long forkPoint() {
+        // cached blocks of orphaned fork must not be mistaken for canonical ones
+        blockchain.invalidateBlocks(ring.peekFirst().number);
+        Iterator<TrackedBlock> published = ring.descendingIterator();
+        while (published.hasNext()) {
+            TrackedBlock tracked = published.next();
+            List<EthBlock.Block> canonical = blockchain.loadBlocks(tracked.number, tracked.number + 1);
+            if (!canonical.isEmpty() && tracked.hash.equalsIgnoreCase(canonical.get(0).getHash())) {
+                return tracked.number;
+            }
+        }
+        long oldest = ring.peekFirst().number - 1;
+        log.error("[REORG] fork point is deeper than {} tracked blocks, compensating back to block {}", ring.size(), oldest);
+        return oldest;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void rollback(long fork) {
+        List<EthBlock.Block> blocks = new ArrayList<>();
+        List<LogResult> logs = new ArrayList<>();
+        while (!ring.isEmpty() && ring.peekLast().number > fork) {
+            TrackedBlock orphaned = ring.removeLast();
+            blocks.add(orphaned.block);
+            for (int i = orphaned.logs.size() - 1; i >= 0; i--) {
+                logs.add(orphaned.logs.get(i));
+            }
+        }
+        log.warn("[REORG] chain reorganized after block {}, {} blocks orphaned", fork, blocks.size());
+        if (config.getConfirmations() > 0 && blocks.size() > config.getConfirmations()) {
+            log.error("[REORG] reorganization is deeper than {} confirmations, confirmed topics have orphaned events",
+                    config.getConfirmations());
+        }
+        // loader must not move back before compensation is acknowledged
+        messageBroker.publishRemoved(blocks, logs).join();
+        this.metrics.recordReorg(blocks.size());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class TrackedBlock {
+
+        private final long number;
+
+        private final String hash;
+
+        private final EthBlock.Block block;
+
+        private final List<LogResult> logs;
+
+        private TrackedBlock(long number, String hash, EthBlock.Block block, List<LogResult> logs) {
+            this.number = number;
+            this.hash = hash;
+            this.block = block;
+            this.logs = logs;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.config.PublishConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded window of sent, but not yet acknowledged messages.
+ * <p>
+ * Sender blocks in {@link #acquire(long)} while count or size limit is reached, so publishing runs ahead
+ * of acknowledgements only by {@link PublishConfig#getMaxInFlightMessages()} messages
+ * and {@link PublishConfig#getMaxInFlightBytes()} bytes. Single message larger than the size limit
+ * is let through when window is empty.
+ */
+@Component
+public class SendWindow {
+
+    private final int maxMessages;
+
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    private int messages;
+
+    private long bytes;
+
+    @Autowired
+    public SendWindow(PublishConfig config, EventMetrics metrics) {
+        this.maxMessages = config.getMaxInFlightMessages();
+        this.maxBytes = config.getMaxInFlightBytes();
+        metrics.monitorInFlight(this::getMessages, this::getBytes);
+    }
+
+    /**
+     * Reserve space for message, blocks until window has enough space
+     *
+     * @param size Estimated message size in bytes
+     */
+    public void acquire(long size) {
+        lock.lock();
+        try {
+            while (messages > 0 && (messages >= maxMessages || bytes + size > maxBytes)) {
+                released.await();
+            }
+            messages++;
+            bytes += size;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MessageBrokerException("interrupted while waiting for in-flight messages", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free space of acknowledged or finally failed message
+     *
+     * @param size Size passed to {@link #acquire(long)}
+     */
+    public void release(long size) {
+        lock.lock();
+        try {
+            messages--;
+            bytes -= size;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,259 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.component.beans.KafkaBeans;
+import ethereum.eventloader.component.spool.SpoolLog;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.PublishConfig;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.config.SpoolConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import ethereum.eventloader.messages.binary.TopicFormatSerializer;
+import ethereum.eventloader.metrics.EventMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Write-ahead publisher: batches are written to local {@link SpoolLog} and published to Kafka by background drainer,
+ * so fetching goes on at disk speed while Kafka is slow or down.
+ * <p>
+ * Batch is spooled as Kafka records serialized by the value serializer of the producer, binary topics included,
+ * with headers the serializer adds, so drained records are byte for byte the ones published without spool.
+ * Events are enriched when spooled. Drainer publishes batches in order and sends failed batch again
+ * until Kafka acknowledges it.
+ * Loader fetches after the last spooled block and moves checkpoint to the last drained one,
+ * after restart batches up to the checkpoint are skipped and the rest is published again.
+ * Drainer stops on a batch it can't read or on spool error, then spool is closed and every loading attempt
+ * fails until restart, instead of waiting for a drainer which is gone.
+ * <p>
+ * Spool is local to the loader, so only single-writer loading without reorg tracking is supported.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "event-loader.spool.enabled", havingValue = "true")
+public class SpooledPublisher implements DisposableBean {
+
+    private final KafkaMQ kafka;
+
+    private final EventMetrics metrics;
+
+    private final PublishConfig publishConfig;
+
+    private final SpoolLog spool;
+
+    private final TopicFormatSerializer serializer;
+
+    private final DefaultKafkaProducerFactory<String, byte[]> producerFactory;
+
+    private final KafkaTemplate<String, byte[]> template;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spool-drainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long drained = -1L;
+
+    /**
+     * Cause of drainer stop, null while it is running
+     */
+    private volatile Exception failure;
+
+    private boolean started;
+
+    @Autowired
+    public SpooledPublisher(KafkaMQ kafka, KafkaBeans kafkaBeans, KafkaProperties kafkaProperties, EventMetrics metrics,
+                            SpoolConfig config, PublishConfig publishConfig, PipelineConfig pipelineConfig,
+                            LeasingConfig leasingConfig, ReorgConfig reorgConfig, TransactionConfig transactionConfig) throws IOException {
+        if (pipelineConfig.isEnabled() || leasingConfig.isEnabled() || transactionConfig.isEnabled()) {
+            throw new IllegalStateException("spooled publishing supports single-writer loading only");
+        }
+        if (reorgConfig.isEnabled()) {
+            throw new IllegalStateException("spooled publishing doesn't support reorg tracking");
+        }
+        this.kafka = kafka;
+        this.metrics = metrics;
+        this.publishConfig = publishConfig;
+        // the same serializer producer of the message broker has, records are sent serialized by another producer
+        Map<String, Object> producerConfigs = kafkaProperties.buildProducerProperties();
+        this.serializer = new TopicFormatSerializer(kafkaBeans.getBinaryTopics(), producerConfigs);
+        producerConfigs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        this.producerFactory = new DefaultKafkaProducerFactory<>(producerConfigs);
+        this.template = new KafkaTemplate<>(producerFactory);
+        this.spool = new SpoolLog(Paths.get(config.getDirectory()), config.getSegmentBytes(), config.getMaxBytes(), config.isForce());
+        metrics.monitorSpool(spool::pendingBytes);
+    }
+
+    /**
+     * Start draining on first call, batches up to the checkpoint are already published
+     *
+     * @param checkpoint Last processed block of the loader
+     * @return Last spooled block, loader must fetch after it
+     */
+    public synchronized long lastSpooled(long checkpoint) {
+        if (!started) {
+            started = true;
+            drained = checkpoint;
+            executor.submit(() -> drainLoop(checkpoint));
+        }
+        return Math.max(checkpoint, spool.lastEndBlock());
+    }
+
+    /**
+     * @return Last block of the batches acknowledged by Kafka, loader checkpoint must not move past it
+     * @throws MessageBrokerException Drainer stopped
+     */
+    public long lastDrained() {
+        if (failure != null) {
+            throw new MessageBrokerException("spool drainer stopped after block " + drained, failure);
+        }
+        return drained;
+    }
+
+    /**
+     * Write batch to the spool, waits while spool is full
+     *
+     * @param blocks Blocks of the batch
+     * @param logs Logs of the batch
+     * @param endBlock Last block of the batch
+     */
+    @SuppressWarnings("rawtypes")
+    public void publish(List<EthBlock.Block> blocks, List<LogResult> logs, long endBlock) throws IOException, InterruptedException {
+        List<ProducerRecord<String, Object>> records = kafka.toRecords(blocks, logs);
+        spool.append(endBlock, encode(records));
+        log.info("[SPOOL] spooled {} messages up to block {}", records.size(), endBlock);
+    }
+
+    private void drainLoop(long checkpoint) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                SpoolLog.Record record = spool.poll(1000L);
+                if (record == null) {
+                    continue;
+                }
+                if (record.getEndBlock() > checkpoint) {
+                    List<ProducerRecord<String, byte[]>> messages = decode(record.getPayload());
+                    drain(messages, record.getEndBlock());
+                    metrics.addDrainedMessages(messages.size());
+                }
+                spool.acknowledge(record);
+                drained = Math.max(drained, record.getEndBlock());
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException ex) {
+            log.error("[SPOOL] drainer stopped after block {}, loading fails until restart", drained, ex);
+            failure = ex;
+            // loader waiting for free space gets an error
+            spool.close();
+        }
+    }
+
+    private void drain(List<ProducerRecord<String, byte[]>> messages, long endBlock) throws InterruptedException {
+        while (true) {
+            try {
+                kafka.publishRecords(template, messages).join();
+                log.info("[SPOOL] drained {} messages up to block {}", messages.size(), endBlock);
+                return;
+            } catch (RuntimeException ex) {
+                log.error("[SPOOL] error draining batch up to block {}, will retry", endBlock, ex);
+                Thread.sleep(publishConfig.getRetryBackoffMs());
+            }
+        }
+    }
+
+    /**
+     * @return Payload of {@code [int count, record...]}, record is
+     * {@code [topic, boolean hasKey, key, int headers, (header key, int length, value)..., int length, value]},
+     * null header value has length -1
+     */
+    private byte[] encode(List<ProducerRecord<String, Object>> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(records.size());
+        for (ProducerRecord<String, Object> record : records) {
+            Headers headers = new RecordHeaders();
+            byte[] value = serializer.serialize(record.topic(), headers, record.value());
+            out.writeUTF(record.topic());
+            out.writeBoolean(record.key() != null);
+            if (record.key() != null) {
+                out.writeUTF(record.key());
+            }
+            Header[] array = headers.toArray();
+            out.writeInt(array.length);
+            for (Header header : array) {
+                out.writeUTF(header.key());
+                if (header.value() != null) {
+                    out.writeInt(header.value().length);
+                    out.write(header.value());
+                } else {
+                    out.writeInt(-1);
+                }
+            }
+            out.writeInt(value.length);
+            out.write(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ProducerRecord<String, byte[]>> decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String topic = in.readUTF();
+            String key = in.readBoolean() ? in.readUTF() : null;
+            Headers headers = new RecordHeaders();
+            int headerCount = in.readInt();
+            for (int j = 0; j < headerCount; j++) {
+                String headerKey = in.readUTF();
+                int length = in.readInt();
+                byte[] headerValue = length >= 0 ? new byte[length] : null;
+                if (headerValue != null) {
+                    in.readFully(headerValue);
+                }
+                headers.add(headerKey, headerValue);
+            }
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            records.add(new ProducerRecord<>(topic, null, key, value, headers));
+        }
+        return records;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+        spool.close();
+        serializer.close();
+        producerFactory.destroy();
+    }
+}
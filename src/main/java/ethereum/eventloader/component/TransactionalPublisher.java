@@ -0,0 +1,152 @@
+package ethereum.eventloader.component;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Exactly-once publisher: events, blocks and checkpoint record of a batch are committed in single Kafka transaction.
+ * <p>
+ * Checkpoint is a record keyed by {@link TransactionConfig#getCheckpointKey()} in compacted
+ * {@link TransactionConfig#getStateTopic()}, read with {@code read_committed} isolation. Last committed
+ * checkpoint is cached and read again only when end offsets of the state topic moved since our own
+ * last commit, i.e. another loader committed in between.
+ * <p>
+ * All messages must be sent through the same {@link ProducerFactory}, so only single-writer loading is supported.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "event-loader.transactions.enabled", havingValue = "true")
+public class TransactionalPublisher implements DisposableBean {
+
+    private final MessageBrokerAdapter messageBroker;
+
+    private final TransactionConfig config;
+
+    private final KafkaTemplate<Object, Object> stateTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final KafkaConsumer<String, String> stateConsumer;
+
+    private List<TopicPartition> partitions;
+
+    private Map<TopicPartition, Long> endOffsets;
+
+    private long checkpoint = -1L;
+
+    @Autowired
+    public TransactionalPublisher(MessageBrokerAdapter messageBroker, TransactionConfig config,
+                                  ProducerFactory<Object, Object> producerFactory, KafkaProperties kafkaProperties,
+                                  PipelineConfig pipelineConfig, LeasingConfig leasingConfig) {
+        if (!producerFactory.transactionCapable()) {
+            throw new IllegalStateException("spring.kafka.producer.transaction-id-prefix must be set for transactional publishing");
+        }
+        if (pipelineConfig.isEnabled() || leasingConfig.isEnabled()) {
+            throw new IllegalStateException("transactional publishing supports single-writer loading only");
+        }
+        this.messageBroker = messageBroker;
+        this.config = config;
+        this.stateTemplate = new KafkaTemplate<>(producerFactory);
+        this.transactionTemplate = new TransactionTemplate(new KafkaTransactionManager<>(producerFactory));
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties();
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        this.stateConsumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer());
+    }
+
+    /**
+     * @return Last block number committed by any loader sharing the checkpoint key, -1 if none
+     */
+    public synchronized long lastCommitted() {
+        Map<TopicPartition, Long> current = stateConsumer.endOffsets(partitions());
+        if (!current.equals(endOffsets)) {
+            checkpoint = readCheckpoint(current);
+            endOffsets = current;
+            log.info("[KAFKA] checkpoint read from {}: {}", config.getStateTopic(), checkpoint);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Publish batch and its checkpoint atomically, blocks until transaction is committed
+     *
+     * @param blocks Ethereum block responses
+     * @param logs List of logs loaded from transactions
+     * @param endBlock Block number up to which batch is loaded
+     */
+    @SuppressWarnings("rawtypes")
+    public synchronized void publish(List<EthBlock.Block> blocks, List<LogResult> logs, long endBlock) {
+        try {
+            transactionTemplate.execute(status -> {
+                messageBroker.publishBatch(blocks, logs);
+                return stateTemplate.send(config.getStateTopic(), config.getCheckpointKey(), endBlock);
+            });
+        } catch (RuntimeException ex) {
+            throw new MessageBrokerException("transaction of batch up to block " + endBlock + " aborted", ex);
+        }
+        checkpoint = endBlock;
+        // own commit moved end offsets, remember them so cached checkpoint stays valid
+        endOffsets = stateConsumer.endOffsets(partitions());
+    }
+
+    private List<TopicPartition> partitions() {
+        if (partitions == null) {
+            partitions = stateConsumer.partitionsFor(config.getStateTopic()).stream()
+                    .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+                    .collect(Collectors.toList());
+            stateConsumer.assign(partitions);
+        }
+        return partitions;
+    }
+
+    private long readCheckpoint(Map<TopicPartition, Long> end) {
+        long last = -1L;
+        stateConsumer.seekToBeginning(partitions);
+        long deadline = System.currentTimeMillis() + config.getReadTimeoutMs();
+        while (!reached(end)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new MessageBrokerException("timeout reading checkpoint from " + config.getStateTopic(), null);
+            }
+            for (ConsumerRecord<String, String> record : stateConsumer.poll(Duration.ofMillis(500))) {
+                if (config.getCheckpointKey().equals(record.key()) && record.value() != null) {
+                    last = Long.parseLong(record.value());
+                }
+            }
+        }
+        return last;
+    }
+
+    private boolean reached(Map<TopicPartition, Long> end) {
+        // transaction markers occupy offsets too, so compare positions, not consumed records
+        return partitions.stream().allMatch(partition -> stateConsumer.position(partition) >= end.get(partition));
+    }
+
+    @Override
+    public void destroy() {
+        stateConsumer.close();
+    }
+}
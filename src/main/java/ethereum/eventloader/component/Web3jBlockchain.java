@@ -3,38 +3,64 @@ package ethereum.eventloader.component;
 import ethereum.eventloader.BlockchainException;
 import ethereum.eventloader.component.beans.Web3jBeans;
 import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.component.entity.LogFilter;
+import ethereum.eventloader.component.rpc.RpcLimiter;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.KafkaTopics;
 import ethereum.eventloader.config.Web3jConfig;
 import ethereum.eventloader.metrics.BlockchainMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterNumber;
 import org.web3j.protocol.core.Request;
-import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog;
 import org.web3j.protocol.core.methods.response.EthSyncing;
-import org.web3j.protocol.core.methods.response.Log;
 
 import java.io.IOException;
-import java.math.BigInteger;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
 /**
  * Web3J implementation for Ethereum Blockchain
+ * <p>
+ * Logs are loaded by {@link LogRangeFetcher} or {@link BlockReceiptsFetcher}, chosen by {@link Web3jConfig#getLogsSource()}.
+ * <p>
+ * Loaded blocks are kept in {@link BlockCache}, blocks requested again, e.g. after failed publishing,
+ * or already loaded with events for enrichment are not requested from the node.
+ * <p>
+ * With {@link Web3jConfig#isBloomFilter()} headers of the range are loaded first and logs are queried only
+ * for blocks whose {@code logsBloom} may hold topic0 and address of some route.
+ * <p>
+ * Async calls are sent with web3j {@code sendAsync}, at most {@link Web3jConfig#getRpcConcurrency()} at a time,
+ * each failing after {@link Web3jConfig#getRpcTimeoutMs()}.
  *
  * @see BlockchainAdapter
+ * @see AsyncBlockchainAdapter
  */
 @Slf4j
 @Component
-public class Web3jBlockchain implements BlockchainAdapter {
+public class Web3jBlockchain implements BlockchainAdapter, AsyncBlockchainAdapter, DisposableBean {
 
-    private Web3j web3j;
+    /* Replaced by a new client after connection failure, async calls may run on any thread */
+    private volatile Web3j web3j;
 
     private final Web3jBeans beans;
 
@@ -44,15 +70,51 @@ public class Web3jBlockchain implements BlockchainAdapter {
 
     private final BatchTransactionManager batchTxManager;
 
+    private final LogFetcher logFetcher;
+
+    private final BatchSizeController batchSize;
+
+    private final BlockCache cache;
+
+    private final BlockCacheConfig cacheConfig;
+
+    private final KafkaTopics topics;
+
+    private final RpcLimiter limiter;
+
     @Autowired
     public Web3jBlockchain(Web3jBeans beans, Web3jConfig config,
                            BlockchainMetrics metrics,
-                           BatchTransactionManager batchTxManager) {
+                           BatchTransactionManager batchTxManager,
+                           LogRangeFetcher logFetcher,
+                           BlockReceiptsFetcher receiptsFetcher,
+                           BatchSizeController batchSize,
+                           BlockCache cache,
+                           BlockCacheConfig cacheConfig,
+                           KafkaTopics topics) {
         this.beans = beans;
         this.web3j = beans.web3j();
         this.config = config;
         this.metrics = metrics;
         this.batchTxManager = batchTxManager;
+        if (Web3jConfig.LOGS_SOURCE_RECEIPTS.equals(config.getLogsSource())) {
+            this.logFetcher = receiptsFetcher;
+        } else if (Web3jConfig.LOGS_SOURCE_LOGS.equals(config.getLogsSource())) {
+            this.logFetcher = logFetcher;
+        } else {
+            throw new IllegalStateException("unknown logs source: " + config.getLogsSource());
+        }
+        this.batchSize = batchSize;
+        this.cache = cache;
+        this.cacheConfig = cacheConfig;
+        this.topics = topics;
+        this.limiter = new RpcLimiter(config.getRpcConcurrency(), config.getRpcTimeoutMs());
+        if (config.isBloomFilter() && !cache.isEnabled()) {
+            throw new IllegalStateException("logs bloom filter requires block cache");
+        }
+        if (config.isStreamLogs() && !config.getClientAddresses().isEmpty()) {
+            throw new IllegalStateException("streaming logs is not supported by nodes pool, use single client-address");
+        }
     }
 
     @Override
@@ -63,79 +125,350 @@ public class Web3jBlockchain implements BlockchainAdapter {
 
             // workaround for case when eth.syncing shows currentBlock but eth.blockNumber is zero
             if (latestBlock == 0) {
-                Object resp = web3j.ethSyncing().send().getResult(); // EthSyncing
-                if (resp instanceof EthSyncing.Syncing) {
-                    EthSyncing.Syncing syncing = (EthSyncing.Syncing) resp;
-                    String currentBlockHex = syncing.getCurrentBlock();
-                    int currentBlock = Integer.parseInt(currentBlockHex.substring(2), 16);
-                    latestBlock = currentBlock;
-                    log.info("[BLOCKCHAIN] using current block from eth.syncing: {}", currentBlock);
-                } else {
-                    log.info("[BLOCKCHAIN] not syncing. Result: " + resp);
-                }
+                latestBlock = currentBlock(web3j.ethSyncing().send());
             }
-
-            if (config.getBlockLag() > 0 && latestBlock > config.getBlockLag()) {
-                latestBlock = latestBlock - config.getBlockLag();
-            }
-
-            log.info("[BLOCKCHAIN] latest block number: {}", latestBlock);
-            this.metrics.setBlockNumber(latestBlock);
-            return latestBlock;
+            return lagged(latestBlock);
         } catch (IOException | WebsocketNotConnectedException ex) {
             this.web3j = beans.web3j();
             throw new BlockchainException(ex);
         }
     }
 
+    @Override
+    public CompletableFuture<Long> latestBlockNumberAsync() {
+        Web3j client = web3j;
+        log.info("[BLOCKCHAIN] querying latest block number...");
+        return guard(limiter.submit("eth_blockNumber", () -> client.ethBlockNumber().sendAsync())
+                .thenCompose(response -> {
+                    long latestBlock = response.getBlockNumber().longValue();
+                    if (latestBlock != 0) {
+                        return CompletableFuture.completedFuture(latestBlock);
+                    }
+                    return limiter.submit("eth_syncing", () -> client.ethSyncing().sendAsync()).thenApply(this::currentBlock);
+                })
+                .thenApply(this::lagged));
+    }
+
+    /**
+     * @return Current block reported by syncing node, zero if node isn't syncing
+     */
+    private long currentBlock(EthSyncing response) {
+        Object resp = response.getResult();
+        if (resp instanceof EthSyncing.Syncing) {
+            EthSyncing.Syncing syncing = (EthSyncing.Syncing) resp;
+            String currentBlockHex = syncing.getCurrentBlock();
+            int currentBlock = Integer.parseInt(currentBlockHex.substring(2), 16);
+            log.info("[BLOCKCHAIN] using current block from eth.syncing: {}", currentBlock);
+            return currentBlock;
+        }
+        log.info("[BLOCKCHAIN] not syncing. Result: " + resp);
+        return 0;
+    }
+
+    private long lagged(long latestBlock) {
+        if (config.getBlockLag() > 0 && latestBlock > config.getBlockLag()) {
+            latestBlock = latestBlock - config.getBlockLag();
+        }
+
+        log.info("[BLOCKCHAIN] latest block number: {}", latestBlock);
+        this.metrics.setBlockNumber(latestBlock);
+        return latestBlock;
+    }
+
     @Override
     public Events eventsLog(long latestProcessed, long latestBlock) {
         long startBlock = latestProcessed + 1;
-        long endBlock = latestBlock;
+        return eventsLog0(startBlock, batchEnd(startBlock, latestBlock));
+    }
 
-        if (endBlock - startBlock >= config.getBatchSize()) {
-            endBlock = startBlock + config.getBatchSize() - 1;
+    @Override
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<Events> eventsLogAsync(long latestProcessed, long latestBlock) {
+        long startBlock = latestProcessed + 1;
+        long endBlock = batchEnd(startBlock, latestBlock);
+        log.info("[BLOCKCHAIN] querying logs in blocks range [{}..{}]", startBlock, endBlock);
+
+        Web3j client = web3j;
+        long start = System.currentTimeMillis();
+        CompletableFuture<List<EthLog.LogResult>> logs = candidatesAsync(startBlock, endBlock)
+                .thenCompose(candidate -> limiter.submit("eth_getLogs",
+                        () -> logFetcher.fetchAsync(client, startBlock, endBlock, candidate)))
+                .thenCompose(loaded -> cacheConfig.isEnrichEvents()
+                        ? loadAsync(missingLogBlocks(loaded)).thenApply(blocks -> loaded)
+                        : CompletableFuture.completedFuture(loaded));
+        return guard(logs).whenComplete((loaded, ex) -> {
+            if (ex != null) {
+                batchSize.onFailure();
+            } else {
+                batchSize.onBatch(endBlock - startBlock + 1, loaded.size(),
+                        BatchSizeController.estimateBytes(loaded), System.currentTimeMillis() - start);
+            }
+        }).thenApply(loaded -> {
+            Events events = new Events(startBlock, endBlock);
+            if (!loaded.isEmpty()) {
+                events.addLogs(loaded);
+            }
+            log.info("[BLOCKCHAIN] total events found: {}", loaded.size());
+            return events;
+        });
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public long streamEvents(long latestProcessed, long latestBlock, Consumer<List<EthLog.LogResult>> sink) {
+        long startBlock = latestProcessed + 1;
+        long endBlock = batchEnd(startBlock, latestBlock);
+        log.info("[BLOCKCHAIN] streaming logs in blocks range [{}..{}]", startBlock, endBlock);
+
+        long[] found = {0, 0}; // logs, bytes
+        long start = System.currentTimeMillis();
+        try {
+            logFetcher.stream(web3j, startBlock, endBlock, logs -> {
+                if (cacheConfig.isEnrichEvents()) {
+                    loadLogBlocks(logs);
+                }
+                found[0] += logs.size();
+                found[1] += BatchSizeController.estimateBytes(logs);
+                sink.accept(logs);
+            });
+            batchSize.onBatch(endBlock - startBlock + 1, found[0], found[1], System.currentTimeMillis() - start);
+        } catch (IOException | WebsocketNotConnectedException ex) {
+            batchSize.onFailure();
+            this.web3j = beans.web3j();
+            throw new BlockchainException(ex);
+        } catch (BlockchainException ex) {
+            batchSize.onFailure();
+            throw ex;
         }
 
-        return eventsLog0(startBlock, endBlock);
+        log.info("[BLOCKCHAIN] total events streamed: {}", found[0]);
+        return endBlock;
+    }
+
+    /**
+     * @return Last block of the batch starting at {@code startBlock}, sized by {@link BatchSizeController}
+     */
+    private long batchEnd(long startBlock, long latestBlock) {
+        long size = batchSize.next();
+        return latestBlock - startBlock >= size ? startBlock + size - 1 : latestBlock;
     }
 
     @Override
     public List<EthBlock.Block> loadBlocks(long startBlock, long endBlock) {
-        final List<Request<?, EthBlock>> requests = new ArrayList<>();
+        final EthBlock.Block[] blocks = new EthBlock.Block[(int) Math.max(endBlock - startBlock, 0)];
+        final Map<Long, String> missing = cached(startBlock, endBlock, blocks);
+        if (!missing.isEmpty()) {
+            load(missing).forEach((number, block) -> blocks[(int) (number - startBlock)] = block);
+        }
+        return Arrays.asList(blocks);
+    }
+
+    @Override
+    public CompletableFuture<List<EthBlock.Block>> loadBlocksAsync(long startBlock, long endBlock) {
+        final EthBlock.Block[] blocks = new EthBlock.Block[(int) Math.max(endBlock - startBlock, 0)];
+        final Map<Long, String> missing = cached(startBlock, endBlock, blocks);
+        return loadAsync(missing).thenApply(loaded -> {
+            loaded.forEach((number, block) -> blocks[(int) (number - startBlock)] = block);
+            return Arrays.asList(blocks);
+        });
+    }
+
+    /**
+     * Fill {@code blocks} with cached blocks of range [startBlock -> endBlock)
+     *
+     * @return Numbers of blocks not found in the cache, mapped to {@code null} hash
+     */
+    private Map<Long, String> cached(long startBlock, long endBlock, EthBlock.Block[] blocks) {
+        final Map<Long, String> missing = new TreeMap<>();
         for (long block = startBlock; block < endBlock; block++) {
+            blocks[(int) (block - startBlock)] = cache.get(block, null);
+            if (blocks[(int) (block - startBlock)] == null) {
+                missing.put(block, null);
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public void invalidateBlocks(long fromBlock) {
+        cache.invalidate(fromBlock);
+    }
+
+    /**
+     * Load blocks from node and cache them
+     *
+     * @param numbers Block numbers mapped to expected block hashes, {@code null} hash if unknown
+     * @return Loaded blocks by number
+     * @throws BlockchainException if some blocks weren't loaded
+     */
+    private Map<Long, EthBlock.Block> load(Map<Long, String> numbers) {
+        Web3j client = web3j;
+        List<EthBlock.Block> responses;
+        try {
+            responses = this.batchTxManager.sendBatch(client, requests(client, numbers));
+        } catch (BlockchainException ex) {
+            this.web3j = beans.web3j();
+            throw ex;
+        }
+        return verify(numbers, responses);
+    }
+
+    /**
+     * Load blocks like {@link #load(Map)} without blocking the caller
+     */
+    private CompletableFuture<Map<Long, EthBlock.Block>> loadAsync(Map<Long, String> numbers) {
+        if (numbers.isEmpty()) {
+            return CompletableFuture.completedFuture(new TreeMap<>());
+        }
+        Web3j client = web3j;
+        List<Request<?, EthBlock>> requests = requests(client, numbers);
+        return limiter.submit("eth_getBlockByNumber", () -> this.batchTxManager.sendBatchAsync(client, requests))
+                .whenComplete((responses, ex) -> {
+                    if (ex != null) {
+                        this.web3j = beans.web3j();
+                    }
+                })
+                .thenApply(responses -> verify(numbers, responses));
+    }
+
+    private List<Request<?, EthBlock>> requests(Web3j client, Map<Long, String> numbers) {
+        final List<Request<?, EthBlock>> requests = new ArrayList<>(numbers.size());
+        for (long block : numbers.keySet()) {
             final DefaultBlockParameter defaultBlockParameter = new DefaultBlockParameterNumber(block);
-            final Request<?, EthBlock> request = web3j.ethGetBlockByNumber(defaultBlockParameter, config.isFullTransactionObject());
+            final Request<?, EthBlock> request = client.ethGetBlockByNumber(defaultBlockParameter, config.isFullTransactionObject());
             requests.add(request);
         }
-        return this.batchTxManager.sendBatch(requests);
+        return requests;
+    }
+
+    /**
+     * Check loaded blocks against expected hashes and cache them
+     *
+     * @param numbers Block numbers in ascending order, mapped to expected block hashes
+     * @throws BlockchainException if chain changed while blocks were loaded
+     */
+    private Map<Long, EthBlock.Block> verify(Map<Long, String> numbers, List<EthBlock.Block> responses) {
+        Map<Long, EthBlock.Block> loaded = new TreeMap<>();
+        int i = 0;
+        for (Map.Entry<Long, String> number : numbers.entrySet()) {
+            EthBlock.Block block = responses.get(i++);
+            if (block != null && number.getValue() != null && !number.getValue().equalsIgnoreCase(block.getHash())) {
+                // blocks cached before the change may be orphaned, retry must not reuse them
+                cache.invalidate(numbers.keySet().iterator().next());
+                throw new BlockchainException("chain changed while loading block " + number.getKey()
+                        + ", expected " + number.getValue() + " but loaded " + block.getHash(), null);
+            }
+            cache.put(block);
+            loaded.put(number.getKey(), block);
+        }
+        return loaded;
+    }
+
+    /**
+     * Load blocks holding logs into the cache, so that published events can be enriched with block data
+     */
+    @SuppressWarnings("rawtypes")
+    private void loadLogBlocks(List<EthLog.LogResult> logs) {
+        Map<Long, String> missing = missingLogBlocks(logs);
+        if (!missing.isEmpty()) {
+            load(missing);
+        }
+    }
+
+    /**
+     * @return Numbers of blocks holding logs, not found in the cache, mapped to block hashes of the logs
+     */
+    @SuppressWarnings("rawtypes")
+    private Map<Long, String> missingLogBlocks(List<EthLog.LogResult> logs) {
+        Map<Long, String> missing = new TreeMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (EthLog.LogResult logResult : logs) {
+            EthLog.LogObject logObject = (EthLog.LogObject) logResult;
+            long number = logObject.getBlockNumber().longValue();
+            if (seen.add(number) && cache.get(number, logObject.getBlockHash()) == null) {
+                missing.put(number, logObject.getBlockHash());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Screen blocks of the range by {@code logsBloom} of their headers against topic0 and address of the routes.
+     * Headers are put into the cache and reused for publishing.
+     *
+     * @return Accepts blocks which may hold logs needed by the routes
+     */
+    private LongPredicate candidates(long startBlock, long endBlock) {
+        LogFilter filter = bloomFilter();
+        if (filter == null) {
+            return block -> true;
+        }
+        return screen(startBlock, loadBlocks(startBlock, endBlock + 1), filter);
     }
 
+    private CompletableFuture<LongPredicate> candidatesAsync(long startBlock, long endBlock) {
+        LogFilter filter = bloomFilter();
+        if (filter == null) {
+            return CompletableFuture.completedFuture(block -> true);
+        }
+        return loadBlocksAsync(startBlock, endBlock + 1).thenApply(blocks -> screen(startBlock, blocks, filter));
+    }
+
+    /**
+     * @return Filter of logs needed by the routes, {@code null} if blocks aren't screened
+     */
+    private LogFilter bloomFilter() {
+        if (!config.isBloomFilter() || !config.isFilterLogs()) {
+            return null;
+        }
+        LogFilter filter = LogFilter.of(topics.getRoutes());
+        return filter == LogFilter.ANY ? null : filter;
+    }
+
+    private LongPredicate screen(long startBlock, List<EthBlock.Block> blocks, LogFilter filter) {
+        BitSet candidates = new BitSet(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            EthBlock.Block block = blocks.get(i);
+            if (block == null || filter.mayMatch(block.getLogsBloom())) {
+                candidates.set(i);
+            }
+        }
+        int skipped = blocks.size() - candidates.cardinality();
+        metrics.addBloomSkippedBlocks(skipped);
+        log.info("[BLOCKCHAIN] {} of {} blocks skipped by logs bloom", skipped, blocks.size());
+        return block -> candidates.get((int) (block - startBlock));
+    }
+
+    @SuppressWarnings("rawtypes")
     public Events eventsLog0(long startBlock, long endBlock) {
         Events events = new Events(startBlock, endBlock);
         log.info("[BLOCKCHAIN] querying logs in blocks range [{}..{}]", startBlock, endBlock);
 
         int foundLogsCount = 0;
+        long start = System.currentTimeMillis();
 
         try {
             log.info("[BLOCKCHAIN] querying logs in blocks (from: {}, to: {})", startBlock, endBlock);
-            EthFilter filter = new EthFilter(
-                    DefaultBlockParameter.valueOf(BigInteger.valueOf(startBlock)),
-                    DefaultBlockParameter.valueOf(BigInteger.valueOf(endBlock)),
-                    (List<String>) null);
-            EthLog ethLog = web3j.ethGetLogs(filter).send();
-            foundLogsCount = ethLog.getLogs().size();
+            List<EthLog.LogResult> logs = logFetcher.fetch(web3j, startBlock, endBlock, candidates(startBlock, endBlock));
+            if (cacheConfig.isEnrichEvents()) {
+                loadLogBlocks(logs);
+            }
+            foundLogsCount = logs.size();
             if (foundLogsCount > 0) {
                 log.info("[BLOCKCHAIN] found {} events", foundLogsCount);
-                for (EthLog.LogResult<Log> logResult : ethLog.getLogs()) {
-                    events.addLogs(logResult.get().getBlockNumber().longValue(), ethLog.getLogs());
-                }
+                events.addLogs(logs);
             } else {
                 log.warn("[BLOCKCHAIN] no events found in blocks (from: {}, to: {})", startBlock, endBlock);
             }
+            batchSize.onBatch(endBlock - startBlock + 1, foundLogsCount,
+                    BatchSizeController.estimateBytes(logs), System.currentTimeMillis() - start);
         } catch (IOException | WebsocketNotConnectedException ex) {
+            batchSize.onFailure();
             this.web3j = beans.web3j();
             throw new BlockchainException(ex);
+        } catch (BlockchainException ex) {
+            batchSize.onFailure();
+            throw ex;
         }
 
         log.info("[BLOCKCHAIN] total events found: {}", foundLogsCount);
@@ -153,4 +486,41 @@ public class Web3jBlockchain implements BlockchainAdapter {
             throw new BlockchainException(ex);
         }
     }
+
+    @Override
+    public CompletableFuture<EthSyncing> syncingAsync() {
+        Web3j client = web3j;
+        return guard(limiter.submit("eth_syncing", () -> client.ethSyncing().sendAsync())
+                .thenApply(syncing -> {
+                    this.metrics.setSyncStatus(syncing.isSyncing());
+                    return syncing;
+                }));
+    }
+
+    /**
+     * Fail the call with {@link BlockchainException}, client is replaced when node wasn't reachable
+     */
+    private <T> CompletableFuture<T> guard(CompletableFuture<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = ex;
+            while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException || cause instanceof WebsocketNotConnectedException) {
+                this.web3j = beans.web3j();
+            }
+            result.completeExceptionally(cause instanceof BlockchainException ? cause : new BlockchainException(cause));
+        });
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        limiter.close();
+    }
 }
@@ -0,0 +1,51 @@
+package ethereum.eventloader.component.beans;
+
+import ethereum.eventloader.component.checkpoint.AsyncCheckpointStore;
+import ethereum.eventloader.component.checkpoint.CheckpointStore;
+import ethereum.eventloader.component.checkpoint.FileCheckpointStore;
+import ethereum.eventloader.component.checkpoint.KafkaCheckpointStore;
+import ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore;
+import ethereum.eventloader.config.CheckpointConfig;
+import ethereum.eventloader.config.LeaderConfig;
+import ethereum.eventloader.config.LeasingConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CheckpointBeans {
+
+    private final CheckpointConfig config;
+
+    @Bean
+    public CheckpointStore initCheckpointStore(@Lazy CuratorFramework curatorFramework, KafkaProperties kafkaProperties,
+                                               LeasingConfig leasingConfig, LeaderConfig leaderConfig) throws IOException {
+        boolean zookeeper = CheckpointConfig.STORE_ZOOKEEPER.equals(config.getStore());
+        if (!zookeeper && (leasingConfig.isEnabled() || leaderConfig.isEnabled())) {
+            throw new IllegalStateException("range leasing and leader election require zookeeper checkpoint store");
+        }
+        CheckpointStore store;
+        if (zookeeper) {
+            store = new ZookeeperCheckpointStore(curatorFramework);
+        } else if (CheckpointConfig.STORE_FILE.equals(config.getStore())) {
+            store = new FileCheckpointStore(Paths.get(config.getFile()));
+        } else if (CheckpointConfig.STORE_KAFKA.equals(config.getStore())) {
+            store = new KafkaCheckpointStore(kafkaProperties.buildProducerProperties(), kafkaProperties.buildConsumerProperties(),
+                    config.getTopic(), config.getKey(), config.getReadTimeoutMs());
+        } else {
+            throw new IllegalStateException("unknown checkpoint store: " + config.getStore());
+        }
+        log.info("[CHECKPOINT] {} store, async: {}", config.getStore(), config.isAsync());
+        return config.isAsync() ? new AsyncCheckpointStore(store) : store;
+    }
+
+}
@@ -0,0 +1,74 @@
+package ethereum.eventloader.component.beans;
+
+import ethereum.eventloader.component.rpc.LogStreamParser;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.JsonRpc2_0Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Web3j client with JSON-RPC methods not provided by web3j
+ */
+public class ExtendedWeb3j extends JsonRpc2_0Web3j {
+
+    public ExtendedWeb3j(Web3jService web3jService) {
+        super(web3jService);
+    }
+
+    /**
+     * {@code eth_getBlockReceipts}, supported by geth, erigon, nethermind and besu
+     *
+     * @param block Block number
+     * @return Receipts of all transactions in the block, {@code null} result if block is unknown
+     */
+    public Request<?, EthBlockReceipts> ethGetBlockReceipts(DefaultBlockParameter block) {
+        return new Request<>(
+                "eth_getBlockReceipts",
+                Collections.singletonList(block.getValue()),
+                web3jService,
+                EthBlockReceipts.class);
+    }
+
+    /**
+     * {@code eth_getLogs} handing logs to {@code sink} while the response is read, when service is
+     * {@link StreamingHttpService}, otherwise after the whole response is deserialized
+     *
+     * @param filter Logs filter
+     * @param sink Consumer of logs, called on the calling thread
+     * @return Error returned by the node, {@code null} on success
+     * @throws IOException Node is not reachable
+     */
+    @SuppressWarnings("rawtypes")
+    public Response.Error ethGetLogs(EthFilter filter, Consumer<LogResult> sink) throws IOException {
+        Request<?, EthLog> request = ethGetLogs(filter);
+        if (web3jService instanceof StreamingHttpService) {
+            try (InputStream in = ((StreamingHttpService) web3jService).stream(request)) {
+                return LogStreamParser.parse(in, sink);
+            }
+        }
+        EthLog ethLog = request.send();
+        if (ethLog.hasError()) {
+            return ethLog.getError();
+        }
+        ethLog.getLogs().forEach(sink);
+        return null;
+    }
+
+    public static class EthBlockReceipts extends Response<List<TransactionReceipt>> {
+
+        public List<TransactionReceipt> getReceipts() {
+            return getResult();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ethereum.eventloader.component.beans;
+
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.messages.binary.TopicFormatSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Switches value serializer of the producer factory to {@link TopicFormatSerializer}
+ * when any topic is configured with binary format. Producers are created lazily on first send,
+ * so all of them get the serializer. Confirmed topics of binary topics are published in binary format too.
+ */
+@Slf4j
+@Component
+public class KafkaBeans {
+
+    private final Set<String> binaryTopics;
+
+    public KafkaBeans(KafkaTopics topics, ReorgConfig reorgConfig, ProducerFactory<Object, Object> producerFactory) {
+        Set<String> binaryTopics = new HashSet<>(topics.getRoutes().getBinaryTopics());
+        if (reorgConfig.isEnabled() && reorgConfig.getConfirmations() > 0) {
+            topics.getRoutes().getBinaryTopics().forEach(topic -> binaryTopics.add(topic + reorgConfig.getConfirmedSuffix()));
+        }
+        this.binaryTopics = Collections.unmodifiableSet(binaryTopics);
+        if (binaryTopics.isEmpty()) {
+            return;
+        }
+        if (!(producerFactory instanceof DefaultKafkaProducerFactory)) {
+            throw new IllegalStateException("binary format requires DefaultKafkaProducerFactory");
+        }
+        DefaultKafkaProducerFactory<Object, Object> factory = (DefaultKafkaProducerFactory<Object, Object>) producerFactory;
+        factory.setValueSerializer(new TopicFormatSerializer(binaryTopics, factory.getConfigurationProperties()));
+        log.info("[KAFKA] binary format topics: {}", binaryTopics);
+    }
+
+    /**
+     * @return Topics published in binary format, confirmed topics included
+     */
+    public Set<String> getBinaryTopics() {
+        return binaryTopics;
+    }
+}
@@ -0,0 +1,72 @@
+package ethereum.eventloader.component.beans;
+
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+
+/**
+ * Records size of node responses in {@link BlockchainMetrics}.
+ * <p>
+ * Size is taken from Content-Length when node sends it, chunked and compressed bodies are counted while they
+ * are read and recorded once they are exhausted or closed.
+ */
+public class ResponseSizeInterceptor implements Interceptor {
+
+    private final BlockchainMetrics metrics;
+
+    public ResponseSizeInterceptor(BlockchainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        if (body.contentLength() >= 0) {
+            metrics.recordRpcResponseBytes(body.contentLength());
+            return response;
+        }
+        ForwardingSource counting = new ForwardingSource(body.source()) {
+
+            private long bytes;
+
+            private boolean recorded;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read < 0) {
+                    record();
+                } else {
+                    bytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                record();
+                super.close();
+            }
+
+            private void record() {
+                if (!recorded) {
+                    recorded = true;
+                    metrics.recordRpcResponseBytes(bytes);
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(counting), body.contentType(), -1L))
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package ethereum.eventloader.component.beans;
+
+import okhttp3.OkHttpClient;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link HttpService} giving access to the response body stream, so that large responses
+ * can be parsed while they are received instead of being deserialized at once
+ */
+public class StreamingHttpService extends HttpService {
+
+    public StreamingHttpService(String url, OkHttpClient httpClient) {
+        super(url, httpClient, false);
+    }
+
+    /**
+     * @param request JSON-RPC request
+     * @return Response body, must be closed by caller
+     * @throws IOException Node is not reachable or answered with HTTP error
+     */
+    public InputStream stream(Request<?, ?> request) throws IOException {
+        InputStream in = performIO(objectMapper.writeValueAsString(request));
+        if (in == null) {
+            throw new IOException("empty response to " + request.getMethod());
+        }
+        return in;
+    }
+}
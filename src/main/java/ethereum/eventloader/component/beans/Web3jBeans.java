@@ -1,9 +1,14 @@
 package ethereum.eventloader.component.beans;
 
+import ethereum.eventloader.component.rpc.PooledWeb3jService;
+import ethereum.eventloader.component.rpc.RpcEndpoint;
+import ethereum.eventloader.config.RpcPoolConfig;
 import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 import org.web3j.protocol.Web3j;
@@ -14,20 +19,76 @@ import org.web3j.protocol.ipc.WindowsIpcService;
 import org.web3j.protocol.websocket.WebSocketService;
 
 import java.net.ConnectException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class Web3jBeans {
+public class Web3jBeans implements DisposableBean {
 
     private final Web3jConfig config;
 
+    private final RpcPoolConfig poolConfig;
+
+    private final BlockchainMetrics metrics;
+
+    private PooledWeb3jService pool;
+
+    /**
+     * Client of {@link Web3jConfig#getClientAddress()}, built again on every call to reconnect,
+     * or client of the nodes pool shared by all calls, pool reconnects failed endpoints itself
+     */
     @Bean
     public Web3j web3j() {
+        if (!config.getClientAddresses().isEmpty()) {
+            return new ExtendedWeb3j(pool());
+        }
         log.info("[WEB3J] building service for endpoint: " + config.getClientAddress());
         Web3jService web3jService = buildService(config.getClientAddress());
-        return Web3j.build(web3jService);
+        return new ExtendedWeb3j(web3jService);
+    }
+
+    private synchronized PooledWeb3jService pool() {
+        if (pool == null) {
+            List<RpcEndpoint> endpoints = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            for (String address : config.getClientAddresses()) {
+                String name = endpointName(address);
+                if (!names.add(name)) {
+                    name = name + "#" + endpoints.size();
+                    names.add(name);
+                }
+                log.info("[WEB3J] adding endpoint {} to nodes pool", name);
+                endpoints.add(new RpcEndpoint(name, () -> buildService(address)));
+            }
+            pool = new PooledWeb3jService(endpoints, poolConfig, metrics);
+        }
+        return pool;
+    }
+
+    /**
+     * Host and port of the address, address may hold credentials in path or query
+     */
+    private static String endpointName(String address) {
+        try {
+            URI uri = URI.create(address);
+            if (uri.getHost() != null) {
+                return uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+            }
+        } catch (IllegalArgumentException ignored) { }
+        return address;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     private Web3jService buildService(String clientAddress) {
@@ -36,7 +97,7 @@ public class Web3jBeans {
         if (clientAddress == null || clientAddress.equals("")) {
             web3jService = new HttpService(createOkHttpClient());
         } else if (clientAddress.startsWith("http") || clientAddress.startsWith("https")) {
-            web3jService = new HttpService(clientAddress, createOkHttpClient(), false);
+            web3jService = new StreamingHttpService(clientAddress, createOkHttpClient());
         } else if(clientAddress.startsWith("ws") || clientAddress.startsWith("wss")) {
             web3jService = new WebSocketService(clientAddress, false);
             try {
@@ -55,6 +116,7 @@ public class Web3jBeans {
 
     private OkHttpClient createOkHttpClient() {
         OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        builder.addInterceptor(new ResponseSizeInterceptor(metrics));
         configureTimeouts(builder);
         return builder.build();
     }
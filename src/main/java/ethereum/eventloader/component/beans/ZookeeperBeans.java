@@ -6,6 +6,7 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -14,6 +15,10 @@ public class ZookeeperBeans {
 
     private final ZookeeperProperties properties;
 
+    /**
+     * Client is created on first use, so loader with local checkpoint store needs no Zookeeper
+     */
+    @Lazy
     @Bean
     public CuratorFramework initCuratorFramework() {
         CuratorFramework framework = CuratorFrameworkFactory.builder()
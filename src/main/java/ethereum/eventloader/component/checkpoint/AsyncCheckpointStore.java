@@ -0,0 +1,137 @@
+package ethereum.eventloader.component.checkpoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves checkpoint of wrapped store in background, so loading doesn't wait for durable writes.
+ * <p>
+ * Save only records the block and returns, single writer thread writes the latest recorded block:
+ * blocks saved while previous write is in progress are coalesced into one write. Load returns the latest
+ * recorded block until it is written. Failed write is retried and reported by the next save.
+ * Lock of shared store is released only after pending block is written, so the next lock holder reads it.
+ * After a crash checkpoint may lag behind published events, which are then published again.
+ */
+@Slf4j
+public class AsyncCheckpointStore implements CheckpointStore {
+
+    private static final long RETRY_BACKOFF_MS = 1000L;
+
+    private final CheckpointStore store;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long pending = -1L;
+
+    /**
+     * Incremented on every save, writer is done when it wrote the block of the latest sequence
+     */
+    private long sequence;
+
+    private long written;
+
+    private Exception failure;
+
+    public AsyncCheckpointStore(CheckpointStore store) {
+        this.store = store;
+        executor.submit(this::writeLoop);
+    }
+
+    @Override
+    public synchronized long load() throws Exception {
+        // written block may be moved by another loader once lock is released
+        return written < sequence ? pending : store.load();
+    }
+
+    @Override
+    public synchronized void save(long block) throws Exception {
+        if (failure != null) {
+            Exception ex = failure;
+            failure = null;
+            throw ex;
+        }
+        pending = block;
+        sequence++;
+        notifyAll();
+    }
+
+    @Override
+    public AutoCloseable lock(long timeout, TimeUnit unit) throws Exception {
+        AutoCloseable lock = store.lock(timeout, unit);
+        if (lock == null) {
+            return null;
+        }
+        return () -> {
+            try {
+                flush();
+            } finally {
+                lock.close();
+            }
+        };
+    }
+
+    /**
+     * Wait until the latest saved block is written
+     */
+    public synchronized void flush() throws Exception {
+        while (written < sequence) {
+            if (failure != null) {
+                Exception ex = failure;
+                failure = null;
+                throw ex;
+            }
+            wait(RETRY_BACKOFF_MS);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long block;
+                long taken;
+                synchronized (this) {
+                    while (written == sequence) {
+                        wait();
+                    }
+                    block = pending;
+                    taken = sequence;
+                }
+                try {
+                    store.save(block);
+                    synchronized (this) {
+                        written = taken;
+                        failure = null;
+                        notifyAll();
+                    }
+                } catch (Exception ex) {
+                    log.error("[CHECKPOINT] error saving block {}, will retry", block, ex);
+                    synchronized (this) {
+                        failure = ex;
+                        notifyAll();
+                    }
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                }
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            log.error("[CHECKPOINT] block {} is not saved on close", pending, ex);
+        }
+        executor.shutdownNow();
+        store.close();
+    }
+}
@@ -0,0 +1,34 @@
+package ethereum.eventloader.component.checkpoint;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage of the last processed block, the block up to which all events are published.
+ */
+public interface CheckpointStore extends Closeable {
+
+    /**
+     * @return Last saved block, 0 if nothing was saved yet
+     */
+    long load() throws Exception;
+
+    /**
+     * Save last processed block, overwriting previous one
+     *
+     * @param block Processed block
+     */
+    void save(long block) throws Exception;
+
+    /**
+     * Exclusive access to the checkpoint for loaders sharing the store, held for a load iteration
+     *
+     * @return Lock released on close, null if store has single writer and needs no lock
+     */
+    default AutoCloseable lock(long timeout, TimeUnit unit) throws Exception {
+        return null;
+    }
+
+    @Override
+    default void close() { }
+}
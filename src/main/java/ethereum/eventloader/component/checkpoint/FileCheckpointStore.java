@@ -0,0 +1,91 @@
+package ethereum.eventloader.component.checkpoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoint in local file of single loader.
+ * <p>
+ * Block is written as text to a temporary file, which is flushed to disk and renamed over the checkpoint file,
+ * so after a crash the file holds either previous or new block. Directory is flushed too, to make rename durable.
+ * Lock of a sibling {@code .lock} file is held while store is open, so second loader on the same file fails to start.
+ */
+@Slf4j
+public class FileCheckpointStore implements CheckpointStore {
+
+    private final Path path;
+
+    private final Path temp;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    public FileCheckpointStore(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        this.path = absolute;
+        this.temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        this.lockChannel = FileChannel.open(absolute.resolveSibling(absolute.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IllegalStateException("checkpoint file " + absolute + " is used by another loader");
+        }
+        this.lock = acquired;
+        log.info("[CHECKPOINT] file store {}", absolute);
+    }
+
+    @Override
+    public long load() throws IOException {
+        if (!Files.exists(path)) {
+            return 0L;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim());
+    }
+
+    @Override
+    public void save(long block) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap((block + "\n").getBytes(StandardCharsets.US_ASCII));
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel directory = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ex) {
+            // directories can't be opened for flushing on some platforms, rename is then as durable as it gets
+            log.debug("[CHECKPOINT] directory {} is not flushed", path.getParent(), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException ex) {
+            log.warn("[CHECKPOINT] error releasing lock of {}", path, ex);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ethereum.eventloader.component.checkpoint;
+
+import ethereum.eventloader.MessageBrokerException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Checkpoint as a record keyed by loader in compacted topic, so loader needs no storage besides Kafka.
+ * <p>
+ * Topic is read from the beginning once, afterwards the block is cached: only this loader writes its key.
+ * Record is sent with {@code acks=all} and save waits for the acknowledgement.
+ */
+@Slf4j
+public class KafkaCheckpointStore implements CheckpointStore {
+
+    private final String topic;
+
+    private final String key;
+
+    private final long readTimeoutMs;
+
+    private final KafkaProducer<String, String> producer;
+
+    private final KafkaConsumer<String, String> consumer;
+
+    private long checkpoint = -1L;
+
+    /**
+     * @param producerProps Kafka producer properties, serializers and transactions are overridden
+     * @param consumerProps Kafka consumer properties, deserializers and offset commits are overridden
+     * @param topic Compacted topic holding checkpoint records
+     * @param key Key of checkpoint record of this loader
+     * @param readTimeoutMs Max time to read checkpoint from the topic
+     */
+    public KafkaCheckpointStore(Map<String, Object> producerProps, Map<String, Object> consumerProps,
+                                String topic, String key, long readTimeoutMs) {
+        if (topic == null || topic.isEmpty()) {
+            throw new IllegalStateException("topic of kafka checkpoint store must be set");
+        }
+        this.topic = topic;
+        this.key = key;
+        this.readTimeoutMs = readTimeoutMs;
+        Map<String, Object> producerConfig = new HashMap<>(producerProps);
+        producerConfig.remove(ProducerConfig.TRANSACTIONAL_ID_CONFIG);
+        producerConfig.put(ProducerConfig.ACKS_CONFIG, "all");
+        this.producer = new KafkaProducer<>(producerConfig, new StringSerializer(), new StringSerializer());
+        Map<String, Object> consumerConfig = new HashMap<>(consumerProps);
+        consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerConfig.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        this.consumer = new KafkaConsumer<>(consumerConfig, new StringDeserializer(), new StringDeserializer());
+    }
+
+    @Override
+    public synchronized long load() {
+        if (checkpoint < 0) {
+            checkpoint = read();
+            log.info("[CHECKPOINT] read from {}: {}", topic, checkpoint);
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public synchronized void save(long block) throws Exception {
+        producer.send(new ProducerRecord<>(topic, key, Long.toString(block))).get();
+        checkpoint = block;
+    }
+
+    private long read() {
+        List<TopicPartition> partitions = consumer.partitionsFor(topic).stream()
+                .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+                .collect(Collectors.toList());
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        long last = 0L;
+        long deadline = System.currentTimeMillis() + readTimeoutMs;
+        // transaction markers occupy offsets too, so compare positions, not consumed records
+        while (!partitions.stream().allMatch(partition -> consumer.position(partition) >= end.get(partition))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new MessageBrokerException("timeout reading checkpoint from " + topic, null);
+            }
+            for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(500))) {
+                if (key.equals(record.key()) && record.value() != null) {
+                    last = Long.parseLong(record.value());
+                }
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+        consumer.close();
+    }
+}
@@ -0,0 +1,45 @@
+package ethereum.eventloader.component.checkpoint;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.Locker;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint in znode shared by all replicas, loading is serialized by {@link InterProcessMutex} on the same path.
+ */
+public class ZookeeperCheckpointStore implements CheckpointStore {
+
+    public static final String ZNODE_PROCESSED_BLOCK = "/processed_block";
+
+    private final CuratorFramework curatorFramework;
+
+    private final DistributedAtomicLong lastBlock;
+
+    public ZookeeperCheckpointStore(CuratorFramework curatorFramework) {
+        this.curatorFramework = curatorFramework;
+        this.lastBlock = new DistributedAtomicLong(
+                curatorFramework,
+                ZNODE_PROCESSED_BLOCK,
+                new ExponentialBackoffRetry(1000, 5)
+        );
+    }
+
+    @Override
+    public long load() throws Exception {
+        return lastBlock.get().preValue();
+    }
+
+    @Override
+    public void save(long block) throws Exception {
+        lastBlock.forceSet(block);
+    }
+
+    @Override
+    public AutoCloseable lock(long timeout, TimeUnit unit) throws Exception {
+        return new Locker(new InterProcessMutex(curatorFramework, ZNODE_PROCESSED_BLOCK), timeout, unit);
+    }
+}
@@ -0,0 +1,32 @@
+package ethereum.eventloader.component.entity;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit of work passed between pipeline stages: events and blocks fetched after {@code lastProcessed}
+ */
+@Getter
+@RequiredArgsConstructor
+public class Batch {
+
+    private final long lastProcessed;
+    private final Events events;
+    private final List<EthBlock.Block> blocks;
+
+    /**
+     * Completed when the batch is acknowledged by message broker
+     */
+    @Setter
+    private CompletableFuture<Void> ack;
+
+    public long getEndBlock() {
+        return events.getEndBlock();
+    }
+
+}
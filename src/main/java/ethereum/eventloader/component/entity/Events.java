@@ -1,55 +1,185 @@
 package ethereum.eventloader.component.entity;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
 
+/**
+ * Logs loaded from blocks range [startBlock -> endBlock].
+ * <p>
+ * Logs are kept in single array ordered by (block, logIndex) without duplicates,
+ * {@code blocks}/{@code offsets} index points to first log of every block containing logs.
+ * Addresses and topics repeated across logs share the same {@link String} instance.
+ */
 @Slf4j
 @SuppressWarnings("rawtypes")
 public class Events {
-	
+
+	private static final LogResult[] EMPTY = new LogResult[0];
+
 	private final long startBlock;
 	private final long endBlock;
-	private final Map<Long, List<LogResult>> logs;
-	
+	private final Map<String, String> pool = new HashMap<>();
+
+	private LogResult[] logs = EMPTY;
+	private long[] logBlocks = new long[0];
+	private long[] logIndexes = new long[0];
+	private int size;
+
+	private long[] blocks = new long[0];
+	private int[] offsets = new int[0];
+	private int blockCount;
+
 	public Events(long startBlock, long endBlock) {
 		this.startBlock = startBlock;
 		this.endBlock = endBlock;
-		this.logs = new LinkedHashMap<>();
 	}
 
-    public long getStartBlock() {
+	public long getStartBlock() {
 		return startBlock;
 	}
 
 	public long getEndBlock() {
 		return endBlock;
 	}
-	
-	public void addLogs(long block, List<LogResult> list) {
-		logs.put(block, list);
+
+	/**
+	 * Add logs of any blocks in range, logs already added are ignored
+	 *
+	 * @param list Logs returned by the node
+	 */
+	public void addLogs(List<LogResult> list) {
+		if (list.isEmpty()) {
+			return;
+		}
+		int total = size + list.size();
+		LogResult[] merged = Arrays.copyOf(logs, total);
+		long[] mergedBlocks = Arrays.copyOf(logBlocks, total);
+		long[] mergedIndexes = Arrays.copyOf(logIndexes, total);
+		boolean sorted = true;
+		for (int i = size; i < total; i++) {
+			LogResult logResult = list.get(i - size);
+			Log event = (Log) logResult;
+			intern(event);
+			merged[i] = logResult;
+			mergedBlocks[i] = quantity(event.getBlockNumberRaw());
+			mergedIndexes[i] = quantity(event.getLogIndexRaw());
+			sorted &= i == 0 || compare(mergedBlocks, mergedIndexes, i - 1, i) <= 0;
+		}
+		if (!sorted) {
+			sort(merged, mergedBlocks, mergedIndexes, total);
+		}
+		compact(merged, mergedBlocks, mergedIndexes, total);
 	}
-	
+
+	/**
+	 * @param afterBlock Block number, logs of which and all before are skipped
+	 * @return Read-only view of logs in blocks after {@code afterBlock}
+	 */
 	public List<LogResult> getLogs(long afterBlock) {
-		int skipped = 0;
-		List<LogResult> all = new ArrayList<>();
-		for (Entry<Long, List<LogResult>> e: logs.entrySet()) {
-			List<LogResult> events = e.getValue();
-			Long block = e.getKey();
-			if (block > afterBlock) {
-				all.addAll(events);
-			} else {
-				skipped += events.size();
+		int from = offset(afterBlock + 1);
+		if (from > 0) {
+			log.info("[EVENTS] skipped {} events", from);
+		}
+		return view(from, size);
+	}
+
+	/**
+	 * @param block Block number
+	 * @return Read-only view of logs in the block
+	 */
+	public List<LogResult> getBlockLogs(long block) {
+		return view(offset(block), offset(block + 1));
+	}
+
+	/**
+	 * @return Amount of logs
+	 */
+	public int size() {
+		return size;
+	}
+
+	private List<LogResult> view(int from, int to) {
+		return Collections.unmodifiableList(Arrays.asList(logs).subList(from, to));
+	}
+
+	/**
+	 * @return Position of the first log in block {@code block} or later
+	 */
+	private int offset(long block) {
+		int i = Arrays.binarySearch(blocks, 0, blockCount, block);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return i < blockCount ? offsets[i] : size;
+	}
+
+	private void compact(LogResult[] merged, long[] mergedBlocks, long[] mergedIndexes, int total) {
+		int count = 0;
+		long[] newBlocks = new long[total];
+		int[] newOffsets = new int[total];
+		int newBlockCount = 0;
+		for (int i = 0; i < total; i++) {
+			if (count > 0 && compare(mergedBlocks, mergedIndexes, count - 1, i) == 0) {
+				continue;
 			}
+			merged[count] = merged[i];
+			mergedBlocks[count] = mergedBlocks[i];
+			mergedIndexes[count] = mergedIndexes[i];
+			if (newBlockCount == 0 || newBlocks[newBlockCount - 1] != mergedBlocks[count]) {
+				newBlocks[newBlockCount] = mergedBlocks[count];
+				newOffsets[newBlockCount] = count;
+				newBlockCount++;
+			}
+			count++;
+		}
+		this.logs = count == total ? merged : Arrays.copyOf(merged, count);
+		this.logBlocks = count == total ? mergedBlocks : Arrays.copyOf(mergedBlocks, count);
+		this.logIndexes = count == total ? mergedIndexes : Arrays.copyOf(mergedIndexes, count);
+		this.size = count;
+		this.blocks = Arrays.copyOf(newBlocks, newBlockCount);
+		this.offsets = Arrays.copyOf(newOffsets, newBlockCount);
+		this.blockCount = newBlockCount;
+	}
+
+	private static void sort(LogResult[] logs, long[] blocks, long[] indexes, int total) {
+		Integer[] order = new Integer[total];
+		for (int i = 0; i < total; i++) {
+			order[i] = i;
 		}
-		if (skipped > 0) {
-			log.info("[EVENTS] skipped {} events", skipped);
+		Arrays.sort(order, Comparator.comparingLong((Integer i) -> blocks[i]).thenComparingLong(i -> indexes[i]));
+		LogResult[] sortedLogs = logs.clone();
+		long[] sortedBlocks = blocks.clone();
+		long[] sortedIndexes = indexes.clone();
+		for (int i = 0; i < total; i++) {
+			logs[i] = sortedLogs[order[i]];
+			blocks[i] = sortedBlocks[order[i]];
+			indexes[i] = sortedIndexes[order[i]];
 		}
-		return all;
+	}
+
+	private void intern(Log event) {
+		if (event.getAddress() != null) {
+			event.setAddress(pool.computeIfAbsent(event.getAddress(), a -> a));
+		}
+		if (event.getTopics() != null) {
+			event.getTopics().replaceAll(topic -> pool.computeIfAbsent(topic, t -> t));
+		}
+	}
+
+	private static int compare(long[] blocks, long[] indexes, int a, int b) {
+		int cmp = Long.compare(blocks[a], blocks[b]);
+		return cmp != 0 ? cmp : Long.compare(indexes[a], indexes[b]);
+	}
+
+	private static long quantity(String hex) {
+		return hex == null ? -1L : Long.parseLong(hex.substring(2), 16);
 	}
 }
@@ -0,0 +1,213 @@
+package ethereum.eventloader.component.entity;
+
+import ethereum.eventloader.config.EventRoutes;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Topic0 values and contract addresses of logs needed by the configured routes,
+ * pushed to the node in {@code eth_getLogs} filters. Empty list matches any value.
+ * <p>
+ * Filter is also checked against {@code logsBloom} of block headers: 2048-bit bloom holding address and topics
+ * of every log of the block, each set as 3 bits taken from keccak256 of the value.
+ */
+public class LogFilter {
+
+    /**
+     * Every log is needed, some route has wildcard event
+     */
+    public static final LogFilter ANY = new LogFilter(Collections.emptyList(), Collections.emptyList());
+
+    /**
+     * No log is needed, routes publish blocks only
+     */
+    public static final LogFilter NONE = new LogFilter(Collections.emptyList(), Collections.emptyList());
+
+    private static final int BLOOM_BYTES = 256;
+
+    private final List<String> topic0s;
+
+    private final List<String> addresses;
+
+    /**
+     * Bloom bits of every topic0 and address, computed on first check
+     */
+    private volatile int[][] topicBits;
+
+    private volatile int[][] addressBits;
+
+    public LogFilter(List<String> topic0s, List<String> addresses) {
+        this.topic0s = topic0s;
+        this.addresses = addresses;
+    }
+
+    /**
+     * @param routes Compiled routes
+     * @return Filter on topic0 values of all routes and on addresses when every route has one
+     */
+    public static LogFilter of(EventRoutes routes) {
+        if (routes.hasWildcard()) {
+            return ANY;
+        }
+        if (routes.getTopic0s().isEmpty()) {
+            return NONE;
+        }
+        return new LogFilter(sorted(routes.getTopic0s()), sorted(routes.getAddresses()));
+    }
+
+    public List<String> getTopic0s() {
+        return topic0s;
+    }
+
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Split into filters with at most {@code maxTopics} topic0 values and {@code maxAddresses} addresses.
+     * Every log matches single part at most, so results of parts don't overlap.
+     *
+     * @return Parts covering this filter, empty for {@link #NONE}
+     */
+    public List<LogFilter> split(int maxTopics, int maxAddresses) {
+        if (this == NONE) {
+            return Collections.emptyList();
+        }
+        List<LogFilter> parts = new ArrayList<>();
+        for (List<String> topics : chunks(topic0s, maxTopics)) {
+            for (List<String> addressChunk : chunks(addresses, maxAddresses)) {
+                parts.add(new LogFilter(topics, addressChunk));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Check bloom of block header, some topic0 and some address of this filter must be in the bloom
+     *
+     * @param logsBloom Hex encoded bloom of block header
+     * @return false if no log of the block matches this filter, true if some may match
+     */
+    public boolean mayMatch(String logsBloom) {
+        if (this == NONE) {
+            return false;
+        }
+        if (this == ANY || logsBloom == null) {
+            return true;
+        }
+        byte[] bloom = Numeric.hexStringToByteArray(logsBloom);
+        if (bloom.length != BLOOM_BYTES) {
+            return true;
+        }
+        if (topicBits == null) {
+            topicBits = bits(topic0s);
+            addressBits = bits(addresses);
+        }
+        return containsAny(bloom, topicBits) && (addresses.isEmpty() || containsAny(bloom, addressBits));
+    }
+
+    /**
+     * Check log of a receipt, which unlike {@code eth_getLogs} result is not filtered by the node
+     *
+     * @param address Contract address of the log
+     * @param topics Topics of the log
+     * @return true if topic0 and address of the log are in this filter
+     */
+    public boolean matches(String address, List<String> topics) {
+        if (this == NONE) {
+            return false;
+        }
+        if (this == ANY) {
+            return true;
+        }
+        if (!topic0s.isEmpty() && (topics == null || topics.isEmpty()
+                || Collections.binarySearch(topic0s, lowerCase(topics.get(0))) < 0)) {
+            return false;
+        }
+        return addresses.isEmpty() || Collections.binarySearch(addresses, lowerCase(address)) >= 0;
+    }
+
+    /**
+     * @param value Hex encoded topic or address
+     * @return Positions of 3 bits set in logs bloom for the value
+     */
+    public static int[] bloomBits(String value) {
+        byte[] hash = Hash.sha3(Numeric.hexStringToByteArray(value));
+        int[] bits = new int[3];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = ((hash[2 * i] & 0xff) << 8 | (hash[2 * i + 1] & 0xff)) & (BLOOM_BYTES * 8 - 1);
+        }
+        return bits;
+    }
+
+    private static int[][] bits(List<String> values) {
+        int[][] bits = new int[values.size()][];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = bloomBits(values.get(i));
+        }
+        return bits;
+    }
+
+    private static boolean containsAny(byte[] bloom, int[][] values) {
+        for (int[] bits : values) {
+            boolean contains = true;
+            for (int bit : bits) {
+                contains &= (bloom[BLOOM_BYTES - 1 - bit / 8] & (1 << (bit % 8))) != 0;
+            }
+            if (contains) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code eth_getLogs} filter of blocks range [from -> to]
+     */
+    public EthFilter toEthFilter(long from, long to) {
+        EthFilter filter = new EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
+                addresses.isEmpty() ? null : addresses);
+        if (!topic0s.isEmpty()) {
+            filter.addOptionalTopics(topic0s.toArray(new String[0]));
+        }
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return this == NONE ? "none" : topic0s.size() + " topics, " + addresses.size() + " addresses";
+    }
+
+    private static List<List<String>> chunks(List<String> values, int size) {
+        if (values.isEmpty()) {
+            return Collections.singletonList(values);
+        }
+        int step = Math.max(size, 1);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += step) {
+            chunks.add(values.subList(i, Math.min(i + step, values.size())));
+        }
+        return chunks;
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> sorted(Collection<String> values) {
+        List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,144 @@
+package ethereum.eventloader.component.rpc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Token by token parser of {@code eth_getLogs} JSON-RPC response.
+ * <p>
+ * Every log is handed to the consumer as soon as its object is read, so neither the response
+ * nor the list of its logs is held in memory. Quantities are kept as hex strings, the way web3j keeps them,
+ * address, hashes and topics equal to the ones of the previous log share its {@link String} instances.
+ */
+@SuppressWarnings("rawtypes")
+public final class LogStreamParser {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private EthLog.LogObject previous;
+
+    private LogStreamParser() {
+    }
+
+    /**
+     * @param in JSON-RPC response
+     * @param sink Consumer of parsed logs, called on the parsing thread
+     * @return Error returned by the node, {@code null} on success
+     * @throws IOException Response is not readable or is not a JSON-RPC response
+     */
+    public static Response.Error parse(InputStream in, Consumer<LogResult> sink) throws IOException {
+        return new LogStreamParser().parse0(in, sink);
+    }
+
+    private Response.Error parse0(InputStream in, Consumer<LogResult> sink) throws IOException {
+        Response.Error error = null;
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JSON-RPC response is not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("result".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        sink.accept(readLog(parser));
+                    }
+                } else if ("error".equals(field) && token == JsonToken.START_OBJECT) {
+                    error = readError(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return error;
+    }
+
+    private EthLog.LogObject readLog(JsonParser parser) throws IOException {
+        EthLog.LogObject event = new EthLog.LogObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "removed":
+                    event.setRemoved(token == JsonToken.VALUE_TRUE);
+                    break;
+                case "logIndex":
+                    event.setLogIndex(parser.getValueAsString());
+                    break;
+                case "transactionIndex":
+                    event.setTransactionIndex(parser.getValueAsString());
+                    break;
+                case "transactionHash":
+                    event.setTransactionHash(share(parser.getValueAsString(), previous == null ? null : previous.getTransactionHash()));
+                    break;
+                case "blockHash":
+                    event.setBlockHash(share(parser.getValueAsString(), previous == null ? null : previous.getBlockHash()));
+                    break;
+                case "blockNumber":
+                    event.setBlockNumber(share(parser.getValueAsString(), previous == null ? null : previous.getBlockNumberRaw()));
+                    break;
+                case "address":
+                    event.setAddress(share(parser.getValueAsString(), previous == null ? null : previous.getAddress()));
+                    break;
+                case "data":
+                    event.setData(parser.getValueAsString());
+                    break;
+                case "type":
+                    event.setType(parser.getValueAsString());
+                    break;
+                case "topics":
+                    event.setTopics(readTopics(parser, token));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        previous = event;
+        return event;
+    }
+
+    private List<String> readTopics(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> prevTopics = previous == null ? null : previous.getTopics();
+        List<String> topics = new ArrayList<>(4);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            int i = topics.size();
+            topics.add(share(parser.getValueAsString(), prevTopics != null && i < prevTopics.size() ? prevTopics.get(i) : null));
+        }
+        return topics;
+    }
+
+    private static Response.Error readError(JsonParser parser) throws IOException {
+        Response.Error error = new Response.Error();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("code".equals(field)) {
+                error.setCode(parser.getValueAsInt());
+            } else if ("message".equals(field)) {
+                error.setMessage(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return error;
+    }
+
+    private static String share(String value, String previous) {
+        return Objects.equals(value, previous) ? previous : value;
+    }
+}
@@ -0,0 +1,463 @@
+package ethereum.eventloader.component.rpc;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.config.RpcPoolConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.websocket.WebSocketService;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Web3jService} spreading calls over a pool of blockchain node endpoints.
+ * <p>
+ * Endpoint is chosen randomly with weight inverse to its latency, among endpoints which are not open
+ * after failures and whose latest block isn't behind the block requested. Failed read call, either by I/O
+ * error or by JSON-RPC error response, is sent to another endpoint once. With {@link RpcPoolConfig#isHedging()}
+ * read call taking longer than p95 of its method is sent to another endpoint too, the first response wins.
+ * <p>
+ * Filter methods stick to the first healthy endpoint, as filters exist on a single node only.
+ * Subscriptions go to the first WebSocket endpoint. Responses are parsed as a whole, logs can't be streamed.
+ */
+@Slf4j
+public class PooledWeb3jService implements Web3jService {
+
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+            "eth_blockNumber", "eth_syncing", "eth_chainId", "net_version",
+            "eth_getBlockByNumber", "eth_getBlockByHash", "eth_getBlockReceipts",
+            "eth_getLogs", "eth_getTransactionReceipt"));
+
+    private static final Set<String> FILTER_METHODS = new HashSet<>(Arrays.asList(
+            "eth_newFilter", "eth_newBlockFilter", "eth_newPendingTransactionFilter",
+            "eth_getFilterChanges", "eth_getFilterLogs", "eth_uninstallFilter"));
+
+    private static final int LATENCY_SAMPLES = 256;
+
+    private final List<RpcEndpoint> endpoints;
+
+    private final RpcPoolConfig config;
+
+    private final BlockchainMetrics metrics;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-heads");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PooledWeb3jService(List<RpcEndpoint> endpoints, RpcPoolConfig config, BlockchainMetrics metrics) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("nodes pool must have at least one endpoint");
+        }
+        this.endpoints = endpoints;
+        this.config = config;
+        this.metrics = metrics;
+        endpoints.forEach(endpoint -> metrics.monitorRpcEndpoint(endpoint.getName(), endpoint::getHead,
+                () -> endpoint.isOpen() ? 1 : 0));
+        scheduler.scheduleWithFixedDelay(this::refreshHeads, 0, config.getHeadRefreshMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Query latest block of every endpoint, successful query closes open endpoint
+     */
+    public void refreshHeads() {
+        for (RpcEndpoint endpoint : endpoints) {
+            try {
+                call(endpoint, new Request<>("eth_blockNumber", Collections.emptyList(), this, EthBlockNumber.class),
+                        EthBlockNumber.class);
+            } catch (IOException | RuntimeException ex) {
+                log.debug("[RPC] head query of {} failed", endpoint.getName(), ex);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return route(request, responseType);
+        } catch (ErrorResponse ex) {
+            // every endpoint asked answered with error, caller decides what the error means
+            return responseType.cast(ex.getResponse());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private <T extends Response> T route(Request request, Class<T> responseType) throws IOException {
+        String method = request.getMethod();
+        if (FILTER_METHODS.contains(method)) {
+            return call(primary(), request, responseType);
+        }
+        long block = requiredBlock(request);
+        RpcEndpoint endpoint = select(block, null);
+        boolean read = READ_METHODS.contains(method);
+        if (read && config.isHedging() && endpoints.size() > 1) {
+            return hedged(endpoint, block, request, responseType);
+        }
+        try {
+            return call(endpoint, request, responseType);
+        } catch (IOException | RuntimeException ex) {
+            RpcEndpoint other = read ? select(block, endpoint) : null;
+            if (other == null) {
+                throw ex;
+            }
+            log.warn("[RPC] {} failed on {}, sending to {}", method, endpoint.getName(), other.getName());
+            return call(other, request, responseType);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request, responseType);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        long block = -1;
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            block = Math.max(block, requiredBlock(request));
+        }
+        RpcEndpoint endpoint = select(block, null);
+        try {
+            return callBatch(endpoint, batchRequest);
+        } catch (IOException | RuntimeException ex) {
+            RpcEndpoint other = select(block, endpoint);
+            if (other == null) {
+                throw ex;
+            }
+            log.warn("[RPC] batch failed on {}, sending to {}", endpoint.getName(), other.getName());
+            return callBatch(other, batchRequest);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendBatch(batchRequest);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        for (RpcEndpoint endpoint : endpoints) {
+            if (endpoint.getService() instanceof WebSocketService) {
+                return endpoint.getService().subscribe(request, unsubscribeMethod, responseType);
+            }
+        }
+        throw new BlockchainException("subscriptions require WebSocket endpoint in the nodes pool", null);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        endpoints.forEach(RpcEndpoint::close);
+    }
+
+    /**
+     * Choose endpoint having block {@code block}, weighted by inverse latency
+     *
+     * @param block Block number the call needs, -1 if any
+     * @param exclude Endpoint not to choose
+     * @return Endpoint, {@code null} if there is no other endpoint than {@code exclude}
+     */
+    RpcEndpoint select(long block, RpcEndpoint exclude) {
+        List<RpcEndpoint> synced = new ArrayList<>(endpoints.size());
+        List<RpcEndpoint> unknown = new ArrayList<>(endpoints.size());
+        RpcEndpoint highest = null;
+        RpcEndpoint fallback = null;
+        for (RpcEndpoint endpoint : endpoints) {
+            if (endpoint == exclude) {
+                continue;
+            }
+            if (fallback == null) {
+                fallback = endpoint;
+            }
+            if (endpoint.isOpen()) {
+                continue;
+            }
+            if (block < 0 || endpoint.getHead() >= block) {
+                synced.add(endpoint);
+            } else if (endpoint.getHead() == 0) {
+                unknown.add(endpoint);
+            }
+            if (highest == null || endpoint.getHead() > highest.getHead()) {
+                highest = endpoint;
+            }
+        }
+        List<RpcEndpoint> candidates = !synced.isEmpty() ? synced : unknown;
+        if (candidates.isEmpty()) {
+            // every endpoint is lagging or open, the best one is still better than failing
+            return highest != null ? highest : fallback;
+        }
+        double[] weights = new double[candidates.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] = 1.0 / Math.max(candidates.get(i).getLatencyMs(), 1.0);
+        }
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (point < 0) {
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+    private RpcEndpoint primary() {
+        for (RpcEndpoint endpoint : endpoints) {
+            if (!endpoint.isOpen()) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(0);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private <T extends Response> T hedged(RpcEndpoint primary, long block, Request request, Class<T> responseType) throws IOException {
+        CompletableFuture<T> first = callAsync(primary, request, responseType);
+        try {
+            return first.get(hedgeDelayMs(request.getMethod()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            RpcEndpoint secondary = select(block, primary);
+            if (secondary == null) {
+                return await(first);
+            }
+            log.debug("[RPC] {} is slow on {}, hedging to {}", request.getMethod(), primary.getName(), secondary.getName());
+            metrics.addHedgedRpcCall(request.getMethod());
+            return await(firstSuccessful(first, callAsync(secondary, request, responseType)));
+        } catch (ExecutionException ex) {
+            RpcEndpoint other = select(block, primary);
+            if (other == null) {
+                throw unwrap(ex);
+            }
+            log.warn("[RPC] {} failed on {}, sending to {}", request.getMethod(), primary.getName(), other.getName());
+            return call(other, request, responseType);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + request.getMethod());
+        }
+    }
+
+    private long hedgeDelayMs(String method) {
+        LatencyWindow window = latencies.get(method);
+        long p95 = window != null ? TimeUnit.NANOSECONDS.toMillis(window.percentile(0.95)) : 0L;
+        return Math.max(config.getHedgeMinMs(), p95);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private <T extends Response> CompletableFuture<T> callAsync(RpcEndpoint endpoint, Request request, Class<T> responseType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call(endpoint, request, responseType);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private <T extends Response> T call(RpcEndpoint endpoint, Request request, Class<T> responseType) throws IOException {
+        long start = System.nanoTime();
+        T response;
+        try {
+            response = endpoint.getService().send(request, responseType);
+        } catch (IOException | RuntimeException ex) {
+            endpoint.onFailure(ex, config.getFailureThreshold());
+            metrics.addRpcError(endpoint.getName());
+            throw ex;
+        }
+        long nanos = System.nanoTime() - start;
+        metrics.recordRpcCall(endpoint.getName(), nanos);
+        if (response.hasError() && READ_METHODS.contains(request.getMethod())) {
+            // node without the block or state answers with error, so read error counts as failure of the node
+            ErrorResponse ex = new ErrorResponse(endpoint, request.getMethod(), response);
+            endpoint.onFailure(ex, config.getFailureThreshold());
+            metrics.addRpcError(endpoint.getName());
+            throw ex;
+        }
+        endpoint.onSuccess(nanos);
+        latencies.computeIfAbsent(request.getMethod(), method -> new LatencyWindow()).add(nanos);
+        if (response instanceof EthBlockNumber && !response.hasError()) {
+            endpoint.setHead(((EthBlockNumber) response).getBlockNumber().longValue());
+        }
+        return response;
+    }
+
+    private BatchResponse callBatch(RpcEndpoint endpoint, BatchRequest batchRequest) throws IOException {
+        long start = System.nanoTime();
+        try {
+            BatchResponse response = endpoint.getService().sendBatch(batchRequest);
+            long nanos = System.nanoTime() - start;
+            endpoint.onSuccess(nanos / Math.max(batchRequest.getRequests().size(), 1));
+            metrics.recordRpcCall(endpoint.getName(), nanos);
+            return response;
+        } catch (IOException | RuntimeException ex) {
+            endpoint.onFailure(ex, config.getFailureThreshold());
+            metrics.addRpcError(endpoint.getName());
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Block number the call reads, -1 if it doesn't read a specific block
+     */
+    private static long requiredBlock(Request<?, ?> request) {
+        List<?> params = request.getParams();
+        if (params == null || params.isEmpty()) {
+            return -1;
+        }
+        switch (request.getMethod()) {
+            case "eth_getBlockByNumber":
+            case "eth_getBlockReceipts":
+                return quantity(params.get(0));
+            case "eth_getLogs":
+                return params.get(0) instanceof EthFilter && ((EthFilter) params.get(0)).getToBlock() != null
+                        ? quantity(((EthFilter) params.get(0)).getToBlock().getValue())
+                        : -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static long quantity(Object value) {
+        String hex = String.valueOf(value);
+        return hex.startsWith("0x") ? Long.parseLong(hex.substring(2), 16) : -1;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        first.whenComplete((value, ex) -> complete(result, failed, value, ex));
+        second.whenComplete((value, ex) -> complete(result, failed, value, ex));
+        return result;
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, AtomicInteger failed, T value, Throwable ex) {
+        if (ex == null) {
+            result.complete(value);
+        } else if (failed.incrementAndGet() == 2) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for node response");
+        }
+    }
+
+    private static IOException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * JSON-RPC error answered to a read call, retried on another endpoint like I/O failure
+     */
+    private static final class ErrorResponse extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Response<?> response;
+
+        ErrorResponse(RpcEndpoint endpoint, String method, Response<?> response) {
+            super(method + " failed on " + endpoint.getName() + ": " + response.getError().getMessage());
+            this.response = response;
+        }
+
+        Response<?> getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Latencies of recent calls of a method
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[LATENCY_SAMPLES];
+
+        private int next;
+
+        private int size;
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % LATENCY_SAMPLES;
+            size = Math.min(size + 1, LATENCY_SAMPLES);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0L;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min((int) Math.ceil(percentile * size) - 1, size - 1)];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ethereum.eventloader.component.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Blockchain node endpoint of {@link PooledWeb3jService} with its health state.
+ * <p>
+ * Endpoint is open (not used) after {@code failureThreshold} consecutive failures, it is closed again
+ * by the next successful call, which is the periodic head query. Service of open endpoint is rebuilt,
+ * so that dropped WebSocket connection is established again.
+ */
+@Slf4j
+public class RpcEndpoint {
+
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final String name;
+
+    private final Supplier<Web3jService> factory;
+
+    private volatile Web3jService service;
+
+    private volatile long head;
+
+    private volatile double latencyMs;
+
+    private volatile boolean open;
+
+    private int failures;
+
+    /**
+     * @param name Name of the endpoint in logs and metrics, must not contain credentials
+     * @param factory Builds service of the endpoint
+     */
+    public RpcEndpoint(String name, Supplier<Web3jService> factory) {
+        this.name = name;
+        this.factory = factory;
+        this.service = factory.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Web3jService getService() {
+        return service;
+    }
+
+    /**
+     * @return Latest block known to the endpoint, 0 if unknown yet
+     */
+    public long getHead() {
+        return head;
+    }
+
+    public void setHead(long head) {
+        this.head = head;
+    }
+
+    /**
+     * @return Moving average of call latency, 0 if endpoint wasn't called yet
+     */
+    public double getLatencyMs() {
+        return latencyMs;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    synchronized void onSuccess(long nanos) {
+        double ms = nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        latencyMs = latencyMs == 0 ? ms : latencyMs + LATENCY_WEIGHT * (ms - latencyMs);
+        failures = 0;
+        if (open) {
+            log.info("[RPC] endpoint {} is healthy again", name);
+            open = false;
+        }
+    }
+
+    synchronized void onFailure(Throwable ex, int threshold) {
+        if (++failures >= threshold && !open) {
+            log.warn("[RPC] endpoint {} failed {} times, excluded until it responds", name, failures, ex);
+            open = true;
+            reconnect();
+        }
+    }
+
+    void close() {
+        try {
+            service.close();
+        } catch (IOException | RuntimeException ex) {
+            log.debug("[RPC] error closing endpoint {}", name, ex);
+        }
+    }
+
+    private void reconnect() {
+        Web3jService previous = service;
+        try {
+            service = factory.get();
+        } catch (RuntimeException ex) {
+            log.error("[RPC] cannot rebuild endpoint {}", name, ex);
+            return;
+        }
+        try {
+            previous.close();
+        } catch (IOException | RuntimeException ex) {
+            log.debug("[RPC] error closing endpoint {}", name, ex);
+        }
+    }
+}
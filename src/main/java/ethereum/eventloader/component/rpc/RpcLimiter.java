@@ -0,0 +1,104 @@
+package ethereum.eventloader.component.rpc;
+
+import ethereum.eventloader.BlockchainException;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Bounds amount of asynchronous node calls in flight and fails calls not answered in time.
+ * <p>
+ * Calls above the limit wait in a queue and are sent once a running call completes, caller is never blocked.
+ * Result of a call still running after the timeout fails with {@link BlockchainException}, while the call keeps
+ * its slot until it completes or HTTP client gives up on it, so a stuck node isn't sent even more requests.
+ */
+public class RpcLimiter implements AutoCloseable {
+
+    private final int concurrency;
+
+    private final Semaphore permits;
+
+    private final long timeoutMs;
+
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RpcLimiter(int concurrency, long timeoutMs) {
+        this.concurrency = Math.max(concurrency, 1);
+        this.permits = new Semaphore(this.concurrency);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Send the call once there is a free slot
+     *
+     * @param method Name of the call for timeout message
+     * @param call Sends the call, must not block
+     * @return Result of the call
+     */
+    public <T> CompletableFuture<T> submit(String method, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        waiting.add(() -> send(method, call, result));
+        drain();
+        return result;
+    }
+
+    private <T> void send(String method, Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+        CompletableFuture<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException ex) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(ex);
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> result.completeExceptionally(new BlockchainException(
+                method + " not answered in " + timeoutMs + " ms", new TimeoutException())), timeoutMs, TimeUnit.MILLISECONDS);
+        sent.whenComplete((value, ex) -> {
+            timeout.cancel(false);
+            permits.release();
+            drain();
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void drain() {
+        // every submit and every completion drains, so the last of them sees both free slot and waiting call
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable call = waiting.poll();
+            if (call == null) {
+                permits.release();
+            } else {
+                call.run();
+            }
+        }
+    }
+
+    /**
+     * @return Amount of calls sent, but not completed yet
+     */
+    public int inFlight() {
+        return concurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
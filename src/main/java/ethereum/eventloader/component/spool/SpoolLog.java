@@ -0,0 +1,300 @@
+package ethereum.eventloader.component.spool;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records on disk, split into memory-mapped segment files.
+ * <p>
+ * Record is {@code [int length, int crc32, long endBlock, payload]}, its length is written last,
+ * so zero length marks the end of records in a segment. Segment which can't fit a record is sealed
+ * and the next one is created, every segment but the last one is read-only. On open records are scanned
+ * until zero length or checksum mismatch, torn record of a crash is overwritten by the next append.
+ * <p>
+ * Records are read in append order by a single reader and acknowledged in the same order,
+ * segments holding only acknowledged records are deleted.
+ */
+@Slf4j
+public class SpoolLog implements Closeable {
+
+    private static final String SUFFIX = ".spool";
+
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final long maxBytes;
+
+    private final boolean force;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private Segment readSegment;
+
+    private int readPosition;
+
+    private long pendingBytes;
+
+    private long lastEndBlock = -1L;
+
+    private boolean closed;
+
+    /**
+     * Record read from the log
+     */
+    public static class Record {
+
+        @Getter
+        private final long endBlock;
+
+        @Getter
+        private final byte[] payload;
+
+        private final Segment segment;
+
+        private Record(long endBlock, byte[] payload, Segment segment) {
+            this.endBlock = endBlock;
+            this.payload = payload;
+            this.segment = segment;
+        }
+
+        int size() {
+            return HEADER_BYTES + payload.length;
+        }
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Open log in the directory, recovering records written before restart
+     *
+     * @param directory Directory holding segment files, created if missing
+     * @param segmentBytes Size of a segment file, bigger records get a segment of their own size
+     * @param maxBytes Max size of records not acknowledged, append waits when it is reached
+     * @param force Flush every record to disk on append
+     */
+    public SpoolLog(Path directory, int segmentBytes, long maxBytes, boolean force) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.force = force;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = map(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file, 0);
+            recover(segment);
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(map(0L, path(0L), segmentBytes));
+        }
+        readSegment = segments.peekFirst();
+        log.info("[SPOOL] opened {} segments in {}, {} bytes not drained, last block {}",
+                segments.size(), directory, pendingBytes, lastEndBlock);
+    }
+
+    /**
+     * Append record, waits while log holds {@code maxBytes} of records not acknowledged
+     *
+     * @param endBlock Last block covered by the record
+     * @param payload Record content
+     */
+    public synchronized void append(long endBlock, byte[] payload) throws IOException, InterruptedException {
+        int size = HEADER_BYTES + payload.length;
+        while (pendingBytes > 0 && pendingBytes + size > maxBytes && !closed) {
+            wait(1000L);
+        }
+        if (closed) {
+            throw new IOException("spool is closed");
+        }
+        Segment segment = segments.peekLast();
+        if (segment.buffer.capacity() - segment.writePosition < size) {
+            if (force) {
+                segment.buffer.force();
+            }
+            segment = map(segment.sequence + 1, path(segment.sequence + 1), Math.max(segmentBytes, size));
+            segments.add(segment);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int position = segment.writePosition;
+        segment.buffer.putInt(position + 4, (int) crc.getValue());
+        segment.buffer.putLong(position + 8, endBlock);
+        view(segment.buffer, position + HEADER_BYTES, payload.length).put(payload);
+        if (segment.buffer.capacity() - position - size >= 4) {
+            // bytes after recovered torn record may be left from before restart
+            segment.buffer.putInt(position + size, 0);
+        }
+        segment.buffer.putInt(position, payload.length);
+        if (force) {
+            segment.buffer.force();
+        }
+        segment.writePosition += size;
+        pendingBytes += size;
+        lastEndBlock = endBlock;
+        notifyAll();
+    }
+
+    /**
+     * Read next record, records are returned once even when not acknowledged
+     *
+     * @param timeoutMs Max time to wait for a record to be appended
+     * @return Next record or null if none was appended in time
+     */
+    public synchronized Record poll(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!closed) {
+            if (readPosition < readSegment.writePosition) {
+                Record record = read(readSegment, readPosition);
+                readPosition += record.size();
+                return record;
+            }
+            if (readSegment != segments.peekLast()) {
+                readSegment = next(readSegment);
+                readPosition = 0;
+                continue;
+            }
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return null;
+            }
+            wait(wait);
+        }
+        return null;
+    }
+
+    /**
+     * Acknowledge record and all records read before it, deletes segments which are not needed anymore
+     */
+    public synchronized void acknowledge(Record record) throws IOException {
+        pendingBytes -= record.size();
+        while (segments.peekFirst() != record.segment) {
+            Segment segment = segments.pollFirst();
+            Files.deleteIfExists(segment.path);
+            log.info("[SPOOL] deleted drained segment {}", segment.path);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return Last block of the last appended record, -1 if the log is empty
+     */
+    public synchronized long lastEndBlock() {
+        return lastEndBlock;
+    }
+
+    /**
+     * @return Size of records not acknowledged
+     */
+    public synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        notifyAll();
+    }
+
+    private Segment next(Segment segment) {
+        boolean found = false;
+        for (Segment next : segments) {
+            if (found) {
+                return next;
+            }
+            found = next == segment;
+        }
+        throw new IllegalStateException("spool segment " + segment.path + " is not the last one");
+    }
+
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (buffer.capacity() - position >= HEADER_BYTES) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - HEADER_BYTES) {
+                break;
+            }
+            Record record = read(segment, position);
+            CRC32 crc = new CRC32();
+            crc.update(record.payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("[SPOOL] torn record at {} of {}, dropping the rest of segment", position, segment.path);
+                break;
+            }
+            position += HEADER_BYTES + length;
+            pendingBytes += HEADER_BYTES + length;
+            lastEndBlock = record.endBlock;
+        }
+        segment.writePosition = position;
+        if (buffer.capacity() - position >= 4) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    private Path path(long sequence) {
+        return directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+    }
+
+    private static Segment map(long sequence, Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = Math.max(channel.size(), size);
+            // mapping stays valid after channel is closed
+            return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    private static ByteBuffer view(MappedByteBuffer buffer, int position, int length) {
+        // calls through Buffer, covariant overrides of newer JDKs are missing on Java 8
+        Buffer view = ((ByteBuffer) buffer).duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return (ByteBuffer) view;
+    }
+
+    private static Record read(Segment segment, int position) {
+        byte[] payload = new byte[segment.buffer.getInt(position)];
+        view(segment.buffer, position + HEADER_BYTES, payload.length).get(payload);
+        return new Record(segment.buffer.getLong(position + 8), payload, segment);
+    }
+}
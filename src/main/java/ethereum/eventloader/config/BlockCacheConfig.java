@@ -0,0 +1,27 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Block cache property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.block-cache")
+public class BlockCacheConfig {
+
+    /**
+     * Estimated size of cached blocks, least recently used blocks are evicted above it, 0 disables the cache
+     */
+    private Long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * Add block hash and timestamp to published events, blocks holding events are loaded with the events
+     */
+    private boolean enrichEvents = false;
+
+}
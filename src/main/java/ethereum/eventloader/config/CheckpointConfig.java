@@ -0,0 +1,53 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Last processed block storage property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.checkpoint")
+public class CheckpointConfig {
+
+    public static final String STORE_ZOOKEEPER = "zookeeper";
+    public static final String STORE_FILE = "file";
+    public static final String STORE_KAFKA = "kafka";
+
+    /**
+     * zookeeper - znode shared by all replicas, guarded by Zookeeper lock,
+     * file - local file of single loader,
+     * kafka - record in compacted topic written by single loader
+     */
+    private String store = STORE_ZOOKEEPER;
+
+    /**
+     * Save checkpoint in background, consecutive saves are coalesced into one write of the latest block
+     */
+    private boolean async = false;
+
+    /**
+     * Path of checkpoint file of file store
+     */
+    private String file = "checkpoint";
+
+    /**
+     * Compacted topic of kafka store
+     */
+    private String topic;
+
+    /**
+     * Key of checkpoint record of kafka store, must differ between loaders sharing the topic
+     */
+    private String key = "event-loader";
+
+    /**
+     * Max time to read checkpoint from topic of kafka store
+     */
+    private Long readTimeoutMs = 30000L;
+
+}
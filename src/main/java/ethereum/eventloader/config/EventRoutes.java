@@ -0,0 +1,204 @@
+package ethereum.eventloader.config;
+
+import ethereum.eventloader.config.KafkaTopics.EventTopicMap;
+import ethereum.eventloader.messages.EventMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Routing table of event mappings compiled once from {@link KafkaTopics#getEvents()}.
+ * <p>
+ * Mappings are indexed by lower-cased topic0, wildcard mappings are kept in separate array
+ * and {@code block}/{@code block-full} entries are resolved up front, so routing an event
+ * is a single hash lookup without allocations. Mappings with address or topic1..3 matchers
+ * are checked only against events with matching topic0.
+ */
+public class EventRoutes {
+
+    public static final String WILDCARD = "*";
+    public static final String BLOCK = "block";
+    public static final String BLOCK_FULL = "block-full";
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+
+    private static final Route[] NONE = new Route[0];
+
+    private final Map<String, Route[]> byTopic0;
+
+    private final Route[] wildcard;
+
+    private final String blocks;
+
+    private final String blocksFull;
+
+    private final Set<String> binaryTopics;
+
+    public EventRoutes(Collection<EventTopicMap> events) {
+        Map<String, List<Route>> indexed = new HashMap<>();
+        List<Route> wildcards = new ArrayList<>();
+        String blockTopic = null;
+        String blockFullTopic = null;
+        Set<String> binary = new HashSet<>();
+        for (EventTopicMap event : events != null ? events : Collections.<EventTopicMap>emptyList()) {
+            if (FORMAT_BINARY.equalsIgnoreCase(event.getFormat())) {
+                binary.add(event.getTopic());
+            } else if (event.getFormat() != null && !FORMAT_JSON.equalsIgnoreCase(event.getFormat())) {
+                throw new IllegalArgumentException("unknown format " + event.getFormat() + " of topic " + event.getTopic());
+            }
+            if (BLOCK.equals(event.getEvent())) {
+                blockTopic = event.getTopic();
+            } else if (BLOCK_FULL.equals(event.getEvent())) {
+                blockFullTopic = event.getTopic();
+            } else if (WILDCARD.equals(event.getEvent())) {
+                wildcards.add(new Route(event));
+            } else {
+                indexed.computeIfAbsent(normalize(event.getEvent()), key -> new ArrayList<>()).add(new Route(event));
+            }
+        }
+        this.byTopic0 = new HashMap<>(indexed.size() * 2);
+        indexed.forEach((topic0, routes) -> byTopic0.put(topic0, routes.toArray(NONE)));
+        this.wildcard = wildcards.toArray(NONE);
+        this.blocks = blockTopic;
+        this.blocksFull = blockFullTopic;
+        this.binaryTopics = Collections.unmodifiableSet(binary);
+    }
+
+    /**
+     * Pass every destination topic of the event to {@code destination}
+     *
+     * @param eventMessage Event to route
+     * @param destination Receives topic names
+     */
+    public void route(EventMessage eventMessage, Consumer<String> destination) {
+        for (Route route : wildcard) {
+            if (route.matches(eventMessage)) {
+                destination.accept(route.topic);
+            }
+        }
+        List<String> topics = eventMessage.getTopics();
+        if (topics == null || topics.isEmpty()) {
+            return;
+        }
+        String topic0 = topics.get(0);
+        Route[] routes = byTopic0.get(topic0);
+        if (routes == null && !isNormalized(topic0)) {
+            routes = byTopic0.get(normalize(topic0));
+        }
+        if (routes != null) {
+            for (Route route : routes) {
+                if (route.matches(eventMessage)) {
+                    destination.accept(route.topic);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Set of topic0 values routed to any destination, empty if wildcard route exists
+     */
+    public Collection<String> getTopic0s() {
+        return wildcard.length > 0 ? Collections.emptySet() : Collections.unmodifiableSet(byTopic0.keySet());
+    }
+
+    /**
+     * @return Set of contract addresses routed to any destination, empty if some route accepts any address
+     */
+    public Collection<String> getAddresses() {
+        if (wildcard.length > 0) {
+            return Collections.emptySet();
+        }
+        Set<String> addresses = new HashSet<>();
+        for (Route[] routes : byTopic0.values()) {
+            for (Route route : routes) {
+                if (route.address == null) {
+                    return Collections.emptySet();
+                }
+                addresses.add(route.address);
+            }
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    public boolean hasWildcard() {
+        return wildcard.length > 0;
+    }
+
+    public String getBlocks() {
+        return blocks;
+    }
+
+    public String getBlocksFull() {
+        return blocksFull;
+    }
+
+    /**
+     * @return Topics published in binary format
+     */
+    public Set<String> getBinaryTopics() {
+        return binaryTopics;
+    }
+
+    /**
+     * Check address and topic1..3 matchers of the mapping
+     */
+    static boolean matches(EventTopicMap event, EventMessage eventMessage) {
+        return new Route(event).matches(eventMessage);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isNormalized(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isUpperCase(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Route {
+
+        private final String topic;
+
+        private final String address;
+
+        /**
+         * Expected topic1..3, null for any
+         */
+        private final String[] indexed;
+
+        private Route(EventTopicMap event) {
+            this.topic = event.getTopic();
+            this.address = matcher(event.getAddress());
+            this.indexed = new String[]{matcher(event.getTopic1()), matcher(event.getTopic2()), matcher(event.getTopic3())};
+        }
+
+        private boolean matches(EventMessage eventMessage) {
+            if (address != null && !address.equalsIgnoreCase(eventMessage.getContractAddress())) {
+                return false;
+            }
+            List<String> topics = eventMessage.getTopics();
+            for (int i = 0; i < indexed.length; i++) {
+                if (indexed[i] != null && (topics == null || topics.size() <= i + 1 || !indexed[i].equalsIgnoreCase(topics.get(i + 1)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String matcher(String value) {
+            return value == null || value.isEmpty() || WILDCARD.equals(value) ? null : normalize(value);
+        }
+    }
+}
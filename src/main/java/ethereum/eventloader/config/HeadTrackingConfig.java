@@ -0,0 +1,36 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * New head tracking property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.heads")
+public class HeadTrackingConfig {
+
+    public static final String MODE_POLL = "poll";
+    public static final String MODE_SUBSCRIBE = "subscribe";
+
+    /**
+     * poll - sleep between attempts at latest block,
+     * subscribe - wake up on new head from newHeads subscription or block filter
+     */
+    private String mode = MODE_POLL;
+
+    /**
+     * Interval of eth_getFilterChanges calls for non-WebSocket nodes
+     */
+    private Long filterPollMs = 500L;
+
+    /**
+     * Delay before dropped subscription or filter is created again
+     */
+    private Long resubscribeMs = 5000L;
+
+}
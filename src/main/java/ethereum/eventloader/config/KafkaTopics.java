@@ -13,6 +13,7 @@ public class KafkaTopics {
 
     private String all;
     private Set<EventTopicMap> events;
+    private volatile EventRoutes routes;
 
     public String getAll() {
         return all;
@@ -28,16 +29,27 @@ public class KafkaTopics {
 
     public void setEvents(Set<EventTopicMap> events) {
         this.events = events;
+        this.routes = null;
+    }
+
+    /**
+     * @return Routing table compiled from {@link #getEvents()} on first call
+     */
+    public EventRoutes getRoutes() {
+        EventRoutes compiled = routes;
+        if (compiled == null) {
+            compiled = new EventRoutes(getEvents());
+            routes = compiled;
+        }
+        return compiled;
     }
 
     public String getBlocks() {
-        return getEvents().stream().filter(event -> event.getEvent().equals("block"))
-                .findAny().map(EventTopicMap::getTopic).orElse(null);
+        return getRoutes().getBlocks();
     }
 
     public String getBlocksFull() {
-        return getEvents().stream().filter(event -> event.getEvent().equals("block-full"))
-                .findAny().map(EventTopicMap::getTopic).orElse(null);
+        return getRoutes().getBlocksFull();
     }
 
     @Override
@@ -58,6 +70,11 @@ public class KafkaTopics {
         private String event;
         private String topic;
         private String name;
+        private String address;
+        private String topic1;
+        private String topic2;
+        private String topic3;
+        private String format;
 
         public String getEvent() {
             return event;
@@ -83,12 +100,62 @@ public class KafkaTopics {
             this.name = name;
         }
 
+        /**
+         * @return Contract address the event must be emitted by, any if null
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        public void setAddress(String address) {
+            this.address = address;
+        }
+
+        /**
+         * @return Value of the first indexed parameter, any if null
+         */
+        public String getTopic1() {
+            return topic1;
+        }
+
+        public void setTopic1(String topic1) {
+            this.topic1 = topic1;
+        }
+
+        public String getTopic2() {
+            return topic2;
+        }
+
+        public void setTopic2(String topic2) {
+            this.topic2 = topic2;
+        }
+
+        public String getTopic3() {
+            return topic3;
+        }
+
+        public void setTopic3(String topic3) {
+            this.topic3 = topic3;
+        }
+
+        /**
+         * @return Wire format of the topic: json or binary, json if null
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        public void setFormat(String format) {
+            this.format = format;
+        }
+
         public boolean equalsEvent(EventMessage eventMessage) {
-            if (event.equals("*")) {
-                return true;
+            if (event.equals(EventRoutes.WILDCARD)) {
+                return EventRoutes.matches(this, eventMessage);
             }
             if (!eventMessage.getTopics().isEmpty()) {
-                return event.equalsIgnoreCase(eventMessage.getTopics().get(0));
+                return event.equalsIgnoreCase(eventMessage.getTopics().get(0))
+                        && EventRoutes.matches(this, eventMessage);
             }
             else {
                 return false;
@@ -102,12 +169,17 @@ public class KafkaTopics {
             EventTopicMap that = (EventTopicMap) o;
             return Objects.equals(getEvent(), that.getEvent()) &&
                     Objects.equals(getTopic(), that.getTopic()) &&
-                    Objects.equals(getName(), that.getName());
+                    Objects.equals(getName(), that.getName()) &&
+                    Objects.equals(getAddress(), that.getAddress()) &&
+                    Objects.equals(getTopic1(), that.getTopic1()) &&
+                    Objects.equals(getTopic2(), that.getTopic2()) &&
+                    Objects.equals(getTopic3(), that.getTopic3()) &&
+                    Objects.equals(getFormat(), that.getFormat());
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(getEvent(), getTopic(), getName());
+            return Objects.hash(getEvent(), getTopic(), getName(), getAddress(), getTopic1(), getTopic2(), getTopic3(), getFormat());
         }
     }
 
@@ -0,0 +1,22 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Long-lived leadership property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.leader")
+public class LeaderConfig {
+
+    /**
+     * Elect single loader holding leadership across iterations, instead of taking Zookeeper lock on every iteration
+     */
+    private boolean enabled = false;
+
+}
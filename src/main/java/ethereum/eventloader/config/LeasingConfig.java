@@ -0,0 +1,42 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Range-leased parallel loading property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.leasing")
+public class LeasingConfig {
+
+    /**
+     * Split catch-up work into block ranges leased by all replicas
+     */
+    private boolean enabled = false;
+
+    /**
+     * Amount of blocks in single range
+     */
+    private Long rangeSize = 1000L;
+
+    /**
+     * Lease is taken over by another replica if not renewed during this period
+     */
+    private Long leaseTimeoutMs = 300000L;
+
+    /**
+     * Lag (in blocks) above which replicas switch from single-writer to leasing mode
+     */
+    private Long catchUpThreshold = 5000L;
+
+    /**
+     * Max amount of ranges ahead of processed block that may be leased
+     */
+    private Integer maxRanges = 64;
+
+}
@@ -0,0 +1,27 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Pipelined loading property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.pipeline")
+public class PipelineConfig {
+
+    /**
+     * Fetch next batches while previous ones are being published
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum amount of batches waiting between two stages
+     */
+    private Integer depth = 4;
+
+}
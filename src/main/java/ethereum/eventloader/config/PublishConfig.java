@@ -0,0 +1,35 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Message broker publishing property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.publish")
+public class PublishConfig {
+
+    /**
+     * Max amount of sent, but not yet acknowledged messages
+     */
+    private Integer maxInFlightMessages = 10000;
+
+    /**
+     * Max estimated size of sent, but not yet acknowledged messages
+     */
+    private Long maxInFlightBytes = 64L * 1024 * 1024;
+
+    /**
+     * Amount of times failed message is sent again before batch fails,
+     * resent message may overtake later messages with the same key
+     */
+    private Integer retries = 3;
+
+    private Long retryBackoffMs = 1000L;
+
+}
@@ -0,0 +1,37 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Reorganization-aware loading property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.reorg")
+public class ReorgConfig {
+
+    /**
+     * Track hashes of published blocks and compensate events orphaned by reorganization
+     */
+    private boolean enabled = false;
+
+    /**
+     * Amount of recent blocks kept in memory, deepest reorganization which can be compensated
+     */
+    private Integer depth = 128;
+
+    /**
+     * Blocks on top of a block before it is published to confirmed topics, 0 disables confirmed topics
+     */
+    private Integer confirmations = 0;
+
+    /**
+     * Suffix appended to topic names to get confirmed topics
+     */
+    private String confirmedSuffix = ".confirmed";
+
+}
@@ -0,0 +1,37 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Pool of blockchain node endpoints property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("ethereum.pool")
+public class RpcPoolConfig {
+
+    /**
+     * Consecutive failures of an endpoint after which it isn't used until health check succeeds
+     */
+    private Integer failureThreshold = 3;
+
+    /**
+     * Interval of querying latest block of every endpoint, doubles as health check of failed endpoints
+     */
+    private Long headRefreshMs = 2000L;
+
+    /**
+     * Send read call to another endpoint too, when it takes longer than p95 of the method
+     */
+    private boolean hedging = false;
+
+    /**
+     * Min delay before hedged call is sent
+     */
+    private Long hedgeMinMs = 100L;
+
+}
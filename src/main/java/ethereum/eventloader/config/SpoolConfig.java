@@ -0,0 +1,42 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local write-ahead spool property container.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.spool")
+public class SpoolConfig {
+
+    /**
+     * Write fetched batches to local disk and publish them to message broker by background drainer
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory holding spool segments, must survive restarts
+     */
+    private String directory = "spool";
+
+    /**
+     * Size of single memory-mapped segment file
+     */
+    private Integer segmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * Max size of batches not yet drained, fetching waits when it is reached
+     */
+    private Long maxBytes = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * Flush every appended batch to disk before fetching goes on
+     */
+    private boolean force = true;
+
+}
@@ -0,0 +1,39 @@
+package ethereum.eventloader.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exactly-once publishing property container.
+ * <p>
+ * Requires {@code spring.kafka.producer.transaction-id-prefix} to be set.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("event-loader.transactions")
+public class TransactionConfig {
+
+    /**
+     * Publish every batch together with its checkpoint in single Kafka transaction
+     */
+    private boolean enabled = false;
+
+    /**
+     * Compacted topic holding checkpoint records
+     */
+    private String stateTopic;
+
+    /**
+     * Key of checkpoint record, must differ between loaders sharing state topic
+     */
+    private String checkpointKey = "event-loader";
+
+    /**
+     * Max time to read checkpoint from state topic
+     */
+    private Long readTimeoutMs = 30000L;
+
+}
@@ -6,6 +6,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * web3j property container.
@@ -16,8 +18,16 @@ import java.math.BigInteger;
 @ConfigurationProperties("ethereum")
 public class Web3jConfig {
 
+    public static final String LOGS_SOURCE_LOGS = "logs";
+    public static final String LOGS_SOURCE_RECEIPTS = "receipts";
+
     private String clientAddress;
 
+    /**
+     * Endpoints of the nodes pool, {@link #clientAddress} only is used when empty
+     */
+    private List<String> clientAddresses = new ArrayList<>();
+
     private Boolean adminClient = false;
 
     private String networkId = "1";
@@ -26,10 +36,97 @@ public class Web3jConfig {
 
     private Long batchSize;
 
+    private boolean adaptiveBatchSize = false;
+
+    private Long minBatchSize = 1L;
+
+    private Long maxBatchSize = 10000L;
+
+    private Long targetBatchMs = 2000L;
+
+    private Long maxBatchLogs = 50000L;
+
+    private Long maxBatchBytes = 64L * 1024 * 1024;
+
+    /**
+     * Max amount of requests in single JSON-RPC batch of block requests
+     */
+    private Integer batchChunkSize = 100;
+
+    private Integer batchConcurrency = 4;
+
+    /**
+     * Times failed entries of block requests batch are sent again
+     */
+    private Integer batchRetries = 3;
+
+    private Long batchRetryDelayMs = 500L;
+
+    /**
+     * Max amount of calls in flight made through async adapter API, further calls wait in a queue
+     */
+    private Integer rpcConcurrency = 8;
+
+    /**
+     * Time an async call may take once it's sent, before it fails
+     */
+    private Long rpcTimeoutMs = 60000L;
+
     private Long blockLag;
 
     private BigInteger startBlock;
 
     private boolean fullTransactionObject = false;
 
+    private Long logsSplitSize = 1000L;
+
+    private Integer logsConcurrency = 4;
+
+    /**
+     * Amount of times eth_getLogs call throttled by the node or provider is repeated before it fails
+     */
+    private Integer logsRetries = 5;
+
+    /**
+     * Delay before the first repeat of throttled eth_getLogs call, doubled on every next repeat
+     */
+    private Long logsRetryDelayMs = 1000L;
+
+    /**
+     * logs - eth_getLogs over block ranges,
+     * receipts - eth_getBlockReceipts per block, node must support it
+     */
+    private String logsSource = LOGS_SOURCE_LOGS;
+
+    /**
+     * Load only logs with topic0 and address of routes, when no route has wildcard event.
+     * eth_getLogs filters are sent to the node, receipt logs are filtered by the loader
+     */
+    private boolean filterLogs = true;
+
+    /**
+     * Max amount of topic0 values in single eth_getLogs filter
+     */
+    private Integer logsFilterMaxTopics = 100;
+
+    /**
+     * Max amount of addresses in single eth_getLogs filter
+     */
+    private Integer logsFilterMaxAddresses = 100;
+
+    /**
+     * Load block headers before logs and skip blocks whose logsBloom matches no route, requires block cache
+     */
+    private boolean bloomFilter = false;
+
+    /**
+     * Publish logs while eth_getLogs responses are parsed, instead of loading whole batch first
+     */
+    private boolean streamLogs = false;
+
+    /**
+     * Max amount of parsed, but not yet published logs when {@link #streamLogs} is on
+     */
+    private Integer streamBufferRecords = 10000;
+
 }
@@ -1,5 +1,6 @@
 package ethereum.eventloader.messages;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -17,6 +18,11 @@ public class BlockMessage {
     private BigInteger number;
     private String hash;
     private EthBlock.Block block;
+    /**
+     * True in compensating message of block orphaned by chain reorganization, omitted otherwise
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean removed;
 
     public BlockMessage(BigInteger number, String hash) {
         this(number, hash, null);
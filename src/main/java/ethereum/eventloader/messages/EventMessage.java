@@ -1,5 +1,6 @@
 package ethereum.eventloader.messages;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -21,6 +22,21 @@ public class EventMessage {
     private BigInteger blockNumber;
     private String data;
     private BigInteger index;
+    /**
+     * True in compensating message of event orphaned by chain reorganization, omitted otherwise
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean removed;
+    /**
+     * Hash of block holding the event, set with events enrichment only
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String blockHash;
+    /**
+     * Timestamp of block holding the event, set with events enrichment only
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BigInteger blockTimestamp;
 
     public EventMessage(List<String> topics, String transactionHash, String contractAddress, BigInteger blockNumber, String data, BigInteger index) {
         this.topics = topics;
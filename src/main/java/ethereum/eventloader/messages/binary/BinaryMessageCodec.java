@@ -0,0 +1,303 @@
+package ethereum.eventloader.messages.binary;
+
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary wire format of {@link EventMessage} and {@link BlockMessage}.
+ * <p>
+ * Message starts with header {@code [0xEB, version, type]}, followed by a struct. Struct starts with
+ * varint presence mask, bit {@code i} is set when {@code i}-th optional field is not null, absent fields
+ * take no space. Field types:
+ * <ul>
+ *     <li>{@code varint} - unsigned LEB128 long, always present, takes no presence bit</li>
+ *     <li>{@code number} - optional {@code varint}</li>
+ *     <li>{@code hash32}, {@code address20} - raw 32 or 20 bytes</li>
+ *     <li>{@code bytes} - varint length followed by bytes</li>
+ *     <li>{@code quantity} - hex quantity as {@code bytes} without leading zeros</li>
+ *     <li>{@code list<T>} - varint size followed by elements, elements have no presence bit</li>
+ *     <li>{@code flag} - presence bit only, takes no space</li>
+ * </ul>
+ * Schema of version 2:
+ * <pre>
+ * type 1 EventMessage { transactionHash hash32, contractAddress address20, blockNumber number, index number,
+ *                       topics list&lt;hash32&gt;, data bytes, removed flag, blockHash hash32,
+ *                       blockTimestamp number }
+ * type 2 BlockMessage { number number, hash hash32, block Block, removed flag }
+ * Block { number quantity, hash hash32, parentHash hash32, nonce bytes, sha3Uncles hash32, logsBloom bytes,
+ *         transactionsRoot hash32, stateRoot hash32, receiptsRoot hash32, author address20, miner address20,
+ *         mixHash hash32, difficulty quantity, totalDifficulty quantity, extraData bytes, size quantity,
+ *         gasLimit quantity, gasUsed quantity, timestamp quantity, uncles list&lt;hash32&gt;,
+ *         sealFields list&lt;bytes&gt;, transactions list&lt;varint kind, hash32 | Transaction&gt; }
+ * Transaction { hash hash32, nonce quantity, blockHash hash32, blockNumber quantity, transactionIndex quantity,
+ *               from address20, to address20, value quantity, gasPrice quantity, gas quantity, input bytes,
+ *               creates address20, publicKey bytes, raw bytes, r quantity, s quantity, v varint }
+ * </pre>
+ * New fields may only be appended to structs. Hex values are decoded lower-cased and quantities without leading zeros.
+ * Version 1 stored block nonce as quantity, losing leading zero bytes of the 8 bytes value, it is still read.
+ */
+public final class BinaryMessageCodec {
+
+    static final byte MAGIC = (byte) 0xEB;
+
+    public static final int VERSION = 2;
+
+    static final int TYPE_EVENT = 1;
+    static final int TYPE_BLOCK = 2;
+
+    private static final int TX_HASH = 0;
+    private static final int TX_OBJECT = 1;
+
+    private static final int HASH = 32;
+    private static final int ADDRESS = 20;
+
+    private BinaryMessageCodec() {
+    }
+
+    public static byte[] encode(EventMessage event) {
+        BinaryWriter writer = new BinaryWriter(128 + (event.getData() != null ? event.getData().length() / 2 : 0));
+        writer.header(VERSION, TYPE_EVENT);
+        writer.begin();
+        writer.fixed(event.getTransactionHash(), HASH);
+        writer.fixed(event.getContractAddress(), ADDRESS);
+        writer.number(event.getBlockNumber());
+        writer.number(event.getIndex());
+        if (writer.list(event.getTopics())) {
+            for (String topic : event.getTopics()) {
+                writer.rawFixed(topic, HASH);
+            }
+        }
+        writer.bytes(event.getData());
+        writer.optional(Boolean.TRUE.equals(event.getRemoved()));
+        writer.fixed(event.getBlockHash(), HASH);
+        writer.number(event.getBlockTimestamp());
+        writer.end();
+        return writer.toByteArray();
+    }
+
+    public static byte[] encode(BlockMessage message) {
+        EthBlock.Block block = message.getBlock();
+        int transactions = block != null && block.getTransactions() != null ? block.getTransactions().size() : 0;
+        BinaryWriter writer = new BinaryWriter(64 + (block != null ? 1024 + transactions * 256 : 0));
+        writer.header(VERSION, TYPE_BLOCK);
+        writer.begin();
+        writer.number(message.getNumber());
+        writer.fixed(message.getHash(), HASH);
+        if (writer.optional(block != null)) {
+            writeBlock(writer, block);
+        }
+        writer.optional(Boolean.TRUE.equals(message.getRemoved()));
+        writer.end();
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return {@link EventMessage} or {@link BlockMessage}
+     */
+    public static Object decode(byte[] data) {
+        BinaryReader reader = new BinaryReader(data);
+        int type = reader.header(VERSION);
+        switch (type) {
+            case TYPE_EVENT:
+                return readEvent(reader);
+            case TYPE_BLOCK:
+                return readBlock(reader);
+            default:
+                throw new IllegalArgumentException("unknown binary message type " + type);
+        }
+    }
+
+    private static void writeBlock(BinaryWriter writer, EthBlock.Block block) {
+        writer.begin();
+        writer.quantity(block.getNumberRaw());
+        writer.fixed(block.getHash(), HASH);
+        writer.fixed(block.getParentHash(), HASH);
+        writer.bytes(block.getNonceRaw());
+        writer.fixed(block.getSha3Uncles(), HASH);
+        writer.bytes(block.getLogsBloom());
+        writer.fixed(block.getTransactionsRoot(), HASH);
+        writer.fixed(block.getStateRoot(), HASH);
+        writer.fixed(block.getReceiptsRoot(), HASH);
+        writer.fixed(block.getAuthor(), ADDRESS);
+        writer.fixed(block.getMiner(), ADDRESS);
+        writer.fixed(block.getMixHash(), HASH);
+        writer.quantity(block.getDifficultyRaw());
+        writer.quantity(block.getTotalDifficultyRaw());
+        writer.bytes(block.getExtraData());
+        writer.quantity(block.getSizeRaw());
+        writer.quantity(block.getGasLimitRaw());
+        writer.quantity(block.getGasUsedRaw());
+        writer.quantity(block.getTimestampRaw());
+        if (writer.list(block.getUncles())) {
+            for (String uncle : block.getUncles()) {
+                writer.rawFixed(uncle, HASH);
+            }
+        }
+        if (writer.list(block.getSealFields())) {
+            for (String sealField : block.getSealFields()) {
+                writer.rawBytes(sealField);
+            }
+        }
+        if (writer.list(block.getTransactions())) {
+            for (EthBlock.TransactionResult<?> result : block.getTransactions()) {
+                if (result instanceof EthBlock.TransactionObject) {
+                    writer.varLong(TX_OBJECT);
+                    writeTransaction(writer, (Transaction) result);
+                } else {
+                    writer.varLong(TX_HASH);
+                    writer.rawFixed((String) result.get(), HASH);
+                }
+            }
+        }
+        writer.end();
+    }
+
+    private static void writeTransaction(BinaryWriter writer, Transaction transaction) {
+        writer.begin();
+        writer.fixed(transaction.getHash(), HASH);
+        writer.quantity(transaction.getNonceRaw());
+        writer.fixed(transaction.getBlockHash(), HASH);
+        writer.quantity(transaction.getBlockNumberRaw());
+        writer.quantity(transaction.getTransactionIndexRaw());
+        writer.fixed(transaction.getFrom(), ADDRESS);
+        writer.fixed(transaction.getTo(), ADDRESS);
+        writer.quantity(transaction.getValueRaw());
+        writer.quantity(transaction.getGasPriceRaw());
+        writer.quantity(transaction.getGasRaw());
+        writer.bytes(transaction.getInput());
+        writer.fixed(transaction.getCreates(), ADDRESS);
+        writer.bytes(transaction.getPublicKey());
+        writer.bytes(transaction.getRaw());
+        writer.quantity(transaction.getR());
+        writer.quantity(transaction.getS());
+        writer.varLong(transaction.getV());
+        writer.end();
+    }
+
+    private static EventMessage readEvent(BinaryReader reader) {
+        EventMessage event = new EventMessage();
+        reader.begin();
+        event.setTransactionHash(reader.fixed(HASH));
+        event.setContractAddress(reader.fixed(ADDRESS));
+        event.setBlockNumber(reader.number());
+        event.setIndex(reader.number());
+        int topics = reader.list();
+        if (topics >= 0) {
+            List<String> values = new ArrayList<>(topics);
+            for (int i = 0; i < topics; i++) {
+                values.add(reader.rawFixed(HASH));
+            }
+            event.setTopics(values);
+        }
+        event.setData(reader.bytes());
+        if (reader.optional()) {
+            event.setRemoved(true);
+        }
+        event.setBlockHash(reader.fixed(HASH));
+        event.setBlockTimestamp(reader.number());
+        reader.end();
+        return event;
+    }
+
+    private static BlockMessage readBlock(BinaryReader reader) {
+        BlockMessage message = new BlockMessage();
+        reader.begin();
+        message.setNumber(reader.number());
+        message.setHash(reader.fixed(HASH));
+        if (reader.optional()) {
+            message.setBlock(readBlockStruct(reader));
+        }
+        if (reader.optional()) {
+            message.setRemoved(true);
+        }
+        reader.end();
+        return message;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static EthBlock.Block readBlockStruct(BinaryReader reader) {
+        EthBlock.Block block = new EthBlock.Block();
+        reader.begin();
+        block.setNumber(reader.quantity());
+        block.setHash(reader.fixed(HASH));
+        block.setParentHash(reader.fixed(HASH));
+        block.setNonce(reader.version() < 2 ? reader.quantity() : reader.bytes());
+        block.setSha3Uncles(reader.fixed(HASH));
+        block.setLogsBloom(reader.bytes());
+        block.setTransactionsRoot(reader.fixed(HASH));
+        block.setStateRoot(reader.fixed(HASH));
+        block.setReceiptsRoot(reader.fixed(HASH));
+        block.setAuthor(reader.fixed(ADDRESS));
+        block.setMiner(reader.fixed(ADDRESS));
+        block.setMixHash(reader.fixed(HASH));
+        block.setDifficulty(reader.quantity());
+        block.setTotalDifficulty(reader.quantity());
+        block.setExtraData(reader.bytes());
+        block.setSize(reader.quantity());
+        block.setGasLimit(reader.quantity());
+        block.setGasUsed(reader.quantity());
+        block.setTimestamp(reader.quantity());
+        int uncles = reader.list();
+        if (uncles >= 0) {
+            List<String> values = new ArrayList<>(uncles);
+            for (int i = 0; i < uncles; i++) {
+                values.add(reader.rawFixed(HASH));
+            }
+            block.setUncles(values);
+        }
+        int sealFields = reader.list();
+        if (sealFields >= 0) {
+            List<String> values = new ArrayList<>(sealFields);
+            for (int i = 0; i < sealFields; i++) {
+                values.add(reader.rawBytes());
+            }
+            block.setSealFields(values);
+        }
+        int transactions = reader.list();
+        if (transactions >= 0) {
+            List<EthBlock.TransactionResult> values = new ArrayList<>(transactions);
+            for (int i = 0; i < transactions; i++) {
+                long kind = reader.varLong();
+                if (kind == TX_OBJECT) {
+                    values.add(readTransaction(reader));
+                } else if (kind == TX_HASH) {
+                    values.add(new EthBlock.TransactionHash(reader.rawFixed(HASH)));
+                } else {
+                    throw new IllegalArgumentException("unknown transaction kind " + kind);
+                }
+            }
+            block.setTransactions(values);
+        }
+        reader.end();
+        return block;
+    }
+
+    private static EthBlock.TransactionObject readTransaction(BinaryReader reader) {
+        EthBlock.TransactionObject transaction = new EthBlock.TransactionObject();
+        reader.begin();
+        transaction.setHash(reader.fixed(HASH));
+        transaction.setNonce(reader.quantity());
+        transaction.setBlockHash(reader.fixed(HASH));
+        transaction.setBlockNumber(reader.quantity());
+        transaction.setTransactionIndex(reader.quantity());
+        transaction.setFrom(reader.fixed(ADDRESS));
+        transaction.setTo(reader.fixed(ADDRESS));
+        transaction.setValue(reader.quantity());
+        transaction.setGasPrice(reader.quantity());
+        transaction.setGas(reader.quantity());
+        transaction.setInput(reader.bytes());
+        transaction.setCreates(reader.fixed(ADDRESS));
+        transaction.setPublicKey(reader.bytes());
+        transaction.setRaw(reader.bytes());
+        transaction.setR(reader.quantity());
+        transaction.setS(reader.quantity());
+        transaction.setV(reader.varLong());
+        reader.end();
+        return transaction;
+    }
+}
@@ -0,0 +1,40 @@
+package ethereum.eventloader.messages.binary;
+
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+import java.util.Map;
+
+/**
+ * Kafka deserializer of {@link BinaryMessageCodec} format, produces {@link EventMessage} or {@link BlockMessage}
+ */
+public class BinaryMessageDeserializer implements ExtendedDeserializer<Object> {
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        return deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return BinaryMessageCodec.decode(data);
+        } catch (RuntimeException ex) {
+            throw new SerializationException("can't deserialize message from " + topic, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,46 @@
+package ethereum.eventloader.messages.binary;
+
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+
+import java.util.Map;
+
+/**
+ * Kafka serializer of {@link EventMessage} and {@link BlockMessage} in {@link BinaryMessageCodec} format
+ */
+public class BinaryMessageSerializer implements ExtendedSerializer<Object> {
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        return serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (data instanceof EventMessage) {
+                return BinaryMessageCodec.encode((EventMessage) data);
+            }
+            if (data instanceof BlockMessage) {
+                return BinaryMessageCodec.encode((BlockMessage) data);
+            }
+        } catch (RuntimeException ex) {
+            throw new SerializationException("can't serialize message to " + topic, ex);
+        }
+        throw new SerializationException("binary format is not supported for " + data.getClass().getName());
+    }
+
+    @Override
+    public void close() {
+    }
+}
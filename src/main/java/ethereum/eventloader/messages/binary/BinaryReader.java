@@ -0,0 +1,161 @@
+package ethereum.eventloader.messages.binary;
+
+import java.math.BigInteger;
+
+/**
+ * Reads fields of {@link BinaryMessageCodec} format in the order they were written by {@link BinaryWriter}
+ */
+final class BinaryReader {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int MAX_DEPTH = 4;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private final long[] masks = new long[MAX_DEPTH];
+
+    private final int[] bits = new int[MAX_DEPTH];
+
+    private int depth = -1;
+
+    private int version;
+
+    BinaryReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return Message type
+     */
+    int header(int maxVersion) {
+        if (buffer.length < 3 || buffer[0] != BinaryMessageCodec.MAGIC) {
+            throw new IllegalArgumentException("not a binary event-loader message");
+        }
+        version = buffer[1] & 0xFF;
+        if (version > maxVersion) {
+            throw new IllegalArgumentException("unsupported binary format version " + version);
+        }
+        position = 3;
+        return buffer[2] & 0xFF;
+    }
+
+    /**
+     * @return Format version read by {@link #header(int)}
+     */
+    int version() {
+        return version;
+    }
+
+    void begin() {
+        depth++;
+        masks[depth] = varLong();
+        bits[depth] = 0;
+    }
+
+    void end() {
+        depth--;
+    }
+
+    BigInteger number() {
+        return present() ? BigInteger.valueOf(varLong()) : null;
+    }
+
+    String fixed(int size) {
+        return present() ? rawFixed(size) : null;
+    }
+
+    String bytes() {
+        return present() ? rawBytes() : null;
+    }
+
+    String quantity() {
+        if (!present()) {
+            return null;
+        }
+        int size = length();
+        int end = position + size;
+        while (position < end && buffer[position] == 0) {
+            position++;
+        }
+        if (position == end) {
+            return "0x0";
+        }
+        boolean odd = (buffer[position] & 0xF0) == 0;
+        char[] hex = new char[2 + (end - position) * 2 - (odd ? 1 : 0)];
+        hex[0] = '0';
+        hex[1] = 'x';
+        int index = 2;
+        if (odd) {
+            hex[index++] = HEX[buffer[position++] & 0xF];
+        }
+        appendHex(hex, index, end);
+        return new String(hex);
+    }
+
+    /**
+     * @return Whether optional nested struct follows
+     */
+    boolean optional() {
+        return present();
+    }
+
+    /**
+     * @return List size, -1 if list is absent
+     */
+    int list() {
+        return present() ? length() : -1;
+    }
+
+    String rawFixed(int size) {
+        if (position + size > buffer.length) {
+            throw new IllegalArgumentException("truncated message");
+        }
+        char[] hex = new char[2 + size * 2];
+        hex[0] = '0';
+        hex[1] = 'x';
+        appendHex(hex, 2, position + size);
+        return new String(hex);
+    }
+
+    String rawBytes() {
+        return rawFixed(length());
+    }
+
+    long varLong() {
+        long value = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("truncated message");
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private int length() {
+        long length = varLong();
+        if (length > buffer.length - position) {
+            throw new IllegalArgumentException("truncated message");
+        }
+        return (int) length;
+    }
+
+    private boolean present() {
+        return (masks[depth] & 1L << bits[depth]++) != 0;
+    }
+
+    private void appendHex(char[] hex, int index, int end) {
+        while (position < end) {
+            int b = buffer[position++] & 0xFF;
+            hex[index++] = HEX[b >>> 4];
+            hex[index++] = HEX[b & 0xF];
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ethereum.eventloader.messages.binary;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable buffer writing fields of {@link BinaryMessageCodec} format.
+ * <p>
+ * Optional fields of a struct are tracked in presence mask, which is written in front
+ * of struct fields by {@link #end()}.
+ */
+final class BinaryWriter {
+
+    private static final int MAX_DEPTH = 4;
+
+    private byte[] buffer;
+
+    private int position;
+
+    private final long[] masks = new long[MAX_DEPTH];
+
+    private final int[] bits = new int[MAX_DEPTH];
+
+    private final int[] starts = new int[MAX_DEPTH];
+
+    private int depth = -1;
+
+    BinaryWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    void header(int version, int type) {
+        write(BinaryMessageCodec.MAGIC);
+        write(version);
+        write(type);
+    }
+
+    void begin() {
+        depth++;
+        masks[depth] = 0L;
+        bits[depth] = 0;
+        starts[depth] = position;
+    }
+
+    void end() {
+        long mask = masks[depth];
+        int start = starts[depth];
+        depth--;
+        int length = varLongLength(mask);
+        ensure(length);
+        System.arraycopy(buffer, start, buffer, start + length, position - start);
+        int end = position;
+        position = start;
+        varLong(mask);
+        position = end + length;
+    }
+
+    /**
+     * Optional unsigned number, must fit in long
+     */
+    void number(BigInteger value) {
+        if (present(value != null)) {
+            varLong(value.longValueExact());
+        }
+    }
+
+    /**
+     * Optional hash or address of exactly {@code size} bytes
+     */
+    void fixed(String hex, int size) {
+        if (present(hex != null)) {
+            rawFixed(hex, size);
+        }
+    }
+
+    /**
+     * Optional length-prefixed byte string
+     */
+    void bytes(String hex) {
+        if (present(hex != null)) {
+            rawBytes(hex);
+        }
+    }
+
+    /**
+     * Optional hex quantity stored as length-prefixed unsigned big-endian bytes
+     */
+    void quantity(String hex) {
+        if (present(hex != null)) {
+            int from = hexStart(hex);
+            while (from < hex.length() && hex.charAt(from) == '0') {
+                from++;
+            }
+            rawHex(hex, from);
+        }
+    }
+
+    /**
+     * Presence bit of optional nested struct
+     *
+     * @return Whether struct has to be written
+     */
+    boolean optional(boolean present) {
+        return present(present);
+    }
+
+    /**
+     * Optional list, size is written when present
+     *
+     * @return Whether list elements have to be written
+     */
+    boolean list(List<?> list) {
+        if (present(list != null)) {
+            varLong(list.size());
+            return true;
+        }
+        return false;
+    }
+
+    void rawFixed(String hex, int size) {
+        int from = hexStart(hex);
+        if (hex.length() - from != size * 2) {
+            throw new IllegalArgumentException("expected " + size + " bytes hex value: " + hex);
+        }
+        ensure(size);
+        for (int i = from; i < hex.length(); i += 2) {
+            buffer[position++] = (byte) (nibble(hex, i) << 4 | nibble(hex, i + 1));
+        }
+    }
+
+    void rawBytes(String hex) {
+        rawHex(hex, hexStart(hex));
+    }
+
+    void varLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void rawHex(String hex, int from) {
+        int digits = hex.length() - from;
+        int size = (digits + 1) / 2;
+        varLong(size);
+        ensure(size);
+        int i = from;
+        if ((digits & 1) == 1) {
+            buffer[position++] = (byte) nibble(hex, i++);
+        }
+        for (; i < hex.length(); i += 2) {
+            buffer[position++] = (byte) (nibble(hex, i) << 4 | nibble(hex, i + 1));
+        }
+    }
+
+    private boolean present(boolean present) {
+        int bit = bits[depth]++;
+        if (bit >= Long.SIZE) {
+            throw new IllegalStateException("too many fields in struct");
+        }
+        if (present) {
+            masks[depth] |= 1L << bit;
+        }
+        return present;
+    }
+
+    private void write(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensure(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+
+    private static int hexStart(String hex) {
+        return hex.startsWith("0x") || hex.startsWith("0X") ? 2 : 0;
+    }
+
+    private static int nibble(String hex, int index) {
+        int value = Character.digit(hex.charAt(index), 16);
+        if (value < 0) {
+            throw new IllegalArgumentException("not a hex value: " + hex);
+        }
+        return value;
+    }
+
+    private static int varLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
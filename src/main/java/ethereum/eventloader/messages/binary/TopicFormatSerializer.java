@@ -0,0 +1,70 @@
+package ethereum.eventloader.messages.binary;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Value serializer choosing format by topic: binary topics get {@link BinaryMessageSerializer},
+ * the rest goes through serializer configured in {@code value.serializer} untouched, so their
+ * output stays the same as without this serializer.
+ */
+public class TopicFormatSerializer implements ExtendedSerializer<Object> {
+
+    private final Set<String> binaryTopics;
+
+    private final BinaryMessageSerializer binary = new BinaryMessageSerializer();
+
+    private final ExtendedSerializer<Object> delegate;
+
+    /**
+     * @param binaryTopics Topics published in binary format
+     * @param producerConfigs Producer configuration used to create and configure default serializer
+     */
+    @SuppressWarnings("unchecked")
+    public TopicFormatSerializer(Collection<String> binaryTopics, Map<String, Object> producerConfigs) {
+        this.binaryTopics = new HashSet<>(binaryTopics);
+        Object type = producerConfigs.get(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG);
+        Serializer<Object> serializer;
+        try {
+            if (type instanceof Class) {
+                serializer = Utils.newInstance((Class<Serializer<Object>>) type);
+            } else if (type != null) {
+                serializer = Utils.newInstance(type.toString(), Serializer.class);
+            } else {
+                serializer = new JsonSerializer<>();
+            }
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("value serializer not found: " + type, ex);
+        }
+        serializer.configure(producerConfigs, false);
+        this.delegate = ExtendedSerializer.Wrapper.ensureExtended(serializer);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        return binaryTopics.contains(topic) ? binary.serialize(topic, data) : delegate.serialize(topic, headers, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return binaryTopics.contains(topic) ? binary.serialize(topic, data) : delegate.serialize(topic, data);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -1,10 +1,18 @@
 package ethereum.eventloader.metrics;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 /**
  * Metrics collector of blockchain state
  *
@@ -18,15 +26,51 @@ public class BlockchainMetrics {
     private static final String TYPE = "service";
     private static final String SYNC_STATUS = "state";
     private static final String SYNC = "node_sync";
+    private static final String BLOCK_CACHE = "block_cache";
+    private static final String BLOCK_CACHE_SIZE = "block_cache_size";
+    private static final String BLOCK_CACHE_RESULT = "result";
+    private static final String RPC_TIME = "rpc_request_time";
+    private static final String RPC_ERRORS = "rpc_request_errors";
+    private static final String RPC_HEDGED = "rpc_hedged_requests";
+    private static final String RPC_HEAD = "rpc_endpoint_head";
+    private static final String RPC_OPEN = "rpc_endpoint_open";
+    private static final String RPC_ENDPOINT = "endpoint";
+    private static final String BATCH_SIZE = "rpc_batch_size";
+    private static final String BATCH_CHUNK_TIME = "rpc_batch_chunk_time";
+    private static final String BATCH_ITEM_ERRORS = "rpc_batch_item_errors";
+    private static final String BLOOM_SKIPPED = "bloom_skipped_blocks";
+    private static final String RPC_RESPONSE_BYTES = "rpc_response_bytes";
+
+    private final MeterRegistry registry;
 
     private Long blockNumber;
     private boolean inSync;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+    private Counter cacheEvictions;
+    private DistributionSummary batchSize;
+    private Timer batchChunkTime;
+    private Counter batchItemErrors;
+    private Counter bloomSkipped;
+    private DistributionSummary responseBytes;
+    private final Map<String, Timer> rpcTimes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rpcErrors = new ConcurrentHashMap<>();
 
     @Autowired
     public BlockchainMetrics(MeterRegistry registry) {
+        this.registry = registry;
         Gauge.builder(BLOCK_NUMBER, this::getBlockNumber).tag(BLOCK_NUMBER_TAG, "current").tag(TYPE, "blockchain").register(registry);
         Gauge.builder(SYNC, this::isSyncTrue).tag(SYNC_STATUS, "in_sync").register(registry);
         Gauge.builder(SYNC, this::isSyncFalse).tag(SYNC_STATUS, "synced").register(registry);
+        this.cacheHits = Counter.builder(BLOCK_CACHE).tag(BLOCK_CACHE_RESULT, "hit").tag(TYPE, "blockchain").register(registry);
+        this.cacheMisses = Counter.builder(BLOCK_CACHE).tag(BLOCK_CACHE_RESULT, "miss").tag(TYPE, "blockchain").register(registry);
+        this.cacheEvictions = Counter.builder(BLOCK_CACHE).tag(BLOCK_CACHE_RESULT, "eviction").tag(TYPE, "blockchain").register(registry);
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE).tag(TYPE, "blockchain").register(registry);
+        this.batchChunkTime = Timer.builder(BATCH_CHUNK_TIME).tag(TYPE, "blockchain").publishPercentileHistogram().register(registry);
+        this.batchItemErrors = Counter.builder(BATCH_ITEM_ERRORS).tag(TYPE, "blockchain").register(registry);
+        this.bloomSkipped = Counter.builder(BLOOM_SKIPPED).tag(TYPE, "blockchain").register(registry);
+        this.responseBytes = DistributionSummary.builder(RPC_RESPONSE_BYTES).baseUnit("bytes").tag(TYPE, "blockchain")
+                .publishPercentileHistogram().register(registry);
     }
 
     /**
@@ -47,6 +91,131 @@ public class BlockchainMetrics {
         this.inSync = isSync;
     }
 
+    /**
+     * Register gauges of block cache occupancy
+     *
+     * @param bytes Estimated size of cached blocks
+     * @param blocks Amount of cached blocks
+     */
+    public void monitorBlockCache(Supplier<Number> bytes, Supplier<Number> blocks) {
+        Gauge.builder(BLOCK_CACHE_SIZE, bytes).tag("unit", "bytes").tag(TYPE, "blockchain").register(registry);
+        Gauge.builder(BLOCK_CACHE_SIZE, blocks).tag("unit", "blocks").tag(TYPE, "blockchain").register(registry);
+    }
+
+    /**
+     * Increment count of blocks found in cache
+     */
+    public void addBlockCacheHit() {
+        this.cacheHits.increment();
+    }
+
+    /**
+     * Increment count of blocks missing in cache
+     */
+    public void addBlockCacheMiss() {
+        this.cacheMisses.increment();
+    }
+
+    /**
+     * Increment count of blocks evicted from cache
+     */
+    public void addBlockCacheEviction() {
+        this.cacheEvictions.increment();
+    }
+
+    /**
+     * Register gauges of nodes pool endpoint state
+     *
+     * @param endpoint Endpoint name
+     * @param head Latest block known to the endpoint
+     * @param open 1 if endpoint is excluded after failures, 0 otherwise
+     */
+    public void monitorRpcEndpoint(String endpoint, Supplier<Number> head, Supplier<Number> open) {
+        Gauge.builder(RPC_HEAD, head).tag(RPC_ENDPOINT, endpoint).tag(TYPE, "blockchain").register(registry);
+        Gauge.builder(RPC_OPEN, open).tag(RPC_ENDPOINT, endpoint).tag(TYPE, "blockchain").register(registry);
+    }
+
+    /**
+     * Record successful call of nodes pool endpoint
+     *
+     * @param endpoint Endpoint name
+     * @param nanos Time in nanoseconds
+     */
+    public void recordRpcCall(String endpoint, long nanos) {
+        rpcTimes.computeIfAbsent(endpoint, name -> Timer.builder(RPC_TIME).tag(RPC_ENDPOINT, name).tag(TYPE, "blockchain")
+                .publishPercentileHistogram().register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Increment count of failed calls of nodes pool endpoint
+     *
+     * @param endpoint Endpoint name
+     */
+    public void addRpcError(String endpoint) {
+        rpcErrors.computeIfAbsent(endpoint, name -> Counter.builder(RPC_ERRORS).tag(RPC_ENDPOINT, name).tag(TYPE, "blockchain")
+                .register(registry))
+                .increment();
+    }
+
+    /**
+     * Increment count of calls sent to second endpoint because first one was slow
+     *
+     * @param method JSON-RPC method
+     */
+    public void addHedgedRpcCall(String method) {
+        Counter.builder(RPC_HEDGED).tag("method", method).tag(TYPE, "blockchain").register(registry).increment();
+    }
+
+    /**
+     * Record amount of requests in block requests batch, before it is split into chunks
+     *
+     * @param requests Amount of requests
+     */
+    public void recordBatchSize(int requests) {
+        this.batchSize.record(requests);
+    }
+
+    /**
+     * Record time of single JSON-RPC batch call
+     *
+     * @param nanos Time in nanoseconds
+     */
+    public void recordBatchChunk(long nanos) {
+        this.batchChunkTime.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Increment count of batch entries failed or answered without block
+     *
+     * @param count Amount of failed entries
+     */
+    public void addBatchItemFailures(int count) {
+        if (count > 0) {
+            this.batchItemErrors.increment(count);
+        }
+    }
+
+    /**
+     * Increment count of blocks not queried for logs because of their logs bloom
+     *
+     * @param count Amount of skipped blocks
+     */
+    public void addBloomSkippedBlocks(int count) {
+        if (count > 0) {
+            this.bloomSkipped.increment(count);
+        }
+    }
+
+    /**
+     * Record size of HTTP response body of the node
+     *
+     * @param bytes Size of decoded response body
+     */
+    public void recordRpcResponseBytes(long bytes) {
+        this.responseBytes.record(bytes);
+    }
+
     private Long getBlockNumber() {
         return this.blockNumber;
     }
@@ -1,6 +1,8 @@
 package ethereum.eventloader.metrics;
 
 import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.ReorgConfig;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -11,6 +13,8 @@ import org.springframework.stereotype.Service;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Metrics collector of events loading state
@@ -19,6 +23,19 @@ import java.util.concurrent.Callable;
  */
 @Service
 public class EventMetrics {
+    /**
+     * Stages of loader iteration timed by {@link #recordStage(String, long)}
+     */
+    public static final String STAGE_LOCK = "lock";
+    public static final String STAGE_CHECKPOINT_READ = "checkpoint_read";
+    public static final String STAGE_CHECKPOINT_WRITE = "checkpoint_write";
+    public static final String STAGE_HEAD = "head";
+    public static final String STAGE_LOGS = "logs";
+    public static final String STAGE_BLOCKS = "blocks";
+    public static final String STAGE_CONVERSION = "conversion";
+    public static final String STAGE_SEND = "send";
+    public static final String STAGE_ACK = "ack";
+
     private static final String BLOCK_NUMBER = "block_number";
     private static final String BLOCK_NUMBER_TAG = "tag";
     private static final String TYPE = "service";
@@ -27,26 +44,59 @@ public class EventMetrics {
     private static final String MESSAGE = "message_published_topic";
     private static final String PROCESS_TIME = "events_fetch_time";
     private static final String EVENT_LOADER = "event_loader";
+    private static final String BATCH_SIZE = "batch_size";
+    private static final String IN_FLIGHT = "publish_in_flight";
+    private static final String ACK_TIME = "publish_ack_time";
+    private static final String PIPELINE_QUEUE = "pipeline_queue_size";
+    private static final String STAGE = "stage";
+    private static final String REORG_DEPTH = "reorg_depth";
+    private static final String SPOOL_SIZE = "spool_size_bytes";
+    private static final String SPOOL_DRAINED = "spool_drained_messages";
+    private static final String STAGE_TIME = "loader_stage_time";
+    private static final String BATCH_LOGS = "batch_logs";
+    private static final String BATCH_BLOCKS = "batch_blocks";
+
+    private final MeterRegistry registry;
 
     private Long currentBlockNumber;
     private Long latestBlockNumber;
+    private Long batchSize;
     private Counter eventProcessed;
     private Counter blockProcessed;
     private Timer processTime;
+    private Timer ackTime;
+    private DistributionSummary reorgDepth;
+    private Counter spoolDrained;
+    private DistributionSummary batchLogs;
+    private DistributionSummary batchBlocks;
     private Map<String, Counter> topicCounters;
+    private final Map<String, Timer> stageTimes = new HashMap<>();
 
     @Autowired
-    public EventMetrics(MeterRegistry registry, KafkaTopics topics) {
+    public EventMetrics(MeterRegistry registry, KafkaTopics topics, ReorgConfig reorgConfig) {
 
+        this.registry = registry;
         this.currentBlockNumber = 0L;
         this.latestBlockNumber = 0L;
+        this.batchSize = 0L;
 
         Gauge.builder(BLOCK_NUMBER, this::getCurrentBlockNumber).tag(BLOCK_NUMBER_TAG, "current").tag(TYPE, EVENT_LOADER).register(registry);
         Gauge.builder(BLOCK_NUMBER, this::getLatestBlockNumber).tag(BLOCK_NUMBER_TAG, "latest").tag(TYPE, EVENT_LOADER).register(registry);
         Gauge.builder(BLOCK_NUMBER, this::getLag).tag(BLOCK_NUMBER_TAG, "lag").tag(TYPE, EVENT_LOADER).register(registry);
+        Gauge.builder(BATCH_SIZE, this::getBatchSize).tag(TYPE, EVENT_LOADER).register(registry);
         this.eventProcessed = Counter.builder(EVENT_PROCESSED).tag(TYPE, EVENT_LOADER).register(registry);
         this.blockProcessed = Counter.builder(BLOCK_PROCESSED).tag(TYPE, EVENT_LOADER).register(registry);
         this.processTime = Timer.builder(PROCESS_TIME).tag(TYPE, EVENT_LOADER).publishPercentileHistogram().register(registry);
+        this.ackTime = Timer.builder(ACK_TIME).tag(TYPE, EVENT_LOADER).publishPercentileHistogram().register(registry);
+        this.reorgDepth = DistributionSummary.builder(REORG_DEPTH).tag(TYPE, EVENT_LOADER).register(registry);
+        this.spoolDrained = Counter.builder(SPOOL_DRAINED).tag(TYPE, EVENT_LOADER).register(registry);
+        this.batchLogs = DistributionSummary.builder(BATCH_LOGS).tag(TYPE, EVENT_LOADER).publishPercentileHistogram().register(registry);
+        this.batchBlocks = DistributionSummary.builder(BATCH_BLOCKS).tag(TYPE, EVENT_LOADER).publishPercentileHistogram().register(registry);
+        for (String stage : new String[]{STAGE_LOCK, STAGE_CHECKPOINT_READ, STAGE_CHECKPOINT_WRITE, STAGE_HEAD, STAGE_LOGS,
+                STAGE_BLOCKS, STAGE_CONVERSION, STAGE_SEND, STAGE_ACK}) {
+            stageTimes.put(stage, Timer.builder(STAGE_TIME).tag(STAGE, stage).tag(TYPE, EVENT_LOADER)
+                    .publishPercentileHistogram().register(registry));
+        }
         topicCounters = new HashMap<>(topics.getEvents().size());
         topics.getEvents().forEach(topic -> {
             Counter counter = Counter.builder(MESSAGE)
@@ -55,6 +105,14 @@ public class EventMetrics {
                     .tag("name", topic.getName())
                     .register(registry);
             topicCounters.put(topic.getTopic(), counter);
+            if (reorgConfig.isEnabled() && reorgConfig.getConfirmations() > 0) {
+                String confirmed = topic.getTopic() + reorgConfig.getConfirmedSuffix();
+                topicCounters.put(confirmed, Counter.builder(MESSAGE)
+                        .tag("topic", confirmed)
+                        .tag("event", topic.getEvent())
+                        .tag("name", topic.getName())
+                        .register(registry));
+            }
         });
     }
 
@@ -77,21 +135,42 @@ public class EventMetrics {
     }
 
     /**
-     * Add events count processed during iteration
+     * Set amount of blocks chosen for the next batch
+     *
+     * @param batchSize Amount of blocks
+     */
+    public void setBatchSize(Long batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Add events count of a processed batch
      *
      * @param eventsCount Count of events
      */
     public void addProcessedEventsCount(Long eventsCount) {
         this.eventProcessed.increment(eventsCount.doubleValue());
+        this.batchLogs.record(eventsCount);
     }
 
     /**
-     * Add blocks count processed during iteration
+     * Add blocks count of a processed batch
      *
      * @param blocksCount Count of blocks
      */
     public void addProcessedBlocksCount(Long blocksCount) {
         this.blockProcessed.increment(blocksCount.doubleValue());
+        this.batchBlocks.record(blocksCount);
+    }
+
+    /**
+     * Record time spent in a stage of loader iteration
+     *
+     * @param stage One of {@code STAGE_*} names
+     * @param nanos Time in nanoseconds
+     */
+    public void recordStage(String stage, long nanos) {
+        this.stageTimes.get(stage).record(nanos, TimeUnit.NANOSECONDS);
     }
 
     /**
@@ -103,6 +182,63 @@ public class EventMetrics {
         this.topicCounters.get(topic).increment();
     }
 
+    /**
+     * Register occupancy gauge of the queue feeding pipeline stage
+     *
+     * @param stage Name of the stage consuming the queue
+     * @param queued Amount of batches waiting for the stage
+     */
+    public void monitorPipelineStage(String stage, Supplier<Number> queued) {
+        Gauge.builder(PIPELINE_QUEUE, queued).tag(STAGE, stage).tag(TYPE, EVENT_LOADER).register(registry);
+    }
+
+    /**
+     * Register gauges of sent, but not yet acknowledged messages
+     *
+     * @param messages Amount of in-flight messages
+     * @param bytes Estimated size of in-flight messages
+     */
+    public void monitorInFlight(Supplier<Number> messages, Supplier<Number> bytes) {
+        Gauge.builder(IN_FLIGHT, messages).tag("unit", "messages").tag(TYPE, EVENT_LOADER).register(registry);
+        Gauge.builder(IN_FLIGHT, bytes).tag("unit", "bytes").tag(TYPE, EVENT_LOADER).register(registry);
+    }
+
+    /**
+     * Record time between sending message and its acknowledgement
+     *
+     * @param nanos Time in nanoseconds
+     */
+    public void recordAckTime(long nanos) {
+        this.ackTime.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record chain reorganization
+     *
+     * @param depth Amount of orphaned blocks
+     */
+    public void recordReorg(long depth) {
+        this.reorgDepth.record(depth);
+    }
+
+    /**
+     * Register gauge of spooled batches not yet drained to message broker
+     *
+     * @param bytes Size of spooled batches
+     */
+    public void monitorSpool(Supplier<Number> bytes) {
+        Gauge.builder(SPOOL_SIZE, bytes).tag(TYPE, EVENT_LOADER).register(registry);
+    }
+
+    /**
+     * Add count of messages drained from spool to message broker
+     *
+     * @param count Amount of messages
+     */
+    public void addDrainedMessages(int count) {
+        this.spoolDrained.increment(count);
+    }
+
     /**
      *  Execute function and measure the execution time
      *
@@ -123,6 +259,10 @@ public class EventMetrics {
         return latestBlockNumber;
     }
 
+    private Long getBatchSize() {
+        return batchSize;
+    }
+
     private Long getLag() {
         return this.getCurrentBlockNumber() - this.getLatestBlockNumber();
     }
@@ -0,0 +1,166 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.BatchSizeController;
+import ethereum.eventloader.component.BatchTransactionManager;
+import ethereum.eventloader.component.BlockCache;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.Web3jBlockchain;
+import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.component.rpc.RpcLimiter;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class AsyncBlockchainTest extends Assert {
+
+    @Test
+    public void test_calls_above_limit_wait_for_free_slot() {
+        try (RpcLimiter limiter = new RpcLimiter(2, 10000)) {
+            List<CompletableFuture<String>> sent = new ArrayList<>();
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(limiter.submit("eth_call", () -> {
+                    CompletableFuture<String> call = new CompletableFuture<>();
+                    sent.add(call);
+                    return call;
+                }));
+            }
+            assertEquals(2, sent.size());
+            assertEquals(2, limiter.inFlight());
+
+            sent.get(1).complete("second");
+            assertEquals("second", results.get(1).join());
+            assertEquals(3, sent.size());
+
+            sent.get(0).complete("first");
+            sent.get(2).complete("third");
+            assertEquals("third", results.get(2).join());
+            assertEquals(0, limiter.inFlight());
+        }
+    }
+
+    @Test
+    public void test_call_not_answered_in_time_fails_and_keeps_slot() {
+        try (RpcLimiter limiter = new RpcLimiter(1, 50)) {
+            CompletableFuture<String> stuck = new CompletableFuture<>();
+            CompletableFuture<String> first = limiter.submit("eth_getLogs", () -> stuck);
+            AtomicInteger sent = new AtomicInteger();
+            CompletableFuture<String> second = limiter.submit("eth_blockNumber", () -> {
+                sent.incrementAndGet();
+                return CompletableFuture.completedFuture("0x10");
+            });
+            try {
+                first.join();
+                fail("call must time out");
+            } catch (CompletionException ex) {
+                assertTrue(ex.getCause() instanceof BlockchainException);
+                assertTrue(ex.getCause().getMessage().startsWith("eth_getLogs not answered"));
+            }
+            // slot is free only once the stuck call completes
+            assertEquals(0, sent.get());
+            stuck.complete("late");
+            assertEquals("0x10", second.join());
+        }
+    }
+
+    @Test
+    public void test_head_and_blocks_loaded_concurrently() {
+        CompletableFuture<EthBlockNumber> head = new CompletableFuture<>();
+        CompletableFuture<List<EthBlock.Block>> batch = new CompletableFuture<>();
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Request headRequest = Mockito.mock(Request.class);
+        Mockito.when(headRequest.sendAsync()).thenReturn(head);
+        Mockito.when(web3j.ethBlockNumber()).thenReturn(headRequest);
+        Mockito.when(web3j.ethGetBlockByNumber(any(DefaultBlockParameter.class), anyBoolean()))
+                .thenReturn(Mockito.mock(Request.class));
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        BatchTransactionManager batchTxManager = Mockito.mock(BatchTransactionManager.class);
+        Mockito.when(batchTxManager.sendBatchAsync(any(Web3j.class), anyList())).thenReturn(batch);
+        Web3jConfig config = new Web3jConfig();
+        config.setBlockLag(2L);
+        BlockchainMetrics metrics = Mockito.mock(BlockchainMetrics.class);
+        Web3jBlockchain blockchain = new Web3jBlockchain(beans, config, metrics, batchTxManager,
+                new LogRangeFetcher(config), new BlockReceiptsFetcher(config), Mockito.mock(BatchSizeController.class),
+                new BlockCache(new BlockCacheConfig(), metrics), new BlockCacheConfig(), Mockito.mock(KafkaTopics.class));
+        try {
+            CompletableFuture<Long> latest = blockchain.latestBlockNumberAsync();
+            CompletableFuture<List<EthBlock.Block>> blocks = blockchain.loadBlocksAsync(10, 12);
+
+            // both calls are sent before any of them is answered
+            Mockito.verify(headRequest).sendAsync();
+            Mockito.verify(batchTxManager).sendBatchAsync(Mockito.eq(web3j), anyList());
+            assertFalse(latest.isDone());
+            assertFalse(blocks.isDone());
+
+            batch.complete(Arrays.asList(block(10), block(11)));
+            EthBlockNumber number = new EthBlockNumber();
+            number.setResult("0x64");
+            head.complete(number);
+
+            assertEquals(98L, (long) latest.join());
+            assertEquals(11L, blocks.join().get(1).getNumber().longValue());
+            Mockito.verify(metrics).setBlockNumber(98L);
+        } finally {
+            blockchain.destroy();
+        }
+    }
+
+    @Test
+    public void test_failed_batch_fails_with_blockchain_exception() {
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Mockito.when(web3j.ethGetBlockByNumber(any(DefaultBlockParameter.class), anyBoolean()))
+                .thenReturn(Mockito.mock(Request.class));
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        CompletableFuture<List<EthBlock.Block>> batch = new CompletableFuture<>();
+        batch.completeExceptionally(new BlockchainException("1 of 1 blocks not loaded after 3 retries", null));
+        BatchTransactionManager batchTxManager = Mockito.mock(BatchTransactionManager.class);
+        Mockito.when(batchTxManager.sendBatchAsync(any(Web3j.class), anyList())).thenReturn(batch);
+        Web3jConfig config = new Web3jConfig();
+        BlockchainMetrics metrics = Mockito.mock(BlockchainMetrics.class);
+        Web3jBlockchain blockchain = new Web3jBlockchain(beans, config, metrics, batchTxManager,
+                new LogRangeFetcher(config), new BlockReceiptsFetcher(config), Mockito.mock(BatchSizeController.class),
+                new BlockCache(new BlockCacheConfig(), metrics), new BlockCacheConfig(), Mockito.mock(KafkaTopics.class));
+        try {
+            blockchain.loadBlocksAsync(5, 6).join();
+            fail("failed batch must fail the blocks");
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof BlockchainException);
+            // client is replaced after failed batch, like with blocking calls
+            Mockito.verify(beans, Mockito.times(2)).web3j();
+        } finally {
+            blockchain.destroy();
+        }
+    }
+
+    private static EthBlock.Block block(long number) {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0x" + Long.toHexString(number));
+        block.setHash("0x" + number);
+        return block;
+    }
+}
@@ -0,0 +1,116 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.BatchSizeController;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+public class BatchSizeControllerTest extends Assert {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Web3jConfig config = new Web3jConfig();
+
+    private EventMetrics metrics;
+
+    @Before
+    public void setUp() {
+        KafkaTopics topics = new KafkaTopics();
+        topics.setEvents(new HashSet<>());
+        metrics = new EventMetrics(registry, topics, new ReorgConfig());
+        config.setBatchSize(100L);
+        config.setAdaptiveBatchSize(true);
+        config.setMinBatchSize(10L);
+        config.setMaxBatchSize(1000L);
+        config.setTargetBatchMs(2000L);
+    }
+
+    private double gauge() {
+        return registry.get("batch_size").gauge().value();
+    }
+
+    @Test
+    public void test_grows_toward_target_at_most_doubling() {
+        BatchSizeController controller = new BatchSizeController(config, metrics);
+        assertEquals(100, controller.next());
+        assertEquals(100.0, gauge(), 0.0);
+
+        // 5 ms per block fits 400 blocks into the target, but size only doubles
+        controller.onBatch(100, 0, 0, 500);
+        assertEquals(200, controller.next());
+        controller.onBatch(200, 0, 0, 400);
+        assertEquals(400, controller.next());
+        // 4 ms per block, target is reached
+        controller.onBatch(400, 0, 0, 1600);
+        assertEquals(500, controller.next());
+        controller.onBatch(500, 0, 0, 2000);
+        assertEquals(500, controller.next());
+        assertEquals(500.0, gauge(), 0.0);
+    }
+
+    @Test
+    public void test_shrinks_after_slow_or_large_batch() {
+        config.setMaxBatchLogs(1000L);
+        config.setMaxBatchBytes(1024L * 1024);
+        BatchSizeController controller = new BatchSizeController(config, metrics);
+
+        controller.onBatch(100, 0, 0, 8000);
+        assertEquals(25, controller.next());
+
+        // fast, but 25 blocks held 500 logs, so 1000 logs fit into 50 blocks
+        controller.onBatch(25, 500, 0, 25);
+        assertEquals(50, controller.next());
+
+        // 50 blocks carried 2 MB, so 1 MB fits into 25 blocks
+        controller.onBatch(50, 0, 2L * 1024 * 1024, 50);
+        assertEquals(25, controller.next());
+        assertEquals(25.0, gauge(), 0.0);
+    }
+
+    @Test
+    public void test_halves_on_failure() {
+        BatchSizeController controller = new BatchSizeController(config, metrics);
+
+        controller.onFailure();
+        assertEquals(50, controller.next());
+        controller.onFailure();
+        assertEquals(25, controller.next());
+        assertEquals(25.0, gauge(), 0.0);
+    }
+
+    @Test
+    public void test_clamped_to_min_and_max() {
+        BatchSizeController controller = new BatchSizeController(config, metrics);
+
+        for (int i = 0; i < 5; i++) {
+            controller.onFailure();
+        }
+        assertEquals(10, controller.next());
+        controller.onBatch(10, 0, 0, 60000);
+        assertEquals(10, controller.next());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onBatch(controller.next(), 0, 0, 1);
+        }
+        assertEquals(1000, controller.next());
+        assertEquals(1000.0, gauge(), 0.0);
+    }
+
+    @Test
+    public void test_fixed_size_when_not_adaptive() {
+        config.setAdaptiveBatchSize(false);
+        BatchSizeController controller = new BatchSizeController(config, metrics);
+
+        controller.onBatch(100, 0, 0, 60000);
+        controller.onFailure();
+        assertEquals(100, controller.next());
+        assertEquals(100.0, gauge(), 0.0);
+    }
+}
@@ -0,0 +1,139 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.BatchTransactionManagerImpl;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.mockito.Matchers.any;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BatchTransactionManagerTest extends Assert {
+
+    private final BlockchainMetrics metrics = Mockito.mock(BlockchainMetrics.class);
+
+    private final Web3jConfig config = new Web3jConfig();
+
+    private BatchTransactionManagerImpl manager;
+
+    @After
+    public void tearDown() {
+        manager.destroy();
+    }
+
+    private BatchTransactionManagerImpl manager(int chunkSize) {
+        config.setBatchChunkSize(chunkSize);
+        config.setBatchRetryDelayMs(1L);
+        manager = new BatchTransactionManagerImpl(config, metrics);
+        return manager;
+    }
+
+    /**
+     * Fake node answering batches in reverse order, block request is failed while {@code fails} returns true.
+     * Sizes of received batches are collected in {@code batches}
+     */
+    private static Web3j node(List<Integer> batches, Predicate<Long> fails) throws IOException {
+        Web3jService service = Mockito.mock(Web3jService.class);
+        Mockito.when(service.sendBatch(any(BatchRequest.class))).thenAnswer(invocation -> {
+            List<Request<?, ? extends Response<?>>> requests = ((BatchRequest) invocation.getArguments()[0]).getRequests();
+            batches.add(requests.size());
+            List<Response<?>> responses = new ArrayList<>();
+            for (Request<?, ? extends Response<?>> request : requests) {
+                long number = Long.decode((String) request.getParams().get(0));
+                EthBlock response = new EthBlock();
+                response.setId(request.getId());
+                if (fails.test(number)) {
+                    response.setError(new Response.Error(-32000, "header not found"));
+                } else {
+                    EthBlock.Block block = new EthBlock.Block();
+                    block.setNumber("0x" + Long.toHexString(number));
+                    response.setResult(block);
+                }
+                responses.add(response);
+            }
+            Collections.reverse(responses);
+            return new BatchResponse(requests, responses);
+        });
+        return Web3j.build(service);
+    }
+
+    private static List<Request<?, EthBlock>> requests(Web3j web3j, int count) {
+        List<Request<?, EthBlock>> requests = new ArrayList<>();
+        for (long block = 0; block < count; block++) {
+            requests.add(web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(block)), false));
+        }
+        return requests;
+    }
+
+    @Test
+    public void test_chunks_returned_in_request_order() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        Web3j web3j = node(batches, number -> false);
+
+        List<EthBlock.Block> blocks = manager(10).sendBatch(web3j, requests(web3j, 25));
+
+        assertEquals(25, blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(i, blocks.get(i).getNumber().intValue());
+        }
+        Collections.sort(batches);
+        assertEquals(Arrays.asList(5, 10, 10), batches);
+        Mockito.verify(metrics).recordBatchSize(25);
+        Mockito.verify(metrics, Mockito.times(3)).recordBatchChunk(Mockito.anyLong());
+    }
+
+    @Test
+    public void test_failed_entries_retried_only() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        Map<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        // blocks 3 and 17 fail on first attempt
+        Web3j web3j = node(batches, number -> (number == 3 || number == 17)
+                && attempts.computeIfAbsent(number, n -> new AtomicInteger()).incrementAndGet() == 1);
+
+        List<EthBlock.Block> blocks = manager(10).sendBatch(web3j, requests(web3j, 20));
+
+        assertEquals(20, blocks.size());
+        assertEquals(3, blocks.get(3).getNumber().intValue());
+        assertEquals(17, blocks.get(17).getNumber().intValue());
+        assertEquals(Arrays.asList(10, 10, 2), batches);
+        Mockito.verify(metrics, Mockito.times(2)).addBatchItemFailures(1);
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_missing_block_fails_batch_after_retries() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        Web3j web3j = node(batches, number -> number == 7);
+
+        try {
+            manager(10).sendBatch(web3j, requests(web3j, 10));
+        } finally {
+            // first attempt and retries of the failed entry only
+            assertEquals(1 + config.getBatchRetries(), batches.size());
+            assertEquals(Collections.nCopies(config.getBatchRetries(), 1), batches.subList(1, batches.size()));
+        }
+    }
+}
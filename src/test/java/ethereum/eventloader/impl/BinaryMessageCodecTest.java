@@ -0,0 +1,217 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.beans.KafkaBeans;
+import ethereum.eventloader.config.EventRoutes;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.messages.BlockMessage;
+import ethereum.eventloader.messages.EventMessage;
+import ethereum.eventloader.messages.binary.BinaryMessageCodec;
+import ethereum.eventloader.messages.binary.BinaryMessageDeserializer;
+import ethereum.eventloader.messages.binary.BinaryMessageSerializer;
+import ethereum.eventloader.messages.binary.TopicFormatSerializer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class BinaryMessageCodecTest extends Assert {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String HASH = "0x" + repeat("ab", 32);
+    private static final String ADDRESS = "0x" + repeat("12", 20);
+
+    private final BinaryMessageSerializer serializer = new BinaryMessageSerializer();
+
+    private final BinaryMessageDeserializer deserializer = new BinaryMessageDeserializer();
+
+    @Test
+    public void eventRoundTrip() {
+        EventMessage event = new EventMessage(
+                Arrays.asList(TRANSFER, "0x" + repeat("00", 12) + repeat("cd", 20)),
+                HASH, ADDRESS, BigInteger.valueOf(9_000_000L), "0x" + repeat("0f", 64), BigInteger.valueOf(130));
+
+        byte[] data = serializer.serialize("events", event);
+        EventMessage decoded = (EventMessage) deserializer.deserialize("events", data);
+
+        assertEquals(event.toString(), decoded.toString());
+        assertEquals(3 + 1 + 32 + 20 + 4 + 2 + 1 + 64 + 1 + 64, data.length);
+    }
+
+    @Test
+    public void removedFlagRoundTrip() {
+        EventMessage event = new EventMessage(Collections.singletonList(TRANSFER), HASH, ADDRESS, BigInteger.ONE, "0x", BigInteger.ZERO);
+        byte[] published = serializer.serialize("events", event);
+        event.setRemoved(true);
+        byte[] removed = serializer.serialize("events", event);
+
+        assertNull(((EventMessage) deserializer.deserialize("events", published)).getRemoved());
+        assertEquals(Boolean.TRUE, ((EventMessage) deserializer.deserialize("events", removed)).getRemoved());
+        assertEquals(published.length, removed.length);
+        assertFalse(new String(new JsonSerializer<>().serialize("events", new EventMessage())).contains("removed"));
+    }
+
+    @Test
+    public void enrichedEventRoundTrip() {
+        EventMessage event = new EventMessage(Collections.singletonList(TRANSFER), HASH, ADDRESS, BigInteger.ONE, "0x", BigInteger.ZERO);
+        int plain = serializer.serialize("events", event).length;
+        event.setBlockHash(HASH);
+        event.setBlockTimestamp(BigInteger.valueOf(1569333035L));
+
+        byte[] data = serializer.serialize("events", event);
+        EventMessage decoded = (EventMessage) deserializer.deserialize("events", data);
+
+        assertEquals(HASH, decoded.getBlockHash());
+        assertEquals(event.getBlockTimestamp(), decoded.getBlockTimestamp());
+        assertEquals(plain + 1 + 32 + 5, data.length);
+    }
+
+    @Test
+    public void absentFieldsStayNull() {
+        EventMessage event = new EventMessage(Collections.emptyList(), null, ADDRESS, null, "0x", BigInteger.ZERO);
+
+        EventMessage decoded = (EventMessage) deserializer.deserialize("events", serializer.serialize("events", event));
+
+        assertNull(decoded.getTransactionHash());
+        assertNull(decoded.getBlockNumber());
+        assertEquals(Collections.emptyList(), decoded.getTopics());
+        assertEquals("0x", decoded.getData());
+        assertEquals(BigInteger.ZERO, decoded.getIndex());
+    }
+
+    @Test
+    public void blockFullRoundTrip() {
+        EthBlock.TransactionObject transaction = new EthBlock.TransactionObject(
+                HASH, "0x1", HASH, "0x895440", "0x0", ADDRESS, null, "0xde0b6b3a7640000",
+                "0x5208", "0x3b9aca00", "0x", ADDRESS, null, null, "0x1c3f", "0x2a", 37);
+        EthBlock.Block block = new EthBlock.Block(
+                "0x895440", HASH, HASH, "0x42a14d8e0cb0a1b2", HASH, "0x" + repeat("00", 256), HASH, HASH, HASH,
+                null, ADDRESS, HASH, "0x7d7e2c1f4b2d8", "0x2d8a4f1c3f0a1b2c3d4e5f", "0xd883010817", "0x9c4e",
+                "0x7a1200", "0x5208", "0x5d8a1f2b",
+                Arrays.asList(transaction, new EthBlock.TransactionHash(HASH)),
+                Collections.singletonList(HASH), null);
+        BlockMessage message = new BlockMessage(block.getNumber(), block.getHash(), block);
+
+        BlockMessage decoded = (BlockMessage) deserializer.deserialize("blocks", serializer.serialize("blocks", message));
+
+        assertEquals(message.getNumber(), decoded.getNumber());
+        assertEquals(message.getHash(), decoded.getHash());
+        assertEquals(block, decoded.getBlock());
+    }
+
+    @Test
+    public void zeroBlockNonceKeepsLeadingZeros() {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0xe4e1c0");
+        block.setHash(HASH);
+        block.setNonce("0x0000000000000000");
+        BlockMessage message = new BlockMessage(block.getNumber(), block.getHash(), block);
+
+        BlockMessage decoded = (BlockMessage) deserializer.deserialize("blocks", serializer.serialize("blocks", message));
+
+        assertEquals("0x0000000000000000", decoded.getBlock().getNonceRaw());
+        assertEquals(block, decoded.getBlock());
+
+        block.setNonce("0x00a14d8e0cb0a1b2");
+        decoded = (BlockMessage) deserializer.deserialize("blocks", serializer.serialize("blocks", message));
+        assertEquals("0x00a14d8e0cb0a1b2", decoded.getBlock().getNonceRaw());
+    }
+
+    @Test
+    public void version1BlockNonceReadAsQuantity() {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0x895440");
+        block.setNonce("0x42a14d8e0cb0a1b2");
+        byte[] data = serializer.serialize("blocks", new BlockMessage(block.getNumber(), HASH, block));
+        // nonce without leading zeros takes the same bytes as version 1 quantity
+        data[1] = 1;
+
+        BlockMessage decoded = (BlockMessage) deserializer.deserialize("blocks", data);
+
+        assertEquals(block, decoded.getBlock());
+    }
+
+    @Test
+    public void blockWithoutBody() {
+        BlockMessage message = new BlockMessage(BigInteger.TEN, HASH);
+
+        BlockMessage decoded = (BlockMessage) deserializer.deserialize("blocks", serializer.serialize("blocks", message));
+
+        assertEquals(BigInteger.TEN, decoded.getNumber());
+        assertEquals(HASH, decoded.getHash());
+        assertNull(decoded.getBlock());
+    }
+
+    @Test
+    public void jsonTopicsKeepJsonSerializerOutput() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class.getName());
+        TopicFormatSerializer formats = new TopicFormatSerializer(Collections.singleton("binary"), configs);
+        JsonSerializer<Object> json = new JsonSerializer<>();
+        json.configure(configs, false);
+        EventMessage event = new EventMessage(Collections.singletonList(TRANSFER), HASH, ADDRESS, BigInteger.ONE, "0x", BigInteger.ZERO);
+
+        RecordHeaders expectedHeaders = new RecordHeaders();
+        RecordHeaders headers = new RecordHeaders();
+        assertArrayEquals(json.serialize("json", expectedHeaders, event), formats.serialize("json", headers, event));
+        assertEquals(expectedHeaders, headers);
+        assertArrayEquals(serializer.serialize("binary", event), formats.serialize("binary", new RecordHeaders(), event));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void confirmedTopicsOfBinaryTopicsAreBinary() {
+        KafkaTopics.EventTopicMap binaryEvents = new KafkaTopics.EventTopicMap();
+        binaryEvents.setEvent(TRANSFER);
+        binaryEvents.setTopic("binary");
+        binaryEvents.setFormat(EventRoutes.FORMAT_BINARY);
+        KafkaTopics.EventTopicMap jsonEvents = new KafkaTopics.EventTopicMap();
+        jsonEvents.setEvent(TRANSFER);
+        jsonEvents.setTopic("json");
+        KafkaTopics topics = new KafkaTopics();
+        topics.setEvents(new HashSet<>(Arrays.asList(binaryEvents, jsonEvents)));
+        ReorgConfig reorgConfig = new ReorgConfig();
+        reorgConfig.setEnabled(true);
+        reorgConfig.setConfirmations(12);
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class.getName());
+        DefaultKafkaProducerFactory<Object, Object> factory = new DefaultKafkaProducerFactory<>(configs);
+
+        new KafkaBeans(topics, reorgConfig, factory);
+
+        Serializer<Object> formats = (Serializer<Object>) ReflectionTestUtils.getField(factory, "valueSerializer");
+        JsonSerializer<Object> json = new JsonSerializer<>();
+        json.configure(configs, false);
+        EventMessage event = new EventMessage(Collections.singletonList(TRANSFER), HASH, ADDRESS, BigInteger.ONE, "0x", BigInteger.ZERO);
+        assertArrayEquals(serializer.serialize("binary", event), formats.serialize("binary.confirmed", event));
+        assertArrayEquals(json.serialize("json.confirmed", event), formats.serialize("json.confirmed", event));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void newerVersionIsRejected() {
+        byte[] data = serializer.serialize("events", new EventMessage());
+        data[1] = BinaryMessageCodec.VERSION + 1;
+        deserializer.deserialize("events", data);
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            result.append(value);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.BatchSizeController;
+import ethereum.eventloader.component.BatchTransactionManager;
+import ethereum.eventloader.component.BlockCache;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.Web3jBlockchain;
+import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BlockCacheTest extends Assert {
+
+    private final BlockchainMetrics metrics = Mockito.mock(BlockchainMetrics.class);
+
+    private BlockCache cache(long maxBytes) {
+        BlockCacheConfig config = new BlockCacheConfig();
+        config.setMaxBytes(maxBytes);
+        return new BlockCache(config, metrics);
+    }
+
+    @Test
+    public void test_least_recently_used_evicted_by_size() {
+        BlockCache cache = cache(3 * 1024L);
+        cache.put(block(1, "a"));
+        cache.put(block(2, "a"));
+        cache.put(block(3, "a"));
+        assertNotNull(cache.get(1, null));
+
+        cache.put(block(4, "a"));
+
+        assertNull(cache.get(2, null));
+        assertNotNull(cache.get(1, null));
+        assertNotNull(cache.get(4, null));
+        assertEquals(3, cache.size());
+        assertEquals(3 * 1024L, cache.getBytes());
+        Mockito.verify(metrics).addBlockCacheEviction();
+    }
+
+    @Test
+    public void test_block_of_other_fork_dropped() {
+        BlockCache cache = cache(1024 * 1024L);
+        cache.put(block(1, "a"));
+        cache.put(block(2, "a"));
+
+        assertNull(cache.get(2, hash(2, "b")));
+        assertNull(cache.get(2, null));
+        assertNotNull(cache.get(1, hash(1, "a")));
+
+        cache.invalidate(1);
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void test_load_blocks_requests_missing_only() {
+        BlockCache cache = cache(1024 * 1024L);
+        cache.put(block(11, "a"));
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Mockito.when(web3j.ethGetBlockByNumber(any(DefaultBlockParameter.class), anyBoolean()))
+                .thenReturn(Mockito.mock(Request.class));
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        BatchTransactionManager batch = Mockito.mock(BatchTransactionManager.class);
+        Mockito.when(batch.sendBatch(any(Web3j.class), anyList())).thenAnswer(invocation -> {
+            List<EthBlock.Block> blocks = new ArrayList<>();
+            for (int i = 0; i < ((List) invocation.getArguments()[1]).size(); i++) {
+                blocks.add(block(blocks.isEmpty() ? 10 : 12, "a"));
+            }
+            return blocks;
+        });
+        Web3jConfig config = new Web3jConfig();
+        Web3jBlockchain blockchain = new Web3jBlockchain(beans, config, metrics, batch, new LogRangeFetcher(config),
+                new BlockReceiptsFetcher(config),
+                Mockito.mock(BatchSizeController.class), cache, new BlockCacheConfig(), Mockito.mock(KafkaTopics.class));
+
+        List<EthBlock.Block> blocks = blockchain.loadBlocks(10, 13);
+
+        ArgumentCaptor<List> requests = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(batch).sendBatch(Matchers.eq(web3j), requests.capture());
+        assertEquals(2, requests.getValue().size());
+        assertEquals(hash(10, "a"), blocks.get(0).getHash());
+        assertEquals(hash(11, "a"), blocks.get(1).getHash());
+        assertEquals(hash(12, "a"), blocks.get(2).getHash());
+
+        // retried batch is served from cache
+        assertEquals(blocks, blockchain.loadBlocks(10, 13));
+        Mockito.verify(batch, Mockito.times(1)).sendBatch(any(Web3j.class), anyList());
+
+        Mockito.when(batch.sendBatch(any(Web3j.class), anyList())).thenThrow(new BlockchainException("node is down", null));
+        blockchain.invalidateBlocks(12);
+        try {
+            blockchain.loadBlocks(10, 13);
+            fail("failed batch must not be published as empty blocks list");
+        } catch (BlockchainException expected) {
+            Mockito.verify(batch, Mockito.times(2)).sendBatch(any(Web3j.class), anyList());
+        }
+    }
+
+    private static String hash(long number, String fork) {
+        StringBuilder hash = new StringBuilder("0x").append(fork);
+        String suffix = Long.toHexString(number);
+        while (hash.length() + suffix.length() < 66) {
+            hash.append('0');
+        }
+        return hash.append(suffix).toString();
+    }
+
+    private static EthBlock.Block block(long number, String fork) {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0x" + Long.toHexString(number));
+        block.setHash(hash(number, fork));
+        block.setTimestamp("0x5d8a1f2b");
+        return block;
+    }
+}
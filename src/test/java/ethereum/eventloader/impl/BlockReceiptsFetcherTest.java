@@ -0,0 +1,155 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BlockReceiptsFetcherTest extends Assert {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    private final Web3jConfig config = new Web3jConfig();
+
+    private final BlockReceiptsFetcher receipts = new BlockReceiptsFetcher(config);
+
+    private final LogRangeFetcher logs = new LogRangeFetcher(config);
+
+    @After
+    public void tearDown() {
+        receipts.destroy();
+        logs.destroy();
+    }
+
+    /**
+     * Fake node: every block except multiples of 3 has two transactions with {@code block % 4} logs each
+     */
+    private static Web3jService node() throws Exception {
+        Web3jService service = Mockito.mock(Web3jService.class);
+        Mockito.when(service.send(any(Request.class), any(Class.class))).thenAnswer(invocation -> {
+            Request request = (Request) invocation.getArguments()[0];
+            if ("eth_getLogs".equals(request.getMethod())) {
+                EthFilter filter = (EthFilter) request.getParams().get(0);
+                List<EthLog.LogResult> result = new ArrayList<>();
+                for (long block = Long.decode(filter.getFromBlock().getValue()); block <= Long.decode(filter.getToBlock().getValue()); block++) {
+                    for (TransactionReceipt receipt : receipts(block)) {
+                        receipt.getLogs().forEach(event -> result.add(new EthLog.LogObject(false, event.getLogIndexRaw(),
+                                event.getTransactionIndexRaw(), event.getTransactionHash(), event.getBlockHash(),
+                                event.getBlockNumberRaw(), event.getAddress(), event.getData(), null, event.getTopics())));
+                    }
+                }
+                EthLog ethLog = new EthLog();
+                ethLog.setResult(result);
+                return ethLog;
+            }
+            ExtendedWeb3j.EthBlockReceipts response = new ExtendedWeb3j.EthBlockReceipts();
+            long block = Long.decode((String) request.getParams().get(0));
+            if (block == 13) {
+                response.setError(new Response.Error(-32601, "the method eth_getBlockReceipts does not exist"));
+            } else {
+                response.setResult(receipts(block));
+            }
+            return response;
+        });
+        return service;
+    }
+
+    private static List<TransactionReceipt> receipts(long block) {
+        if (block % 3 == 0) {
+            return Collections.emptyList();
+        }
+        List<TransactionReceipt> receipts = new ArrayList<>();
+        int logIndex = 0;
+        for (int tx = 0; tx < 2; tx++) {
+            String txHash = String.format("0x%062x%02x", block, tx);
+            List<Log> events = new ArrayList<>();
+            for (int i = 0; i < block % 4; i++) {
+                events.add(new Log(false, "0x" + Integer.toHexString(logIndex++), "0x" + Integer.toHexString(tx),
+                        txHash, String.format("0x%064x", block), "0x" + Long.toHexString(block),
+                        String.format("0x%040x", i), "0x", null, new ArrayList<>(Collections.singletonList(TRANSFER))));
+            }
+            TransactionReceipt receipt = new TransactionReceipt();
+            receipt.setTransactionHash(txHash);
+            receipt.setLogs(events);
+            receipts.add(receipt);
+        }
+        return receipts;
+    }
+
+    @Test
+    public void test_same_events_as_get_logs() throws Exception {
+        Web3j web3j = new ExtendedWeb3j(node());
+
+        Events expected = new Events(1, 12);
+        expected.addLogs(logs.fetch(web3j, 1, 12));
+        Events actual = new Events(1, 12);
+        actual.addLogs(receipts.fetch(web3j, 1, 12));
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getLogs(0).toString(), actual.getLogs(0).toString());
+        assertEquals(expected.getBlockLogs(7).toString(), actual.getBlockLogs(7).toString());
+        assertTrue(actual.size() > 0);
+    }
+
+    @Test
+    public void test_logs_filtered_by_routes() throws Exception {
+        KafkaTopics topics = new KafkaTopics();
+        KafkaTopics.EventTopicMap event = new KafkaTopics.EventTopicMap();
+        event.setEvent(TRANSFER.toUpperCase().replace("0X", "0x"));
+        event.setAddress(String.format("0x%040x", 1));
+        event.setTopic("events");
+        topics.setEvents(Collections.singleton(event));
+        BlockReceiptsFetcher fetcher = new BlockReceiptsFetcher(config, topics);
+        Web3j web3j = new ExtendedWeb3j(node());
+
+        List<EthLog.LogResult> logs = fetcher.fetch(web3j, 1, 12);
+
+        // second log of both transactions of blocks 2, 7, 10 and 11
+        assertEquals(8, logs.size());
+        for (EthLog.LogResult result : logs) {
+            assertEquals(String.format("0x%040x", 1), ((EthLog.LogObject) result).getAddress());
+        }
+
+        KafkaTopics.EventTopicMap other = new KafkaTopics.EventTopicMap();
+        other.setEvent("0x01");
+        other.setTopic("events");
+        topics.setEvents(Collections.singleton(other));
+        assertTrue(fetcher.fetch(web3j, 1, 12).isEmpty());
+
+        topics.setEvents(Collections.emptySet());
+        assertTrue(fetcher.fetch(web3j, 1, 12).isEmpty());
+        fetcher.destroy();
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_unsupported_method_fails_batch() throws Exception {
+        receipts.fetch(new ExtendedWeb3j(node()), 10, 14);
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_plain_client_rejected() throws Exception {
+        receipts.fetch(Mockito.mock(Web3j.class), 1, 2);
+    }
+}
@@ -0,0 +1,140 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.checkpoint.AsyncCheckpointStore;
+import ethereum.eventloader.component.checkpoint.CheckpointStore;
+import ethereum.eventloader.component.checkpoint.FileCheckpointStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CheckpointStoreTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_file_store_keeps_checkpoint_across_restarts() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("state").resolve("checkpoint");
+        FileCheckpointStore store = new FileCheckpointStore(path);
+        assertEquals(0L, store.load());
+        store.save(100L);
+        store.save(120L);
+        assertEquals(120L, store.load());
+        assertEquals("120", new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim());
+        assertFalse(Files.exists(path.resolveSibling("checkpoint.tmp")));
+        store.close();
+
+        store = new FileCheckpointStore(path);
+        assertEquals(120L, store.load());
+        store.close();
+    }
+
+    @Test
+    public void test_file_store_used_by_single_loader() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("checkpoint");
+        FileCheckpointStore store = new FileCheckpointStore(path);
+        try {
+            new FileCheckpointStore(path);
+            fail("second loader must not use the same checkpoint file");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("used by another loader"));
+        }
+        store.close();
+    }
+
+    @Test
+    public void test_async_store_coalesces_saves_while_writing() throws Exception {
+        SlowStore slow = new SlowStore();
+        AsyncCheckpointStore store = new AsyncCheckpointStore(slow);
+        store.save(10L);
+        assertTrue(slow.writing.await(5, TimeUnit.SECONDS));
+        // first write is in progress, these are coalesced
+        store.save(20L);
+        store.save(30L);
+        store.save(40L);
+        assertEquals(40L, store.load());
+        slow.release.countDown();
+        store.flush();
+
+        assertEquals(2, slow.saved.size());
+        assertEquals(10L, slow.saved.get(0).longValue());
+        assertEquals(40L, slow.saved.get(1).longValue());
+        assertEquals(40L, store.load());
+        store.close();
+    }
+
+    @Test
+    public void test_async_store_writes_pending_block_before_lock_is_released() throws Exception {
+        SlowStore slow = new SlowStore();
+        slow.release.countDown();
+        slow.locked = true;
+        AsyncCheckpointStore store = new AsyncCheckpointStore(slow);
+        try (AutoCloseable ignored = store.lock(1, TimeUnit.SECONDS)) {
+            store.save(50L);
+        }
+        assertFalse(slow.locked);
+        assertEquals(50L, slow.saved.get(slow.saved.size() - 1).longValue());
+        store.close();
+    }
+
+    @Test
+    public void test_async_store_reports_failed_write_and_retries() throws Exception {
+        SlowStore slow = new SlowStore();
+        slow.release.countDown();
+        slow.failures = 1;
+        AsyncCheckpointStore store = new AsyncCheckpointStore(slow);
+        store.save(60L);
+        try {
+            store.flush();
+            fail("failed write must be reported");
+        } catch (IllegalStateException expected) {
+            assertEquals("disk is full", expected.getMessage());
+        }
+        store.flush();
+        assertEquals(60L, slow.saved.get(0).longValue());
+        store.close();
+    }
+
+    private static class SlowStore implements CheckpointStore {
+
+        private final CountDownLatch writing = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final List<Long> saved = new CopyOnWriteArrayList<>();
+
+        private volatile int failures;
+
+        private volatile boolean locked;
+
+        @Override
+        public long load() {
+            return saved.isEmpty() ? 0L : saved.get(saved.size() - 1);
+        }
+
+        @Override
+        public void save(long block) throws Exception {
+            writing.countDown();
+            release.await();
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("disk is full");
+            }
+            saved.add(block);
+        }
+
+        @Override
+        public AutoCloseable lock(long timeout, TimeUnit unit) {
+            return locked ? () -> locked = false : null;
+        }
+    }
+}
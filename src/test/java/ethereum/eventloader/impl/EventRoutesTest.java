@@ -0,0 +1,158 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.entity.LogFilter;
+import ethereum.eventloader.config.EventRoutes;
+import ethereum.eventloader.config.KafkaTopics.EventTopicMap;
+import ethereum.eventloader.messages.EventMessage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class EventRoutesTest extends Assert {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String TOKEN = "0x6b175474e89094c44da98b954eedeac495271d0f";
+    private static final String APPROVAL = "0x8c5be1e5ebec7d5bd14f71427d1e84f3dd0314c0f7b2291e5b200ac8c7c3b925";
+    private static final String OWNER = "0x000000000000000000000000aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+
+    @Test
+    public void routesByTopic0IgnoringCase() {
+        EventRoutes routes = new EventRoutes(mappings(
+                mapping(TRANSFER.toUpperCase().replace("0X", "0x"), "transfers"),
+                mapping(EventRoutes.WILDCARD, "all"),
+                mapping(EventRoutes.BLOCK, "blocks"),
+                mapping(EventRoutes.BLOCK_FULL, "blocks-full")));
+
+        assertEquals(Arrays.asList("all", "transfers"), route(routes, event(TRANSFER, TOKEN, OWNER)));
+        assertEquals(Arrays.asList("all", "transfers"), route(routes, event(TRANSFER.toUpperCase(), TOKEN, OWNER)));
+        assertEquals(Arrays.asList("all"), route(routes, event("0x01", TOKEN)));
+        assertEquals("blocks", routes.getBlocks());
+        assertEquals("blocks-full", routes.getBlocksFull());
+    }
+
+    @Test
+    public void blockMappingsAreNotRouted() {
+        EventRoutes routes = new EventRoutes(mappings(mapping(EventRoutes.BLOCK, "blocks")));
+
+        assertTrue(route(routes, event(EventRoutes.BLOCK, TOKEN)).isEmpty());
+        assertNull(routes.getBlocksFull());
+    }
+
+    @Test
+    public void matchesAddressAndIndexedTopics() {
+        EventTopicMap byAddress = mapping(TRANSFER, "token-transfers");
+        byAddress.setAddress(TOKEN.toUpperCase().replace("0X", "0x"));
+        EventTopicMap byOwner = mapping(TRANSFER, "owner-transfers");
+        byOwner.setTopic1(OWNER);
+        EventTopicMap byRecipient = mapping(TRANSFER, "recipient-transfers");
+        byRecipient.setTopic2(OWNER);
+        EventRoutes routes = new EventRoutes(mappings(byAddress, byOwner, byRecipient));
+
+        assertEquals(Arrays.asList("token-transfers", "owner-transfers"), route(routes, event(TRANSFER, TOKEN, OWNER)));
+        assertEquals(Arrays.asList("owner-transfers"), route(routes, event(TRANSFER, "0x01", OWNER)));
+        // topic2 is missing in event
+        assertTrue(route(routes, event(TRANSFER, "0x01", "0x02")).isEmpty());
+        assertTrue(byOwner.equalsEvent(event(TRANSFER, "0x01", OWNER)));
+        assertFalse(byRecipient.equalsEvent(event(TRANSFER, "0x01", OWNER)));
+    }
+
+    @Test
+    public void logFilterDerivedFromRoutes() {
+        EventTopicMap byAddress = mapping(TRANSFER, "token-transfers");
+        byAddress.setAddress(TOKEN.toUpperCase().replace("0X", "0x"));
+        EventTopicMap approval = mapping(APPROVAL, "approvals");
+        approval.setAddress(TOKEN);
+
+        LogFilter filter = LogFilter.of(new EventRoutes(mappings(byAddress, approval, mapping(EventRoutes.BLOCK, "blocks"))));
+        assertEquals(Arrays.asList(APPROVAL, TRANSFER), filter.getTopic0s());
+        assertEquals(Arrays.asList(TOKEN), filter.getAddresses());
+
+        // route accepting any address drops address filter
+        filter = LogFilter.of(new EventRoutes(mappings(byAddress, mapping(APPROVAL, "approvals"))));
+        assertTrue(filter.getAddresses().isEmpty());
+        assertSame(LogFilter.ANY, LogFilter.of(new EventRoutes(mappings(byAddress, mapping(EventRoutes.WILDCARD, "all")))));
+        assertSame(LogFilter.NONE, LogFilter.of(new EventRoutes(mappings(mapping(EventRoutes.BLOCK, "blocks")))));
+        assertTrue(LogFilter.NONE.split(10, 10).isEmpty());
+    }
+
+    @Test
+    public void logFilterSplitIntoDisjointParts() {
+        List<String> topics = Arrays.asList("0x01", "0x02", "0x03");
+        List<String> addresses = Arrays.asList("0xa", "0xb", "0xc", "0xd", "0xe");
+
+        List<LogFilter> parts = new LogFilter(topics, addresses).split(2, 2);
+
+        assertEquals(6, parts.size());
+        Set<String> pairs = new HashSet<>();
+        for (LogFilter part : parts) {
+            assertTrue(part.getTopic0s().size() <= 2);
+            assertTrue(part.getAddresses().size() <= 2);
+            part.getTopic0s().forEach(topic -> part.getAddresses().forEach(address -> assertTrue(pairs.add(topic + address))));
+        }
+        assertEquals(15, pairs.size());
+        assertEquals(Arrays.asList("0xa", "0xb"), parts.get(0).toEthFilter(1, 2).getAddress());
+        assertEquals(1, parts.get(0).toEthFilter(1, 2).getTopics().size());
+    }
+
+    @Test
+    public void logFilterCheckedAgainstBloom() {
+        LogFilter filter = new LogFilter(Arrays.asList(APPROVAL, TRANSFER), Arrays.asList(TOKEN));
+        LogFilter anyAddress = new LogFilter(Arrays.asList(TRANSFER), Collections.emptyList());
+
+        assertTrue(filter.mayMatch(bloom(TRANSFER, TOKEN, OWNER)));
+        assertTrue(anyAddress.mayMatch(bloom(TRANSFER, OWNER)));
+        // topic of the filter logged by other contract
+        assertFalse(filter.mayMatch(bloom(TRANSFER, "0x0000000000000000000000000000000000000001")));
+        // address of the filter logged other event
+        assertFalse(filter.mayMatch(bloom("0x01", TOKEN)));
+        assertFalse(anyAddress.mayMatch(bloom(APPROVAL, TOKEN)));
+        assertFalse(filter.mayMatch(bloom()));
+
+        assertTrue(LogFilter.ANY.mayMatch(bloom()));
+        assertFalse(LogFilter.NONE.mayMatch(bloom(TRANSFER, TOKEN)));
+        assertTrue(filter.mayMatch(null));
+    }
+
+    private static String bloom(String... values) {
+        byte[] bloom = new byte[256];
+        for (String value : values) {
+            for (int bit : LogFilter.bloomBits(value)) {
+                bloom[255 - bit / 8] |= 1 << (bit % 8);
+            }
+        }
+        return Numeric.toHexString(bloom);
+    }
+
+    private static List<String> route(EventRoutes routes, EventMessage event) {
+        List<String> topics = new ArrayList<>();
+        routes.route(event, topics::add);
+        return topics;
+    }
+
+    private static Set<EventTopicMap> mappings(EventTopicMap... maps) {
+        return new LinkedHashSet<>(Arrays.asList(maps));
+    }
+
+    private static EventTopicMap mapping(String event, String topic) {
+        EventTopicMap map = new EventTopicMap();
+        map.setEvent(event);
+        map.setTopic(topic);
+        return map;
+    }
+
+    private static EventMessage event(String topic0, String address, String... indexed) {
+        List<String> topics = new ArrayList<>();
+        topics.add(topic0);
+        topics.addAll(Arrays.asList(indexed));
+        return new EventMessage(topics, "0x", address, BigInteger.ONE, "0x01", BigInteger.ZERO);
+    }
+}
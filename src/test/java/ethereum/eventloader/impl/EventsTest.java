@@ -0,0 +1,94 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.entity.Events;
+import org.junit.Assert;
+import org.junit.Test;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@SuppressWarnings("rawtypes")
+public class EventsTest extends Assert {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    private static EthLog.LogObject log(long block, long index) {
+        EthLog.LogObject log = new EthLog.LogObject();
+        log.setBlockNumber("0x" + Long.toHexString(block));
+        log.setLogIndex("0x" + Long.toHexString(index));
+        log.setAddress(new String("0x0000000000000000000000000000000000000001"));
+        log.setTopics(new ArrayList<>(Collections.singletonList(new String(TRANSFER))));
+        return log;
+    }
+
+    private static List<LogResult> logs(long fromBlock, long toBlock, int perBlock) {
+        List<LogResult> logs = new ArrayList<>();
+        for (long block = fromBlock; block <= toBlock; block++) {
+            for (int index = 0; index < perBlock; index++) {
+                logs.add(log(block, index));
+            }
+        }
+        return logs;
+    }
+
+    @Test
+    public void test_each_log_appears_exactly_once() {
+        Events events = new Events(10, 14);
+        List<LogResult> logs = logs(10, 14, 3);
+        events.addLogs(logs);
+
+        List<LogResult> all = events.getLogs(9);
+        assertEquals(logs.size(), all.size());
+        Set<LogResult> unique = new HashSet<>(all);
+        assertEquals(logs.size(), unique.size());
+        assertEquals(new HashSet<>(logs), unique);
+    }
+
+    @Test
+    public void test_logs_after_block() {
+        Events events = new Events(10, 14);
+        events.addLogs(logs(10, 14, 2));
+
+        List<LogResult> after = events.getLogs(12);
+        assertEquals(4, after.size());
+        assertEquals(13L, ((EthLog.LogObject) after.get(0)).getBlockNumber().longValue());
+        assertEquals(2, events.getBlockLogs(11).size());
+        assertTrue(events.getBlockLogs(20).isEmpty());
+    }
+
+    @Test
+    public void test_duplicates_and_order() {
+        Events events = new Events(10, 14);
+        List<LogResult> logs = logs(10, 14, 2);
+        List<LogResult> shuffled = new ArrayList<>(logs);
+        Collections.reverse(shuffled);
+        events.addLogs(shuffled);
+        events.addLogs(logs(12, 13, 2));
+
+        List<LogResult> all = events.getLogs(0);
+        assertEquals(10, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            EthLog.LogObject log = (EthLog.LogObject) all.get(i);
+            assertEquals(10 + i / 2, log.getBlockNumber().longValue());
+            assertEquals(i % 2, log.getLogIndex().longValue());
+        }
+    }
+
+    @Test
+    public void test_repeated_values_are_shared() {
+        Events events = new Events(10, 11);
+        events.addLogs(Arrays.asList(log(10, 0), log(11, 0)));
+
+        List<LogResult> all = events.getLogs(0);
+        EthLog.LogObject first = (EthLog.LogObject) all.get(0);
+        EthLog.LogObject second = (EthLog.LogObject) all.get(1);
+        assertSame(first.getAddress(), second.getAddress());
+        assertSame(first.getTopics().get(0), second.getTopics().get(0));
+    }
+}
@@ -0,0 +1,159 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.HeadTracker;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.component.rpc.PooledWeb3jService;
+import ethereum.eventloader.component.rpc.RpcEndpoint;
+import ethereum.eventloader.config.HeadTrackingConfig;
+import ethereum.eventloader.config.RpcPoolConfig;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthUninstallFilter;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class HeadTrackerTest extends Assert {
+
+    private static final String BLOCK_HASH = "0x0a8ba7b3ba2e3c1a3fd0e1a44c8e6c9df43e3e4e6c06e0a3f7a1b0e9f2c4d5e6";
+
+    /**
+     * Fake HTTP node announcing a new block on every third filter poll
+     */
+    private static Web3jBeans node(AtomicInteger polls) {
+        Web3j web3j = Mockito.mock(Web3j.class);
+        EthFilter filter = new EthFilter();
+        filter.setResult("0x1");
+        Request filterRequest = Mockito.mock(Request.class);
+        try {
+            Mockito.when(filterRequest.send()).thenReturn(filter);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        Mockito.when(web3j.ethNewBlockFilter()).thenReturn(filterRequest);
+        Mockito.when(web3j.ethGetFilterChanges(any(BigInteger.class))).thenAnswer(invocation -> {
+            EthLog changes = new EthLog();
+            changes.setResult(polls.incrementAndGet() % 3 == 0
+                    ? Collections.singletonList(new EthLog.Hash(BLOCK_HASH))
+                    : Collections.emptyList());
+            Request request = Mockito.mock(Request.class);
+            Mockito.when(request.send()).thenReturn(changes);
+            return request;
+        });
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        return beans;
+    }
+
+    private static HeadTracker tracker(Web3jBeans beans, String mode) {
+        Web3jConfig web3jConfig = new Web3jConfig();
+        web3jConfig.setClientAddress("http://localhost:8545");
+        HeadTrackingConfig config = new HeadTrackingConfig();
+        config.setMode(mode);
+        config.setFilterPollMs(10L);
+        HeadTracker tracker = new HeadTracker(beans, web3jConfig, config);
+        tracker.afterPropertiesSet();
+        return tracker;
+    }
+
+    @Test
+    public void test_wakes_up_on_new_block() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        HeadTracker tracker = tracker(node(polls), HeadTrackingConfig.MODE_SUBSCRIBE);
+        try {
+            long start = System.currentTimeMillis();
+            assertTrue(tracker.awaitNewHead(5000));
+            assertTrue(tracker.awaitNewHead(5000));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(polls.get() >= 6);
+            assertTrue(tracker.isConnected());
+        } finally {
+            tracker.destroy();
+        }
+    }
+
+    @Test
+    public void test_poll_mode_waits_for_interval() throws Exception {
+        Web3jBeans beans = node(new AtomicInteger());
+        HeadTracker tracker = tracker(beans, HeadTrackingConfig.MODE_POLL);
+        try {
+            long start = System.currentTimeMillis();
+            assertFalse(tracker.awaitNewHead(200));
+            assertTrue(System.currentTimeMillis() - start >= 200);
+            Mockito.verify(beans, Mockito.never()).web3j();
+        } finally {
+            tracker.destroy();
+        }
+    }
+
+    @Test
+    public void test_dropped_filter_leaves_shared_pool_running() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        Web3jService service = Mockito.mock(Web3jService.class);
+        Mockito.when(service.send(any(Request.class), any(Class.class))).thenAnswer(invocation -> {
+            switch (((Request) invocation.getArguments()[0]).getMethod()) {
+                case "eth_newBlockFilter":
+                    EthFilter filter = new EthFilter();
+                    filter.setResult("0x1");
+                    return filter;
+                case "eth_getFilterChanges":
+                    polls.incrementAndGet();
+                    throw new IOException("filter not found");
+                case "eth_uninstallFilter":
+                    EthUninstallFilter uninstalled = new EthUninstallFilter();
+                    uninstalled.setResult(true);
+                    return uninstalled;
+                default:
+                    EthBlockNumber number = new EthBlockNumber();
+                    number.setResult("0x64");
+                    return number;
+            }
+        });
+        RpcPoolConfig poolConfig = new RpcPoolConfig();
+        poolConfig.setHeadRefreshMs(60_000L);
+        PooledWeb3jService pool = new PooledWeb3jService(Collections.singletonList(new RpcEndpoint("node", () -> service)),
+                poolConfig, Mockito.mock(BlockchainMetrics.class));
+        Web3j web3j = new ExtendedWeb3j(pool);
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        Web3jConfig web3jConfig = new Web3jConfig();
+        web3jConfig.setClientAddresses(Arrays.asList("http://node0:8545", "http://node1:8545"));
+        HeadTrackingConfig config = new HeadTrackingConfig();
+        config.setMode(HeadTrackingConfig.MODE_SUBSCRIBE);
+        config.setFilterPollMs(10L);
+        config.setResubscribeMs(10L);
+        HeadTracker tracker = new HeadTracker(beans, web3jConfig, config);
+        tracker.afterPropertiesSet();
+        try {
+            // every poll drops the filter, tracker installs it again
+            long deadline = System.currentTimeMillis() + 5000;
+            while (polls.get() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(polls.get() >= 3);
+
+            Mockito.verify(service, Mockito.never()).close();
+            assertEquals(100L, web3j.ethBlockNumber().sendAsync().get().getBlockNumber().longValue());
+        } finally {
+            tracker.destroy();
+            pool.close();
+        }
+        Mockito.verify(service).close();
+    }
+}
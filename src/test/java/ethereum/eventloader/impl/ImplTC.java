@@ -1,9 +1,12 @@
 package ethereum.eventloader.impl;
 
 import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.config.RpcPoolConfig;
 import ethereum.eventloader.config.Web3jConfig;
 import ethereum.eventloader.messages.BlockMessage;
 import ethereum.eventloader.messages.EventMessage;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryOneTime;
@@ -69,6 +72,6 @@ public class ImplTC {
 
     @Bean
     public Web3jBeans web3jBeans() {
-        return new Web3jBeans(config);
+        return new Web3jBeans(config, new RpcPoolConfig(), new BlockchainMetrics(new SimpleMeterRegistry()));
     }
 }
\ No newline at end of file
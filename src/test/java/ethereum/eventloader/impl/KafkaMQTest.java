@@ -0,0 +1,172 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.component.BlockCache;
+import ethereum.eventloader.component.KafkaMQ;
+import ethereum.eventloader.component.SendWindow;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.PublishConfig;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.messages.EventMessage;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class KafkaMQTest extends Assert {
+
+    private static final String TOPIC = "events";
+
+    private static final String TOPIC0 = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    private final KafkaTemplate<String, EventMessage> template = Mockito.mock(KafkaTemplate.class);
+
+    /**
+     * Unanswered sends in the order they were made
+     */
+    private final List<SettableListenableFuture<SendResult<String, EventMessage>>> sent = new CopyOnWriteArrayList<>();
+
+    private SendWindow window;
+
+    private KafkaMQ kafkaMQ;
+
+    @After
+    public void tearDown() {
+        kafkaMQ.destroy();
+    }
+
+    private KafkaMQ kafkaMQ(int maxInFlightMessages, int retries) {
+        PublishConfig config = new PublishConfig();
+        config.setMaxInFlightMessages(maxInFlightMessages);
+        config.setRetries(retries);
+        config.setRetryBackoffMs(1L);
+        KafkaTopics topics = new KafkaTopics();
+        KafkaTopics.EventTopicMap all = new KafkaTopics.EventTopicMap();
+        all.setEvent("*");
+        all.setTopic(TOPIC);
+        all.setName("All");
+        topics.setEvents(Collections.singleton(all));
+        EventMetrics metrics = Mockito.mock(EventMetrics.class);
+        Mockito.when(template.send(anyString(), anyString(), any(EventMessage.class))).thenAnswer(invocation -> {
+            SettableListenableFuture<SendResult<String, EventMessage>> future = new SettableListenableFuture<>();
+            sent.add(future);
+            return future;
+        });
+        window = new SendWindow(config, metrics);
+        kafkaMQ = new KafkaMQ(topics, metrics, template, Mockito.mock(KafkaTemplate.class), config, window,
+                new ReorgConfig(), Mockito.mock(BlockCache.class), new BlockCacheConfig());
+        return kafkaMQ;
+    }
+
+    private static List<EthLog.LogResult> logs(int count) {
+        List<EthLog.LogResult> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            EthLog.LogObject log = new EthLog.LogObject();
+            log.setTopics(Collections.singletonList(TOPIC0));
+            log.setBlockNumber("0x10");
+            log.setLogIndex("0x" + Integer.toHexString(i));
+            log.setData("0x");
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    private static void acknowledge(SettableListenableFuture<SendResult<String, EventMessage>> future) {
+        future.set(new SendResult<>(new ProducerRecord<>(TOPIC, TOPIC0, (EventMessage) null), null));
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, sent.size());
+    }
+
+    @Test(timeout = 10000)
+    public void test_publishing_blocks_while_window_is_full() throws Exception {
+        KafkaMQ kafkaMQ = kafkaMQ(2, 0);
+
+        CompletableFuture<Void> published = CompletableFuture.supplyAsync(() -> kafkaMQ.publish(logs(3)))
+                .thenCompose(Function.identity());
+        awaitSent(2);
+        Thread.sleep(100);
+        // third message waits for a free place
+        assertEquals(2, sent.size());
+        assertEquals(2, window.getMessages());
+
+        acknowledge(sent.get(0));
+        awaitSent(3);
+        assertFalse(published.isDone());
+        acknowledge(sent.get(1));
+        acknowledge(sent.get(2));
+
+        published.get(5, TimeUnit.SECONDS);
+        assertEquals(0, window.getMessages());
+        assertEquals(0, window.getBytes());
+    }
+
+    @Test(timeout = 10000)
+    public void test_window_released_after_final_failure() throws Exception {
+        KafkaMQ kafkaMQ = kafkaMQ(10, 2);
+
+        CompletableFuture<Void> published = kafkaMQ.publish(logs(1));
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            awaitSent(attempt);
+            assertEquals(1, window.getMessages());
+            sent.get(attempt - 1).setException(new IllegalStateException("broker is down"));
+        }
+
+        try {
+            published.join();
+            fail("message failed after all retries must fail the batch");
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof MessageBrokerException);
+        }
+        assertEquals(3, sent.size());
+        assertEquals(0, window.getMessages());
+        assertEquals(0, window.getBytes());
+    }
+
+    @Test(timeout = 10000)
+    public void test_batch_fails_if_any_message_fails() throws Exception {
+        KafkaMQ kafkaMQ = kafkaMQ(10, 0);
+
+        CompletableFuture<Void> published = kafkaMQ.publish(logs(3));
+        assertEquals(3, sent.size());
+        acknowledge(sent.get(0));
+        sent.get(1).setException(new IllegalStateException("record too large"));
+        assertFalse(published.isDone());
+        acknowledge(sent.get(2));
+
+        try {
+            published.join();
+            fail("batch with a failed message must fail");
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof MessageBrokerException);
+            assertEquals("failed to send message to " + TOPIC, ex.getCause().getMessage());
+        }
+        assertEquals(0, window.getMessages());
+        Mockito.verify(template, Mockito.times(3)).send(Mockito.eq(TOPIC), Mockito.eq(TOPIC0), any(EventMessage.class));
+    }
+}
@@ -0,0 +1,136 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.LeaderCheckpoint;
+import ethereum.eventloader.config.LeasingConfig;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LeaderCheckpointTest extends Assert {
+
+    private static final String ZNODE_PROCESSED_BLOCK = "/processed_block";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerCnxnFactory server;
+
+    private final List<CuratorFramework> clients = new ArrayList<>();
+
+    private final List<LeaderCheckpoint> checkpoints = new ArrayList<>();
+
+    @Before
+    public void startZookeeper() throws Exception {
+        server = ServerCnxnFactory.createFactory(0, 100);
+        server.startup(new ZooKeeperServer(folder.getRoot(), folder.getRoot(), 2000));
+    }
+
+    @After
+    public void stopZookeeper() throws Exception {
+        for (LeaderCheckpoint checkpoint : checkpoints) {
+            try {
+                checkpoint.destroy();
+            } catch (Exception ignored) { }
+        }
+        clients.forEach(CuratorFramework::close);
+        server.shutdown();
+    }
+
+    @Test
+    public void test_single_leader_keeps_checkpoint() throws Exception {
+        client();
+        new DistributedAtomicLong(clients.get(0), ZNODE_PROCESSED_BLOCK, new RetryOneTime(100)).forceSet(100L);
+        LeaderCheckpoint first = checkpoint(client());
+        LeaderCheckpoint second = checkpoint(client());
+        LeaderCheckpoint leader = awaitLeader(first, second);
+        assertFalse((leader == first ? second : first).hasLeadership());
+
+        assertEquals(100L, leader.get());
+        leader.commit(110L);
+        leader.commit(120L);
+        assertEquals(120L, leader.get());
+        // value stays readable by loaders without leader election
+        DistributedAtomicLong stored = new DistributedAtomicLong(clients.get(0), ZNODE_PROCESSED_BLOCK, new RetryOneTime(100));
+        assertEquals(120L, stored.get().postValue().longValue());
+    }
+
+    @Test
+    public void test_takeover_fences_previous_leader() throws Exception {
+        LeaderCheckpoint first = checkpoint(client());
+        LeaderCheckpoint second = checkpoint(client());
+        LeaderCheckpoint leader = awaitLeader(first, second);
+        LeaderCheckpoint follower = leader == first ? second : first;
+        leader.get();
+        leader.commit(200L);
+
+        // leader's session is gone, but it doesn't know yet
+        clients.get(checkpoints.indexOf(leader)).getZookeeperClient().getZooKeeper().close();
+        assertSame(follower, awaitLeader(follower));
+        assertEquals(200L, follower.get());
+        follower.commit(210L);
+
+        try {
+            leader.commit(300L);
+            fail("stale leader must not save processed block");
+        } catch (IllegalStateException | KeeperException expected) {
+            // leadership loss is noticed, write is fenced off or rejected for expired session
+        }
+        assertEquals(210L, follower.get());
+        DistributedAtomicLong stored = new DistributedAtomicLong(clients.get(checkpoints.indexOf(follower)), ZNODE_PROCESSED_BLOCK, new RetryOneTime(100));
+        assertEquals(210L, stored.get().postValue().longValue());
+    }
+
+    @Test
+    public void test_leader_gives_up_when_checkpoint_changed_by_another_writer() throws Exception {
+        LeaderCheckpoint leader = awaitLeader(checkpoint(client()));
+        leader.get();
+        new DistributedAtomicLong(clients.get(0), ZNODE_PROCESSED_BLOCK, new RetryOneTime(100)).forceSet(500L);
+
+        try {
+            leader.commit(400L);
+            fail("fenced write must fail");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("taken over"));
+        }
+        // rejoined election is won again and checkpoint is read again
+        assertEquals(500L, awaitLeader(leader).get());
+    }
+
+    private CuratorFramework client() {
+        CuratorFramework client = CuratorFrameworkFactory.newClient("127.0.0.1:" + server.getLocalPort(), new RetryOneTime(100));
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private LeaderCheckpoint checkpoint(CuratorFramework client) throws Exception {
+        LeaderCheckpoint checkpoint = new LeaderCheckpoint(client, new LeasingConfig());
+        checkpoints.add(checkpoint);
+        return checkpoint;
+    }
+
+    private static LeaderCheckpoint awaitLeader(LeaderCheckpoint... candidates) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            for (LeaderCheckpoint candidate : candidates) {
+                if (candidate.hasLeadership()) {
+                    return candidate;
+                }
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("no leader elected");
+    }
+}
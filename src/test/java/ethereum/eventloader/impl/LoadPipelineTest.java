@@ -0,0 +1,219 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.component.AsyncBlockchainAdapter;
+import ethereum.eventloader.component.LoadPipeline;
+import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.EthSyncing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class LoadPipelineTest extends Assert {
+
+    /**
+     * Blocks in a batch answered by fake node
+     */
+    private static final long BATCH = 10;
+
+    private final ScheduledExecutorService node = Executors.newScheduledThreadPool(4);
+
+    private final FakeBlockchain blockchain = new FakeBlockchain();
+
+    private final FakeBroker broker = new FakeBroker();
+
+    private final List<Long> commits = new CopyOnWriteArrayList<>();
+
+    private LoadPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        pipeline.destroy();
+        node.shutdownNow();
+    }
+
+    private LoadPipeline pipeline() {
+        PipelineConfig config = new PipelineConfig();
+        config.setDepth(2);
+        pipeline = new LoadPipeline(blockchain, broker, Mockito.mock(EventMetrics.class), config);
+        return pipeline;
+    }
+
+    @Test(timeout = 10000)
+    public void test_batches_committed_in_order_until_latest_block() throws Exception {
+        // blocks of later batches arrive first
+        blockchain.blocksDelayMs = block -> Math.max(50 - block, 0);
+
+        long committed = pipeline().run(0, 55, commits::add);
+
+        assertEquals(55, committed);
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L, 55L), commits);
+        assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 40L, 50L), broker.published);
+    }
+
+    @Test(timeout = 10000)
+    public void test_nothing_committed_after_ack_failure() throws Exception {
+        broker.failingBatch = 20;
+
+        try {
+            pipeline().run(0, 100, commits::add);
+            fail("failed ack must fail the run");
+        } catch (MessageBrokerException ex) {
+            assertEquals("broker is down", ex.getMessage());
+        }
+
+        assertEquals(Arrays.asList(10L, 20L), commits);
+    }
+
+    @Test(timeout = 10000)
+    public void test_stuck_fetch_of_failed_run_does_not_leak_into_next_run() throws Exception {
+        CompletableFuture<Events> stuck = new CompletableFuture<>();
+        blockchain.logs.put(20L, stuck);
+        broker.failingBatch = 10;
+        LoadPipeline pipeline = pipeline();
+
+        try {
+            pipeline.run(0, 100, commits::add);
+            fail("failed ack must fail the run");
+        } catch (MessageBrokerException expected) {
+        }
+        assertEquals(Collections.singletonList(10L), commits);
+
+        // node answers the stuck call of the failed run only after the next run started
+        broker.failingBatch = -1;
+        blockchain.logs.clear();
+        node.schedule(() -> stuck.complete(new Events(21, 30)), 20, TimeUnit.MILLISECONDS);
+        long committed = pipeline.run(10, 40, commits::add);
+
+        assertEquals(40, committed);
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L), commits);
+    }
+
+    @Test(timeout = 10000)
+    public void test_failed_fetch_raised_after_preceding_batches_committed() throws Exception {
+        CompletableFuture<Events> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("node is down"));
+        blockchain.logs.put(30L, failed);
+        LoadPipeline pipeline = pipeline();
+
+        try {
+            pipeline.run(0, 100, commits::add);
+            fail("failed fetch must fail the run");
+        } catch (IllegalStateException ex) {
+            assertEquals("node is down", ex.getMessage());
+        }
+        assertEquals(Arrays.asList(10L, 20L, 30L), commits);
+
+        blockchain.logs.clear();
+        assertEquals(50, pipeline.run(30, 50, commits::add));
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L), commits);
+    }
+
+    private interface Delay {
+        long of(long block);
+    }
+
+    private class FakeBlockchain implements AsyncBlockchainAdapter {
+
+        /**
+         * Answers of logs queries by last processed block, queries not found here are answered at once
+         */
+        private final Map<Long, CompletableFuture<Events>> logs = new ConcurrentHashMap<>();
+
+        private volatile Delay blocksDelayMs = block -> 0;
+
+        @Override
+        public CompletableFuture<Long> latestBlockNumberAsync() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Events> eventsLogAsync(long startBlock, long endBlock) {
+            CompletableFuture<Events> answer = logs.get(startBlock);
+            return answer != null ? answer
+                    : CompletableFuture.completedFuture(new Events(startBlock + 1, Math.min(startBlock + BATCH, endBlock)));
+        }
+
+        @Override
+        public CompletableFuture<List<EthBlock.Block>> loadBlocksAsync(long startBlock, long endBlock) {
+            CompletableFuture<List<EthBlock.Block>> blocks = new CompletableFuture<>();
+            List<EthBlock.Block> loaded = new ArrayList<>();
+            for (long number = startBlock; number < endBlock; number++) {
+                EthBlock.Block block = new EthBlock.Block();
+                block.setNumber("0x" + Long.toHexString(number));
+                loaded.add(block);
+            }
+            node.schedule(() -> blocks.complete(loaded), blocksDelayMs.of(startBlock), TimeUnit.MILLISECONDS);
+            return blocks;
+        }
+
+        @Override
+        public CompletableFuture<EthSyncing> syncingAsync() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private class FakeBroker implements MessageBrokerAdapter {
+
+        private final List<Long> published = new CopyOnWriteArrayList<>();
+
+        private volatile long failingBatch = -1;
+
+        @Override
+        public CompletableFuture<Void> publishBatch(List<EthBlock.Block> blocks, List<LogResult> logs) {
+            long lastProcessed = blocks.get(0).getNumber().longValue();
+            published.add(lastProcessed);
+            CompletableFuture<Void> ack = new CompletableFuture<>();
+            if (lastProcessed == failingBatch) {
+                node.schedule(() -> ack.completeExceptionally(new MessageBrokerException("broker is down", null)),
+                        10, TimeUnit.MILLISECONDS);
+            } else {
+                node.schedule(() -> ack.complete(null), 5, TimeUnit.MILLISECONDS);
+            }
+            return ack;
+        }
+
+        @Override
+        public CompletableFuture<Void> publish(List<LogResult> logs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> publishBlock(EthBlock.Block block) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> publishRemoved(List<EthBlock.Block> blocks, List<LogResult> logs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> publishConfirmed(List<EthBlock.Block> blocks, List<LogResult> logs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void reconnect() {
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.Web3jConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.request.Filter;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class LogRangeFetcherTest extends Assert {
+
+    /**
+     * Fake node: one log per block, rejects ranges wider than 3 blocks
+     */
+    private static Web3j node() {
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Mockito.when(web3j.ethGetLogs(any(EthFilter.class))).thenAnswer(invocation -> {
+            EthFilter filter = (EthFilter) invocation.getArguments()[0];
+            long from = Long.decode(filter.getFromBlock().getValue());
+            long to = Long.decode(filter.getToBlock().getValue());
+            EthLog ethLog = new EthLog();
+            if (to - from >= 3) {
+                ethLog.setError(new Response.Error(-32005, "query returned more than 10000 results"));
+            } else {
+                List<EthLog.LogResult> logs = new ArrayList<>();
+                for (long block = from; block <= to; block++) {
+                    EthLog.LogObject log = new EthLog.LogObject();
+                    log.setBlockNumber("0x" + Long.toHexString(block));
+                    log.setLogIndex("0x0");
+                    logs.add(log);
+                }
+                ethLog.setResult(logs);
+            }
+            Request request = Mockito.mock(Request.class);
+            Mockito.when(request.send()).thenReturn(ethLog);
+            return request;
+        });
+        return web3j;
+    }
+
+    @Test
+    public void test_split_range_keeps_block_order() throws Exception {
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(10L);
+        config.setLogsConcurrency(3);
+        LogRangeFetcher fetcher = new LogRangeFetcher(config);
+
+        List<EthLog.LogResult> logs = fetcher.fetch(node(), 100, 124);
+
+        assertEquals(25, logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            assertEquals(BigInteger.valueOf(100 + i), ((EthLog.LogObject) logs.get(i)).getBlockNumber());
+        }
+        fetcher.destroy();
+    }
+
+    @Test
+    public void test_only_candidate_runs_queried() throws Exception {
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(2L);
+        LogRangeFetcher fetcher = new LogRangeFetcher(config);
+        Web3j web3j = node();
+        Set<Long> candidates = new HashSet<>(Arrays.asList(101L, 102L, 103L, 107L, 110L));
+
+        List<EthLog.LogResult> logs = fetcher.fetch(web3j, 100, 110, candidates::contains);
+
+        List<BigInteger> blocks = new ArrayList<>();
+        logs.forEach(log -> blocks.add(((EthLog.LogObject) log).getBlockNumber()));
+        assertEquals(Arrays.asList(BigInteger.valueOf(101), BigInteger.valueOf(102), BigInteger.valueOf(103),
+                BigInteger.valueOf(107), BigInteger.valueOf(110)), blocks);
+        ArgumentCaptor<EthFilter> filters = ArgumentCaptor.forClass(EthFilter.class);
+        Mockito.verify(web3j, Mockito.times(4)).ethGetLogs(filters.capture());
+        Set<String> ranges = new HashSet<>();
+        filters.getAllValues().forEach(filter -> ranges.add(filter.getFromBlock().getValue() + "-" + filter.getToBlock().getValue()));
+        assertEquals(new HashSet<>(Arrays.asList("0x65-0x66", "0x67-0x67", "0x6b-0x6b", "0x6e-0x6e")), ranges);
+        fetcher.destroy();
+    }
+
+    @Test
+    public void test_filters_of_routes_sent_to_node() throws Exception {
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(2L);
+        config.setLogsFilterMaxTopics(2);
+        KafkaTopics topics = new KafkaTopics();
+        Set<KafkaTopics.EventTopicMap> events = new HashSet<>();
+        for (String topic0 : Arrays.asList("0x01", "0x02", "0x03")) {
+            KafkaTopics.EventTopicMap event = new KafkaTopics.EventTopicMap();
+            event.setEvent(topic0);
+            event.setTopic("events");
+            events.add(event);
+        }
+        topics.setEvents(events);
+        LogRangeFetcher fetcher = new LogRangeFetcher(config, topics);
+        Web3j web3j = node();
+
+        List<EthLog.LogResult> logs = fetcher.fetch(web3j, 100, 102);
+
+        ArgumentCaptor<EthFilter> filters = ArgumentCaptor.forClass(EthFilter.class);
+        Mockito.verify(web3j, Mockito.times(4)).ethGetLogs(filters.capture());
+        Set<String> queried = new HashSet<>();
+        for (EthFilter filter : filters.getAllValues()) {
+            List<Filter.FilterTopic> topic0s = (List<Filter.FilterTopic>) filter.getTopics().get(0).getValue();
+            assertTrue(topic0s.size() <= 2);
+            topic0s.forEach(topic0 -> queried.add(topic0.getValue() + "@" + filter.getFromBlock().getValue()));
+        }
+        assertEquals(6, queried.size());
+        // both filters of a range answer with the same log of every block, merged in block order
+        assertEquals(6, logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            assertEquals(BigInteger.valueOf(100 + i / 2), ((EthLog.LogObject) logs.get(i)).getBlockNumber());
+        }
+
+        topics.setEvents(Collections.emptySet());
+        assertTrue(fetcher.fetch(web3j, 100, 102).isEmpty());
+        Mockito.verify(web3j, Mockito.times(4)).ethGetLogs(any(EthFilter.class));
+        fetcher.destroy();
+    }
+
+    @Test
+    public void test_several_filters_streamed_by_sub_ranges() throws Exception {
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(2L);
+        config.setLogsFilterMaxTopics(2);
+        KafkaTopics topics = new KafkaTopics();
+        Set<KafkaTopics.EventTopicMap> events = new HashSet<>();
+        for (String topic0 : Arrays.asList("0x01", "0x02", "0x03")) {
+            KafkaTopics.EventTopicMap event = new KafkaTopics.EventTopicMap();
+            event.setEvent(topic0);
+            event.setTopic("events");
+            events.add(event);
+        }
+        topics.setEvents(events);
+        LogRangeFetcher fetcher = new LogRangeFetcher(config, topics);
+
+        List<List<EthLog.LogResult>> chunks = new ArrayList<>();
+        fetcher.stream(node(), 100, 104, chunks::add);
+
+        // each chunk holds one sub-range of both filters merged in block order
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList(4, 4, 2), Arrays.asList(chunks.get(0).size(), chunks.get(1).size(), chunks.get(2).size()));
+        List<BigInteger> blocks = new ArrayList<>();
+        chunks.forEach(chunk -> chunk.forEach(log -> blocks.add(((EthLog.LogObject) log).getBlockNumber())));
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(BigInteger.valueOf(100 + i / 2), blocks.get(i));
+        }
+        fetcher.destroy();
+    }
+
+    @Test
+    public void test_rate_limited_range_retried_not_bisected() throws Exception {
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(10L);
+        config.setLogsRetryDelayMs(10L);
+        LogRangeFetcher fetcher = new LogRangeFetcher(config);
+        Web3j web3j = throttled(node(), 2);
+
+        List<EthLog.LogResult> logs = fetcher.fetch(web3j, 100, 102);
+        assertEquals(3, logs.size());
+
+        List<EthLog.LogResult> streamed = new ArrayList<>();
+        fetcher.stream(throttled(node(), 2), 100, 102, streamed::addAll);
+        assertEquals(3, streamed.size());
+
+        ArgumentCaptor<EthFilter> filters = ArgumentCaptor.forClass(EthFilter.class);
+        Mockito.verify(web3j, Mockito.times(3)).ethGetLogs(filters.capture());
+        for (EthFilter filter : filters.getAllValues()) {
+            assertEquals("0x64", filter.getFromBlock().getValue());
+            assertEquals("0x66", filter.getToBlock().getValue());
+        }
+        fetcher.destroy();
+    }
+
+    /**
+     * Node answering first {@code times} calls with rate limit error, which shares the code of result limit error
+     */
+    private static Web3j throttled(Web3j node, int times) {
+        Web3j web3j = Mockito.spy(node);
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            if (calls.incrementAndGet() > times) {
+                return node.ethGetLogs((EthFilter) invocation.getArguments()[0]);
+            }
+            EthLog ethLog = new EthLog();
+            ethLog.setError(new Response.Error(-32005, "daily request rate limit exceeded, too many requests"));
+            Request request = Mockito.mock(Request.class);
+            Mockito.when(request.send()).thenReturn(ethLog);
+            return request;
+        }).when(web3j).ethGetLogs(any(EthFilter.class));
+        return web3j;
+    }
+}
@@ -0,0 +1,146 @@
+package ethereum.eventloader.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.beans.ExtendedWeb3j;
+import ethereum.eventloader.component.beans.StreamingHttpService;
+import ethereum.eventloader.component.rpc.LogStreamParser;
+import ethereum.eventloader.config.Web3jConfig;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@SuppressWarnings("rawtypes")
+public class LogStreamParserTest extends Assert {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final Pattern RANGE = Pattern.compile("\"fromBlock\":\"(0x[0-9a-f]+)\",\"toBlock\":\"(0x[0-9a-f]+)\"");
+
+    private HttpServer server;
+
+    private LogRangeFetcher fetcher;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (fetcher != null) {
+            fetcher.destroy();
+        }
+    }
+
+    /**
+     * JSON of log {@code index} in block {@code block}, every block holds 3 logs of the same transaction
+     */
+    private static String log(long block, int index) {
+        return String.format("{\"address\":\"0x%040x\",\"topics\":[\"%s\",\"0x%064x\"],\"data\":\"0x%064x\","
+                        + "\"blockNumber\":\"0x%x\",\"transactionHash\":\"0x%064x\",\"transactionIndex\":\"0x0\","
+                        + "\"blockHash\":\"0x%064x\",\"logIndex\":\"0x%x\",\"removed\":false,\"extra\":{\"nested\":[1,2]}}",
+                index % 2, TRANSFER, index, block * 100 + index, block, block, block + 1, index);
+    }
+
+    private static String logs(long from, long to) {
+        StringBuilder result = new StringBuilder("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[");
+        for (long block = from; block <= to; block++) {
+            for (int i = 0; i < 3; i++) {
+                result.append(result.charAt(result.length() - 1) == '[' ? "" : ",").append(log(block, i));
+            }
+        }
+        return result.append("]}").toString();
+    }
+
+    private static List<LogResult> parse(String json) throws IOException {
+        List<LogResult> logs = new ArrayList<>();
+        assertNull(LogStreamParser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), logs::add));
+        return logs;
+    }
+
+    @Test
+    public void test_same_logs_as_web3j() throws Exception {
+        String json = logs(10, 12);
+
+        List<LogResult> streamed = parse(json);
+        List<LogResult> expected = ObjectMapperFactory.getObjectMapper().readValue(json, EthLog.class).getLogs();
+
+        assertEquals(9, streamed.size());
+        assertEquals(expected.toString(), streamed.toString());
+        EthLog.LogObject first = (EthLog.LogObject) streamed.get(0);
+        EthLog.LogObject second = (EthLog.LogObject) streamed.get(1);
+        assertSame(first.getBlockHash(), second.getBlockHash());
+        assertSame(first.getTopics().get(0), second.getTopics().get(0));
+    }
+
+    @Test
+    public void test_error_returned() throws Exception {
+        List<LogResult> logs = new ArrayList<>();
+        Response.Error error = LogStreamParser.parse(new ByteArrayInputStream(
+                ("{\"jsonrpc\":\"2.0\",\"id\":1,\"error\":{\"code\":-32005,\"message\":\"query returned more than 10000 results\","
+                        + "\"data\":{\"from\":\"0x1\"}}}").getBytes(StandardCharsets.UTF_8)), logs::add);
+
+        assertEquals(-32005, error.getCode());
+        assertEquals("query returned more than 10000 results", error.getMessage());
+        assertTrue(logs.isEmpty());
+    }
+
+    @Test
+    public void test_streamed_in_bounded_chunks() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 8);
+        server.createContext("/", exchange -> {
+            String request = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            Matcher range = RANGE.matcher(request);
+            assertTrue(request, range.find());
+            long from = Long.decode(range.group(1));
+            long to = Long.decode(range.group(2));
+            byte[] body = (to - from >= 20
+                    ? "{\"jsonrpc\":\"2.0\",\"id\":1,\"error\":{\"code\":-32005,\"message\":\"limit exceeded\"}}"
+                    : logs(from, to)).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        Web3jConfig config = new Web3jConfig();
+        config.setLogsSplitSize(50L);
+        config.setStreamBufferRecords(7);
+        fetcher = new LogRangeFetcher(config);
+        ExtendedWeb3j web3j = new ExtendedWeb3j(new StreamingHttpService(
+                "http://127.0.0.1:" + server.getAddress().getPort(), new OkHttpClient()));
+
+        List<LogResult> streamed = new ArrayList<>();
+        fetcher.stream(web3j, 1, 100, chunk -> {
+            assertTrue(chunk.size() <= 7);
+            streamed.addAll(chunk);
+        });
+
+        assertEquals(300, streamed.size());
+        assertEquals(fetcher.fetch(web3j, 1, 100).toString(), streamed.toString());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
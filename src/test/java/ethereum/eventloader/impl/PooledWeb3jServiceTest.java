@@ -0,0 +1,235 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.rpc.PooledWeb3jService;
+import ethereum.eventloader.component.rpc.RpcEndpoint;
+import ethereum.eventloader.config.RpcPoolConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class PooledWeb3jServiceTest extends Assert {
+
+    private final BlockchainMetrics metrics = Mockito.mock(BlockchainMetrics.class);
+
+    private final List<PooledWeb3jService> pools = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        pools.forEach(PooledWeb3jService::close);
+    }
+
+    /**
+     * Fake node at block {@code head}, answering after {@code delayMs}, failing when {@code failing} is positive.
+     * Calls except head queries are counted in {@code calls}
+     */
+    private static Web3jService node(String name, long head, long delayMs, AtomicInteger calls, AtomicInteger failing) throws IOException {
+        Web3jService service = Mockito.mock(Web3jService.class);
+        Mockito.when(service.send(any(Request.class), any(Class.class))).thenAnswer(invocation -> {
+            Request request = (Request) invocation.getArguments()[0];
+            if (!"eth_blockNumber".equals(request.getMethod())) {
+                calls.incrementAndGet();
+            }
+            if (failing.get() > 0) {
+                throw new IOException(name + " is down");
+            }
+            if ("eth_blockNumber".equals(request.getMethod())) {
+                EthBlockNumber number = new EthBlockNumber();
+                number.setResult("0x" + Long.toHexString(head));
+                return number;
+            }
+            if ("eth_getFilterChanges".equals(request.getMethod())) {
+                return new EthLog();
+            }
+            Thread.sleep(delayMs);
+            EthBlock.Block block = new EthBlock.Block();
+            block.setHash(name);
+            EthBlock response = new EthBlock();
+            response.setResult(block);
+            return response;
+        });
+        return service;
+    }
+
+    /**
+     * Fake node at block {@code head} answering block queries with JSON-RPC error, calls counted in {@code calls}
+     */
+    private static Web3jService erroring(long head, AtomicInteger calls) throws IOException {
+        Web3jService service = Mockito.mock(Web3jService.class);
+        Mockito.when(service.send(any(Request.class), any(Class.class))).thenAnswer(invocation -> {
+            Request request = (Request) invocation.getArguments()[0];
+            if ("eth_blockNumber".equals(request.getMethod())) {
+                EthBlockNumber number = new EthBlockNumber();
+                number.setResult("0x" + Long.toHexString(head));
+                return number;
+            }
+            calls.incrementAndGet();
+            EthBlock response = new EthBlock();
+            response.setError(new Response.Error(-32000, "missing trie node"));
+            return response;
+        });
+        return service;
+    }
+
+    private PooledWeb3jService pool(boolean hedging, Web3jService... services) {
+        RpcPoolConfig config = new RpcPoolConfig();
+        config.setHeadRefreshMs(60_000L);
+        config.setHedging(hedging);
+        config.setHedgeMinMs(50L);
+        List<RpcEndpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < services.length; i++) {
+            Web3jService service = services[i];
+            endpoints.add(new RpcEndpoint("node" + i, () -> service));
+        }
+        PooledWeb3jService pool = new PooledWeb3jService(endpoints, config, metrics);
+        pool.refreshHeads();
+        pools.add(pool);
+        return pool;
+    }
+
+    private static String blockHash(Web3j web3j, long number) throws IOException {
+        return blockHash(web3j, DefaultBlockParameter.valueOf(BigInteger.valueOf(number)));
+    }
+
+    private static String blockHash(Web3j web3j, DefaultBlockParameter block) throws IOException {
+        return web3j.ethGetBlockByNumber(block, false).send().getBlock().getHash();
+    }
+
+    @Test
+    public void test_lagging_node_not_asked_for_new_blocks() throws Exception {
+        AtomicInteger laggingCalls = new AtomicInteger();
+        PooledWeb3jService pool = pool(false,
+                node("lagging", 100, 0, laggingCalls, new AtomicInteger()),
+                node("synced", 200, 0, new AtomicInteger(), new AtomicInteger()));
+        Web3j web3j = Web3j.build(pool);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("synced", blockHash(web3j, 150));
+        }
+        assertEquals(0, laggingCalls.get());
+        for (int i = 0; i < 50 && laggingCalls.get() == 0; i++) {
+            blockHash(web3j, 90);
+        }
+        assertTrue(laggingCalls.get() > 0);
+    }
+
+    @Test
+    public void test_failed_node_excluded_until_healthy() throws Exception {
+        AtomicInteger brokenCalls = new AtomicInteger();
+        AtomicInteger failing = new AtomicInteger(1);
+        PooledWeb3jService pool = pool(false,
+                node("broken", 200, 0, brokenCalls, failing),
+                node("healthy", 200, 0, new AtomicInteger(), new AtomicInteger()));
+        Web3j web3j = Web3j.build(pool);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("healthy", blockHash(web3j, DefaultBlockParameterName.LATEST));
+        }
+        Mockito.verify(metrics, Mockito.atLeast(3)).addRpcError("node0");
+        int excluded = brokenCalls.get();
+        for (int i = 0; i < 20; i++) {
+            blockHash(web3j, DefaultBlockParameterName.LATEST);
+        }
+        assertEquals(excluded, brokenCalls.get());
+
+        failing.set(0);
+        pool.refreshHeads();
+        for (int i = 0; i < 50 && brokenCalls.get() == excluded; i++) {
+            blockHash(web3j, DefaultBlockParameterName.LATEST);
+        }
+        assertTrue(brokenCalls.get() > excluded);
+    }
+
+    @Test
+    public void test_error_response_sent_to_other_node() throws Exception {
+        AtomicInteger erroringCalls = new AtomicInteger();
+        PooledWeb3jService pool = pool(false,
+                erroring(200, erroringCalls),
+                node("healthy", 200, 0, new AtomicInteger(), new AtomicInteger()));
+        Web3j web3j = Web3j.build(pool);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("healthy", blockHash(web3j, 150));
+        }
+        assertTrue(erroringCalls.get() > 0);
+        Mockito.verify(metrics, Mockito.times(erroringCalls.get())).addRpcError("node0");
+        int excluded = erroringCalls.get();
+        for (int i = 0; i < 20; i++) {
+            blockHash(web3j, 150);
+        }
+        assertEquals(excluded, erroringCalls.get());
+    }
+
+    @Test
+    public void test_error_response_of_every_node_returned() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Web3j web3j = Web3j.build(pool(false, erroring(200, calls), erroring(200, calls)));
+
+        EthBlock response = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(150)), false).send();
+
+        assertTrue(response.hasError());
+        assertEquals("missing trie node", response.getError().getMessage());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void test_slow_call_hedged_to_other_node() throws Exception {
+        AtomicInteger slowCalls = new AtomicInteger();
+        PooledWeb3jService pool = pool(true,
+                node("slow", 200, 2000, slowCalls, new AtomicInteger()),
+                node("fast", 200, 0, new AtomicInteger(), new AtomicInteger()));
+        Web3j web3j = Web3j.build(pool);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("fast", blockHash(web3j, 150));
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        Mockito.verify(metrics, Mockito.times(slowCalls.get())).addHedgedRpcCall("eth_getBlockByNumber");
+        Mockito.verify(metrics, Mockito.atLeastOnce()).recordRpcCall(Matchers.eq("node1"), Matchers.anyLong());
+    }
+
+    @Test
+    public void test_filters_stick_to_first_node() throws Exception {
+        AtomicInteger firstCalls = new AtomicInteger();
+        AtomicInteger secondCalls = new AtomicInteger();
+        Web3j web3j = Web3j.build(pool(false,
+                node("first", 200, 0, firstCalls, new AtomicInteger()),
+                node("second", 200, 0, secondCalls, new AtomicInteger())));
+
+        for (int i = 0; i < 10; i++) {
+            web3j.ethGetFilterChanges(BigInteger.ONE).send();
+        }
+
+        assertEquals(10, firstCalls.get());
+        assertEquals(0, secondCalls.get());
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_subscription_without_websocket_endpoint_fails() throws Exception {
+        Web3j web3j = Web3j.build(pool(false, node("http", 200, 0, new AtomicInteger(), new AtomicInteger())));
+
+        web3j.newHeadsNotifications();
+    }
+}
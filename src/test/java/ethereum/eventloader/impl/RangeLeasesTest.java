@@ -0,0 +1,172 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.RangeLoader;
+import ethereum.eventloader.component.BlockchainAdapter;
+import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.RangeLeases;
+import ethereum.eventloader.component.checkpoint.ZookeeperCheckpointStore;
+import ethereum.eventloader.component.entity.Events;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
+
+public class RangeLeasesTest extends Assert {
+
+    private static final long RANGE_SIZE = 10;
+
+    private TestingServer zooKeeperServer;
+
+    private final List<CuratorFramework> clients = new ArrayList<>();
+
+    @Before
+    public void loadZookeeper() throws Exception {
+        zooKeeperServer = new TestingServer();
+    }
+
+    @After
+    public void closeZookeeper() throws Exception {
+        clients.forEach(CuratorFramework::close);
+        zooKeeperServer.close();
+    }
+
+    private CuratorFramework client() {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(zooKeeperServer.getConnectString(), new RetryOneTime(2000));
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private static LeasingConfig config(long leaseTimeoutMs) {
+        LeasingConfig config = new LeasingConfig();
+        config.setRangeSize(RANGE_SIZE);
+        config.setCatchUpThreshold(0L);
+        config.setMaxRanges(4);
+        config.setLeaseTimeoutMs(leaseTimeoutMs);
+        return config;
+    }
+
+    /**
+     * Replica loading ranges of a chain with 100 blocks, every loaded range is added to {@code loaded}
+     */
+    private RangeLoader loader(CuratorFramework client, List<Long> loaded, CountDownLatch started, CountDownLatch proceed) {
+        BlockchainAdapter blockchain = Mockito.mock(BlockchainAdapter.class);
+        Mockito.when(blockchain.latestBlockNumber()).thenReturn(100L);
+        Mockito.when(blockchain.eventsLog(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = (Long) invocation.getArguments()[0];
+            long to = (Long) invocation.getArguments()[1];
+            loaded.add(from / RANGE_SIZE);
+            started.countDown();
+            assertTrue(proceed.await(10, TimeUnit.SECONDS));
+            return new Events(from + 1, to);
+        });
+        Mockito.when(blockchain.loadBlocks(anyLong(), anyLong())).thenReturn(new ArrayList<>());
+        MessageBrokerAdapter messageBroker = Mockito.mock(MessageBrokerAdapter.class);
+        Mockito.when(messageBroker.publishBatch(anyList(), anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        LeasingConfig config = config(60000L);
+        RangeLoader loader = new RangeLoader(Mockito.mock(EventMetrics.class), blockchain, messageBroker,
+                client, new RangeLeases(client, config), config);
+        ReflectionTestUtils.setField(loader, "startBlock", BigInteger.ZERO);
+        return loader;
+    }
+
+    @Test
+    public void test_two_loaders_claim_disjoint_ranges() throws Exception {
+        List<Long> first = new CopyOnWriteArrayList<>();
+        List<Long> second = new CopyOnWriteArrayList<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch firstProceeds = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(0);
+        RangeLoader loader0 = loader(client(), first, firstStarted, firstProceeds);
+        RangeLoader loader1 = loader(client(), second, new CountDownLatch(1), done);
+
+        CompletableFuture<RangeLoader.Result> holding = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader0.loadAttempt();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+        // range 0 is leased by the first replica while it loads
+        assertEquals(RangeLoader.Result.LOADED, loader1.loadAttempt());
+        assertEquals(RangeLoader.Result.LOADED, loader1.loadAttempt());
+        firstProceeds.countDown();
+        assertEquals(RangeLoader.Result.LOADED, holding.get(10, TimeUnit.SECONDS));
+
+        assertEquals(1, first.size());
+        assertEquals(0L, (long) first.get(0));
+        assertEquals(2, second.size());
+        assertEquals(1L, (long) second.get(0));
+        assertEquals(2L, (long) second.get(1));
+
+        // processed block moves only past contiguous completed ranges
+        assertEquals(RangeLoader.Result.LOADED, loader1.loadAttempt());
+        DistributedAtomicLong processed = new DistributedAtomicLong(client(),
+                ZookeeperCheckpointStore.ZNODE_PROCESSED_BLOCK, new RetryOneTime(100));
+        assertEquals(4 * RANGE_SIZE, processed.get().postValue().longValue());
+    }
+
+    @Test
+    public void test_expired_lease_taken_over() throws Exception {
+        CuratorFramework client = client();
+        RangeLeases stuck = new RangeLeases(client, config(200L));
+        RangeLeases other = new RangeLeases(client(), config(200L));
+
+        assertTrue(stuck.acquire(0));
+        assertFalse(other.acquire(0));
+        assertTrue(other.acquire(1));
+
+        Thread.sleep(300);
+        assertTrue(other.acquire(0));
+        // stuck replica finds out on renewal and can't release lease it lost
+        assertFalse(stuck.renew(0));
+        stuck.release(0);
+        assertFalse(new RangeLeases(client(), config(60000L)).acquire(0));
+        assertTrue(other.renew(0));
+    }
+
+    @Test
+    public void test_lease_of_lost_session_freed_for_reclaim() throws Exception {
+        CuratorFramework crashed = client();
+        RangeLeases leases = new RangeLeases(crashed, config(60000L));
+        RangeLeases other = new RangeLeases(client(), config(60000L));
+
+        assertTrue(leases.acquire(3));
+        assertFalse(other.acquire(3));
+        assertTrue(other.hasPending());
+
+        crashed.close();
+        clients.remove(crashed);
+
+        // ephemeral lease is gone with the session, long before lease timeout
+        assertTrue(other.acquire(3));
+        other.complete(3);
+        other.release(3);
+        assertTrue(other.isDone(3));
+        other.clearDone(3);
+        assertFalse(other.hasPending());
+    }
+}
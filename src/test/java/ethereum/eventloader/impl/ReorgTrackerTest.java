@@ -0,0 +1,218 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.BlockchainException;
+import ethereum.eventloader.component.BatchSizeController;
+import ethereum.eventloader.component.BatchTransactionManager;
+import ethereum.eventloader.component.BlockCache;
+import ethereum.eventloader.component.BlockReceiptsFetcher;
+import ethereum.eventloader.component.BlockchainAdapter;
+import ethereum.eventloader.component.LogRangeFetcher;
+import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.ReorgTracker;
+import ethereum.eventloader.component.Web3jBlockchain;
+import ethereum.eventloader.component.beans.Web3jBeans;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.CheckpointConfig;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import ethereum.eventloader.config.Web3jConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ReorgTrackerTest extends Assert {
+
+    private BlockchainAdapter blockchain;
+
+    private MessageBrokerAdapter messageBroker;
+
+    private EventMetrics metrics;
+
+    private ReorgTracker tracker;
+
+    @Before
+    public void setUp() {
+        blockchain = Mockito.mock(BlockchainAdapter.class);
+        messageBroker = Mockito.mock(MessageBrokerAdapter.class);
+        metrics = Mockito.mock(EventMetrics.class);
+        Mockito.when(messageBroker.publishRemoved(anyList(), anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        ReorgConfig config = new ReorgConfig();
+        config.setEnabled(true);
+        config.setDepth(8);
+        tracker = new ReorgTracker(config, blockchain, messageBroker, Mockito.mock(CuratorFramework.class), metrics,
+                new PipelineConfig(), new TransactionConfig(), new CheckpointConfig());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_confirmed_topics_rejected_without_zookeeper_store() {
+        ReorgConfig config = new ReorgConfig();
+        config.setEnabled(true);
+        config.setConfirmations(4);
+        CheckpointConfig checkpointConfig = new CheckpointConfig();
+        checkpointConfig.setStore(CheckpointConfig.STORE_FILE);
+        new ReorgTracker(config, blockchain, messageBroker, Mockito.mock(CuratorFramework.class), metrics,
+                new PipelineConfig(), new TransactionConfig(), checkpointConfig);
+    }
+
+    @Test
+    public void test_continued_chain_passes() {
+        List<EthBlock.Block> first = Arrays.asList(block(1, "a", "a"), block(2, "a", "a"));
+        assertFalse(tracker.check(0, first, Collections.emptyList()).isPresent());
+        tracker.published(first, Collections.emptyList());
+
+        List<EthBlock.Block> second = Collections.singletonList(block(3, "a", "a"));
+        assertFalse(tracker.check(2, second, Collections.singletonList(log(3, "a"))).isPresent());
+        Mockito.verify(messageBroker, Mockito.never()).publishRemoved(anyList(), anyList());
+    }
+
+    @Test
+    public void test_reorg_rolls_back_to_fork_point() {
+        List<EthBlock.Block> published = Arrays.asList(block(1, "a", "a"), block(2, "a", "a"), block(3, "a", "a"));
+        List<LogResult> logs = Arrays.asList(log(2, "a"), log(3, "a"), log(3, "a"));
+        tracker.check(0, published, logs);
+        tracker.published(published, logs);
+        // canonical chain forked after block 1
+        Mockito.when(blockchain.loadBlocks(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long number = (Long) invocation.getArguments()[0];
+            return Collections.singletonList(number > 1 ? block(number, "b", "b") : block(number, "a", "a"));
+        });
+
+        OptionalLong fork = tracker.check(3, Collections.singletonList(block(4, "b", "b")), Collections.emptyList());
+
+        assertEquals(1L, fork.getAsLong());
+        ArgumentCaptor<List> blocks = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List> removedLogs = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(messageBroker).publishRemoved(blocks.capture(), removedLogs.capture());
+        assertEquals(Arrays.asList(published.get(2), published.get(1)), blocks.getValue());
+        assertEquals(3, removedLogs.getValue().size());
+        Mockito.verify(metrics).recordReorg(2);
+
+        // loader continues from fork point with canonical blocks
+        List<EthBlock.Block> canonical = Arrays.asList(block(2, "b", "a"), block(3, "b", "b"));
+        assertFalse(tracker.check(1, canonical, Collections.emptyList()).isPresent());
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_batch_changed_while_loading() {
+        tracker.check(0, Arrays.asList(block(1, "a", "a"), block(2, "b", "b")), Collections.emptyList());
+    }
+
+    @Test(expected = BlockchainException.class)
+    public void test_log_of_other_fork() {
+        tracker.check(0, Collections.singletonList(block(1, "a", "a")), Collections.singletonList(log(1, "b")));
+    }
+
+    @Test
+    public void test_reorg_between_headers_and_logs_retried() throws Exception {
+        // node switches from fork a to fork b while logs are queried, after headers were screened by bloom
+        AtomicReference<String> fork = new AtomicReference<>("a");
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Mockito.when(web3j.ethGetBlockByNumber(any(DefaultBlockParameter.class), anyBoolean()))
+                .thenReturn(Mockito.mock(Request.class));
+        Mockito.when(web3j.ethGetLogs(any(EthFilter.class))).thenAnswer(invocation -> {
+            fork.set("b");
+            EthLog ethLog = new EthLog();
+            ethLog.setResult(Collections.singletonList(log(11, "b")));
+            Request request = Mockito.mock(Request.class);
+            Mockito.when(request.send()).thenReturn(ethLog);
+            return request;
+        });
+        Web3jBeans beans = Mockito.mock(Web3jBeans.class);
+        Mockito.when(beans.web3j()).thenReturn(web3j);
+        BatchTransactionManager batch = Mockito.mock(BatchTransactionManager.class);
+        Mockito.when(batch.sendBatch(any(Web3j.class), anyList())).thenAnswer(invocation -> {
+            List<EthBlock.Block> blocks = new ArrayList<>();
+            for (int i = 0; i < ((List) invocation.getArguments()[1]).size(); i++) {
+                blocks.add(block(10 + i, fork.get(), i == 0 ? "a" : fork.get()));
+            }
+            return blocks;
+        });
+        BatchSizeController batchSize = Mockito.mock(BatchSizeController.class);
+        Mockito.when(batchSize.next()).thenReturn(10L);
+        KafkaTopics topics = new KafkaTopics();
+        KafkaTopics.EventTopicMap event = new KafkaTopics.EventTopicMap();
+        event.setEvent("0x01");
+        event.setTopic("events");
+        topics.setEvents(Collections.singleton(event));
+        Web3jConfig config = new Web3jConfig();
+        config.setBloomFilter(true);
+        BlockCacheConfig cacheConfig = new BlockCacheConfig();
+        BlockchainMetrics blockchainMetrics = Mockito.mock(BlockchainMetrics.class);
+        Web3jBlockchain web3jBlockchain = new Web3jBlockchain(beans, config, blockchainMetrics, batch,
+                new LogRangeFetcher(config), new BlockReceiptsFetcher(config), batchSize,
+                new BlockCache(cacheConfig, blockchainMetrics), cacheConfig, topics);
+        ReorgConfig reorgConfig = new ReorgConfig();
+        reorgConfig.setEnabled(true);
+        reorgConfig.setDepth(8);
+        ReorgTracker reorgTracker = new ReorgTracker(reorgConfig, web3jBlockchain, messageBroker,
+                Mockito.mock(CuratorFramework.class), metrics, new PipelineConfig(), new TransactionConfig(), new CheckpointConfig());
+
+        List<LogResult> logs = web3jBlockchain.eventsLog(9, 12).getLogs(9);
+        try {
+            reorgTracker.check(9, web3jBlockchain.loadBlocks(10, 13), logs);
+            fail("log of fork b doesn't belong to cached headers of fork a");
+        } catch (BlockchainException expected) {
+            // retried below
+        }
+
+        logs = web3jBlockchain.eventsLog(9, 12).getLogs(9);
+        List<EthBlock.Block> blocks = web3jBlockchain.loadBlocks(10, 13);
+        assertFalse(reorgTracker.check(9, blocks, logs).isPresent());
+        assertEquals(hash(11, "b"), blocks.get(1).getHash());
+    }
+
+    private static String hash(long number, String fork) {
+        StringBuilder hash = new StringBuilder("0x").append(fork);
+        String suffix = Long.toHexString(number);
+        while (hash.length() + suffix.length() < 66) {
+            hash.append('0');
+        }
+        return hash.append(suffix).toString();
+    }
+
+    /**
+     * Block of {@code fork} whose parent belongs to {@code parentFork}
+     */
+    private static EthBlock.Block block(long number, String fork, String parentFork) {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0x" + Long.toHexString(number));
+        block.setHash(hash(number, fork));
+        block.setParentHash(hash(number - 1, parentFork));
+        return block;
+    }
+
+    private static LogResult log(long number, String fork) {
+        EthLog.LogObject log = new EthLog.LogObject();
+        log.setBlockNumber("0x" + Long.toHexString(number));
+        log.setBlockHash(hash(number, fork));
+        return log;
+    }
+}
@@ -0,0 +1,105 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.component.spool.SpoolLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class SpoolLogTest extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_records_read_in_order_and_drained_segments_deleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        SpoolLog spool = new SpoolLog(directory, 64, 1024 * 1024, false);
+        for (int block = 1; block <= 5; block++) {
+            spool.append(block * 10, payload(block));
+        }
+        assertEquals(50, spool.lastEndBlock());
+        assertTrue(segments(directory) > 1);
+
+        for (int block = 1; block <= 5; block++) {
+            SpoolLog.Record record = spool.poll(0);
+            assertEquals(block * 10, record.getEndBlock());
+            assertArrayEquals(payload(block), record.getPayload());
+            spool.acknowledge(record);
+        }
+        assertNull(spool.poll(10));
+        assertEquals(0, spool.pendingBytes());
+        assertEquals(1, segments(directory));
+        spool.close();
+    }
+
+    @Test
+    public void test_records_recovered_after_restart_up_to_torn_record() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        SpoolLog spool = new SpoolLog(directory, 256, 1024 * 1024, true);
+        for (int block = 1; block <= 4; block++) {
+            spool.append(block * 10, payload(block));
+        }
+        spool.close();
+        // crash while appending: checksum and part of length written
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(String.format("%020d.spool", 0)).toFile(), "rw")) {
+            file.seek(4 * 32 + 4);
+            file.writeInt(12345);
+            file.seek(4 * 32);
+            file.writeInt(7);
+        }
+
+        spool = new SpoolLog(directory, 256, 1024 * 1024, true);
+        assertEquals(40, spool.lastEndBlock());
+        assertEquals(4 * 32, spool.pendingBytes());
+        for (int block = 1; block <= 4; block++) {
+            assertEquals(block * 10, spool.poll(0).getEndBlock());
+        }
+        assertNull(spool.poll(0));
+        spool.append(50, payload(5));
+        assertArrayEquals(payload(5), spool.poll(0).getPayload());
+        spool.close();
+
+        spool = new SpoolLog(directory, 256, 1024 * 1024, true);
+        assertEquals(50, spool.lastEndBlock());
+        spool.close();
+    }
+
+    @Test
+    public void test_append_waits_while_spool_is_full() throws Exception {
+        SpoolLog spool = new SpoolLog(folder.getRoot().toPath(), 1024, 40, false);
+        spool.append(1, payload(1));
+        CompletableFuture<Void> append = CompletableFuture.runAsync(() -> {
+            try {
+                spool.append(2, payload(2));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(append.isDone());
+
+        spool.acknowledge(spool.poll(0));
+        append.get(5, TimeUnit.SECONDS);
+        assertEquals(2, spool.poll(0).getEndBlock());
+        spool.close();
+    }
+
+    private static byte[] payload(int block) {
+        return ("batch of block " + block).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long segments(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
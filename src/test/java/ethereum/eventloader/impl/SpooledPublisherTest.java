@@ -0,0 +1,311 @@
+package ethereum.eventloader.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.component.BlockCache;
+import ethereum.eventloader.component.KafkaMQ;
+import ethereum.eventloader.component.SendWindow;
+import ethereum.eventloader.component.SpooledPublisher;
+import ethereum.eventloader.component.beans.KafkaBeans;
+import ethereum.eventloader.component.spool.SpoolLog;
+import ethereum.eventloader.config.BlockCacheConfig;
+import ethereum.eventloader.config.EventRoutes;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.PublishConfig;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.config.SpoolConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import ethereum.eventloader.metrics.EventMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SpooledPublisherTest extends Assert {
+
+    private static final String TOPIC0 = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    private static EmbeddedKafkaBroker kafka;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EventMetrics metrics = Mockito.mock(EventMetrics.class);
+
+    private final List<DefaultKafkaProducerFactory<Object, Object>> producerFactories = new ArrayList<>();
+
+    private final List<KafkaMQ> brokers = new ArrayList<>();
+
+    private final List<SpooledPublisher> publishers = new ArrayList<>();
+
+    @BeforeClass
+    public static void startKafka() {
+        kafka = new EmbeddedKafkaBroker(1, true, 1);
+        kafka.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void stopKafka() {
+        kafka.destroy();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (SpooledPublisher publisher : publishers) {
+            publisher.destroy();
+        }
+        brokers.forEach(KafkaMQ::destroy);
+        for (DefaultKafkaProducerFactory<Object, Object> producerFactory : producerFactories) {
+            producerFactory.destroy();
+        }
+    }
+
+    /**
+     * Routes of all events, blocks and full blocks to {@code prefix}.events, .blocks and .blocks.full topics
+     */
+    private static KafkaTopics topics(String prefix) {
+        Set<KafkaTopics.EventTopicMap> events = new HashSet<>();
+        for (String[] route : new String[][]{{EventRoutes.WILDCARD, ".events"}, {EventRoutes.BLOCK, ".blocks"},
+                {EventRoutes.BLOCK_FULL, ".blocks.full"}}) {
+            KafkaTopics.EventTopicMap event = new KafkaTopics.EventTopicMap();
+            event.setEvent(route[0]);
+            event.setTopic(prefix + route[1]);
+            events.add(event);
+        }
+        KafkaTopics topics = new KafkaTopics();
+        topics.setEvents(events);
+        return topics;
+    }
+
+    private static KafkaProperties kafkaProperties() {
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(Collections.singletonList(kafka.getBrokersAsString()));
+        kafkaProperties.getProducer().setValueSerializer(JsonSerializer.class);
+        return kafkaProperties;
+    }
+
+    private KafkaMQ kafkaMQ(KafkaTopics topics) {
+        DefaultKafkaProducerFactory<Object, Object> producerFactory = new DefaultKafkaProducerFactory<>(kafkaProperties().buildProducerProperties());
+        producerFactories.add(producerFactory);
+        KafkaTemplate template = new KafkaTemplate<>(producerFactory);
+        PublishConfig config = new PublishConfig();
+        KafkaMQ kafkaMQ = new KafkaMQ(topics, metrics, template, template, config, new SendWindow(config, metrics),
+                new ReorgConfig(), Mockito.mock(BlockCache.class), new BlockCacheConfig());
+        brokers.add(kafkaMQ);
+        return kafkaMQ;
+    }
+
+    private SpooledPublisher spooled(KafkaTopics topics, KafkaMQ kafkaMQ) throws Exception {
+        SpoolConfig config = new SpoolConfig();
+        config.setDirectory(folder.getRoot().getPath());
+        config.setSegmentBytes(1024 * 1024);
+        config.setMaxBytes(16L * 1024 * 1024);
+        config.setForce(false);
+        DefaultKafkaProducerFactory<Object, Object> producerFactory = new DefaultKafkaProducerFactory<>(kafkaProperties().buildProducerProperties());
+        producerFactories.add(producerFactory);
+        SpooledPublisher publisher = new SpooledPublisher(kafkaMQ, new KafkaBeans(topics, new ReorgConfig(), producerFactory),
+                kafkaProperties(), metrics, config, new PublishConfig(), new PipelineConfig(), new LeasingConfig(),
+                new ReorgConfig(), new TransactionConfig());
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private static List<EthBlock.Block> blocks(long from, long to) {
+        List<EthBlock.Block> blocks = new ArrayList<>();
+        for (long number = from; number <= to; number++) {
+            EthBlock.Block block = new EthBlock.Block();
+            block.setNumber("0x" + Long.toHexString(number));
+            block.setHash(hash(number));
+            block.setParentHash(hash(number - 1));
+            block.setNonce("0x0000000000000000");
+            block.setExtraData("0xD883010817");
+            block.setDifficulty("0x0");
+            block.setTotalDifficulty("0xc70d815d562d3cfa955");
+            block.setSize("0x9c4e");
+            block.setGasLimit("0x1c9c380");
+            block.setGasUsed("0x5208");
+            block.setTimestamp("0x6432a1f0");
+            block.setTransactions(Collections.emptyList());
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Log of every block, its data in upper case as some clients return it
+     */
+    private static List<EthLog.LogResult> logs(long from, long to) {
+        List<EthLog.LogResult> logs = new ArrayList<>();
+        for (long number = from; number <= to; number++) {
+            EthLog.LogObject log = new EthLog.LogObject();
+            log.setTopics(Collections.singletonList(TOPIC0));
+            log.setBlockNumber("0x" + Long.toHexString(number));
+            log.setBlockHash(hash(number));
+            log.setTransactionHash(hash(number + 1000));
+            log.setLogIndex("0x0");
+            log.setData("0x00ABCDEF" + Long.toHexString(number));
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    private static String hash(long number) {
+        return String.format("0x%064x", number);
+    }
+
+    private static void awaitDrained(SpooledPublisher publisher, long block) throws InterruptedException {
+        while (publisher.lastDrained() < block) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> consume(String topic, int count) {
+        TopicPartition partition = new TopicPartition(topic, 0);
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(KafkaTestUtils.consumerProps("spool-test", "false", kafka),
+                new StringDeserializer(), new ByteArrayDeserializer())) {
+            consumer.assign(Collections.singletonList(partition));
+            consumer.seekToBeginning(Collections.singletonList(partition));
+            while (records.size() < count) {
+                consumer.poll(Duration.ofMillis(500)).forEach(records::add);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return Block numbers of events published to the topic as JSON
+     */
+    private static List<Long> eventBlocks(String topic, int count) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Long> blocks = new ArrayList<>();
+        for (ConsumerRecord<String, byte[]> record : consume(topic, count)) {
+            blocks.add(mapper.readTree(record.value()).get("blockNumber").asLong());
+        }
+        return blocks;
+    }
+
+    private static List<String> headers(ConsumerRecord<String, byte[]> record) {
+        List<String> headers = new ArrayList<>();
+        for (Header header : record.headers()) {
+            headers.add(header.key() + "=" + Arrays.toString(header.value()));
+        }
+        return headers;
+    }
+
+    @Test(timeout = 60000)
+    public void test_spooled_records_same_as_published_directly() throws Exception {
+        KafkaTopics topics = topics("same");
+        KafkaMQ kafkaMQ = kafkaMQ(topics);
+        kafkaMQ.publishBatch(blocks(11, 12), logs(11, 12)).join();
+
+        SpooledPublisher spooled = spooled(topics, kafkaMQ);
+        assertEquals(10L, spooled.lastSpooled(10));
+        spooled.publish(blocks(11, 12), logs(11, 12), 12);
+        awaitDrained(spooled, 12);
+
+        for (String topic : Arrays.asList("same.events", "same.blocks", "same.blocks.full")) {
+            List<ConsumerRecord<String, byte[]>> records = consume(topic, 4);
+            assertEquals(4, records.size());
+            // both batches are in a single partition, published directly first
+            for (int i = 0; i < 2; i++) {
+                ConsumerRecord<String, byte[]> direct = records.get(i);
+                ConsumerRecord<String, byte[]> drained = records.get(i + 2);
+                assertEquals(direct.key(), drained.key());
+                assertEquals(new String(direct.value()), new String(drained.value()));
+                assertEquals(headers(direct), headers(drained));
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void test_batches_drained_in_order() throws Exception {
+        KafkaTopics topics = topics("order");
+        SpooledPublisher spooled = spooled(topics, kafkaMQ(topics));
+        spooled.publish(blocks(11, 12), logs(11, 12), 12);
+        spooled.publish(blocks(13, 13), logs(13, 13), 13);
+
+        assertEquals(13L, spooled.lastSpooled(10));
+        spooled.publish(blocks(14, 16), logs(14, 16), 16);
+        awaitDrained(spooled, 16);
+
+        assertEquals(16L, spooled.lastDrained());
+        assertEquals(Arrays.asList(11L, 12L, 13L, 14L, 15L, 16L), eventBlocks("order.events", 6));
+    }
+
+    @Test(timeout = 60000)
+    public void test_batches_after_checkpoint_drained_after_restart() throws Exception {
+        KafkaTopics topics = topics("restart");
+        KafkaMQ kafkaMQ = kafkaMQ(topics);
+        SpooledPublisher stopped = spooled(topics, kafkaMQ);
+        stopped.publish(blocks(11, 12), logs(11, 12), 12);
+        stopped.publish(blocks(13, 14), logs(13, 14), 14);
+        stopped.destroy();
+        publishers.remove(stopped);
+
+        // batch up to block 12 was drained before restart
+        SpooledPublisher restarted = spooled(topics, kafkaMQ);
+        assertEquals(14L, restarted.lastSpooled(12));
+        awaitDrained(restarted, 14);
+
+        assertEquals(Arrays.asList(13L, 14L), eventBlocks("restart.events", 2));
+    }
+
+    @Test(timeout = 60000)
+    public void test_unreadable_batch_fails_loading() throws Exception {
+        SpoolLog log = new SpoolLog(folder.getRoot().toPath(), 1024 * 1024, 16L * 1024 * 1024, false);
+        // negative count of records
+        log.append(12, new byte[]{-1, -1, -1, -1});
+        log.close();
+        KafkaTopics topics = topics("unreadable");
+        SpooledPublisher spooled = spooled(topics, kafkaMQ(topics));
+
+        assertEquals(12L, spooled.lastSpooled(10));
+        MessageBrokerException failure = null;
+        while (failure == null) {
+            try {
+                assertEquals(10L, spooled.lastDrained());
+                Thread.sleep(10);
+            } catch (MessageBrokerException ex) {
+                failure = ex;
+            }
+        }
+        assertEquals("spool drainer stopped after block 10", failure.getMessage());
+        assertTrue(failure.getCause() instanceof IllegalArgumentException);
+        try {
+            spooled.publish(blocks(13, 13), logs(13, 13), 13);
+            fail("loader must not spool batches nobody drains");
+        } catch (IOException expected) {
+        }
+    }
+}
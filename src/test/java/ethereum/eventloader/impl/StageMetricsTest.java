@@ -0,0 +1,88 @@
+package ethereum.eventloader.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import ethereum.eventloader.component.beans.ResponseSizeInterceptor;
+import ethereum.eventloader.config.KafkaTopics;
+import ethereum.eventloader.config.ReorgConfig;
+import ethereum.eventloader.metrics.BlockchainMetrics;
+import ethereum.eventloader.metrics.EventMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+public class StageMetricsTest extends Assert {
+
+    private static final String BODY = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x895444\"}";
+
+    @Test
+    public void test_stage_timers_and_batch_summaries() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KafkaTopics topics = new KafkaTopics();
+        topics.setEvents(new HashSet<>());
+        EventMetrics metrics = new EventMetrics(registry, topics, new ReorgConfig());
+
+        // every stage is registered up front, so dashboards show idle stages too
+        assertEquals(9, registry.find("loader_stage_time").timers().size());
+        metrics.recordStage(EventMetrics.STAGE_LOGS, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordStage(EventMetrics.STAGE_LOGS, TimeUnit.MILLISECONDS.toNanos(15));
+        assertEquals(2, registry.get("loader_stage_time").tag("stage", "logs").timer().count());
+        assertEquals(20.0, registry.get("loader_stage_time").tag("stage", "logs").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(0, registry.get("loader_stage_time").tag("stage", "ack").timer().count());
+
+        metrics.addProcessedEventsCount(40L);
+        metrics.addProcessedEventsCount(60L);
+        metrics.addProcessedBlocksCount(10L);
+        assertEquals(2, registry.get("batch_logs").summary().count());
+        assertEquals(100.0, registry.get("batch_logs").summary().totalAmount(), 0.001);
+        assertEquals(10.0, registry.get("batch_blocks").summary().max(), 0.001);
+    }
+
+    @Test
+    public void test_response_bytes_of_sized_and_chunked_bodies() throws Exception {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sized", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/chunked", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, 0, 10);
+                out.flush();
+                out.write(body, 10, body.length - 10);
+            }
+        });
+        server.start();
+        try {
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .addInterceptor(new ResponseSizeInterceptor(new BlockchainMetrics(registry)))
+                    .build();
+            String url = "http://127.0.0.1:" + server.getAddress().getPort();
+            for (String path : new String[]{"/sized", "/chunked"}) {
+                try (Response response = client.newCall(new Request.Builder().url(url + path).build()).execute()) {
+                    assertEquals(BODY, response.body().string());
+                }
+            }
+
+            DistributionSummary bytes = registry.get("rpc_response_bytes").summary();
+            assertEquals(2, bytes.count());
+            assertEquals(2.0 * body.length, bytes.totalAmount(), 0.001);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ethereum.eventloader.impl;
+
+import ethereum.eventloader.MessageBrokerException;
+import ethereum.eventloader.component.MessageBrokerAdapter;
+import ethereum.eventloader.component.TransactionalPublisher;
+import ethereum.eventloader.config.LeasingConfig;
+import ethereum.eventloader.config.PipelineConfig;
+import ethereum.eventloader.config.TransactionConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Matchers.anyList;
+
+public class TransactionalPublisherTest extends Assert {
+
+    private static final String EVENTS_TOPIC = "tx.events";
+
+    private static final String STATE_TOPIC = "tx.state";
+
+    private static EmbeddedKafkaBroker kafka;
+
+    private DefaultKafkaProducerFactory<Object, Object> producerFactory;
+
+    private final List<TransactionalPublisher> publishers = new ArrayList<>();
+
+    @BeforeClass
+    public static void startKafka() throws Exception {
+        kafka = new EmbeddedKafkaBroker(1, true, 1, EVENTS_TOPIC, STATE_TOPIC)
+                .brokerProperty("transaction.state.log.replication.factor", "1")
+                .brokerProperty("transaction.state.log.min.isr", "1");
+        kafka.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void stopKafka() {
+        kafka.destroy();
+    }
+
+    @Before
+    public void setUp() {
+        Map<String, Object> props = KafkaTestUtils.producerProps(kafka);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.RETRIES_CONFIG, 3);
+        producerFactory = new DefaultKafkaProducerFactory<>(props);
+        producerFactory.setTransactionIdPrefix("tx-test-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        publishers.forEach(TransactionalPublisher::destroy);
+        producerFactory.destroy();
+    }
+
+    /**
+     * Publisher whose broker sends number of the first block to events topic in the same transaction,
+     * or fails after sending it when the block is {@code failing}
+     */
+    private TransactionalPublisher publisher(String checkpointKey, long failing) {
+        KafkaTemplate<Object, Object> events = new KafkaTemplate<>(producerFactory);
+        MessageBrokerAdapter broker = Mockito.mock(MessageBrokerAdapter.class);
+        Mockito.when(broker.publishBatch(anyList(), anyList())).thenAnswer(invocation -> {
+            List<?> blocks = (List<?>) invocation.getArguments()[0];
+            long number = ((EthBlock.Block) blocks.get(0)).getNumber().longValue();
+            events.send(EVENTS_TOPIC, checkpointKey, number);
+            if (number == failing) {
+                throw new MessageBrokerException("broker is down", null);
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        TransactionConfig config = new TransactionConfig();
+        config.setStateTopic(STATE_TOPIC);
+        config.setCheckpointKey(checkpointKey);
+        config.setReadTimeoutMs(10000L);
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(Collections.singletonList(kafka.getBrokersAsString()));
+        TransactionalPublisher publisher = new TransactionalPublisher(broker, config, producerFactory, kafkaProperties,
+                new PipelineConfig(), new LeasingConfig());
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private static List<EthBlock.Block> blocks(long number) {
+        EthBlock.Block block = new EthBlock.Block();
+        block.setNumber("0x" + Long.toHexString(number));
+        return Collections.singletonList(block);
+    }
+
+    /**
+     * @return Values of committed records of the key, read like consumers with read_committed isolation do
+     */
+    private static List<String> committed(String topic, String key) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("tx-test", "false", kafka);
+        TopicPartition partition = new TopicPartition(topic, 0);
+        long end;
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer())) {
+            end = consumer.endOffsets(Collections.singletonList(partition)).get(partition);
+        }
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        List<String> values = new ArrayList<>();
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer())) {
+            consumer.assign(Collections.singletonList(partition));
+            consumer.seekToBeginning(Collections.singletonList(partition));
+            // markers are written after commit returns, read_committed position passes them once they are in the log
+            while (consumer.position(partition) < end) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(500))) {
+                    if (key.equals(record.key())) {
+                        values.add(record.value());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    @Test(timeout = 60000)
+    public void test_aborted_batch_leaves_no_messages_and_checkpoint() {
+        TransactionalPublisher publisher = publisher("aborted", 20);
+        assertEquals(-1L, publisher.lastCommitted());
+
+        publisher.publish(blocks(10), Collections.emptyList(), 19);
+        assertEquals(19L, publisher.lastCommitted());
+
+        try {
+            publisher.publish(blocks(20), Collections.emptyList(), 29);
+            fail("failed batch must abort the transaction");
+        } catch (MessageBrokerException ex) {
+            assertEquals("transaction of batch up to block 29 aborted", ex.getMessage());
+        }
+
+        assertEquals(19L, publisher.lastCommitted());
+        assertEquals(Collections.singletonList("10"), committed(EVENTS_TOPIC, "aborted"));
+        assertEquals(Collections.singletonList("19"), committed(STATE_TOPIC, "aborted"));
+    }
+
+    @Test(timeout = 60000)
+    public void test_checkpoint_read_back_after_restart() {
+        TransactionalPublisher publisher = publisher("restarted", -1);
+        publisher.publish(blocks(10), Collections.emptyList(), 19);
+        publisher.publish(blocks(20), Collections.emptyList(), 29);
+        publisher.destroy();
+        publishers.remove(publisher);
+
+        TransactionalPublisher restarted = publisher("restarted", -1);
+        assertEquals(29L, restarted.lastCommitted());
+        restarted.publish(blocks(30), Collections.emptyList(), 39);
+
+        assertEquals(Arrays.asList("10", "20", "30"), committed(EVENTS_TOPIC, "restarted"));
+        assertEquals(39L, publisher("restarted", -1).lastCommitted());
+    }
+}